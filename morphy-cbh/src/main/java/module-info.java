@@ -5,6 +5,10 @@ module se.yarin.morphy.cbh {
   requires java.compiler;
   requires org.jetbrains.annotations;
   requires concurrent.locks;
+  requires java.management;
+  requires jdk.httpserver;
+  requires jdk.jfr;
+  requires jdk.unsupported;
 
   exports se.yarin.chess;
   exports se.yarin.chess.annotations;
@@ -0,0 +1,625 @@
+package se.yarin.chess;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.chess.annotations.Annotation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A read-only and memory efficient version of a {@link GameMovesModel}, intended for games that
+ * are kept in memory but rarely navigated, such as caches of recently viewed games.
+ *
+ * <p>The nodes are numbered in depth first order, the same order as {@link
+ * GameMovesModel#getAllNodes()}. The move leading to each node is packed into an int, and the tree
+ * structure is kept in int arrays. Positions are only stored at checkpoints, every few plies, and
+ * are otherwise recomputed from the closest checkpoint when needed. Nodes are lightweight views
+ * that are created on demand.
+ *
+ * <p>CompactGameMoves is immutable. Use {@link #toGameMovesModel()} to get an editable model.
+ */
+public final class CompactGameMoves {
+  public static final int DEFAULT_CHECKPOINT_INTERVAL = 16;
+
+  private static final int KIND_NORMAL = 0;
+  private static final int KIND_SHORT_CASTLES = 1;
+  private static final int KIND_LONG_CASTLES = 2;
+  private static final int KIND_NULL_MOVE = 3;
+
+  private static final Stone[] STONES = Stone.values();
+  private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+  private final int startPly;
+  // All arrays below are indexed by node number; the root is node 0
+  private final int @NotNull [] moves; // The packed move leading to the node; 0 for the root
+  private final int @NotNull [] parents; // -1 for the root
+  private final int @NotNull [] nextSiblings; // -1 if the node is the last child of its parent
+  private final int @NotNull [] depths; // The number of moves from the root
+  // The nodes with a stored position, sorted; always includes the root
+  private final int @NotNull [] checkpointNodes;
+  private final @NotNull Position @NotNull [] checkpointPositions;
+  // The nodes with annotations, sorted
+  private final int @NotNull [] annotatedNodes;
+  private final @NotNull Annotation @NotNull [][] annotations;
+
+  private CompactGameMoves(
+      int startPly,
+      int @NotNull [] moves,
+      int @NotNull [] parents,
+      int @NotNull [] nextSiblings,
+      int @NotNull [] depths,
+      int @NotNull [] checkpointNodes,
+      @NotNull Position @NotNull [] checkpointPositions,
+      int @NotNull [] annotatedNodes,
+      @NotNull Annotation @NotNull [][] annotations) {
+    this.startPly = startPly;
+    this.moves = moves;
+    this.parents = parents;
+    this.nextSiblings = nextSiblings;
+    this.depths = depths;
+    this.checkpointNodes = checkpointNodes;
+    this.checkpointPositions = checkpointPositions;
+    this.annotatedNodes = annotatedNodes;
+    this.annotations = annotations;
+  }
+
+  /**
+   * Creates a compact version of a moves model, including the annotations.
+   *
+   * @param model the model to copy
+   * @return a compact copy of the model
+   */
+  public static @NotNull CompactGameMoves of(@NotNull GameMovesModel model) {
+    return of(model, DEFAULT_CHECKPOINT_INTERVAL);
+  }
+
+  /**
+   * Creates a compact version of a moves model, including the annotations.
+   *
+   * @param model the model to copy
+   * @param checkpointInterval the number of plies between stored positions; a higher value uses
+   *     less memory but makes it slower to get the position of a node
+   * @return a compact copy of the model
+   */
+  public static @NotNull CompactGameMoves of(
+      @NotNull GameMovesModel model, int checkpointInterval) {
+    if (checkpointInterval < 1) {
+      throw new IllegalArgumentException("checkpointInterval must be at least 1");
+    }
+    List<GameMovesModel.Node> allNodes = model.getAllNodes();
+    int numNodes = allNodes.size();
+    IdentityHashMap<GameMovesModel.Node, Integer> nodeIndexes = new IdentityHashMap<>(numNodes);
+    for (int i = 0; i < numNodes; i++) {
+      nodeIndexes.put(allNodes.get(i), i);
+    }
+
+    int[] moves = new int[numNodes];
+    int[] parents = new int[numNodes];
+    int[] nextSiblings = new int[numNodes];
+    int[] depths = new int[numNodes];
+    List<Integer> checkpointNodes = new ArrayList<>();
+    List<Position> checkpointPositions = new ArrayList<>();
+    List<Integer> annotatedNodes = new ArrayList<>();
+    List<Annotation[]> annotations = new ArrayList<>();
+
+    Arrays.fill(nextSiblings, -1);
+    for (int i = 0; i < numNodes; i++) {
+      GameMovesModel.Node node = allNodes.get(i);
+      if (node.isRoot()) {
+        parents[i] = -1;
+      } else {
+        parents[i] = nodeIndexes.get(node.parent());
+        moves[i] = packMove(node.lastMove());
+        depths[i] = depths[parents[i]] + 1;
+      }
+      List<GameMovesModel.Node> children = node.children();
+      for (int j = 1; j < children.size(); j++) {
+        nextSiblings[nodeIndexes.get(children.get(j - 1))] = nodeIndexes.get(children.get(j));
+      }
+      if (depths[i] % checkpointInterval == 0) {
+        checkpointNodes.add(i);
+        checkpointPositions.add(node.position());
+      }
+      if (node.getAnnotations().size() > 0) {
+        annotatedNodes.add(i);
+        annotations.add(node.getAnnotations().toArray(NO_ANNOTATIONS));
+      }
+    }
+
+    return new CompactGameMoves(
+        model.root().ply(),
+        moves,
+        parents,
+        nextSiblings,
+        depths,
+        checkpointNodes.stream().mapToInt(Integer::intValue).toArray(),
+        checkpointPositions.toArray(new Position[0]),
+        annotatedNodes.stream().mapToInt(Integer::intValue).toArray(),
+        annotations.toArray(new Annotation[0][]));
+  }
+
+  /**
+   * Builds a {@link CompactGameMoves} directly from moves, without going through a {@link
+   * GameMovesModel}. The moves are not validated, and positions are only computed for the
+   * checkpoints when the tree is built. Annotations are not supported.
+   *
+   * <p>The nodes must be added in depth first order, see {@link #node(int)}.
+   */
+  public static final class Builder {
+    private final @NotNull Position startPosition;
+    private final int startPly;
+    private final int checkpointInterval;
+    private int[] moves = new int[64];
+    private int[] parents = new int[64];
+    private int size = 1;
+
+    /**
+     * Creates a new builder
+     *
+     * @param startPosition the position at the root of the game tree
+     * @param startPly the ply of the root position
+     */
+    public Builder(@NotNull Position startPosition, int startPly) {
+      this(startPosition, startPly, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Creates a new builder
+     *
+     * @param startPosition the position at the root of the game tree
+     * @param startPly the ply of the root position
+     * @param checkpointInterval the number of plies between stored positions; a higher value uses
+     *     less memory but makes it slower to get the position of a node
+     */
+    public Builder(@NotNull Position startPosition, int startPly, int checkpointInterval) {
+      if (checkpointInterval < 1) {
+        throw new IllegalArgumentException("checkpointInterval must be at least 1");
+      }
+      this.startPosition = startPosition;
+      this.startPly = startPly;
+      this.checkpointInterval = checkpointInterval;
+      this.parents[0] = -1;
+    }
+
+    /**
+     * Adds a move
+     *
+     * @param parentNode the node the move is made from
+     * @param fromSqi the square the piece moves from
+     * @param toSqi the square the piece moves to
+     * @param promotionStone the stone a pawn is promoted to, or {@link Stone#NO_STONE}
+     * @return the number of the new node
+     */
+    public int addMove(int parentNode, int fromSqi, int toSqi, @NotNull Stone promotionStone) {
+      return add(parentNode, (promotionStone.ordinal() << 12) | (toSqi << 6) | fromSqi);
+    }
+
+    /**
+     * Adds a castling move
+     *
+     * @param parentNode the node the move is made from
+     * @param fromSqi the square the king moves from
+     * @param toSqi the square the king moves to
+     * @param shortCastles true if it's a short castles, false if it's a long castles
+     * @return the number of the new node
+     */
+    public int addCastles(int parentNode, int fromSqi, int toSqi, boolean shortCastles) {
+      int kind = shortCastles ? KIND_SHORT_CASTLES : KIND_LONG_CASTLES;
+      return add(
+          parentNode, (kind << 16) | (Stone.NO_STONE.ordinal() << 12) | (toSqi << 6) | fromSqi);
+    }
+
+    /**
+     * Adds a null move
+     *
+     * @param parentNode the node the move is made from
+     * @return the number of the new node
+     */
+    public int addNullMove(int parentNode) {
+      return add(parentNode, KIND_NULL_MOVE << 16);
+    }
+
+    private int add(int parentNode, int packedMove) {
+      if (parentNode < 0 || parentNode >= size) {
+        throw new IllegalArgumentException("Invalid parent node: " + parentNode);
+      }
+      if (size == moves.length) {
+        moves = Arrays.copyOf(moves, size * 2);
+        parents = Arrays.copyOf(parents, size * 2);
+      }
+      moves[size] = packedMove;
+      parents[size] = parentNode;
+      return size++;
+    }
+
+    /**
+     * @return the position at the root of the game tree
+     */
+    public @NotNull Position startPosition() {
+      return startPosition;
+    }
+
+    /**
+     * @return the number of nodes added so far, including the root
+     */
+    public int numNodes() {
+      return size;
+    }
+
+    /**
+     * Builds the compact game tree
+     *
+     * @return the game tree
+     * @throws IllegalStateException if the nodes weren't added in depth first order
+     */
+    public @NotNull CompactGameMoves build() {
+      int[] depths = new int[size];
+      int[] nextSiblings = new int[size];
+      int[] lastChild = new int[size];
+      Arrays.fill(nextSiblings, -1);
+      Arrays.fill(lastChild, -1);
+      for (int i = 1; i < size; i++) {
+        int parent = parents[i];
+        // In depth first order, the parent must be the previous node or one of its ancestors
+        int ancestor = i - 1;
+        while (ancestor > parent) {
+          ancestor = parents[ancestor];
+        }
+        if (ancestor != parent) {
+          throw new IllegalStateException("Node " + i + " was not added in depth first order");
+        }
+        depths[i] = depths[parent] + 1;
+        if (lastChild[parent] >= 0) {
+          nextSiblings[lastChild[parent]] = i;
+        }
+        lastChild[parent] = i;
+      }
+
+      // The checkpoints are computed from the previous checkpoint on the path from the root,
+      // which in depth first order has always been computed already
+      Position[] positions = new Position[size];
+      positions[0] = startPosition;
+      int numCheckpoints = 1;
+      int[] path = new int[checkpointInterval];
+      for (int i = 1; i < size; i++) {
+        if (depths[i] % checkpointInterval != 0) {
+          continue;
+        }
+        int pathLength = 0;
+        int node = i;
+        while (positions[node] == null) {
+          path[pathLength++] = node;
+          node = parents[node];
+        }
+        Position position = positions[node];
+        while (pathLength > 0) {
+          position = position.doMove(unpackMove(moves[path[--pathLength]], position));
+        }
+        positions[i] = position;
+        numCheckpoints++;
+      }
+      int[] checkpointNodes = new int[numCheckpoints];
+      Position[] checkpointPositions = new Position[numCheckpoints];
+      for (int i = 0, j = 0; i < size; i++) {
+        if (positions[i] != null) {
+          checkpointNodes[j] = i;
+          checkpointPositions[j++] = positions[i];
+        }
+      }
+
+      return new CompactGameMoves(
+          startPly,
+          Arrays.copyOf(moves, size),
+          Arrays.copyOf(parents, size),
+          nextSiblings,
+          depths,
+          checkpointNodes,
+          checkpointPositions,
+          new int[0],
+          new Annotation[0][]);
+    }
+  }
+
+  /**
+   * Creates an editable {@link GameMovesModel} with the same moves and annotations.
+   *
+   * @return a new moves model
+   */
+  public @NotNull GameMovesModel toGameMovesModel() {
+    GameMovesModel model = new GameMovesModel();
+    if (isSetupPosition()) {
+      model.setupPosition(checkpointPositions[0], startPly);
+    }
+    GameMovesModel.Node[] nodes = new GameMovesModel.Node[moves.length];
+    nodes[0] = model.root();
+    for (int i = 1; i < moves.length; i++) {
+      GameMovesModel.Node parent = nodes[parents[i]];
+      nodes[i] = parent.addMoveUnsafe(unpackMove(moves[i], parent.position()));
+    }
+    for (int i = 0; i < annotatedNodes.length; i++) {
+      nodes[annotatedNodes[i]].getAnnotations().addAll(Arrays.asList(annotations[i]));
+    }
+    return model;
+  }
+
+  /**
+   * @return the root node of the game tree
+   */
+  public @NotNull Node root() {
+    return new Node(0);
+  }
+
+  /**
+   * Gets a node by its number. The nodes are numbered in depth first order, starting with 0 for
+   * the root.
+   *
+   * @param index the number of the node
+   * @return the node
+   */
+  public @NotNull Node node(int index) {
+    if (index < 0 || index >= moves.length) {
+      throw new IndexOutOfBoundsException("Invalid node: " + index);
+    }
+    return new Node(index);
+  }
+
+  /**
+   * @return the number of nodes in the game tree, including the root
+   */
+  public int numNodes() {
+    return moves.length;
+  }
+
+  /**
+   * Gets the number of half moves in the game.
+   *
+   * @param includeVariations if true, count all moves in all variations; otherwise only the main
+   *     line will be counted
+   * @return the total number of half moves in the game
+   */
+  public int countPly(boolean includeVariations) {
+    if (includeVariations) {
+      return moves.length - 1;
+    }
+    int count = 0;
+    for (int index = 0; hasMoves(index); index += 1) {
+      count += 1;
+    }
+    return count;
+  }
+
+  /**
+   * @return the total number of annotations in the game
+   */
+  public int countAnnotations() {
+    int count = 0;
+    for (Annotation[] nodeAnnotations : annotations) {
+      count += nodeAnnotations.length;
+    }
+    return count;
+  }
+
+  /**
+   * @return true if the game tree doesn't start at the beginning of an ordinary chess game. Also
+   *     returns true for Chess960 games.
+   */
+  public boolean isSetupPosition() {
+    return !(checkpointPositions[0].equals(Position.start()) && startPly == 0);
+  }
+
+  private boolean hasMoves(int index) {
+    // In depth first order, the first child of a node always comes right after the node
+    return index + 1 < parents.length && parents[index + 1] == index;
+  }
+
+  private @NotNull Position position(int index) {
+    int[] path = new int[depths[index] + 1];
+    int pathLength = 0;
+    int checkpoint;
+    while ((checkpoint = Arrays.binarySearch(checkpointNodes, index)) < 0) {
+      path[pathLength++] = index;
+      index = parents[index];
+    }
+    Position position = checkpointPositions[checkpoint];
+    while (pathLength > 0) {
+      position = position.doMove(unpackMove(moves[path[--pathLength]], position));
+    }
+    return position;
+  }
+
+  private static int packMove(@NotNull Move move) {
+    int kind = KIND_NORMAL;
+    if (move.isNullMove()) {
+      return KIND_NULL_MOVE << 16;
+    } else if (move.isShortCastle()) {
+      kind = KIND_SHORT_CASTLES;
+    } else if (move.isLongCastle()) {
+      kind = KIND_LONG_CASTLES;
+    }
+    return (kind << 16) | (move.promotionStone().ordinal() << 12) | (move.toSqi() << 6)
+        | move.fromSqi();
+  }
+
+  private static @NotNull Move unpackMove(int packedMove, @NotNull Position position) {
+    return switch (packedMove >>> 16) {
+      case KIND_SHORT_CASTLES -> Move.shortCastles(position);
+      case KIND_LONG_CASTLES -> Move.longCastles(position);
+      case KIND_NULL_MOVE -> Move.nullMove(position);
+      default ->
+          new Move(
+              position,
+              packedMove & 63,
+              (packedMove >> 6) & 63,
+              STONES[(packedMove >> 12) & 15]);
+    };
+  }
+
+  /**
+   * A read-only view of a node in a {@link CompactGameMoves}. Nodes are created on demand, so the
+   * same node may be represented by different instances; use {@link #equals(Object)} to compare
+   * them.
+   */
+  public final class Node {
+    private final int index;
+
+    private Node(int index) {
+      this.index = index;
+    }
+
+    /**
+     * @return the number of this node, in depth first order
+     */
+    public int index() {
+      return index;
+    }
+
+    /**
+     * @return true if this is the beginning of the game tree
+     */
+    public boolean isRoot() {
+      return index == 0;
+    }
+
+    /**
+     * @return true if there is at least one move from this node
+     */
+    public boolean hasMoves() {
+      return CompactGameMoves.this.hasMoves(index);
+    }
+
+    /**
+     * @return true if there are more than one move from this node
+     */
+    public boolean hasVariations() {
+      return hasMoves() && nextSiblings[index + 1] >= 0;
+    }
+
+    /**
+     * @return the number of moves from this node
+     */
+    public int numMoves() {
+      int count = 0;
+      for (int child = hasMoves() ? index + 1 : -1; child >= 0; child = nextSiblings[child]) {
+        count += 1;
+      }
+      return count;
+    }
+
+    /**
+     * Gets the ply number at the current position. The ordinary starting position has ply 0. Note
+     * that the root of the game tree may not have ply 0, if a setup position was used.
+     *
+     * @return the current ply number at this node
+     */
+    public int ply() {
+      return startPly + depths[index];
+    }
+
+    /**
+     * @return the children of this node, with the main move first
+     */
+    public @NotNull List<Node> children() {
+      List<Node> children = new ArrayList<>();
+      for (int child = hasMoves() ? index + 1 : -1; child >= 0; child = nextSiblings[child]) {
+        children.add(new Node(child));
+      }
+      return children;
+    }
+
+    /**
+     * @return the parent node, or null if this is the root node
+     */
+    public Node parent() {
+      return isRoot() ? null : new Node(parents[index]);
+    }
+
+    /**
+     * @return the first child node, or null if the node has no child nodes
+     */
+    public Node mainNode() {
+      return hasMoves() ? new Node(index + 1) : null;
+    }
+
+    /**
+     * Gets the move that lead to this node in the game tree. This requires the position before
+     * the move to be computed.
+     *
+     * @return the last move made, or null if this is the root node
+     */
+    public Move lastMove() {
+      return isRoot()
+          ? null
+          : unpackMove(moves[index], CompactGameMoves.this.position(parents[index]));
+    }
+
+    /**
+     * @return the main move from this position, or null if the node has no moves
+     */
+    public Move mainMove() {
+      return hasMoves() ? unpackMove(moves[index + 1], position()) : null;
+    }
+
+    /**
+     * @return true if this node is part of the main line of the entire game tree
+     */
+    public boolean isMainLine() {
+      for (int node = index; node > 0; node = parents[node]) {
+        if (parents[node] + 1 != node) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets the game position at this node. Unless this node is a checkpoint, the position is
+     * recomputed from the closest checkpoint before it.
+     *
+     * @return the position at this node
+     */
+    public @NotNull Position position() {
+      return CompactGameMoves.this.position(index);
+    }
+
+    /**
+     * @return the annotations at this position
+     */
+    public @NotNull List<Annotation> getAnnotations() {
+      int i = Arrays.binarySearch(annotatedNodes, index);
+      return i < 0 ? List.of() : Collections.unmodifiableList(Arrays.asList(annotations[i]));
+    }
+
+    /**
+     * Gets an annotation of the specified class at this position
+     *
+     * @param clazz the annotation class to get
+     * @return an annotation of the specified class, or null if none existed at this position. If
+     *     there are multiple annotations with the same class, the first one will be returned.
+     */
+    public <T extends Annotation> T getAnnotation(@NotNull Class<T> clazz) {
+      for (Annotation annotation : getAnnotations()) {
+        if (clazz.isInstance(annotation)) {
+          return clazz.cast(annotation);
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Node node && node.owner() == CompactGameMoves.this && node.index == index;
+    }
+
+    @Override
+    public int hashCode() {
+      return index;
+    }
+
+    private CompactGameMoves owner() {
+      return CompactGameMoves.this;
+    }
+  }
+}
@@ -3,6 +3,7 @@ package se.yarin.chess;
 import org.jetbrains.annotations.NotNull;
 import se.yarin.chess.annotations.Annotation;
 import se.yarin.chess.annotations.Annotations;
+import se.yarin.chess.annotations.LazyAnnotations;
 import se.yarin.chess.pgn.PgnExporter;
 
 import java.util.ArrayList;
@@ -193,6 +194,8 @@ public class GameMovesModel {
     // should be a good thread safe choice
     private List<Node> children = new CopyOnWriteArrayList<>();
     private final Annotations annotations = new Annotations();
+    // Annotations that are decoded the first time the annotations of the node are accessed
+    private LazyAnnotations lazyAnnotations;
     private Move move; // The last move that lead to this node
     private final Position position;
     private final int ply;
@@ -229,6 +232,7 @@ public class GameMovesModel {
       this.position = sourceNode.position;
       this.ply = sourceNode.ply;
       this.annotations.addAll(sourceNode.annotations);
+      this.lazyAnnotations = sourceNode.lazyAnnotations;
       this.children =
           sourceNode.children.stream()
               .map(child -> new Node(child, this))
@@ -321,7 +325,7 @@ public class GameMovesModel {
      * @param silent if true, don't notify listeners
      */
     private void internalAddAnnotation(Annotation annotation, boolean silent) {
-      this.annotations.add(annotation);
+      annotations().add(annotation);
       if (!silent) notifyMovesChanged(this);
     }
 
@@ -332,6 +336,7 @@ public class GameMovesModel {
      */
     private void internalDeleteAnnotations(boolean silent) {
       this.annotations.clear();
+      this.lazyAnnotations = null;
       if (!silent) notifyMovesChanged(this);
     }
 
@@ -718,7 +723,7 @@ public class GameMovesModel {
      * @return a set of annotations
      */
     public Annotations getAnnotations() {
-      return annotations;
+      return annotations();
     }
 
     /**
@@ -729,7 +734,39 @@ public class GameMovesModel {
      *     are multiple annotations with the same class, the first one will be returned.
      */
     public <T extends Annotation> T getAnnotation(Class<T> clazz) {
-      return annotations.getByClass(clazz);
+      T annotation = annotations.getByClass(clazz);
+      if (annotation == null && lazyAnnotations != null) {
+        List<T> decoded = lazyAnnotations.decode(clazz);
+        annotation = decoded.isEmpty() ? null : decoded.get(0);
+      }
+      return annotation;
+    }
+
+    /**
+     * Gets all annotations of the specified class at this position. Annotations that have not
+     * been decoded yet are decoded only if they are of the specified class.
+     *
+     * @param clazz the annotation class to get
+     * @return a list of annotations of the specified class
+     */
+    public <T extends Annotation> List<T> getAnnotations(Class<T> clazz) {
+      List<T> result = annotations.getAllByClass(clazz);
+      if (lazyAnnotations != null) {
+        result.addAll(lazyAnnotations.decode(clazz));
+      }
+      return result;
+    }
+
+    /**
+     * Sets annotations that are decoded the first time the annotations at this position are
+     * accessed. They will come after any annotations already at this position. Listeners are not
+     * notified, since this is intended to be used when a game is loaded.
+     *
+     * @param lazyAnnotations the annotations to decode on demand
+     */
+    public void setLazyAnnotations(@NotNull LazyAnnotations lazyAnnotations) {
+      annotations();
+      this.lazyAnnotations = lazyAnnotations;
     }
 
     /** Clears all annotations from the position. */
@@ -761,6 +798,15 @@ public class GameMovesModel {
 
     // PRIVATE HELPERS
 
+    private Annotations annotations() {
+      if (lazyAnnotations != null) {
+        LazyAnnotations pending = lazyAnnotations;
+        lazyAnnotations = null;
+        annotations.addAll(pending.decodeAll());
+      }
+      return annotations;
+    }
+
     private int countPly(boolean includeVariations) {
       int sum = 0;
       for (Node child : children) {
@@ -771,7 +817,7 @@ public class GameMovesModel {
     }
 
     public int countAnnotations() {
-      int sum = annotations.size();
+      int sum = annotations.size() + (lazyAnnotations == null ? 0 : lazyAnnotations.size());
       for (Node child : children) {
         sum += child.countAnnotations();
       }
@@ -779,7 +825,7 @@ public class GameMovesModel {
     }
 
     private void copyLegalNodes(Node newNode, Node oldNode) {
-      newNode.annotations.addAll(oldNode.annotations);
+      newNode.annotations().addAll(oldNode.annotations());
       for (Node child : oldNode.children()) {
         if (newNode.position.isMoveLegal(child.lastMove())) {
           Node newChildNode = newNode.internalAddNode(child.lastMove(), true);
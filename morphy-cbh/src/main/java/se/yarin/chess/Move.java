@@ -2,7 +2,7 @@ package se.yarin.chess;
 
 import org.jetbrains.annotations.NotNull;
 
-import java.util.EnumSet;
+import java.util.List;
 
 import static se.yarin.chess.Piece.*;
 
@@ -246,29 +246,22 @@ public class Move {
             // We need to check if there is only one legal move to the target square
             // Start by checking if there's only one pseudo legal move to the square
             // This is almost always good enough
-            boolean destUnique = true;
-            for (Move move : fromPosition.generateAllPseudoLegalMoves(EnumSet.of(piece))) {
-              if (!move.equals(this) && move.movingPiece() == piece && move.toSqi() == toSqi()) {
-                destUnique = false;
-              }
-            }
+            List<Move> candidates = fromPosition.generatePseudoLegalMovesTo(toSqi(), piece);
+            boolean destUnique = candidates.size() <= 1;
             if (!destUnique) {
               // We were unlucky and there are two or more pseudo legal moves
-              // with the moving piece to the target square. Do a full blown search
-              // of all legal moves in the position.
+              // with the moving piece to the target square. Check which of them are legal.
               boolean colUnique = true, rowUnique = true;
               destUnique = true;
 
-              for (Move move : fromPosition.generateAllLegalMoves()) {
-                if (move.equals(this)) continue;
-                if (move.movingPiece() == piece && move.toSqi() == toSqi()) {
-                  destUnique = false;
-                  if (Chess.sqiToCol(move.fromSqi()) == Chess.sqiToCol(fromSqi())) {
-                    colUnique = false;
-                  }
-                  if (Chess.sqiToRow(move.fromSqi()) == Chess.sqiToRow(fromSqi())) {
-                    rowUnique = false;
-                  }
+              for (Move move : candidates) {
+                if (move.equals(this) || !fromPosition.isPseudoLegalMoveLegal(move)) continue;
+                destUnique = false;
+                if (Chess.sqiToCol(move.fromSqi()) == Chess.sqiToCol(fromSqi())) {
+                  colUnique = false;
+                }
+                if (Chess.sqiToRow(move.fromSqi()) == Chess.sqiToRow(fromSqi())) {
+                  rowUnique = false;
                 }
               }
               if (!destUnique) {
@@ -690,6 +690,99 @@ public class Position {
     return moves;
   }
 
+  /**
+   * Generates all "pseudo legal" moves by a specific piece of the player to move to a specific
+   * square. Instead of generating all moves in the position, the moves are found by looking
+   * backwards from the target square. Castling moves are not included.
+   *
+   * @param toSqi the target square
+   * @param piece the moving piece
+   * @return a list of all pseudo legal moves with the piece to the square
+   */
+  public List<Move> generatePseudoLegalMovesTo(int toSqi, Piece piece) {
+    ArrayList<Move> moveList = new ArrayList<>(2);
+    if (board[toSqi].hasPlayer(toMove)) {
+      return moveList;
+    }
+    int x = Chess.sqiToCol(toSqi), y = Chess.sqiToRow(toSqi);
+    switch (piece) {
+      case PAWN -> addPawnMovesTo(x, y, moveList);
+      case KNIGHT -> addMovesTo(x, y, KNIGHT.toStone(toMove), 8, 16, false, moveList);
+      case BISHOP -> addMovesTo(x, y, BISHOP.toStone(toMove), 4, 8, true, moveList);
+      case ROOK -> addMovesTo(x, y, ROOK.toStone(toMove), 0, 4, true, moveList);
+      case QUEEN -> addMovesTo(x, y, QUEEN.toStone(toMove), 0, 8, true, moveList);
+      case KING -> addMovesTo(x, y, KING.toStone(toMove), 0, 8, false, moveList);
+    }
+    return moveList;
+  }
+
+  private void addMovesTo(
+      int x, int y, Stone stone, int dirBegin, int dirEnd, boolean multi, List<Move> moveList) {
+    // All move directions are symmetric, so walking from the target square finds the sources
+    for (int dir = dirBegin; dir < dirEnd; dir++) {
+      int cx = x, cy = y;
+      while (true) {
+        cx += directionX[dir];
+        cy += directionY[dir];
+        if (cx < 0 || cy < 0 || cx >= 8 || cy >= 8) break;
+        Stone s = board[Chess.coorToSqi(cx, cy)];
+        if (s == stone) {
+          moveList.add(new Move(this, cx, cy, x, y));
+        }
+        if (!multi || !s.isNoStone()) break;
+      }
+    }
+  }
+
+  private void addPawnMovesTo(int x, int y, List<Move> moveList) {
+    int dy = toMove == WHITE ? 1 : -1;
+    int fy = y - dy;
+    if (fy < 1 || fy > 6) {
+      return;
+    }
+    Stone pawn = PAWN.toStone(toMove);
+    Stone target = board[Chess.coorToSqi(x, y)];
+    if (target.isNoStone()) {
+      if (board[Chess.coorToSqi(x, fy)] == pawn) {
+        addPawnMove(x, fy, x, y, moveList);
+      } else if (board[Chess.coorToSqi(x, fy)].isNoStone()
+          && fy - dy == (toMove == WHITE ? 1 : 6)
+          && board[Chess.coorToSqi(x, fy - dy)] == pawn) {
+        addPawnMove(x, fy - dy, x, y, moveList);
+      }
+    }
+    boolean enPassant = target.isNoStone() && enPassantCol == x && fy == (toMove == WHITE ? 4 : 3);
+    if (target.hasPlayer(toMove.otherPlayer()) || enPassant) {
+      if (x > 0 && board[Chess.coorToSqi(x - 1, fy)] == pawn) {
+        addPawnMove(x - 1, fy, x, y, moveList);
+      }
+      if (x < 7 && board[Chess.coorToSqi(x + 1, fy)] == pawn) {
+        addPawnMove(x + 1, fy, x, y, moveList);
+      }
+    }
+  }
+
+  /**
+   * Checks if a pseudo legal move is legal. This is cheaper than {@link #isMoveLegal(Move)} since
+   * the move is not verified to be pseudo legal, and the move is only performed if the player to
+   * move is in check, or if the move could expose the king.
+   *
+   * @param move a pseudo legal move in this position
+   * @return true if the move is legal
+   */
+  public boolean isPseudoLegalMoveLegal(Move move) {
+    if (!isCheck() && !move.isCastle() && !move.isEnPassant() && move.movingPiece() != KING) {
+      // Only a piece on a line with its own king can be pinned
+      int kingSqi = toMove == WHITE ? whiteKingSqi : blackKingSqi;
+      int dx = Chess.deltaCol(kingSqi, move.fromSqi());
+      int dy = Chess.deltaRow(kingSqi, move.fromSqi());
+      if (dx != 0 && dy != 0 && Math.abs(dx) != Math.abs(dy)) {
+        return true;
+      }
+    }
+    return !doMove(move).canCaptureKing();
+  }
+
   public boolean canMove() {
     return generateAllLegalMoves().size() > 0;
   }
@@ -0,0 +1,39 @@
+package se.yarin.chess.annotations;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Annotations of a {@link se.yarin.chess.GameMovesModel.Node} that have not been decoded yet.
+ * The node decodes all of them the first time its annotations are accessed, but annotations of a
+ * specific class can be decoded without decoding the others.
+ *
+ * <p>Implementations must not change after they have been attached to a node, since the same
+ * instance may be shared by copies of the node.
+ */
+public interface LazyAnnotations {
+  /**
+   * Gets the number of annotations, without decoding them.
+   *
+   * @return the number of annotations
+   */
+  int size();
+
+  /**
+   * Decodes all annotations.
+   *
+   * @return a list of the decoded annotations
+   */
+  @NotNull
+  List<Annotation> decodeAll();
+
+  /**
+   * Decodes only the annotations of the specified class.
+   *
+   * @param clazz the annotation class to decode
+   * @return a list of the decoded annotations of the specified class
+   */
+  @NotNull
+  <T extends Annotation> List<T> decode(@NotNull Class<T> clazz);
+}
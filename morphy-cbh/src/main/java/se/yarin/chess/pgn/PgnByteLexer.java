@@ -0,0 +1,407 @@
+package se.yarin.chess.pgn;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Lexical analyzer for PGN that operates directly on the bytes in a buffer,
+ * typically a memory-mapped file.
+ * <p>
+ * Produces the same tokens as {@link PgnLexer}, but instead of creating a token object
+ * per token, only the type and the offsets of the current token are kept. The text of
+ * a token is only decoded when asked for, and the characters of move tokens can be
+ * read without creating a string at all.
+ * <p>
+ * Text is decoded as UTF-8 if valid, otherwise as ISO-8859-1. Column numbers count bytes,
+ * so they differ from those of {@link PgnLexer} after multibyte characters on the same line.
+ */
+public class PgnByteLexer implements PgnTokenSource {
+    private final ByteBuffer buf;
+    private final int limit;
+    private int pos;
+
+    private int line = 1;
+    private int lineStart;
+
+    // The current token
+    private PgnToken.TokenType type;
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenLine;
+    private int tokenColumn;
+
+    private final TokenChars tokenChars = new TokenChars();
+
+    /**
+     * Creates a lexer over the remaining bytes in a buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buf the buffer containing PGN data
+     */
+    public PgnByteLexer(@NotNull ByteBuffer buf) {
+        this.buf = buf;
+        this.pos = buf.position();
+        this.limit = buf.limit();
+        this.lineStart = pos;
+        // Skip the UTF-8 byte order mark
+        if (limit - pos >= 3
+                && buf.get(pos) == (byte) 0xEF
+                && buf.get(pos + 1) == (byte) 0xBB
+                && buf.get(pos + 2) == (byte) 0xBF) {
+            pos += 3;
+            lineStart = pos;
+        }
+    }
+
+    @Override
+    public @NotNull PgnToken.TokenType next() throws PgnFormatException {
+        type = readToken();
+        return type;
+    }
+
+    /**
+     * @return the type of the current token
+     */
+    public @NotNull PgnToken.TokenType type() {
+        return type;
+    }
+
+    /**
+     * @return the offset in the buffer where the text of the current token starts
+     */
+    public int tokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return the offset in the buffer after the text of the current token
+     */
+    public int tokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * @return the offset in the buffer after the current token, including delimiters
+     */
+    public int position() {
+        return pos;
+    }
+
+    @Override
+    public int line() {
+        return tokenLine;
+    }
+
+    @Override
+    public int column() {
+        return tokenColumn;
+    }
+
+    @Override
+    public @NotNull String text() {
+        if (type == PgnToken.TokenType.TAG_VALUE) {
+            return unescape(decode(tokenStart, tokenEnd));
+        }
+        return decode(tokenStart, tokenEnd);
+    }
+
+    @Override
+    public @NotNull CharSequence chars() {
+        tokenChars.start = tokenStart;
+        tokenChars.end = tokenEnd;
+        return tokenChars;
+    }
+
+    /**
+     * Reads the next token and returns it as a token object, for compatibility with {@link PgnLexer}.
+     *
+     * @return the next token
+     * @throws PgnFormatException if a lexical error occurs
+     */
+    public @NotNull PgnToken nextToken() throws PgnFormatException {
+        PgnToken.TokenType tokenType = next();
+        return switch (tokenType) {
+            case TAG_OPEN, TAG_CLOSE, VARIATION_START, VARIATION_END, EOF ->
+                    new PgnToken(tokenType, tokenLine, tokenColumn);
+            default -> new PgnToken(tokenType, text(), tokenLine, tokenColumn);
+        };
+    }
+
+    private PgnToken.TokenType readToken() throws PgnFormatException {
+        while (true) {
+            skipWhitespace();
+            startToken();
+
+            if (pos >= limit) {
+                // Like PgnLexer, the end of input is at the position of the last character
+                tokenColumn--;
+                tokenEnd = pos;
+                return PgnToken.TokenType.EOF;
+            }
+
+            int ch = buf.get(pos) & 0xFF;
+            switch (ch) {
+                case '[' -> {
+                    return single(PgnToken.TokenType.TAG_OPEN);
+                }
+                case ']' -> {
+                    return single(PgnToken.TokenType.TAG_CLOSE);
+                }
+                case '(' -> {
+                    return single(PgnToken.TokenType.VARIATION_START);
+                }
+                case ')' -> {
+                    return single(PgnToken.TokenType.VARIATION_END);
+                }
+                case '{' -> {
+                    return readComment();
+                }
+                case '"' -> {
+                    return readString();
+                }
+                case '$' -> {
+                    return readNag();
+                }
+                case ';', '%' -> skipLine();
+                default -> {
+                    if (!isSymbolStart(ch)) {
+                        throw new PgnFormatException(
+                                "Unexpected character: '" + (char) ch + "'", tokenLine, tokenColumn);
+                    }
+                    return readSymbol();
+                }
+            }
+        }
+    }
+
+    private void startToken() {
+        tokenStart = pos;
+        tokenLine = line;
+        tokenColumn = pos - lineStart + 1;
+    }
+
+    private PgnToken.TokenType single(PgnToken.TokenType tokenType) {
+        pos++;
+        tokenEnd = pos;
+        return tokenType;
+    }
+
+    private void newLine() {
+        line++;
+        lineStart = pos + 1;
+    }
+
+    private void skipWhitespace() {
+        while (pos < limit) {
+            int ch = buf.get(pos) & 0xFF;
+            if (ch == '\n') {
+                newLine();
+            } else if (ch != ' ' && ch != '\t' && ch != '\r' && ch != '\f' && ch != 0x0B
+                    && (ch < 0x1C || ch > 0x1F)) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void skipLine() {
+        while (pos < limit && buf.get(pos) != '\n') {
+            pos++;
+        }
+        if (pos < limit) {
+            newLine();
+            pos++;
+        }
+    }
+
+    private PgnToken.TokenType readComment() throws PgnFormatException {
+        pos++; // Skip '{'
+        tokenStart = pos;
+        while (pos < limit && buf.get(pos) != '}') {
+            if (buf.get(pos) == '\n') {
+                newLine();
+            }
+            pos++;
+        }
+        if (pos >= limit) {
+            throw new PgnFormatException("Unclosed comment", tokenLine, tokenColumn);
+        }
+        tokenEnd = pos;
+        pos++; // Skip '}'
+        return PgnToken.TokenType.COMMENT;
+    }
+
+    private PgnToken.TokenType readString() throws PgnFormatException {
+        pos++; // Skip opening quote
+        tokenStart = pos;
+        while (pos < limit && buf.get(pos) != '"') {
+            byte b = buf.get(pos);
+            if (b == '\\') {
+                pos++;
+                if (pos >= limit) {
+                    break;
+                }
+                b = buf.get(pos);
+            }
+            if (b == '\n') {
+                newLine();
+            }
+            pos++;
+        }
+        if (pos >= limit) {
+            throw new PgnFormatException("Unclosed string", tokenLine, tokenColumn);
+        }
+        tokenEnd = pos;
+        pos++; // Skip closing quote
+        return PgnToken.TokenType.TAG_VALUE;
+    }
+
+    private PgnToken.TokenType readNag() throws PgnFormatException {
+        pos++; // Skip '$'
+        while (pos < limit && isDigit(buf.get(pos) & 0xFF)) {
+            pos++;
+        }
+        if (pos == tokenStart + 1) {
+            throw new PgnFormatException("Invalid NAG: expected digits after $", tokenLine, tokenColumn);
+        }
+        tokenEnd = pos;
+        return PgnToken.TokenType.NAG;
+    }
+
+    private PgnToken.TokenType readSymbol() {
+        while (pos < limit && isSymbolChar(buf.get(pos) & 0xFF)) {
+            pos++;
+        }
+        tokenEnd = pos;
+        return classifySymbol();
+    }
+
+    private PgnToken.TokenType classifySymbol() {
+        if (isToken("1-0") || isToken("0-1") || isToken("1/2-1/2") || isToken("*")) {
+            return PgnToken.TokenType.RESULT;
+        }
+
+        // Move number: digits followed by at least one period
+        int i = tokenStart;
+        while (i < tokenEnd && isDigit(buf.get(i) & 0xFF)) {
+            i++;
+        }
+        if (i > tokenStart && i < tokenEnd) {
+            int digitsEnd = i;
+            while (i < tokenEnd && buf.get(i) == '.') {
+                i++;
+            }
+            if (i == tokenEnd && digitsEnd < tokenEnd) {
+                return PgnToken.TokenType.MOVE_NUMBER;
+            }
+        }
+        return PgnToken.TokenType.MOVE_TEXT;
+    }
+
+    private boolean isToken(@NotNull String s) {
+        if (tokenEnd - tokenStart != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buf.get(tokenStart + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(int ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isLetterOrDigit(int ch) {
+        // Non-ASCII bytes are part of letters in both UTF-8 and ISO-8859-1 encoded text
+        return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || isDigit(ch) || ch >= 0x80;
+    }
+
+    private static boolean isSymbolStart(int ch) {
+        return isLetterOrDigit(ch) || ch == '*' || ch == '/' || ch == '-' || ch == '+' || ch == '#' || ch == '=';
+    }
+
+    private static boolean isSymbolChar(int ch) {
+        return isLetterOrDigit(ch) || ch == '-' || ch == '/' || ch == '+' || ch == '#' || ch == '=' || ch == ':' || ch == '.' || ch == '*';
+    }
+
+    private @NotNull String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        buf.get(start, bytes);
+        boolean ascii = true;
+        for (byte b : bytes) {
+            if (b < 0) {
+                ascii = false;
+                break;
+            }
+        }
+        if (ascii) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        try {
+            return StandardCharsets.UTF_8
+                    .newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static @NotNull String unescape(@NotNull String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '\\' && i + 1 < s.length()) {
+                char escaped = s.charAt(++i);
+                if (escaped != '"' && escaped != '\\') {
+                    // For other characters, include the backslash
+                    sb.append('\\');
+                }
+                sb.append(escaped);
+            } else {
+                sb.append(ch);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A view of the bytes of the current token as characters, without copying
+     */
+    private class TokenChars implements CharSequence {
+        private int start;
+        private int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buf.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public @NotNull CharSequence subSequence(int from, int to) {
+            return toString().subSequence(from, to);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return decode(start, end);
+        }
+    }
+}
@@ -50,6 +50,14 @@ public class PgnExporter {
         this.annotationTransformer = annotationTransformer;
     }
 
+    /**
+     * @return the format options of this exporter
+     */
+    @NotNull
+    public PgnFormatOptions options() {
+        return options;
+    }
+
     /**
      * Exports a game to a PGN string.
      *
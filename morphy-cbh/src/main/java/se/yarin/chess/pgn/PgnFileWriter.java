@@ -0,0 +1,185 @@
+package se.yarin.chess.pgn;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.chess.GameModel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes games to a PGN file, optionally gzip compressed.
+ * <p>
+ * Games are loaded and rendered to PGN on a pool of worker threads, each game into its own
+ * byte array. The rendered games are then written to the file in the order they were given,
+ * through a large buffer. Only a limited number of games are rendered ahead of the file,
+ * so the games don't all have to be kept in memory.
+ * <p>
+ * Games may only be written from a single thread.
+ */
+public class PgnFileWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // The number of games per thread that may be rendered ahead of the file
+    private static final int MAX_PENDING_GAMES_PER_THREAD = 64;
+
+    public enum Compression {
+        NONE,
+        GZIP
+    }
+
+    private final PgnExporter exporter;
+    private final OutputStream out;
+    private final byte[] separator;
+    private final ExecutorService executor;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private boolean firstGame = true;
+    private int numGames;
+
+    /**
+     * Creates a PGN file writer. An existing file is overwritten.
+     *
+     * @param file the file to write to
+     * @param exporter the exporter used to render the games
+     * @param parallelism the number of threads to use to load and render the games;
+     *                    if 1, all games are rendered on the calling thread
+     * @param compression the compression of the file
+     * @throws IOException if the file couldn't be created
+     */
+    public PgnFileWriter(
+            @NotNull File file,
+            @NotNull PgnExporter exporter,
+            int parallelism,
+            @NotNull Compression compression) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.exporter = exporter;
+        this.separator = exporter.options().lineEnding().getBytes(StandardCharsets.UTF_8);
+
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        OutputStream channelStream = Channels.newOutputStream(channel);
+        try {
+            if (compression == Compression.GZIP) {
+                channelStream = new GZIPOutputStream(channelStream, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            channelStream.close();
+            throw e;
+        }
+        this.out = new BufferedOutputStream(channelStream, BUFFER_SIZE);
+
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+        this.maxPending = parallelism * MAX_PENDING_GAMES_PER_THREAD;
+    }
+
+    /**
+     * @return the number of games written to the file so far
+     */
+    public int numGames() {
+        return numGames;
+    }
+
+    /**
+     * Writes a game to the file.
+     *
+     * @param game the game to write
+     * @throws IOException if the file couldn't be written to
+     */
+    public void write(@NotNull GameModel game) throws IOException {
+        write(() -> game);
+    }
+
+    /**
+     * Writes a game to the file. The game is loaded and rendered on a worker thread,
+     * so the supplier must be safe to call from any thread.
+     *
+     * @param game a supplier of the game to write
+     * @throws IOException if the file couldn't be written to
+     */
+    public void write(@NotNull Supplier<GameModel> game) throws IOException {
+        if (executor == null) {
+            writeRendered(render(game));
+            return;
+        }
+        // The game is queued first, so it isn't lost if writing an earlier game fails
+        pending.add(executor.submit(() -> render(game)));
+        while (!pending.isEmpty() && (pending.size() > maxPending || pending.peek().isDone())) {
+            writeRendered(await(pending.poll()));
+        }
+    }
+
+    /**
+     * Waits until all games given so far have been rendered and written to the underlying stream.
+     * This must be called before any resources needed to load the pending games are released.
+     *
+     * @throws IOException if the file couldn't be written to
+     */
+    public void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeRendered(await(pending.poll()));
+        }
+        out.flush();
+    }
+
+    private byte[] render(@NotNull Supplier<GameModel> game) {
+        return exporter.exportGame(game.get()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] await(@NotNull Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing games");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException ioe) {
+                throw ioe.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            if (e.getCause() instanceof Error err) {
+                throw err;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeRendered(byte[] game) throws IOException {
+        if (!firstGame) {
+            out.write(separator);
+        }
+        firstGame = false;
+        out.write(game);
+        numGames += 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package se.yarin.chess.pgn;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a PGN stream into the raw bytes of each game, without tokenizing or parsing the games.
+ * <p>
+ * A new game starts at a line beginning with {@code [} once the previous game has had some
+ * move text. Brace comments, rest-of-line comments and escaped lines are tracked so that a
+ * {@code [} inside them doesn't split a game. The bytes are not decoded, so the splitting is
+ * fast enough to feed many threads that do the actual parsing.
+ */
+public class PgnGameSplitter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPos;
+    private int bufferLimit;
+    private boolean firstFill = true;
+
+    private byte[] game = new byte[8192];
+    private int gameSize;
+
+    // Scanner state
+    private int line = 1;
+    private int gameStartLine;
+    private boolean atLineStart = true;
+    private boolean inComment;
+    private boolean inRestOfLine;
+    private boolean inTagLine;
+    private boolean seenMoveText;
+
+    public PgnGameSplitter(@NotNull InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next game from the stream.
+     *
+     * @return the raw bytes of the next game, including its tag pairs, or null if there are no
+     * more games in the stream
+     * @throws IOException if the stream couldn't be read
+     */
+    public byte @Nullable [] next() throws IOException {
+        gameSize = 0;
+        seenMoveText = false;
+        gameStartLine = line;
+        boolean hasContent = false;
+
+        while (bufferPos < bufferLimit || fill()) {
+            byte b = buffer[bufferPos];
+            if (b == '[' && atLineStart && seenMoveText && !inComment) {
+                // The start of the next game; leave it in the buffer
+                break;
+            }
+            bufferPos++;
+            append(b);
+            if (!hasContent && b > ' ') {
+                hasContent = true;
+            }
+            if (!hasContent && b == '\n') {
+                // Don't include blank lines before the game
+                gameSize = 0;
+                gameStartLine = line + 1;
+            }
+            scan(b);
+        }
+
+        return hasContent ? Arrays.copyOf(game, gameSize) : null;
+    }
+
+    /**
+     * @return the line number in the stream where the game last returned by {@link #next()}
+     * starts
+     */
+    public int gameStartLine() {
+        return gameStartLine;
+    }
+
+    private void scan(byte b) {
+        if (b == '\n') {
+            line++;
+            atLineStart = true;
+            inRestOfLine = false;
+            inTagLine = false;
+            return;
+        }
+        boolean lineStart = atLineStart;
+        if (lineStart && (b == ' ' || b == '\t' || b == '\r')) {
+            // Leading whitespace doesn't change where the line starts
+            return;
+        }
+        atLineStart = false;
+
+        if (inRestOfLine || inTagLine) {
+            return;
+        }
+        if (inComment) {
+            if (b == '}') {
+                inComment = false;
+            }
+            return;
+        }
+        if (lineStart && b == '[') {
+            inTagLine = true;
+            return;
+        }
+        if (lineStart && b == '%') {
+            // Escaped line
+            inRestOfLine = true;
+            return;
+        }
+        switch (b) {
+            case ' ', '\t', '\r' -> { }
+            case '{' -> {
+                inComment = true;
+                seenMoveText = true;
+            }
+            case ';' -> {
+                inRestOfLine = true;
+                seenMoveText = true;
+            }
+            default -> seenMoveText = true;
+        }
+    }
+
+    private void append(byte b) {
+        if (gameSize == game.length) {
+            game = Arrays.copyOf(game, game.length * 2);
+        }
+        game[gameSize++] = b;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.readNBytes(buffer, 0, buffer.length);
+        bufferPos = 0;
+        bufferLimit = Math.max(read, 0);
+        if (firstFill) {
+            firstFill = false;
+            // Skip the UTF-8 byte order mark
+            if (bufferLimit >= 3
+                    && buffer[0] == (byte) 0xEF
+                    && buffer[1] == (byte) 0xBB
+                    && buffer[2] == (byte) 0xBF) {
+                bufferPos = 3;
+            }
+        }
+        return bufferPos < bufferLimit;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -30,31 +30,35 @@ public class PgnMoveParser {
      * @throws PgnFormatException if the move is invalid or ambiguous
      */
     @NotNull
-    public Move parseMove(@NotNull String san) throws PgnFormatException {
-        String original = san;
-
+    public Move parseMove(@NotNull CharSequence san) throws PgnFormatException {
         // Strip whitespace
-        san = san.trim();
+        int start = 0, end = san.length();
+        while (start < end && san.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && san.charAt(end - 1) <= ' ') {
+            end--;
+        }
 
         // Strip check/mate indicators
-        san = san.replaceAll("[+#]$", "");
+        if (end > start && (san.charAt(end - 1) == '+' || san.charAt(end - 1) == '#')) {
+            end--;
+        }
 
-        switch (san) {
-            // Handle castling
-            case "O-O", "0-0" -> {
-                return Move.shortCastles(position);
-            }
-            case "O-O-O", "0-0-0" -> {
-                return Move.longCastles(position);
-            }
-            // Handle null move (sometimes used in variations)
-            case "--", "Z0" -> {
-                return Move.nullMove(position);
-            }
+        // Handle castling
+        if (matches(san, start, end, "O-O") || matches(san, start, end, "0-0")) {
+            return Move.shortCastles(position);
+        }
+        if (matches(san, start, end, "O-O-O") || matches(san, start, end, "0-0-0")) {
+            return Move.longCastles(position);
+        }
+        // Handle null move (sometimes used in variations)
+        if (matches(san, start, end, "--") || matches(san, start, end, "Z0")) {
+            return Move.nullMove(position);
         }
 
         // Parse the move components
-        int index = 0;
+        int index = start;
         Piece piece = Piece.PAWN;
         int disambigCol = -1;
         int disambigRow = -1;
@@ -62,8 +66,8 @@ public class PgnMoveParser {
         Stone promotionStone = Stone.NO_STONE;
 
         // Check for piece type
-        if (!san.isEmpty() && Character.isUpperCase(san.charAt(0))) {
-            char pieceChar = san.charAt(0);
+        if (index < end && Character.isUpperCase(san.charAt(index))) {
+            char pieceChar = san.charAt(index);
             piece = Piece.fromChar(pieceChar);
             if (piece == null || piece == Piece.NO_PIECE) {
                 throw new PgnFormatException("Invalid piece character: " + pieceChar);
@@ -75,53 +79,58 @@ public class PgnMoveParser {
         // Where disambiguation can be: file, rank, or both (e.g., Nbd2, N1c3, Qh4e1)
 
         // Look ahead to find the destination square (last 2 characters before promotion)
-        int destSquareIndex = san.length() - 2;
-        if (san.indexOf('=') != -1) {
-            destSquareIndex = san.indexOf('=') - 2;
+        int promotionIndex = -1;
+        for (int i = index; i < end; i++) {
+            if (san.charAt(i) == '=') {
+                promotionIndex = i;
+                break;
+            }
         }
+        int destSquareIndex = (promotionIndex != -1 ? promotionIndex : end) - 2;
 
-        if (destSquareIndex < index || destSquareIndex + 1 >= san.length()) {
-            throw new PgnFormatException("Invalid move format: " + original);
+        if (destSquareIndex < index || destSquareIndex + 1 >= end) {
+            throw formatException("Invalid move format", san);
         }
 
         // Extract destination square
-        String destSquare = san.substring(destSquareIndex, destSquareIndex + 2);
-        int destCol = parseFile(destSquare.charAt(0));
-        int destRow = parseRank(destSquare.charAt(1));
+        int destCol = parseFile(san.charAt(destSquareIndex));
+        int destRow = parseRank(san.charAt(destSquareIndex + 1));
         int destSqi = Chess.coorToSqi(destCol, destRow);
 
-        // Parse everything between piece and destination
-        String middle = san.substring(index, destSquareIndex);
-
-        // Check for capture indicator
-        if (middle.contains("x")) {
-            isCapture = true;
-            middle = middle.replace("x", "");
+        // Parse everything between piece and destination, skipping the capture indicator
+        char disambig1 = 0, disambig2 = 0;
+        for (int i = index; i < destSquareIndex; i++) {
+            char ch = san.charAt(i);
+            if (ch == 'x') {
+                isCapture = true;
+            } else if (disambig1 == 0) {
+                disambig1 = ch;
+            } else if (disambig2 == 0) {
+                disambig2 = ch;
+            } else {
+                throw formatException("Invalid move format", san);
+            }
         }
 
         // Parse disambiguation
-        if (middle.length() >= 2) {
+        if (disambig2 != 0) {
             // Both file and rank (e.g., "h4" in "Qh4e1")
-            disambigCol = parseFile(middle.charAt(0));
-            disambigRow = parseRank(middle.charAt(1));
-        } else if (middle.length() == 1) {
-            char ch = middle.charAt(0);
-            if (ch >= 'a' && ch <= 'h') {
-                // File disambiguation
-                disambigCol = parseFile(ch);
-            } else if (ch >= '1' && ch <= '8') {
-                // Rank disambiguation
-                disambigRow = parseRank(ch);
-            }
+            disambigCol = parseFile(disambig1);
+            disambigRow = parseRank(disambig2);
+        } else if (disambig1 >= 'a' && disambig1 <= 'h') {
+            // File disambiguation
+            disambigCol = parseFile(disambig1);
+        } else if (disambig1 >= '1' && disambig1 <= '8') {
+            // Rank disambiguation
+            disambigRow = parseRank(disambig1);
         }
 
         // Parse promotion
-        if (san.indexOf('=') != -1) {
-            int promotionIndex = san.indexOf('=') + 1;
-            if (promotionIndex >= san.length()) {
-                throw new PgnFormatException("Invalid promotion format: " + original);
+        if (promotionIndex != -1) {
+            if (promotionIndex + 1 >= end) {
+                throw formatException("Invalid promotion format", san);
             }
-            char promotionChar = san.charAt(promotionIndex);
+            char promotionChar = san.charAt(promotionIndex + 1);
             Piece promotionPiece = Piece.fromChar(promotionChar);
             if (promotionPiece == null || promotionPiece == Piece.PAWN || promotionPiece == Piece.KING) {
                 throw new PgnFormatException("Invalid promotion piece: " + promotionChar);
@@ -129,14 +138,12 @@ public class PgnMoveParser {
             promotionStone = promotionPiece.toStone(position.playerToMove());
         }
 
-        // Find the move by filtering legal moves
-        List<Move> legalMoves = position.generateAllLegalMoves();
+        // Find the move among the moves by the piece to the destination square
+        List<Move> candidates = position.generatePseudoLegalMovesTo(destSqi, piece);
         Move foundMove = null;
 
-        for (Move move : legalMoves) {
+        for (Move move : candidates) {
             // Check if this move matches all criteria
-            if (move.toSqi() != destSqi) continue;
-            if (move.movingPiece() != piece) continue;
             if (move.promotionStone() != promotionStone) continue;
             if (isCapture && !move.isCapture()) continue;
 
@@ -144,19 +151,47 @@ public class PgnMoveParser {
             if (disambigCol != -1 && Chess.sqiToCol(move.fromSqi()) != disambigCol) continue;
             if (disambigRow != -1 && Chess.sqiToRow(move.fromSqi()) != disambigRow) continue;
 
+            if (!position.isPseudoLegalMoveLegal(move)) continue;
+
             if (foundMove != null) {
-                throw new PgnFormatException("Ambiguous move: " + original);
+                throw formatException("Ambiguous move", san);
             }
             foundMove = move;
         }
 
+        if (foundMove == null && piece == Piece.KING) {
+            // Castling written as a king move, e.g. "Kg1"
+            for (Move move : position.generateAllLegalMoves()) {
+                if (move.isCastle() && move.toSqi() == destSqi) {
+                    foundMove = move;
+                }
+            }
+        }
+
         if (foundMove == null) {
-            throw new PgnFormatException("Illegal move: " + original);
+            throw formatException("Illegal move", san);
         }
 
         return foundMove;
     }
 
+    private static boolean matches(@NotNull CharSequence san, int start, int end, @NotNull String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (san.charAt(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static PgnFormatException formatException(@NotNull String message, @NotNull CharSequence san) {
+        // san may be a reusable buffer owned by the lexer, so it must be copied
+        return new PgnFormatException(message + ": " + san.toString());
+    }
+
     private int parseFile(char file) throws PgnFormatException {
         if (file < 'a' || file > 'h') {
             throw new PgnFormatException("Invalid file: " + file);
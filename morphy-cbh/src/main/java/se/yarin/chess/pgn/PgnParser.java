@@ -5,8 +5,15 @@ import org.jetbrains.annotations.Nullable;
 import se.yarin.chess.*;
 import se.yarin.chess.annotations.AnnotationTransformer;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Objects;
 import java.util.stream.Stream;
 
@@ -57,8 +64,23 @@ public class PgnParser {
      */
     @NotNull
     public GameModel parseGame(@NotNull Reader reader) throws PgnFormatException {
-        PgnLexer lexer = new PgnLexer(reader);
-        GameModel game = parseNextGame(lexer);
+        GameModel game = parseNextGame(PgnTokenSource.of(new PgnLexer(reader)));
+        if (game == null) {
+            throw new PgnFormatException("No game found in input");
+        }
+        return game;
+    }
+
+    /**
+     * Parses a single game from a buffer of PGN data, using the byte level lexer.
+     *
+     * @param buf the buffer to parse from; UTF-8 or ISO-8859-1 encoded
+     * @return the parsed game model
+     * @throws PgnFormatException if the PGN is invalid
+     */
+    @NotNull
+    public GameModel parseGame(@NotNull ByteBuffer buf) throws PgnFormatException {
+        GameModel game = parseNextGame(new PgnByteLexer(buf));
         if (game == null) {
             throw new PgnFormatException("No game found in input");
         }
@@ -74,10 +96,65 @@ public class PgnParser {
      */
     @NotNull
     public Stream<GameModel> parseGames(@NotNull Reader reader) {
-        PgnLexer lexer = new PgnLexer(reader);
+        return parseGames(PgnTokenSource.of(new PgnLexer(reader)));
+    }
+
+    /**
+     * Parses multiple games from a buffer of PGN data lazily, using the byte level lexer.
+     *
+     * @param buf the buffer to parse from; UTF-8 or ISO-8859-1 encoded
+     * @return a stream of parsed game models
+     */
+    @NotNull
+    public Stream<GameModel> parseGames(@NotNull ByteBuffer buf) {
+        return parseGames(new PgnByteLexer(buf));
+    }
+
+    /**
+     * Parses multiple games from a PGN file lazily.
+     * The file is memory-mapped and parsed with the byte level lexer. Files too large to be
+     * mapped at once are read one game at a time instead.
+     * The stream should be closed after use.
+     *
+     * @param file the PGN file; UTF-8 or ISO-8859-1 encoded
+     * @return a stream of parsed game models
+     * @throws IOException if the file couldn't be opened
+     */
+    @NotNull
+    public Stream<GameModel> parseGames(@NotNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() <= Integer.MAX_VALUE) {
+                // The mapping remains valid after the channel has been closed
+                return parseGames(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        PgnGameSplitter splitter = new PgnGameSplitter(new FileInputStream(file));
+        return Stream.generate(() -> {
+            try {
+                byte[] game = splitter.next();
+                return game == null ? null : parseGame(ByteBuffer.wrap(game));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (PgnFormatException e) {
+                throw new RuntimeException("Failed to parse PGN", e);
+            }
+        })
+        .takeWhile(Objects::nonNull)
+        .onClose(() -> {
+            try {
+                splitter.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @NotNull
+    private Stream<GameModel> parseGames(@NotNull PgnTokenSource tokens) {
         return Stream.generate(() -> {
             try {
-                return parseNextGame(lexer);
+                return parseNextGame(tokens);
             } catch (PgnFormatException e) {
                 throw new RuntimeException("Failed to parse PGN");
             }
@@ -86,19 +163,19 @@ public class PgnParser {
     }
 
     /**
-     * Parses the next game from a PGN lexer.
+     * Parses the next game from a PGN token source.
      * Returns null when no more games are available (EOF).
      *
-     * @param lexer the lexer to parse from
+     * @param tokens the token source to parse from
      * @return the next parsed game model, or null if EOF
      * @throws PgnFormatException if the PGN is invalid
      */
-    private GameModel parseNextGame(PgnLexer lexer) throws PgnFormatException {
+    private GameModel parseNextGame(PgnTokenSource tokens) throws PgnFormatException {
         // Parse headers
-        HeaderParseResult headerResult = parseHeadersWithToken(lexer);
+        HeaderParseResult headerResult = parseHeadersWithToken(tokens);
 
         // If we got EOF immediately, we're done
-        if (headerResult.nextToken.type() == PgnToken.TokenType.EOF) {
+        if (headerResult.nextToken == PgnToken.TokenType.EOF) {
             return null;
         }
 
@@ -115,7 +192,7 @@ public class PgnParser {
         GameMovesModel moves = createMovesModel(header);
 
         // Parse move text (starting with the token after headers)
-        parseMoveText(lexer, moves, headerResult.nextToken);
+        parseMoveText(tokens, moves, headerResult.nextToken);
 
         return new GameModel(header, moves);
     }
@@ -125,43 +202,42 @@ public class PgnParser {
      */
     private static class HeaderParseResult {
         final GameHeaderModel header;
-        final PgnToken nextToken;
+        final PgnToken.TokenType nextToken;
 
-        HeaderParseResult(GameHeaderModel header, PgnToken nextToken) {
+        HeaderParseResult(GameHeaderModel header, PgnToken.TokenType nextToken) {
             this.header = header;
             this.nextToken = nextToken;
         }
     }
 
-    private HeaderParseResult parseHeadersWithToken(PgnLexer lexer) throws PgnFormatException {
+    private HeaderParseResult parseHeadersWithToken(PgnTokenSource tokens) throws PgnFormatException {
         PgnHeaderParser headerParser = new PgnHeaderParser();
 
-        PgnToken token = lexer.nextToken();
+        PgnToken.TokenType token = tokens.next();
 
-        while (token.type() == PgnToken.TokenType.TAG_OPEN) {
+        while (token == PgnToken.TokenType.TAG_OPEN) {
             // Expect tag name (which comes as MOVE_TEXT from the lexer)
-            PgnToken nameToken = lexer.nextToken();
-            if (nameToken.type() != PgnToken.TokenType.MOVE_TEXT) {
-                throw new PgnFormatException("Expected tag name", nameToken.line(), nameToken.column());
+            if (tokens.next() != PgnToken.TokenType.MOVE_TEXT) {
+                throw new PgnFormatException("Expected tag name", tokens.line(), tokens.column());
             }
+            String name = tokens.text();
 
             // Expect tag value (string)
-            PgnToken valueToken = lexer.nextToken();
-            if (valueToken.type() != PgnToken.TokenType.TAG_VALUE) {
-                throw new PgnFormatException("Expected tag value", valueToken.line(), valueToken.column());
+            if (tokens.next() != PgnToken.TokenType.TAG_VALUE) {
+                throw new PgnFormatException("Expected tag value", tokens.line(), tokens.column());
             }
+            String value = tokens.text();
 
             // Expect closing bracket
-            PgnToken closeToken = lexer.nextToken();
-            if (closeToken.type() != PgnToken.TokenType.TAG_CLOSE) {
-                throw new PgnFormatException("Expected ]", closeToken.line(), closeToken.column());
+            if (tokens.next() != PgnToken.TokenType.TAG_CLOSE) {
+                throw new PgnFormatException("Expected ]", tokens.line(), tokens.column());
             }
 
             // Parse the tag
-            headerParser.parseTag(nameToken.value(), valueToken.value());
+            headerParser.parseTag(name, value);
 
             // Get next token
-            token = lexer.nextToken();
+            token = tokens.next();
         }
 
         // The last token we read is the first token of the move text
@@ -182,13 +258,13 @@ public class PgnParser {
         return new GameMovesModel();
     }
 
-    private void parseMoveText(PgnLexer lexer, GameMovesModel moves, PgnToken firstToken) throws PgnFormatException {
+    private void parseMoveText(PgnTokenSource tokens, GameMovesModel moves, PgnToken.TokenType firstToken) throws PgnFormatException {
         PgnGameBuilder builder = new PgnGameBuilder(moves);
 
-        PgnToken token = firstToken;
+        PgnToken.TokenType token = firstToken;
 
-        while (token.type() != PgnToken.TokenType.EOF && token.type() != PgnToken.TokenType.RESULT) {
-            switch (token.type()) {
+        while (token != PgnToken.TokenType.EOF && token != PgnToken.TokenType.RESULT) {
+            switch (token) {
                 case MOVE_NUMBER:
                     // Skip move numbers (could validate)
                     break;
@@ -197,13 +273,13 @@ public class PgnParser {
                     // Parse the move
                     Position currentPos = builder.getCurrentPosition();
                     PgnMoveParser moveParser = new PgnMoveParser(currentPos);
-                    Move move = moveParser.parseMove(token.value());
+                    Move move = moveParser.parseMove(tokens.chars());
                     builder.addMove(move);
                     break;
 
                 case NAG:
                     // Parse NAG annotation
-                    String nagStr = token.value();
+                    String nagStr = tokens.text();
                     if (nagStr.startsWith("$")) {
                         int nagValue = Integer.parseInt(nagStr.substring(1));
                         if (nagValue >= 0 && nagValue < NAG.values().length) {
@@ -218,10 +294,11 @@ public class PgnParser {
                     // 1. If comment contains before-move markers ([%pre ...] or [%pre:XXX ...])
                     // 2. Otherwise, treat as before-move if we're at root or just started a variation
                     // 3. Otherwise treat as after-move (the common case)
-                    if (isBeforeMoveComment(token.value()) || builder.isAtBeforeCommentPosition()) {
-                        builder.addCommentBefore(token.value());
+                    String comment = tokens.text();
+                    if (isBeforeMoveComment(comment) || builder.isAtBeforeCommentPosition()) {
+                        builder.addCommentBefore(comment);
                     } else {
-                        builder.addCommentAfter(token.value());
+                        builder.addCommentAfter(comment);
                     }
                     break;
 
@@ -237,17 +314,17 @@ public class PgnParser {
                 case TAG_CLOSE:
                 case TAG_NAME:
                 case TAG_VALUE:
-                    throw new PgnFormatException("Unexpected tag in move text", token.line(), token.column());
+                    throw new PgnFormatException("Unexpected tag in move text", tokens.line(), tokens.column());
 
                 default:
-                    throw new PgnFormatException("Unexpected token: " + token.type(), token.line(), token.column());
+                    throw new PgnFormatException("Unexpected token: " + token, tokens.line(), tokens.column());
             }
 
-            token = lexer.nextToken();
+            token = tokens.next();
         }
 
         // Verify the result if present
-        if (token.type() == PgnToken.TokenType.RESULT) {
+        if (token == PgnToken.TokenType.RESULT) {
             // Could validate against header result
             // For now, just accept it
         }
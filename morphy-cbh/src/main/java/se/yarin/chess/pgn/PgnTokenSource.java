@@ -0,0 +1,71 @@
+package se.yarin.chess.pgn;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A stream of PGN tokens where only the current token is available.
+ * Unlike {@link PgnLexer#nextToken()}, no token objects are created, and the text of a
+ * token is only materialized if asked for.
+ */
+interface PgnTokenSource {
+    /**
+     * Advances to the next token.
+     *
+     * @return the type of the new current token
+     * @throws PgnFormatException if a lexical error occurs
+     */
+    @NotNull
+    PgnToken.TokenType next() throws PgnFormatException;
+
+    /**
+     * @return the text of the current token; for comments and tag values without the delimiters
+     */
+    @NotNull
+    String text();
+
+    /**
+     * @return the characters of the current token. The returned sequence may be reused by the
+     * next call to {@link #next()}, so it must not be kept.
+     */
+    @NotNull
+    CharSequence chars();
+
+    int line();
+
+    int column();
+
+    /**
+     * Adapts the token objects of a {@link PgnLexer} to a token source
+     */
+    static @NotNull PgnTokenSource of(@NotNull PgnLexer lexer) {
+        return new PgnTokenSource() {
+            private PgnToken token;
+
+            @Override
+            public @NotNull PgnToken.TokenType next() throws PgnFormatException {
+                token = lexer.nextToken();
+                return token.type();
+            }
+
+            @Override
+            public @NotNull String text() {
+                return token.value() == null ? "" : token.value();
+            }
+
+            @Override
+            public @NotNull CharSequence chars() {
+                return text();
+            }
+
+            @Override
+            public int line() {
+                return token.line();
+            }
+
+            @Override
+            public int column() {
+                return token.column();
+            }
+        };
+    }
+}
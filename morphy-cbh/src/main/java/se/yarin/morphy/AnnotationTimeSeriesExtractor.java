@@ -0,0 +1,103 @@
+package se.yarin.morphy;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.chess.GameMovesModel;
+import se.yarin.morphy.games.GameHeaderFlags;
+import se.yarin.morphy.games.annotations.AnnotationTimeSeries;
+import se.yarin.morphy.util.GameRanges;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the clock times, time spent and computer evaluations of games, see {@link
+ * AnnotationTimeSeries}, straight from the annotation blobs. Only those annotation records are
+ * decoded; all others are skipped based on their type. The moves of a game are only decoded if the
+ * game has variations, since they are needed to find out which annotations are on the main line.
+ */
+public class AnnotationTimeSeriesExtractor {
+  private final @NotNull Database database;
+
+  public AnnotationTimeSeriesExtractor(@NotNull Database database) {
+    this.database = database;
+  }
+
+  /**
+   * Extracts the time series of a single game.
+   *
+   * @param game the game to extract the time series from
+   * @return the time series of the game; empty if the game is a guiding text
+   */
+  public @NotNull AnnotationTimeSeries extract(@NotNull Game game) {
+    long annotationOffset = game.getAnnotationOffset();
+    if (game.guidingText() || annotationOffset == 0) {
+      return AnnotationTimeSeries.empty(game.id());
+    }
+
+    int[] nodePlies = null;
+    if (game.header().flags().contains(GameHeaderFlags.VARIATIONS)) {
+      nodePlies =
+          mainLinePlies(database.moveRepository().getMoves(game.getMovesOffset(), game.id()));
+    }
+    ByteBuffer blob = database.annotationRepository().getStorage().getBlob(annotationOffset);
+    return database
+        .annotationRepository()
+        .annotationSerializer()
+        .extractTimeSeries(game.id(), blob, nodePlies);
+  }
+
+  /**
+   * Extracts the time series of all games in a range. Games without any of the annotations are
+   * skipped.
+   *
+   * @param startId the first game id (inclusive)
+   * @param endId the last game id (exclusive)
+   * @return the time series of the games, sorted by game id
+   */
+  public @NotNull List<AnnotationTimeSeries> extract(int startId, int endId) {
+    List<AnnotationTimeSeries> result = new ArrayList<>();
+    try (var txn = new DatabaseReadTransaction(database)) {
+      for (Game game : txn.iterable(startId, endId)) {
+        AnnotationTimeSeries series = extract(game);
+        if (!series.isEmpty()) {
+          result.add(series);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Extracts the time series of all games in the database. The games are split into ranges that
+   * are processed on separate threads, each range in its own read transaction. Games without any
+   * of the annotations are skipped.
+   *
+   * @param parallelism the number of threads to use
+   * @param consumer receives the time series of every game, sorted by game id, on the calling
+   *     thread
+   */
+  public void extractAll(int parallelism, @NotNull Consumer<AnnotationTimeSeries> consumer) {
+    GameRanges.process(
+        database.count(), parallelism, this::extract, range -> range.forEach(consumer));
+  }
+
+  private static int @NotNull [] mainLinePlies(@NotNull GameMovesModel moves) {
+    IdentityHashMap<GameMovesModel.Node, Integer> mainLine = new IdentityHashMap<>();
+    GameMovesModel.Node node = moves.root();
+    mainLine.put(node, 0);
+    while (node.hasMoves()) {
+      node = node.mainNode();
+      mainLine.put(node, mainLine.size());
+    }
+
+    List<GameMovesModel.Node> allNodes = moves.getAllNodes();
+    int[] nodePlies = new int[allNodes.size()];
+    for (int i = 0; i < nodePlies.length; i++) {
+      nodePlies[i] = mainLine.getOrDefault(allNodes.get(i), -1);
+    }
+    return nodePlies;
+  }
+}
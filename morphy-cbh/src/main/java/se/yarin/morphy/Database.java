@@ -5,11 +5,14 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.chess.GameModel;
+import se.yarin.morphy.boosters.CompactGameEntityIndex;
 import se.yarin.morphy.boosters.GameEntityIndex;
 import se.yarin.morphy.boosters.GameEventStorage;
 import se.yarin.morphy.entities.*;
 import se.yarin.morphy.exceptions.MorphyException;
+import se.yarin.morphy.exceptions.MorphyIOException;
 import se.yarin.morphy.exceptions.MorphyInvalidDataException;
+import se.yarin.morphy.exceptions.MorphyNotSupportedException;
 import se.yarin.morphy.games.*;
 import se.yarin.morphy.games.filters.GameFilter;
 import se.yarin.morphy.queries.QueryPlanner;
@@ -18,6 +21,7 @@ import se.yarin.morphy.util.CBUtil;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -45,7 +49,7 @@ public class Database implements EntityRetriever, AutoCloseable {
   public static final List<String> ADDITIONAL_EXTENSIONS =
       List.of(".cbtt", ".cbj", ".cbe", ".cbl", ".cbm", ".flags");
   public static final List<String> SEARCH_BOOSTER_EXTENSIONS =
-      List.of(".cbb", ".cbgi", ".cit", ".cib", ".cit2", ".cib2");
+      List.of(".cbb", ".cbgi", ".cit", ".cib", ".cit2", ".cib2", ".mgei");
 
   public static final List<String> ALL_EXTENSIONS =
       Stream.concat(
@@ -72,8 +76,12 @@ public class Database implements EntityRetriever, AutoCloseable {
   @Nullable private final GameEntityIndex gameEntityIndexSecondary;
   @Nullable private final MoveOffsetStorage moveOffsetStorage;
   @Nullable private final GameEventStorage gameEventStorage;
+  // Optional Morphy-native booster; dropped as soon as a transaction changes the game entity index
+  @Nullable private volatile CompactGameEntityIndex compactGameEntityIndex;
+  @Nullable private File compactGameEntityIndexFile;
 
   @NotNull private final GameAdapter gameAdapter;
+  @NotNull private final GameModelCache gameModelCache;
   @NotNull private final DatabaseContext context;
   @NotNull private QueryPlanner queryPlanner; // Should this really be in the Database instance!?
 
@@ -157,6 +165,61 @@ public class Database implements EntityRetriever, AutoCloseable {
     return gameEntityIndexSecondary;
   }
 
+  /**
+   * Gets the compact game entity index, if it has been created and contains the given entity type.
+   * The compact index is a faster alternative to {@link #gameEntityIndex(EntityType)} with the
+   * same contents.
+   *
+   * @param type the entity type to look up games for
+   * @return the compact game entity index, or null if not available
+   */
+  @Nullable
+  public CompactGameEntityIndex compactGameEntityIndex(@NotNull EntityType type) {
+    CompactGameEntityIndex index = compactGameEntityIndex;
+    return index != null && index.entityTypes().contains(type) ? index : null;
+  }
+
+  /**
+   * Creates a compact game entity index from the primary game entity index. If the database was
+   * opened for writing, the index is also persisted so it will be used the next time the
+   * database is opened. Any existing compact index is replaced.
+   *
+   * @throws IOException if the index file couldn't be written
+   * @throws IllegalStateException if the database has no primary game entity index
+   */
+  public synchronized void createCompactGameEntityIndex() throws IOException {
+    if (gameEntityIndexPrimary == null) {
+      throw new IllegalStateException("The database has no game entity index");
+    }
+    dropCompactGameEntityIndex();
+    if (compactGameEntityIndexFile != null) {
+      compactGameEntityIndex =
+          CompactGameEntityIndex.create(compactGameEntityIndexFile, gameEntityIndexPrimary);
+    } else {
+      compactGameEntityIndex = CompactGameEntityIndex.fromGameEntityIndex(gameEntityIndexPrimary);
+    }
+  }
+
+  /**
+   * Removes the compact game entity index, including its file if the database was opened for
+   * writing. Called when the game entity index is changed since the compact index can't be
+   * updated.
+   */
+  public synchronized void dropCompactGameEntityIndex() {
+    CompactGameEntityIndex index = compactGameEntityIndex;
+    compactGameEntityIndex = null;
+    try {
+      if (index != null) {
+        index.close();
+      }
+      if (compactGameEntityIndexFile != null) {
+        Files.deleteIfExists(compactGameEntityIndexFile.toPath());
+      }
+    } catch (IOException e) {
+      throw new MorphyIOException(e);
+    }
+  }
+
   @Nullable
   public MoveOffsetStorage moveOffsetStorage() {
     return moveOffsetStorage;
@@ -172,6 +235,11 @@ public class Database implements EntityRetriever, AutoCloseable {
     return gameAdapter;
   }
 
+  @NotNull
+  public GameModelCache gameModelCache() {
+    return gameModelCache;
+  }
+
   @NotNull
   public DatabaseContext context() {
     return context;
@@ -219,6 +287,8 @@ public class Database implements EntityRetriever, AutoCloseable {
     this.gameEventStorage = new GameEventStorage(this.context);
 
     this.gameAdapter = new GameAdapter();
+    this.gameModelCache =
+        new GameModelCache(this.context, this.context.config().gameModelCacheMaxWeight());
     this.queryPlanner = new QueryPlanner(this);
   }
 
@@ -294,6 +364,8 @@ public class Database implements EntityRetriever, AutoCloseable {
     this.gameEventStorage = gameEventStorage;
 
     this.gameAdapter = new GameAdapter();
+    this.gameModelCache =
+        new GameModelCache(this.context, this.context.config().gameModelCacheMaxWeight());
     this.queryPlanner = new QueryPlanner(this);
   }
 
@@ -351,25 +423,28 @@ public class Database implements EntityRetriever, AutoCloseable {
     GameEventStorage gameEventStorage =
         GameEventStorage.create(CBUtil.fileWithExtension(file, ".cbb"), context);
 
-    return new Database(
-        file.getName(),
-        context,
-        gameHeaderIndex,
-        extendedGameHeaderStorage,
-        moveRepository,
-        annotationRepository,
-        playerIndex,
-        tournamentIndex,
-        tournamentExtraStorage,
-        annotatorIndex,
-        sourceIndex,
-        teamIndex,
-        gameTagIndex,
-        topGamesStorage,
-        gameEntityIndex,
-        gameEntityIndexSecondary,
-        moveOffsetStorage,
-        gameEventStorage);
+    Database database =
+        new Database(
+            file.getName(),
+            context,
+            gameHeaderIndex,
+            extendedGameHeaderStorage,
+            moveRepository,
+            annotationRepository,
+            playerIndex,
+            tournamentIndex,
+            tournamentExtraStorage,
+            annotatorIndex,
+            sourceIndex,
+            teamIndex,
+            gameTagIndex,
+            topGamesStorage,
+            gameEntityIndex,
+            gameEntityIndexSecondary,
+            moveOffsetStorage,
+            gameEventStorage);
+    database.compactGameEntityIndexFile = CBUtil.fileWithExtension(file, ".mgei");
+    return database;
   }
 
   public static Database open(@NotNull File file) throws IOException {
@@ -390,6 +465,22 @@ public class Database implements EntityRetriever, AutoCloseable {
    *     mandatory files are missing
    */
   public static Database open(@NotNull File file, @NotNull DatabaseMode mode) throws IOException {
+    return open(file, mode, null);
+  }
+
+  /**
+   * Opens a ChessBase database from disk.
+   *
+   * @param file the database file object
+   * @param mode basic operations mode (typically read-only or read-write)
+   * @param config the configuration of the database, or null to use the default configuration
+   * @return an instance of this class, representing the opened database
+   * @throws IOException if an IO error occurred when opening the database
+   * @see #open(File, DatabaseMode)
+   */
+  public static Database open(
+      @NotNull File file, @NotNull DatabaseMode mode, @Nullable DatabaseConfig config)
+      throws IOException {
     if (!CBUtil.extension(file).equals(".cbh")) {
       throw new IllegalArgumentException("The extension of the database file must be .cbh");
     }
@@ -416,7 +507,7 @@ public class Database implements EntityRetriever, AutoCloseable {
       // this is in accordance with how ChessBase works.
     }
 
-    DatabaseContext context = new DatabaseContext();
+    DatabaseContext context = new DatabaseContext(config);
 
     // The mandatory files
     GameHeaderIndex gameHeaderIndex = GameHeaderIndex.open(file, mode, context);
@@ -511,25 +602,58 @@ public class Database implements EntityRetriever, AutoCloseable {
 
     String name = mode == DatabaseMode.IN_MEMORY ? file.getName() + " [mem]" : file.getName();
 
-    return new Database(
-        name,
-        context,
-        gameHeaderIndex,
-        extendedGameHeaderStorage,
-        moveRepository,
-        annotationRepository,
-        playerIndex,
-        tournamentIndex,
-        tournamentExtraStorage,
-        annotatorIndex,
-        sourceIndex,
-        teamIndex,
-        gameTagIndex,
-        topGamesStorage,
-        gameEntityIndex,
-        gameEntityIndexSecondary,
-        moveOffsetStorage,
-        gameEventStorage);
+    Database database =
+        new Database(
+            name,
+            context,
+            gameHeaderIndex,
+            extendedGameHeaderStorage,
+            moveRepository,
+            annotationRepository,
+            playerIndex,
+            tournamentIndex,
+            tournamentExtraStorage,
+            annotatorIndex,
+            sourceIndex,
+            teamIndex,
+            gameTagIndex,
+            topGamesStorage,
+            gameEntityIndex,
+            gameEntityIndexSecondary,
+            moveOffsetStorage,
+            gameEventStorage);
+    database.openCompactGameEntityIndex(file, mode);
+    return database;
+  }
+
+  private void openCompactGameEntityIndex(@NotNull File file, @NotNull DatabaseMode mode)
+      throws IOException {
+    File mgeiFile = CBUtil.fileWithExtension(file, ".mgei");
+    if (mode == DatabaseMode.READ_WRITE) {
+      compactGameEntityIndexFile = mgeiFile;
+    }
+    if (gameEntityIndexPrimary == null || !mgeiFile.exists()) {
+      return;
+    }
+    // The compact index is deleted when the game entity index is updated by Morphy,
+    // but if the database was changed by some other program it will be out of date
+    File cibFile = CBUtil.fileWithExtension(file, ".cib");
+    if (Files.getLastModifiedTime(mgeiFile.toPath())
+        .compareTo(Files.getLastModifiedTime(cibFile.toPath())) < 0) {
+      log.warn("Compact GameEntityIndex is older than the GameEntityIndex; ignoring it");
+      return;
+    }
+    try {
+      CompactGameEntityIndex index = CompactGameEntityIndex.open(mgeiFile);
+      if (index.getNumEntities() != gameEntityIndexPrimary.getNumEntities()) {
+        log.warn("Compact GameEntityIndex doesn't match the GameEntityIndex; ignoring it");
+        index.close();
+        return;
+      }
+      compactGameEntityIndex = index;
+    } catch (MorphyInvalidDataException | MorphyNotSupportedException e) {
+      log.warn("Compact GameEntityIndex corrupt or unsupported: " + e.getMessage());
+    }
   }
 
   /**
@@ -623,6 +747,10 @@ public class Database implements EntityRetriever, AutoCloseable {
     if (gameEventStorage != null) {
       gameEventStorage.close();
     }
+    CompactGameEntityIndex compactIndex = compactGameEntityIndex;
+    if (compactIndex != null) {
+      compactIndex.close();
+    }
   }
 
   /**
@@ -669,7 +797,9 @@ public class Database implements EntityRetriever, AutoCloseable {
    * @throws IllegalArgumentException if the game is actually a text
    */
   public @NotNull GameModel getGameModel(int gameId) throws MorphyException {
-    return getGame(gameId).getModel();
+    try (var txn = new DatabaseReadTransaction(this)) {
+      return txn.getGameModel(gameId);
+    }
   }
 
   /**
@@ -755,6 +885,20 @@ public class Database implements EntityRetriever, AutoCloseable {
     return gameTagIndex.get(id);
   }
 
+  /**
+   * Enables the in-memory name index on all entity indexes that supports it, speeding up case
+   * insensitive, infix and fuzzy searches on player names and tournament, team and source titles.
+   *
+   * @see EntityIndex#enableNameIndex()
+   */
+  public void enableNameIndexes() {
+    for (EntityType entityType : EntityType.values()) {
+      if (EntityNameIndex.isSupported(entityType)) {
+        entityIndex(entityType).enableNameIndex();
+      }
+    }
+  }
+
   public EntityIndex<? extends Entity> entityIndex(@NotNull EntityType entityType) {
     return switch (entityType) {
       case PLAYER -> playerIndex;
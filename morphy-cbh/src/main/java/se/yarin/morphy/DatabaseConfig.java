@@ -1,5 +1,12 @@
 package se.yarin.morphy;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.yarin.morphy.queries.PlannerCostConstants;
+import se.yarin.util.PagedBlobChannel;
+
+import java.nio.file.Path;
+
 public class DatabaseConfig {
   // The timeout config determines how the code should behave when trying to acquire locks
   // * A negative value means the lock action will fail immediately if the lock is taken
@@ -10,6 +17,28 @@ public class DatabaseConfig {
   private long writeLockWaitTimeoutInSeconds = 5;
   private long readLockWaitTimeoutInSeconds = 5;
 
+  // The maximum estimated memory usage, in bytes, of the decoded game models kept in the
+  // GameModelCache. 0 disables the cache.
+  private long gameModelCacheMaxWeight = 0;
+
+  // The slow query log is written to this file, or disabled if null. Queries taking at least
+  // slowQueryThresholdMillis are always logged, faster queries are logged with a probability of
+  // slowQuerySampleRate. The file is rotated when it exceeds slowQueryLogMaxBytes, keeping at
+  // most slowQueryLogMaxFiles files in total. These settings are read once, when the database is
+  // opened, so changing them has no effect on databases that are already open.
+  private @Nullable Path slowQueryLogFile = null;
+  private long slowQueryThresholdMillis = 1000;
+  private double slowQuerySampleRate = 0.0;
+  private long slowQueryLogMaxBytes = 10 * 1024 * 1024;
+  private int slowQueryLogMaxFiles = 5;
+
+  // The maximum number of pages read ahead asynchronously when a database file is read
+  // sequentially. 0 disables read-ahead.
+  private int maxReadAheadPages = PagedBlobChannel.DEFAULT_MAX_READ_AHEAD_PAGES;
+
+  // The constants used by the query planner to estimate the cost of a query plan
+  private @NotNull PlannerCostConstants plannerCostConstants = PlannerCostConstants.DEFAULT;
+
   public long writeLockWaitTimeoutInSeconds() {
     return writeLockWaitTimeoutInSeconds;
   }
@@ -25,4 +54,88 @@ public class DatabaseConfig {
   public void setReadLockWaitTimeoutInSeconds(long readLockWaitTimeoutInSeconds) {
     this.readLockWaitTimeoutInSeconds = readLockWaitTimeoutInSeconds;
   }
+
+  public long gameModelCacheMaxWeight() {
+    return gameModelCacheMaxWeight;
+  }
+
+  public void setGameModelCacheMaxWeight(long gameModelCacheMaxWeight) {
+    this.gameModelCacheMaxWeight = gameModelCacheMaxWeight;
+  }
+
+  public @Nullable Path slowQueryLogFile() {
+    return slowQueryLogFile;
+  }
+
+  /**
+   * Sets the file the slow query log is written to, or null to disable the log. Only affects
+   * databases opened after this call.
+   */
+  public void setSlowQueryLogFile(@Nullable Path slowQueryLogFile) {
+    this.slowQueryLogFile = slowQueryLogFile;
+  }
+
+  public long slowQueryThresholdMillis() {
+    return slowQueryThresholdMillis;
+  }
+
+  /**
+   * Sets the duration above which queries are always logged. Only affects databases opened after
+   * this call.
+   */
+  public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+    this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+  }
+
+  public double slowQuerySampleRate() {
+    return slowQuerySampleRate;
+  }
+
+  /**
+   * Sets the probability that a query faster than the threshold is logged. Only affects databases
+   * opened after this call.
+   */
+  public void setSlowQuerySampleRate(double slowQuerySampleRate) {
+    this.slowQuerySampleRate = slowQuerySampleRate;
+  }
+
+  public long slowQueryLogMaxBytes() {
+    return slowQueryLogMaxBytes;
+  }
+
+  /**
+   * Sets the size at which the slow query log file is rotated. Only affects databases opened after
+   * this call.
+   */
+  public void setSlowQueryLogMaxBytes(long slowQueryLogMaxBytes) {
+    this.slowQueryLogMaxBytes = slowQueryLogMaxBytes;
+  }
+
+  public int slowQueryLogMaxFiles() {
+    return slowQueryLogMaxFiles;
+  }
+
+  /**
+   * Sets the maximum number of slow query log files to keep, including the current one. Only
+   * affects databases opened after this call.
+   */
+  public void setSlowQueryLogMaxFiles(int slowQueryLogMaxFiles) {
+    this.slowQueryLogMaxFiles = slowQueryLogMaxFiles;
+  }
+
+  public int maxReadAheadPages() {
+    return maxReadAheadPages;
+  }
+
+  public void setMaxReadAheadPages(int maxReadAheadPages) {
+    this.maxReadAheadPages = maxReadAheadPages;
+  }
+
+  public @NotNull PlannerCostConstants plannerCostConstants() {
+    return plannerCostConstants;
+  }
+
+  public void setPlannerCostConstants(@NotNull PlannerCostConstants plannerCostConstants) {
+    this.plannerCostConstants = plannerCostConstants;
+  }
 }
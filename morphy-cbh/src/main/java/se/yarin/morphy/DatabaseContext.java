@@ -1,5 +1,6 @@
 package se.yarin.morphy;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -8,6 +9,11 @@ import com.googlecode.concurentlocks.ReadWriteUpdateLock;
 import com.googlecode.concurentlocks.ReentrantReadWriteUpdateLock;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import se.yarin.morphy.metrics.LatencyMetrics;
+import se.yarin.morphy.metrics.LockWaitEvent;
+import se.yarin.morphy.metrics.MetricsRef;
+import se.yarin.morphy.queries.SlowQueryLog;
+import se.yarin.morphy.util.GameRanges;
 
 /**
  * The DatabaseContext is a mutable object coordinating database locking and instrumentation.
@@ -29,8 +35,13 @@ public class DatabaseContext {
   private final @NotNull DatabaseConfig config;
   private final @NotNull ReadWriteUpdateLock lock;
   private final @NotNull Instrumentation instrumentation;
+  private final @Nullable SlowQueryLog slowQueryLog;
+  private final @NotNull ConcurrentHashMap<String, MetricsRef<LatencyMetrics>>
+      queryLatencyMetrics = new ConcurrentHashMap<>();
 
   private final @NotNull AtomicInteger currentVersion;
+  // The number of nested bulk scans begun by the current thread
+  private final @NotNull ThreadLocal<Integer> bulkScanDepth = ThreadLocal.withInitial(() -> 0);
 
   public DatabaseContext() {
     this(null);
@@ -41,6 +52,7 @@ public class DatabaseContext {
     this.currentVersion = new AtomicInteger(0);
     this.instrumentation = new Instrumentation();
     this.config = config == null ? new DatabaseConfig() : config;
+    this.slowQueryLog = SlowQueryLog.fromConfig(this.config);
   }
 
   public @NotNull DatabaseConfig config() {
@@ -51,6 +63,24 @@ public class DatabaseContext {
     return instrumentation;
   }
 
+  /** Gets the slow query log, or null if it's not enabled in the config */
+  public @Nullable SlowQueryLog slowQueryLog() {
+    return slowQueryLog;
+  }
+
+  /**
+   * Gets the latency metrics of a type of query. The metrics are registered the first time a query
+   * of the type is executed.
+   *
+   * @param queryName the name of the type of query, see {@link
+   *     se.yarin.morphy.qqueries.ItemQuery#queryName()}
+   * @return a reference to the latency metrics of the query
+   */
+  public @NotNull MetricsRef<LatencyMetrics> queryLatencyMetrics(@NotNull String queryName) {
+    return queryLatencyMetrics.computeIfAbsent(
+        queryName, name -> LatencyMetrics.register(instrumentation, name));
+  }
+
   public int currentVersion() {
     return currentVersion.get();
   }
@@ -59,6 +89,74 @@ public class DatabaseContext {
     return currentVersion.incrementAndGet();
   }
 
+  /**
+   * Begins a bulk scan of the database on the current thread, e.g. a validation or an export of all
+   * games. While a bulk scan is active, the pages that are read ahead when a database file is read
+   * sequentially by this thread are read with direct I/O, bypassing the OS page cache, so the scan
+   * doesn't evict the cached pages of other databases on the same host. Reads by other threads,
+   * e.g. interactive queries against the same database, and random reads still go through the page
+   * cache. If the file system doesn't support direct I/O, the scan reads the files as usual.
+   *
+   * <p>Worker threads reading on behalf of a bulk scan must begin their own scans, see {@link
+   * #inheritBulkScan(GameRanges.RangeTask)}.
+   *
+   * @return a handle that ends the bulk scan when closed; it must be closed on the same thread
+   */
+  public @NotNull BulkScan beginBulkScan() {
+    bulkScanDepth.set(bulkScanDepth.get() + 1);
+    return new BulkScan(Thread.currentThread());
+  }
+
+  /** Determines if the current thread is in a bulk scan of the database */
+  public boolean inBulkScan() {
+    return bulkScanDepth.get() > 0;
+  }
+
+  /**
+   * Wraps a task that processes a range of games so that it runs as a bulk scan if the calling
+   * thread is in a bulk scan now, regardless of which thread the task is run on.
+   *
+   * @param task the task to wrap
+   * @return the wrapped task, or the task itself if the calling thread isn't in a bulk scan
+   */
+  public <R> @NotNull GameRanges.RangeTask<R> inheritBulkScan(
+      @NotNull GameRanges.RangeTask<R> task) {
+    if (!inBulkScan()) {
+      return task;
+    }
+    return (startId, endId) -> {
+      try (BulkScan ignored = beginBulkScan()) {
+        return task.process(startId, endId);
+      }
+    };
+  }
+
+  /** A bulk scan started by {@link #beginBulkScan()}; closing it more than once has no effect */
+  public class BulkScan implements AutoCloseable {
+    private final @NotNull Thread thread;
+    private boolean closed;
+
+    private BulkScan(@NotNull Thread thread) {
+      this.thread = thread;
+    }
+
+    @Override
+    public void close() {
+      if (Thread.currentThread() != thread) {
+        throw new IllegalStateException("A bulk scan must be closed by the thread that began it");
+      }
+      if (!closed) {
+        closed = true;
+        int depth = bulkScanDepth.get() - 1;
+        if (depth == 0) {
+          bulkScanDepth.remove();
+        } else {
+          bulkScanDepth.set(depth);
+        }
+      }
+    }
+  }
+
   public enum DatabaseLock {
     READ,
     UPDATE,
@@ -79,19 +177,30 @@ public class DatabaseContext {
         lockType == DatabaseLock.READ
             ? config.readLockWaitTimeoutInSeconds()
             : config.writeLockWaitTimeoutInSeconds();
-    if (timeout == 0) {
-      lock.lock();
-    } else if (timeout < 0) {
-      if (!lock.tryLock()) {
-        throw new IllegalStateException("Failed to acquire lock");
-      }
-    } else {
-      try {
-        if (!lock.tryLock(timeout, TimeUnit.SECONDS)) {
+    LockWaitEvent event = new LockWaitEvent();
+    event.begin();
+    try {
+      if (timeout == 0) {
+        lock.lock();
+      } else if (timeout < 0) {
+        if (!lock.tryLock()) {
           throw new IllegalStateException("Failed to acquire lock");
         }
-      } catch (InterruptedException e) {
-        throw new IllegalStateException("Failed to acquire lock; thread was interrupted");
+      } else {
+        try {
+          if (!lock.tryLock(timeout, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Failed to acquire lock");
+          }
+        } catch (InterruptedException e) {
+          throw new IllegalStateException("Failed to acquire lock; thread was interrupted");
+        }
+      }
+      event.acquired = true;
+    } finally {
+      event.end();
+      if (event.shouldCommit()) {
+        event.lock = lockType.name();
+        event.commit();
       }
     }
   }
@@ -0,0 +1,374 @@
+package se.yarin.morphy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.morphy.boosters.GameEvents;
+import se.yarin.morphy.entities.*;
+import se.yarin.morphy.exceptions.MorphyException;
+import se.yarin.morphy.games.ExtendedGameHeader;
+import se.yarin.morphy.games.GameHeader;
+import se.yarin.morphy.games.ImmutableExtendedGameHeader;
+import se.yarin.morphy.games.ImmutableGameHeader;
+import se.yarin.morphy.games.filters.GameFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Copies games from one database to another without decoding the moves or annotations.
+ *
+ * <p>Every entity referenced by the copied games is mapped to an entity in the target database
+ * once, by a sorted merge of the entity indexes of the two databases; entities missing in the
+ * target are created. The game headers are then copied as is, with only the entity references and
+ * the offsets to the moves and annotations replaced. The serialized moves and annotations of the
+ * games are read from the source in large ranges, and appended to the target in large chunks.
+ *
+ * <p>Games referencing entities that don't exist in the source database are skipped and logged.
+ * A new transaction is committed every {@link #DEFAULT_GAMES_PER_TRANSACTION} games so the copied
+ * games don't all have to be kept in memory. If the copy fails, the games in the transactions that
+ * were already committed remain in the target database; the progress callback has been called
+ * once for each of them.
+ */
+public class DatabaseMerger {
+  private static final Logger log = LoggerFactory.getLogger(DatabaseMerger.class);
+
+  // The number of games added in every transaction
+  public static final int DEFAULT_GAMES_PER_TRANSACTION = 10000;
+
+  private final @NotNull Database source;
+  private final @NotNull Database target;
+  private final int gamesPerTransaction;
+
+  // Target id of a referenced entity that doesn't exist in the source database
+  private static final int MISSING_ENTITY = Integer.MIN_VALUE;
+
+  public record Result(int numCopied, int numSkipped, int numNewEntities) {}
+
+  public DatabaseMerger(@NotNull Database source, @NotNull Database target) {
+    this(source, target, DEFAULT_GAMES_PER_TRANSACTION);
+  }
+
+  /**
+   * Creates a database merger
+   *
+   * @param source the database to copy games from
+   * @param target the database to add the games to
+   * @param gamesPerTransaction the number of games added in every transaction
+   */
+  public DatabaseMerger(
+      @NotNull Database source, @NotNull Database target, int gamesPerTransaction) {
+    if (source == target) {
+      throw new IllegalArgumentException("Can't merge a database into itself");
+    }
+    if (gamesPerTransaction < 1) {
+      throw new IllegalArgumentException("gamesPerTransaction must be at least 1");
+    }
+    this.source = source;
+    this.target = target;
+    this.gamesPerTransaction = gamesPerTransaction;
+  }
+
+  /**
+   * Copies all games in the source database to the end of the target database
+   *
+   * @return the number of copied games and created entities
+   */
+  public @NotNull Result copyAllGames() {
+    if (source.count() == 0) {
+      return new Result(0, 0, 0);
+    }
+    return copyGames(IntStream.rangeClosed(1, source.count()).toArray(), () -> {});
+  }
+
+  /**
+   * Copies all games in the source database matching a filter to the end of the target database
+   *
+   * @param filter the filter the games to copy must match
+   * @return the number of copied games and created entities
+   */
+  public @NotNull Result copyGames(@NotNull GameFilter filter) {
+    int[] gameIds;
+    try (DatabaseReadTransaction txn = new DatabaseReadTransaction(source)) {
+      gameIds = txn.stream(filter).mapToInt(Game::id).toArray();
+    }
+    return copyGames(gameIds, () -> {});
+  }
+
+  /**
+   * Copies games in the source database to the end of the target database. The games are added in
+   * the given order.
+   *
+   * @param gameIds the ids of the games in the source database to copy
+   * @param progressCallback called once for every copied game, when the transaction it was added
+   *     in has been committed
+   * @return the number of copied and skipped games and created entities
+   */
+  public @NotNull Result copyGames(int @NotNull [] gameIds, @NotNull Runnable progressCallback) {
+    if (gameIds.length == 0) {
+      return new Result(0, 0, 0);
+    }
+    long start = System.currentTimeMillis();
+    int numNewEntities, numCopied = 0;
+
+    try (DatabaseReadTransaction sourceTxn = new DatabaseReadTransaction(source)) {
+      DatabaseWriteTransaction targetTxn = new DatabaseWriteTransaction(target);
+      try {
+        EntityMapping mapping = mapEntities(sourceTxn, targetTxn, gameIds);
+        numNewEntities = mapping.numNewEntities();
+
+        int batchStart = 0;
+        do {
+          if (targetTxn == null) {
+            targetTxn = new DatabaseWriteTransaction(target);
+          }
+          int batchEnd = Math.min(gameIds.length, batchStart + gamesPerTransaction);
+          int[] batch = Arrays.copyOfRange(gameIds, batchStart, batchEnd);
+          int numBatchCopied = copyBatch(sourceTxn, targetTxn, mapping, batch);
+          targetTxn.commit();
+          targetTxn.close();
+          targetTxn = null;
+          numCopied += numBatchCopied;
+          for (int i = 0; i < numBatchCopied; i++) {
+            progressCallback.run();
+          }
+          batchStart = batchEnd;
+        } while (batchStart < gameIds.length);
+      } finally {
+        if (targetTxn != null) {
+          targetTxn.close();
+        }
+      }
+    }
+
+    int numSkipped = gameIds.length - numCopied;
+    log.info(
+        "Copied {} games ({} skipped, {} new entities) in {} ms",
+        numCopied,
+        numSkipped,
+        numNewEntities,
+        System.currentTimeMillis() - start);
+    return new Result(numCopied, numSkipped, numNewEntities);
+  }
+
+  /** Adds the games to the target transaction and returns the number of games added */
+  private int copyBatch(
+      @NotNull DatabaseReadTransaction sourceTxn,
+      @NotNull DatabaseWriteTransaction targetTxn,
+      @NotNull EntityMapping mapping,
+      int @NotNull [] gameIds) {
+    List<GameBlobs> gameBlobs = sourceTxn.getGameBlobs(gameIds);
+
+    boolean createGameEvents = target.gameEventStorage() != null;
+    int numAdded = 0;
+    for (GameBlobs blobs : gameBlobs) {
+      Game game = blobs.game();
+      GameHeader header = game.header();
+      ExtendedGameHeader extendedHeader = game.extendedHeader();
+      if (mapping.isMissing(game)) {
+        log.warn("Skipping game {} that references an entity that doesn't exist", game.id());
+        continue;
+      }
+
+      ImmutableGameHeader.Builder headerBuilder =
+          ImmutableGameHeader.builder()
+              .from(header)
+              .whitePlayerId(mapping.players.map(header.whitePlayerId()))
+              .blackPlayerId(mapping.players.map(header.blackPlayerId()))
+              .tournamentId(mapping.tournaments.map(header.tournamentId()))
+              .annotatorId(mapping.annotators.map(header.annotatorId()))
+              .sourceId(mapping.sources.map(header.sourceId()));
+      ImmutableExtendedGameHeader.Builder extendedHeaderBuilder =
+          ImmutableExtendedGameHeader.builder()
+              .from(extendedHeader)
+              .whiteTeamId(mapping.teams.map(extendedHeader.whiteTeamId()))
+              .blackTeamId(mapping.teams.map(extendedHeader.blackTeamId()))
+              .gameTagId(mapping.gameTags.map(extendedHeader.gameTagId()));
+
+      GameEvents gameEvents = null;
+      if (createGameEvents) {
+        gameEvents = game.gameEvents();
+        if (gameEvents == null || gameEvents.isEmpty()) {
+          // The only case where the moves have to be decoded
+          try {
+            gameEvents =
+                game.guidingText() ? new GameEvents() : new GameEvents(game.getModel().moves());
+          } catch (MorphyException e) {
+            log.warn("Skipping game {} with moves that can't be decoded", game.id(), e);
+            continue;
+          }
+        }
+      }
+
+      targetTxn.putGame(
+          0,
+          headerBuilder,
+          extendedHeaderBuilder,
+          blobs.movesBlob(),
+          blobs.annotationsBlob(),
+          game.topGameStatus(),
+          gameEvents);
+      numAdded += 1;
+    }
+    return numAdded;
+  }
+
+  private @NotNull EntityMapping mapEntities(
+      @NotNull DatabaseReadTransaction sourceTxn,
+      @NotNull DatabaseWriteTransaction targetTxn,
+      int @NotNull [] gameIds) {
+    BitSet players = new BitSet(), tournaments = new BitSet(), annotators = new BitSet();
+    BitSet sources = new BitSet(), teams = new BitSet(), gameTags = new BitSet();
+    for (int gameId : gameIds) {
+      Game game = sourceTxn.getGame(gameId);
+      setReference(players, game.header().whitePlayerId());
+      setReference(players, game.header().blackPlayerId());
+      setReference(tournaments, game.header().tournamentId());
+      setReference(annotators, game.header().annotatorId());
+      setReference(sources, game.header().sourceId());
+      setReference(teams, game.extendedHeader().whiteTeamId());
+      setReference(teams, game.extendedHeader().blackTeamId());
+      setReference(gameTags, game.extendedHeader().gameTagId());
+    }
+
+    TournamentIndexWriteTransaction tournamentTxn = targetTxn.tournamentTransaction();
+    return new EntityMapping(
+        mapEntities(
+            sourceTxn.playerTransaction(), targetTxn.playerTransaction(), players, null),
+        mapEntities(
+            sourceTxn.tournamentTransaction(),
+            tournamentTxn,
+            tournaments,
+            tournament ->
+                tournamentTxn.getOrCreate(
+                    tournament, sourceTxn.getTournamentExtra(tournament.id()))),
+        mapEntities(
+            sourceTxn.annotatorTransaction(), targetTxn.annotatorTransaction(), annotators, null),
+        mapEntities(
+            sourceTxn.sourceTransaction(), targetTxn.sourceTransaction(), sources, null),
+        mapEntities(sourceTxn.teamTransaction(), targetTxn.teamTransaction(), teams, null),
+        mapEntities(
+            sourceTxn.gameTagTransaction(), targetTxn.gameTagTransaction(), gameTags, null));
+  }
+
+  private static void setReference(@NotNull BitSet references, int entityId) {
+    if (entityId >= 0) {
+      references.set(entityId);
+    }
+  }
+
+  /**
+   * Maps the referenced entities in the source database to entities in the target database. Both
+   * indexes are traversed in ascending order, so every entity that exists in both databases is
+   * found without a lookup in the target index. The remaining entities are created in the target.
+   *
+   * @param sourceTxn the entity index transaction in the source database
+   * @param targetTxn the entity index transaction in the target database
+   * @param references the ids of the referenced entities in the source database
+   * @param creator creates a missing entity in the target and returns its id; if null, {@link
+   *     EntityIndexWriteTransaction#getOrCreate(Entity)} is used
+   */
+  private <T extends Entity & Comparable<T>> @NotNull Mapping mapEntities(
+      @NotNull EntityIndexReadTransaction<T> sourceTxn,
+      @NotNull EntityIndexWriteTransaction<T> targetTxn,
+      @NotNull BitSet references,
+      @Nullable ToIntFunction<T> creator) {
+    int[] targetIds = new int[references.length()];
+    Arrays.fill(targetIds, -1);
+    if (references.isEmpty()) {
+      return new Mapping(targetIds, 0);
+    }
+
+    // Entities with the same key in the target may be created while traversing the target index,
+    // so they are created afterwards
+    List<T> missing = new ArrayList<>();
+    EntityIndexTransaction<T>.NodePath targetPath = targetTxn.begin();
+    T targetEntity = targetPath.isEnd() ? null : targetPath.getEntity();
+    int numFound = 0;
+    for (T entity : sourceTxn.iterableAscending()) {
+      if (entity.id() >= targetIds.length || !references.get(entity.id())) {
+        continue;
+      }
+      numFound += 1;
+      while (targetEntity != null && targetEntity.compareTo(entity) < 0) {
+        targetPath = targetPath.successor();
+        targetEntity = targetPath.isEnd() ? null : targetPath.getEntity();
+      }
+      if (targetEntity != null && targetEntity.compareTo(entity) == 0) {
+        targetIds[entity.id()] = targetEntity.id();
+      } else {
+        missing.add(entity);
+      }
+    }
+    if (numFound != references.cardinality()) {
+      log.warn(
+          "Games in the source database reference {} entities in {} that don't exist",
+          references.cardinality() - numFound,
+          sourceTxn.index().getClass().getSimpleName());
+    }
+
+    // Missing entities with the same key are adjacent, and are all mapped to the same new entity
+    int numNewEntities = 0, lastNewId = -1;
+    for (T entity : missing) {
+      int targetId = creator != null ? creator.applyAsInt(entity) : targetTxn.getOrCreate(entity);
+      if (targetId != lastNewId) {
+        numNewEntities += 1;
+        lastNewId = targetId;
+      }
+      targetIds[entity.id()] = targetId;
+    }
+    if (numFound != references.cardinality()) {
+      references.stream()
+          .filter(id -> targetIds[id] == -1)
+          .forEach(id -> targetIds[id] = MISSING_ENTITY);
+    }
+    return new Mapping(targetIds, numNewEntities);
+  }
+
+  /** A mapping from entity ids in the source database to entity ids in the target database */
+  private record Mapping(int @NotNull [] targetIds, int numNewEntities) {
+    int map(int sourceId) {
+      return sourceId < 0 ? sourceId : targetIds[sourceId];
+    }
+
+    boolean isMissing(int sourceId) {
+      return map(sourceId) == MISSING_ENTITY;
+    }
+  }
+
+  private record EntityMapping(
+      @NotNull Mapping players,
+      @NotNull Mapping tournaments,
+      @NotNull Mapping annotators,
+      @NotNull Mapping sources,
+      @NotNull Mapping teams,
+      @NotNull Mapping gameTags) {
+    int numNewEntities() {
+      return players.numNewEntities
+          + tournaments.numNewEntities
+          + annotators.numNewEntities
+          + sources.numNewEntities
+          + teams.numNewEntities
+          + gameTags.numNewEntities;
+    }
+
+    /** Returns true if the game references an entity that doesn't exist in the source database */
+    boolean isMissing(@NotNull Game game) {
+      GameHeader header = game.header();
+      ExtendedGameHeader extendedHeader = game.extendedHeader();
+      return players.isMissing(header.whitePlayerId())
+          || players.isMissing(header.blackPlayerId())
+          || tournaments.isMissing(header.tournamentId())
+          || annotators.isMissing(header.annotatorId())
+          || sources.isMissing(header.sourceId())
+          || teams.isMissing(extendedHeader.whiteTeamId())
+          || teams.isMissing(extendedHeader.blackTeamId())
+          || gameTags.isMissing(extendedHeader.gameTagId());
+    }
+  }
+}
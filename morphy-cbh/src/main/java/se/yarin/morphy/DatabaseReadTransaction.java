@@ -2,9 +2,19 @@ package se.yarin.morphy;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import se.yarin.chess.GameModel;
 import se.yarin.morphy.entities.*;
+import se.yarin.morphy.exceptions.MorphyException;
 import se.yarin.morphy.games.filters.GameFilter;
-
+import se.yarin.morphy.queries.GameQuery;
+import se.yarin.morphy.queries.QueryContext;
+import se.yarin.morphy.queries.QueryPlanner;
+import se.yarin.morphy.queries.operations.QueryData;
+import se.yarin.morphy.queries.operations.QueryOperator;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -78,6 +88,25 @@ public class DatabaseReadTransaction extends DatabaseTransaction {
     };
   }
 
+  /**
+   * Gets a game model. If the {@link GameModelCache} of the database is enabled, the model is
+   * taken from the cache if possible, and put in the cache otherwise.
+   *
+   * @param gameId the id of the game to get
+   * @return a model of the game
+   * @throws MorphyException if an internal error occurred when fetching the game
+   * @throws IllegalArgumentException if the game is actually a text
+   */
+  public @NotNull GameModel getGameModel(int gameId) throws MorphyException {
+    GameModelCache cache = database().gameModelCache();
+    GameModel model = cache.get(gameId, version);
+    if (model == null) {
+      model = getGame(gameId).getModel();
+      cache.put(gameId, version, model);
+    }
+    return model;
+  }
+
   /**
    * Returns an iterable of all games in the database, sorted by id.
    *
@@ -164,4 +193,40 @@ public class DatabaseReadTransaction extends DatabaseTransaction {
       @Nullable Integer startId, @Nullable Integer endId, @Nullable GameFilter filter) {
     return StreamSupport.stream(iterable(startId, endId, filter).spliterator(), false);
   }
+
+  /**
+   * Returns a stream of the fully decoded models of all games matching a query. The games are
+   * returned in the sort order of the query, or sorted by id if the query has no sort order.
+   * Guiding texts are not included.
+   *
+   * <p>The move and annotation data are read in batches, in offset order, and decoded on a pool of
+   * worker threads. Only a limited number of games are decoded ahead of the consumer. The stream
+   * must be consumed on the thread that owns this transaction, and it should be closed when done
+   * so that the worker threads are released and the query is recorded in the slow query log.
+   *
+   * @param query the query to get the games of
+   * @param parallelism the number of threads to decode the games on; if 1, all games are decoded
+   *     on the calling thread
+   * @return a stream of game models
+   */
+  public @NotNull Stream<GameModel> streamModels(@NotNull GameQuery query, int parallelism) {
+    QueryPlanner queryPlanner = database().queryPlanner();
+    QueryContext queryContext = new QueryContext(this, false);
+    QueryOperator<Game> queryPlan =
+        queryPlanner.selectBestQueryPlan(
+            queryPlanner.getGameQueryPlans(queryContext, query, true));
+    if (query.sortOrder().isNone()) {
+      queryPlan = queryPlan.sortedAndDistinct();
+    }
+    // The query is recorded in the slow query log when the plan stream is closed
+    Stream<QueryData<Game>> planStream = queryPlan.streamLogged();
+    Iterator<Game> games = planStream.map(QueryData::data).iterator();
+
+    GameModelIterator models = new GameModelIterator(database(), games, parallelism);
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(models, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(models::close)
+        .onClose(planStream::close);
+  }
 }
@@ -10,6 +10,9 @@ import se.yarin.morphy.games.GameHeader;
 import se.yarin.morphy.metrics.Metrics;
 import se.yarin.morphy.metrics.MetricsRepository;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public abstract class DatabaseTransaction extends TransactionBase implements EntityRetriever {
   private static final Logger log = LoggerFactory.getLogger(DatabaseTransaction.class);
 
@@ -48,7 +51,8 @@ public abstract class DatabaseTransaction extends TransactionBase implements Ent
     super(lock, database.context());
 
     this.database = database;
-    this.metrics = database.context().instrumentation().pushContext("txn");
+    // The metrics of the transaction are merged into the global metrics when it's closed
+    this.metrics = database.context().instrumentation().pushContext("txn", true);
   }
 
   public @NotNull Game getGame(int gameId) {
@@ -66,6 +70,23 @@ public abstract class DatabaseTransaction extends TransactionBase implements Ent
     return new Game(database, gameHeader, extendedGameHeader);
   }
 
+  /**
+   * Gets many games together with their serialized moves and annotations. The blobs are read in
+   * ascending offset order, with nearby blobs read in a single range, so fetching games that are
+   * scattered across the database results in a few large reads instead of one random read per
+   * game.
+   *
+   * @param gameIds the ids of the games to get
+   * @return the games and their blobs, in the same order as the ids
+   */
+  public @NotNull List<GameBlobs> getGameBlobs(int @NotNull ... gameIds) {
+    List<Game> games = new ArrayList<>(gameIds.length);
+    for (int gameId : gameIds) {
+      games.add(getGame(gameId));
+    }
+    return GameBlobs.read(database, games);
+  }
+
   public @NotNull Player getPlayer(int id) {
     return playerTransaction().get(id);
   }
@@ -11,12 +11,14 @@ import se.yarin.morphy.boosters.GameEvents;
 import se.yarin.morphy.entities.*;
 import se.yarin.morphy.exceptions.MorphyInvalidDataException;
 import se.yarin.morphy.games.*;
+import se.yarin.morphy.metrics.CommitPhaseEvent;
 import se.yarin.morphy.text.TextHeaderModel;
 import se.yarin.morphy.text.TextModel;
 
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.function.BiPredicate;
+import java.util.function.Function;
 
 /**
  * Represents an in-memory transaction of operations done on a {@link Database}.
@@ -34,6 +36,9 @@ import java.util.function.BiPredicate;
 public class DatabaseWriteTransaction extends DatabaseTransaction {
   private static final Logger log = LoggerFactory.getLogger(DatabaseWriteTransaction.class);
 
+  // The maximum number of bytes of new moves or annotations appended in a single write
+  private static final int APPEND_CHUNK_SIZE = 1 << 20;
+
   class GameData {
     public ImmutableGameHeader.@NotNull Builder gameHeader;
     public ImmutableExtendedGameHeader.@NotNull Builder extendedGameHeader;
@@ -66,6 +71,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
   // TODO: Create hasUncommitedChanges
   private int currentGameCount;
   private int version; // The version of the database the transaction starts from
+  private boolean entitiesUpdated; // If entities were updated, other games may also have changed
 
   private final Map<Integer, GameData> updatedGames = new TreeMap<>();
 
@@ -165,6 +171,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
 
   // TODO: could this be made nicer?!
   public void updatePlayerById(int id, @NotNull Player player) {
+    entitiesUpdated = true;
     Player oldPlayer = playerTransaction.get(id);
     // We must not update the count and firstGameId as it would get incorrect when committing the
     // transaction
@@ -179,6 +186,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
 
   public void updateTournamentById(
       int id, @NotNull Tournament tournament, @NotNull TournamentExtra tournamentExtra) {
+    entitiesUpdated = true;
     Tournament oldTournament = tournamentTransaction.get(id);
     // We must not update the count and firstGameId as it would get incorrect when committing the
     // transaction
@@ -192,6 +200,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
   }
 
   public void updateAnnotatorById(int id, @NotNull Annotator annotator) {
+    entitiesUpdated = true;
     Annotator oldAnnotator = annotatorTransaction.get(id);
     // We must not update the count and firstGameId as it would get incorrect when committing the
     // transaction
@@ -205,6 +214,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
   }
 
   public void updateSourceById(int id, @NotNull Source source) {
+    entitiesUpdated = true;
     Source oldSource = sourceTransaction.get(id);
     // We must not update the count and firstGameId as it would get incorrect when committing the
     // transaction
@@ -218,6 +228,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
   }
 
   public void updateTeamById(int id, @NotNull Team team) {
+    entitiesUpdated = true;
     Team oldTeam = teamTransaction.get(id);
     // We must not update the count and firstGameId as it would get incorrect when committing the
     // transaction
@@ -231,6 +242,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
   }
 
   public void updateGameTagById(int id, @NotNull GameTag gameTag) {
+    entitiesUpdated = true;
     GameTag oldGameTag = gameTagTransaction.get(id);
     // We must not update the count and firstGameId as it would get incorrect when committing the
     // transaction
@@ -259,6 +271,41 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
     }
   }
 
+  /**
+   * Gets many games together with their serialized moves and annotations. Games that have been
+   * added or replaced in this transaction get the blobs they were put with; the blobs of the other
+   * games are read from the database.
+   *
+   * @param gameIds the ids of the games to get
+   * @return the games and their blobs, in the same order as the ids
+   */
+  @Override
+  public @NotNull List<GameBlobs> getGameBlobs(int @NotNull ... gameIds) {
+    List<Game> storedGames = new ArrayList<>(gameIds.length);
+    for (int gameId : gameIds) {
+      if (!updatedGames.containsKey(gameId)) {
+        storedGames.add(getGame(gameId));
+      }
+    }
+    Iterator<GameBlobs> storedBlobs = GameBlobs.read(database(), storedGames).iterator();
+
+    List<GameBlobs> result = new ArrayList<>(gameIds.length);
+    for (int gameId : gameIds) {
+      GameData updatedGame = updatedGames.get(gameId);
+      if (updatedGame == null) {
+        result.add(storedBlobs.next());
+      } else {
+        ByteBuffer annotationBlob = updatedGame.annotationBlob;
+        result.add(
+            new GameBlobs(
+                getGame(gameId),
+                updatedGame.moveBlob.duplicate(),
+                annotationBlob != null ? annotationBlob.duplicate() : null));
+      }
+    }
+    return result;
+  }
+
   /**
    * Adds a new game to the transaction
    *
@@ -470,6 +517,8 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
 
       // Before inserting any games, remove old blobs and if necessary make room in moves and
       // annotations repository
+      CommitPhaseEvent phase =
+          CommitPhaseEvent.start(CommitPhaseEvent.SHIFT_BLOBS, updatedGames.size());
       int oldGameCount = database().gameHeaderIndex().count();
       List<Integer> updatedGameIds = new ArrayList<>(updatedGames.keySet());
       for (int gameId : updatedGameIds) {
@@ -576,21 +625,33 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
         }
       }
 
+      phase.commit();
+
       // TODO: Merge this for-loop with the previous one, should be possible
+      phase = CommitPhaseEvent.start(CommitPhaseEvent.WRITE_GAMES, updatedGames.size());
       int gameCount = database().gameHeaderIndex().count();
+      int firstNewGameId = gameCount + 1;
+      List<ByteBuffer> newMovesBlobs = new ArrayList<>();
+      List<ByteBuffer> newAnnotationsBlobs = new ArrayList<>();
+      for (int gameId = firstNewGameId; gameId <= currentGameCount; gameId++) {
+        GameData newGameData = updatedGames.get(gameId);
+        newMovesBlobs.add(newGameData.moveBlob);
+        newAnnotationsBlobs.add(newGameData.annotationBlob);
+      }
+      long[] newMovesOffsets =
+          appendInChunks(newMovesBlobs, database().moveRepository()::appendMovesBlobs);
+      long[] newAnnotationsOffsets =
+          appendInChunks(
+              newAnnotationsBlobs, database().annotationRepository()::appendAnnotationsBlobs);
+
       HashMap<Integer, Integer> updatedMoveOffsets = new HashMap<>();
       HashMap<Integer, TopGamesStorage.TopGameStatus> updatedTopGameStatuses = new HashMap<>();
       for (int gameId : updatedGames.keySet()) {
         GameData updatedGameData = updatedGames.get(gameId);
         ImmutableGameHeader gameHeader;
         if (gameId > gameCount) {
-          long movesOffset = database().moveRepository().putMovesBlob(0, updatedGameData.moveBlob);
-          long annotationsOffset =
-              updatedGameData.annotationBlob != null
-                  ? database()
-                      .annotationRepository()
-                      .putAnnotationsBlob(0, updatedGameData.annotationBlob)
-                  : 0;
+          long movesOffset = newMovesOffsets[gameId - firstNewGameId];
+          long annotationsOffset = newAnnotationsOffsets[gameId - firstNewGameId];
 
           gameHeader =
               updatedGameData
@@ -643,7 +704,9 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
         moveOffsetStorage.putOffsets(updatedMoveOffsets);
       }
       database().topGamesStorage().putGameStatuses(updatedTopGameStatuses);
+      phase.commit();
 
+      phase = CommitPhaseEvent.start(CommitPhaseEvent.UPDATE_ENTITIES, updatedGames.size());
       playerDelta.apply(playerTransaction);
       tournamentDelta.apply(tournamentTransaction);
       annotatorDelta.apply(annotatorTransaction);
@@ -657,15 +720,23 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
       sourceTransaction.commit();
       teamTransaction.commit();
       gameTagTransaction.commit();
+      phase.commit();
 
+      phase = CommitPhaseEvent.start(CommitPhaseEvent.UPDATE_BOOSTERS, updatedGames.size());
       playerDelta.updateGameEntityIndex();
       tournamentDelta.updateGameEntityIndex();
       annotatorDelta.updateGameEntityIndex();
       sourceDelta.updateGameEntityIndex();
       teamDelta.updateGameEntityIndex();
       gameTagDelta.updateGameEntityIndex();
+      phase.commit();
 
-      database().context().bumpVersion();
+      int newVersion = database().context().bumpVersion();
+      if (entitiesUpdated) {
+        database().gameModelCache().invalidateAll(newVersion);
+      } else {
+        database().gameModelCache().invalidate(updatedGames.keySet(), version, newVersion);
+      }
 
       // Clear transaction, enabling further commits
       clearChanges();
@@ -674,6 +745,38 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
     }
   }
 
+  /**
+   * Appends blobs to a repository, a chunk of blobs at a time rather than with one write per blob.
+   *
+   * @param blobs the blobs to append; null blobs are skipped
+   * @param appender appends a chunk of blobs to the repository and returns their offsets
+   * @return the offset of every blob, or 0 for the skipped blobs
+   */
+  private static long[] appendInChunks(
+      @NotNull List<ByteBuffer> blobs, @NotNull Function<List<ByteBuffer>, long[]> appender) {
+    long[] offsets = new long[blobs.size()];
+    List<ByteBuffer> chunk = new ArrayList<>();
+    int chunkStart = 0, chunkSize = 0;
+    for (int i = 0; i <= blobs.size(); i++) {
+      if (i == blobs.size() || chunkSize >= APPEND_CHUNK_SIZE) {
+        long[] chunkOffsets = appender.apply(chunk);
+        for (int j = chunkStart, k = 0; j < i; j++) {
+          if (blobs.get(j) != null) {
+            offsets[j] = chunkOffsets[k++];
+          }
+        }
+        chunk.clear();
+        chunkStart = i;
+        chunkSize = 0;
+      }
+      if (i < blobs.size() && blobs.get(i) != null) {
+        chunk.add(blobs.get(i));
+        chunkSize += blobs.get(i).limit();
+      }
+    }
+    return offsets;
+  }
+
   /** Clears all changes in the transaction. The transaction will remain open. */
   public void rollback() {
     ensureTransactionIsOpen();
@@ -692,6 +795,7 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
     this.updatedGames.clear();
     this.currentGameCount = database().gameHeaderIndex().count();
     this.version = database().context().currentVersion();
+    this.entitiesUpdated = false;
     this.playerDelta.clear();
     this.tournamentDelta.clear();
     this.annotatorDelta.clear();
@@ -912,8 +1016,6 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
     }
 
     public void apply(@NotNull EntityIndexWriteTransaction<T> entityTransaction) {
-      GameEntityIndex gameEntityIndex = database().gameEntityIndex(entityType);
-
       for (int entityId : newEntityGameCount.keySet()) {
         if (entityId < 0) {
           // In the updates we might have set the "no entity" -1, just ignore it here
@@ -921,64 +1023,36 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
         }
 
         T entity = entityTransaction.get(entityId);
+        TreeMap<Integer, Integer> gameCounts = newEntityGameCount.get(entityId);
 
         // Find the first game in the transaction where entityId is used
         int firstTransactionGameId = 0;
-        for (Map.Entry<Integer, Integer> entry : newEntityGameCount.get(entityId).entrySet()) {
-          if (entry.getValue() > 0 && entry.getKey() > 0) {
+        for (Map.Entry<Integer, Integer> entry : gameCounts.entrySet()) {
+          if (entry.getValue() > 0) {
             firstTransactionGameId = entry.getKey();
             break;
           }
         }
 
-        int newFirstGameId = entity.firstGameId();
-        boolean firstIdSearch = false;
-        if (newFirstGameId == 0
-            || (firstTransactionGameId > 0 && firstTransactionGameId < newFirstGameId)) {
-          // Entity didn't exist before, or we have a new first game
-          newFirstGameId = firstTransactionGameId;
-        } else {
-          // The old first game reference is gone, we'll have to search for the new first game
-          // (it might not even be in this transaction)
-          firstIdSearch = true;
-        }
-
         int newCount = entity.count() + newEntityGameDelta.get(entityId);
 
         if (newCount == 0) {
           entityTransaction.deleteEntity(entityId);
         } else {
-          if (firstIdSearch) {
-            if (gameEntityIndex != null) {
-              // This is the default case, use the entity index to find the new first game.
-              // Some care needs to be taken since we haven't yet updated this index to reflect this
-              // commit!
-              newFirstGameId =
-                  firstTransactionGameId; // it may be another game in this transaction!
-              for (int gameId : gameEntityIndex.iterable(entityId, entityType, false)) {
-                if (newFirstGameId > 0 && newFirstGameId < gameId) break;
-                if (hasEntity.test(DatabaseWriteTransaction.super.getGame(gameId), entityId)) {
-                  newFirstGameId = gameId;
-                  break;
-                }
-              }
-            } else {
-              // TODO: there are no test for this now, parametrize tests in
-              // DatabaseWriteTransactionTest that checks firstGame
-              // With no entity index in place, we do a slow iterative scan to find the new
-              // firstGameId
-              GameHeaderIndex ix = DatabaseWriteTransaction.this.database().gameHeaderIndex();
-              newFirstGameId = 0;
-              for (int i = 1; i <= ix.count(); i++) {
-                if (hasEntity.test(DatabaseWriteTransaction.super.getGame(i), entityId)) {
-                  newFirstGameId = i;
-                  break;
-                }
-              }
-            }
-
-            assert newFirstGameId > 0;
+          int newFirstGameId = entity.firstGameId();
+          if (newFirstGameId > 0 && gameCounts.getOrDefault(newFirstGameId, 1) == 0) {
+            // The old first game no longer references the entity. Since no earlier game did,
+            // only games after it can be the new first game.
+            newFirstGameId = findFirstGameId(entityId, newFirstGameId, firstTransactionGameId);
+          }
+          if (firstTransactionGameId > 0
+              && (newFirstGameId == 0 || firstTransactionGameId < newFirstGameId)) {
+            // Entity didn't exist before, or we have a new first game
+            newFirstGameId = firstTransactionGameId;
           }
+
+          assert newFirstGameId > 0;
+
           if (newCount != entity.count() || newFirstGameId != entity.firstGameId()) {
             T newEntity = (T) entity.withCountAndFirstGameId(newCount, newFirstGameId);
             entityTransaction.putEntityByKey(newEntity);
@@ -987,9 +1061,57 @@ public class DatabaseWriteTransaction extends DatabaseTransaction {
       }
     }
 
+    /**
+     * Finds the first game after a given game that references an entity and that hasn't been
+     * changed in this transaction (games in the transaction are accounted for separately).
+     *
+     * @param entityId the id of the entity
+     * @param afterGameId the game id to search after (exclusive)
+     * @param limitGameId stop searching at this game id; 0 to search until the last game
+     * @return the id of the first such game, or 0 if there is none before limitGameId
+     */
+    private int findFirstGameId(int entityId, int afterGameId, int limitGameId) {
+      TreeMap<Integer, Integer> gameCounts = newEntityGameCount.get(entityId);
+      int endGameId = limitGameId > 0 ? limitGameId : Integer.MAX_VALUE;
+
+      GameEntityIndex gameEntityIndex = database().gameEntityIndex(entityType);
+      if (gameEntityIndex != null) {
+        // This is the default case; the index contains the committed games of the entity sorted
+        // by id, so there's no need to read the game headers. Games changed in this transaction
+        // are skipped since the index hasn't yet been updated to reflect this commit.
+        // The block chain is a linked list that can't be entered in the middle, so all blocks up
+        // to afterGameId are read as well; the cost is linear in the number of games of the
+        // entity divided by the number of games per block.
+        for (int gameId : gameEntityIndex.iterable(entityId, entityType, false)) {
+          if (gameId >= endGameId) {
+            break;
+          }
+          if (gameId > afterGameId && !gameCounts.containsKey(gameId)) {
+            return gameId;
+          }
+        }
+        return 0;
+      }
+
+      // With no entity index in place, we do a slow iterative scan to find the new firstGameId
+      GameHeaderIndex ix = DatabaseWriteTransaction.this.database().gameHeaderIndex();
+      for (int gameId = afterGameId + 1; gameId <= ix.count() && gameId < endGameId; gameId++) {
+        if (!gameCounts.containsKey(gameId)
+            && hasEntity.test(DatabaseWriteTransaction.super.getGame(gameId), entityId)) {
+          return gameId;
+        }
+      }
+      return 0;
+    }
+
     public void updateGameEntityIndex() {
       GameEntityIndex gameEntityIndex = database().gameEntityIndex(entityType);
       if (gameEntityIndex != null) {
+        if (!newEntityGameCount.isEmpty()
+            && database().compactGameEntityIndex(entityType) != null) {
+          // The compact index can't be updated, so it has to be recreated
+          database().dropCompactGameEntityIndex();
+        }
         for (Map.Entry<Integer, TreeMap<Integer, Integer>> entry : newEntityGameCount.entrySet()) {
           int entityId = entry.getKey();
           if (entityId >= 0) {
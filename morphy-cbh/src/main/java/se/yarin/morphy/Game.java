@@ -277,6 +277,10 @@ public class Game implements IdObject {
     return database.gameAdapter().getGameModel(this);
   }
 
+  public @NotNull CompactGameMoves getCompactMoves() throws MorphyException {
+    return database.gameAdapter().getCompactGameMoves(this);
+  }
+
   public @NotNull TextModel getTextModel() throws MorphyException {
     return database.gameAdapter().getTextModel(this);
   }
@@ -52,6 +52,25 @@ public class GameAdapter {
     return new GameModel(headerModel, moves);
   }
 
+  /**
+   * Creates a read-only and memory efficient version of the moves and annotations of a game. The
+   * moves are decoded into an ordinary model first, so this is not faster than {@link
+   * #getGameModel(Game)}, but the result uses much less memory if it's kept around.
+   *
+   * @param game the game to get the moves for
+   * @return a compact model of the game moves
+   */
+  public @NotNull CompactGameMoves getCompactGameMoves(@NotNull Game game) {
+    if (game.guidingText()) {
+      throw new IllegalArgumentException(
+          "Can't get the moves of a guiding text (id " + game.id() + ")");
+    }
+    GameMovesModel moves =
+        game.database().moveRepository().getMoves(game.getMovesOffset(), game.id());
+    game.database().annotationRepository().getAnnotations(moves, game.getAnnotationOffset());
+    return CompactGameMoves.of(moves);
+  }
+
   public @NotNull TextHeaderModel getTextHeaderModel(@NotNull Game game) {
     GameHeader header = game.header();
     if (!header.guidingText()) {
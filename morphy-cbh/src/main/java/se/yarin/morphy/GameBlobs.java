@@ -0,0 +1,47 @@
+package se.yarin.morphy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A game together with its serialized moves and annotations, as read by {@link
+ * DatabaseTransaction#getGameBlobs(int...)}.
+ *
+ * @param game the game
+ * @param movesBlob the serialized moves of the game, or the text if the game is a guiding text
+ * @param annotationsBlob the serialized annotations of the game, or null if it has no annotations
+ */
+public record GameBlobs(
+    @NotNull Game game, @Nullable ByteBuffer movesBlob, @Nullable ByteBuffer annotationsBlob) {
+
+  /**
+   * Reads the moves and annotations of a list of games. The blobs are read in ascending offset
+   * order, with nearby blobs read in a single range, and returned in the order of the games.
+   *
+   * @param database the database the games belong to
+   * @param games the games to read the blobs of
+   * @return the games and their blobs, in the same order as the games
+   */
+  static @NotNull List<GameBlobs> read(@NotNull Database database, @NotNull List<Game> games) {
+    long[] movesOffsets = new long[games.size()];
+    long[] annotationOffsets = new long[games.size()];
+    for (int i = 0; i < games.size(); i++) {
+      movesOffsets[i] = games.get(i).getMovesOffset();
+      annotationOffsets[i] = games.get(i).getAnnotationOffset();
+    }
+
+    ByteBuffer[] movesBlobs = database.moveRepository().getMovesBlobs(movesOffsets);
+    ByteBuffer[] annotationsBlobs =
+        database.annotationRepository().getAnnotationsBlobs(annotationOffsets);
+
+    List<GameBlobs> result = new ArrayList<>(games.size());
+    for (int i = 0; i < games.size(); i++) {
+      result.add(new GameBlobs(games.get(i), movesBlobs[i], annotationsBlobs[i]));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,242 @@
+package se.yarin.morphy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.yarin.chess.GameModel;
+import se.yarin.morphy.metrics.CacheMetrics;
+import se.yarin.morphy.metrics.MetricsRef;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache of decoded game models, keyed by game id. Entries are evicted in least recently
+ * used order when the estimated memory usage of all cached models exceeds the configured weight.
+ *
+ * <p>The cache follows the version of the database. When a {@link DatabaseWriteTransaction} is
+ * committed, only the games updated in the transaction are invalidated, see {@link
+ * #invalidate(Collection, int, int)}. If the version changes in any other way, or the commit
+ * changed entities that are part of the header of other games, the whole cache is cleared.
+ *
+ * <p>The models are copied when they are put into and taken out of the cache, so callers are free
+ * to modify the models they get.
+ *
+ * <p>The cache may be used by multiple threads. Lookups go through a concurrent map, and only the
+ * least recently used order and the total weight are guarded by a lock. The models are copied and
+ * weighed outside of the lock.
+ */
+public class GameModelCache {
+  // Rough estimates of the memory usage of the parts of a decoded game model
+  static final int HEADER_WEIGHT = 1024;
+  static final int NODE_WEIGHT = 192;
+  static final int ANNOTATION_WEIGHT = 64;
+
+  private final long maxWeight;
+  private final @NotNull Instrumentation instrumentation;
+  private final @NotNull MetricsRef<CacheMetrics> metricsRef;
+
+  // The version is the version of the database the model was put at
+  private record Entry(@NotNull GameModel model, long weight, int version) {}
+
+  private final ConcurrentHashMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+  // The same entries as in entries, in least recently used order; guarded by itself, as is weight
+  private final LinkedHashMap<Integer, Entry> lruOrder = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight;
+  private volatile int version;
+
+  /**
+   * Creates a new game model cache
+   *
+   * @param context the context of the database the cache belongs to
+   * @param maxWeight the maximum estimated memory usage, in bytes, of all cached models; if 0, no
+   *     models are cached
+   */
+  public GameModelCache(@NotNull DatabaseContext context, long maxWeight) {
+    if (maxWeight < 0) {
+      throw new IllegalArgumentException("The max weight of the cache must not be negative");
+    }
+    this.maxWeight = maxWeight;
+    this.version = context.currentVersion();
+    this.instrumentation = context.instrumentation();
+    this.metricsRef = CacheMetrics.register(context.instrumentation(), "GameModel");
+  }
+
+  public boolean isEnabled() {
+    return maxWeight > 0;
+  }
+
+  public long maxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Gets the hit and miss metrics of the cache. Since the cache is shared by all transactions, the
+   * metrics are kept in the global metrics repository rather than in the current context.
+   *
+   * @return the metrics of the cache
+   */
+  public @NotNull CacheMetrics metrics() {
+    return metricsRef.get(instrumentation);
+  }
+
+  public long weight() {
+    synchronized (lruOrder) {
+      return weight;
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets a copy of a cached game model
+   *
+   * @param gameId the id of the game
+   * @param version the version of the database the caller is reading from
+   * @return a copy of the cached model, or null if the game is not in the cache or the cache is
+   *     for another version of the database
+   */
+  public @Nullable GameModel get(int gameId, int version) {
+    if (!isEnabled()) {
+      return null;
+    }
+    syncVersion(version);
+    Entry entry = version == this.version ? entries.get(gameId) : null;
+    // An entry put after the version was checked may belong to a newer version
+    if (entry == null || entry.version() > version) {
+      metrics().addMiss();
+      return null;
+    }
+    synchronized (lruOrder) {
+      // Marks the entry as recently used, unless it was just evicted
+      lruOrder.get(gameId);
+    }
+    metrics().addHit();
+    // The cached model is never modified, so it can be copied without holding the lock
+    return copy(entry.model());
+  }
+
+  /**
+   * Puts a copy of a game model in the cache. The model is ignored if it was read from an older
+   * version of the database than the cache is at.
+   *
+   * @param gameId the id of the game
+   * @param version the version of the database the model was read from
+   * @param model the decoded model of the game
+   */
+  public void put(int gameId, int version, @NotNull GameModel model) {
+    if (!isEnabled()) {
+      return;
+    }
+    syncVersion(version);
+    if (version != this.version) {
+      return;
+    }
+    long modelWeight = estimateWeight(model);
+    if (modelWeight > maxWeight) {
+      return;
+    }
+    Entry entry = new Entry(copy(model), modelWeight, version);
+    synchronized (lruOrder) {
+      // The version may have changed while the model was copied
+      if (version != this.version) {
+        return;
+      }
+      entries.put(gameId, entry);
+      Entry previous = lruOrder.put(gameId, entry);
+      if (previous != null) {
+        weight -= previous.weight();
+      }
+      weight += modelWeight;
+      metrics().addPut();
+      evict();
+    }
+  }
+
+  /**
+   * Invalidates the games that were updated when the database moved from one version to the next.
+   * If the cache wasn't at the old version, all games are invalidated.
+   *
+   * @param gameIds the ids of the updated games
+   * @param oldVersion the version of the database before the update
+   * @param newVersion the version of the database after the update
+   */
+  public void invalidate(@NotNull Collection<Integer> gameIds, int oldVersion, int newVersion) {
+    synchronized (lruOrder) {
+      if (oldVersion != this.version) {
+        invalidateAll(newVersion);
+        return;
+      }
+      int count = 0;
+      for (int gameId : gameIds) {
+        entries.remove(gameId);
+        Entry entry = lruOrder.remove(gameId);
+        if (entry != null) {
+          weight -= entry.weight();
+          count += 1;
+        }
+      }
+      this.version = newVersion;
+      metrics().addInvalidations(count);
+    }
+  }
+
+  /**
+   * Invalidates all games in the cache
+   *
+   * @param newVersion the current version of the database
+   */
+  public void invalidateAll(int newVersion) {
+    synchronized (lruOrder) {
+      metrics().addInvalidations(lruOrder.size());
+      entries.clear();
+      lruOrder.clear();
+      weight = 0;
+      this.version = newVersion;
+    }
+  }
+
+  static long estimateWeight(@NotNull GameModel model) {
+    return HEADER_WEIGHT
+        + (long) model.moves().getAllNodes().size() * NODE_WEIGHT
+        + (long) model.moves().countAnnotations() * ANNOTATION_WEIGHT;
+  }
+
+  private void syncVersion(int version) {
+    // A newer version that hasn't been announced through invalidate means we can't tell which
+    // games have changed
+    if (version > this.version) {
+      synchronized (lruOrder) {
+        if (version > this.version) {
+          invalidateAll(version);
+        }
+      }
+    }
+  }
+
+  private void evict() {
+    assert Thread.holdsLock(lruOrder);
+    int count = 0;
+    Iterator<Map.Entry<Integer, Entry>> iterator = lruOrder.entrySet().iterator();
+    while (weight > maxWeight && iterator.hasNext()) {
+      Map.Entry<Integer, Entry> next = iterator.next();
+      entries.remove(next.getKey());
+      weight -= next.getValue().weight();
+      iterator.remove();
+      count += 1;
+    }
+    if (count > 0) {
+      metrics().addEvictions(count);
+    }
+  }
+
+  private static @NotNull GameModel copy(@NotNull GameModel model) {
+    GameModel copy = new GameModel();
+    copy.replaceAll(model);
+    return copy;
+  }
+}
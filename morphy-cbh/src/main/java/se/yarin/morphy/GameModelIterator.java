@@ -0,0 +1,189 @@
+package se.yarin.morphy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.yarin.chess.GameHeaderModel;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.GameMovesModel;
+import se.yarin.morphy.exceptions.MorphyException;
+
+import java.lang.ref.Cleaner;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Iterates over the full models of a sequence of games, decoding the moves and annotations on a
+ * pool of worker threads.
+ *
+ * <p>The games are processed in batches. For every batch, the header models are resolved and the
+ * raw move and annotation blobs are read in offset order on the calling thread, since neither the
+ * entity indexes nor the storage may be accessed concurrently. Only the decoding of the blobs is
+ * done on the worker threads. A limited number of batches are decoded ahead of the consumer, and
+ * the models are returned in the same order as the games.
+ *
+ * <p>Guiding texts are skipped since they don't have a {@link GameModel}. The worker threads are
+ * daemon threads, and are shut down when the iterator is closed, or when it becomes unreachable if
+ * it never is.
+ */
+class GameModelIterator implements Iterator<GameModel>, AutoCloseable {
+  // The number of games that are read and decoded together
+  static final int BATCH_SIZE = 256;
+
+  // The number of batches per thread that may be decoded ahead of the consumer
+  private static final int MAX_PENDING_BATCHES_PER_THREAD = 2;
+
+  private static final Cleaner cleaner = Cleaner.create();
+  private static final AtomicInteger decoderThreadCount = new AtomicInteger();
+
+  private final @NotNull Database database;
+  private final @NotNull Iterator<Game> games;
+  private final @Nullable ExecutorService executor;
+  private final @Nullable Cleaner.Cleanable executorCleanable;
+  private final int maxPending;
+  private final ArrayDeque<Future<List<GameModel>>> pending = new ArrayDeque<>();
+  private Iterator<GameModel> current = List.<GameModel>of().iterator();
+
+  GameModelIterator(@NotNull Database database, @NotNull Iterator<Game> games, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.database = database;
+    this.games = games;
+    if (parallelism > 1) {
+      ExecutorService pool =
+          Executors.newFixedThreadPool(
+              parallelism,
+              runnable -> {
+                Thread thread =
+                    new Thread(runnable, "morphy-decoder-" + decoderThreadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+              });
+      this.executor = pool;
+      // The cleaning action must not reference the iterator, or it would never become unreachable
+      this.executorCleanable = cleaner.register(this, pool::shutdownNow);
+    } else {
+      this.executor = null;
+      this.executorCleanable = null;
+    }
+    this.maxPending = parallelism * MAX_PENDING_BATCHES_PER_THREAD;
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (executor == null) {
+        Batch batch = readBatch();
+        if (batch == null) {
+          return false;
+        }
+        current = batch.decode().iterator();
+        continue;
+      }
+      fillPending();
+      if (pending.isEmpty()) {
+        return false;
+      }
+      current = await(pending.poll()).iterator();
+    }
+    return true;
+  }
+
+  @Override
+  public GameModel next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  @Override
+  public void close() {
+    if (executorCleanable != null) {
+      executorCleanable.clean();
+    }
+  }
+
+  private void fillPending() {
+    assert executor != null;
+    while (pending.size() < maxPending) {
+      Batch batch = readBatch();
+      if (batch == null) {
+        return;
+      }
+      pending.add(executor.submit(batch::decode));
+    }
+  }
+
+  private @Nullable Batch readBatch() {
+    List<Game> batchGames = new ArrayList<>(BATCH_SIZE);
+    while (batchGames.size() < BATCH_SIZE && games.hasNext()) {
+      Game game = games.next();
+      if (!game.guidingText()) {
+        batchGames.add(game);
+      }
+    }
+    if (batchGames.isEmpty()) {
+      return null;
+    }
+
+    List<GameBlobs> blobs = GameBlobs.read(database, batchGames);
+    GameHeaderModel[] headerModels = new GameHeaderModel[blobs.size()];
+    for (int i = 0; i < blobs.size(); i++) {
+      headerModels[i] = database.gameAdapter().getGameHeaderModel(blobs.get(i).game());
+    }
+    return new Batch(blobs, headerModels);
+  }
+
+  private static @NotNull List<GameModel> await(@NotNull Future<List<GameModel>> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MorphyException("Interrupted while decoding games");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      if (e.getCause() instanceof Error err) {
+        throw err;
+      }
+      throw new MorphyException(e.getCause());
+    }
+  }
+
+  private class Batch {
+    private final List<GameBlobs> blobs;
+    private final GameHeaderModel[] headerModels;
+
+    Batch(@NotNull List<GameBlobs> blobs, @NotNull GameHeaderModel @NotNull [] headerModels) {
+      this.blobs = blobs;
+      this.headerModels = headerModels;
+    }
+
+    @NotNull
+    List<GameModel> decode() {
+      List<GameModel> models = new ArrayList<>(blobs.size());
+      for (int i = 0; i < blobs.size(); i++) {
+        GameBlobs game = blobs.get(i);
+        GameMovesModel moves =
+            game.movesBlob() == null
+                ? new GameMovesModel()
+                : database.moveRepository().decodeMoves(game.movesBlob(), game.game().id());
+        if (game.annotationsBlob() != null) {
+          database.annotationRepository().decodeAnnotations(moves, game.annotationsBlob());
+        }
+        models.add(new GameModel(headerModels[i], moves));
+      }
+      return models;
+    }
+  }
+}
@@ -4,17 +4,24 @@ import org.jetbrains.annotations.NotNull;
 import se.yarin.morphy.metrics.Metrics;
 import se.yarin.morphy.metrics.MetricsKey;
 import se.yarin.morphy.metrics.MetricsRef;
+import se.yarin.morphy.metrics.MetricsRegistration;
 import se.yarin.morphy.metrics.MetricsRepository;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 public class Instrumentation extends MetricsRepository {
   private final ThreadLocal<MetricsRepository> nestedMetricsRepositories =
       ThreadLocal.withInitial(() -> this);
 
-  private final HashMap<MetricsKey, Supplier<? extends Metrics>> registeredMetrics =
-      new HashMap<>();
+  // The number of nested contexts that are open in any thread. If there are none, the current
+  // context is known to be the global one without looking at the thread local.
+  private final AtomicInteger openContexts = new AtomicInteger();
+
+  private final HashMap<MetricsKey, MetricsRegistration> registrationsByKey = new HashMap<>();
+  private final ArrayList<MetricsRegistration> registrations = new ArrayList<>();
 
   public Instrumentation() {
     super("Global");
@@ -37,17 +44,20 @@ public class Instrumentation extends MetricsRepository {
       @NotNull MetricsKey metricsKey,
       @NotNull Supplier<T> metricsFactory,
       boolean allowReregister) {
-    if (registeredMetrics.containsKey(metricsKey)) {
+    MetricsRegistration registration = registrationsByKey.get(metricsKey);
+    if (registration != null) {
       if (allowReregister) {
-        return new MetricsRef<>(this, metricsKey);
+        return new MetricsRef<>(this, metricsKey, registration.slot());
       }
       throw new IllegalArgumentException(
           "Metrics with key " + metricsKey + " has already been registered");
     }
-    registeredMetrics.put(metricsKey, metricsFactory);
-    addMetric(metricsKey, metricsFactory.get());
+    registration = new MetricsRegistration(metricsKey, registrations.size(), metricsFactory);
+    registrationsByKey.put(metricsKey, registration);
+    registrations.add(registration);
+    addMetric(registration, metricsFactory.get());
 
-    return new MetricsRef<>(this, metricsKey);
+    return new MetricsRef<>(this, metricsKey, registration.slot());
   }
 
   public synchronized @NotNull MetricsRepository pushContext(@NotNull String contextName) {
@@ -57,7 +67,8 @@ public class Instrumentation extends MetricsRepository {
   public synchronized @NotNull MetricsRepository pushContext(
       @NotNull String contextName, boolean mergeOnPop) {
     MetricsRepository nestedMetrics =
-        new MetricsRepository(contextName, getCurrent(), registeredMetrics, mergeOnPop);
+        new MetricsRepository(contextName, getCurrent(), registrations, mergeOnPop);
+    openContexts.incrementAndGet();
     nestedMetricsRepositories.set(nestedMetrics);
     return nestedMetrics;
   }
@@ -72,10 +83,14 @@ public class Instrumentation extends MetricsRepository {
       parent.merge(nestedMetrics);
     }
     nestedMetricsRepositories.set(parent);
+    openContexts.decrementAndGet();
     return nestedMetrics;
   }
 
   public @NotNull MetricsRepository getCurrent() {
+    if (openContexts.get() == 0) {
+      return this;
+    }
     return nestedMetricsRepositories.get();
   }
 }
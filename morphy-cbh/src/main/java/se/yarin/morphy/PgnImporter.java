@@ -0,0 +1,319 @@
+package se.yarin.morphy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.annotations.AnnotationTransformer;
+import se.yarin.chess.pgn.PgnFormatException;
+import se.yarin.chess.pgn.PgnGameSplitter;
+import se.yarin.chess.pgn.PgnParser;
+import se.yarin.morphy.boosters.GameEvents;
+import se.yarin.morphy.exceptions.MorphyException;
+import se.yarin.morphy.games.ImmutableExtendedGameHeader;
+import se.yarin.morphy.games.ImmutableGameHeader;
+import se.yarin.morphy.games.TopGamesStorage;
+import se.yarin.morphy.games.annotations.AnnotationConverter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports games from PGN into a database.
+ *
+ * <p>The input is split into games by a byte scanner on the calling thread. Batches of games are
+ * then parsed, converted to ChessBase annotations and serialized on a pool of worker threads. The
+ * calling thread adds the serialized games to the database in input order, committing a new
+ * transaction every {@link #DEFAULT_GAMES_PER_TRANSACTION} games so the pending games don't all
+ * have to be kept in memory.
+ *
+ * <p>Games that can't be parsed are skipped and counted in the result. If the import fails, the
+ * games in the transactions that were already committed remain in the database.
+ */
+public class PgnImporter {
+  private static final Logger log = LoggerFactory.getLogger(PgnImporter.class);
+
+  // The number of games in the units of work given to the worker threads
+  private static final int GAMES_PER_BATCH = 200;
+
+  // The number of batches per thread that may be parsed ahead of the writer
+  private static final int MAX_PENDING_BATCHES_PER_THREAD = 4;
+
+  // The number of games added in every transaction
+  public static final int DEFAULT_GAMES_PER_TRANSACTION = 5000;
+
+  private static final int MAX_LOGGED_ERRORS = 10;
+
+  private final @NotNull Database database;
+  private final int parallelism;
+  private final int gamesPerTransaction;
+  private final @NotNull PgnParser parser;
+  private final @NotNull GameAdapter gameAdapter = new GameAdapter();
+
+  public record Result(int numImported, int numFailed) {}
+
+  public PgnImporter(@NotNull Database database) {
+    this(database, 1);
+  }
+
+  public PgnImporter(@NotNull Database database, int parallelism) {
+    this(
+        database,
+        parallelism,
+        AnnotationConverter.getRoundTripConverter()::convertToChessBase,
+        DEFAULT_GAMES_PER_TRANSACTION);
+  }
+
+  /**
+   * Creates a PGN importer
+   *
+   * @param database the database to import the games into
+   * @param parallelism the number of threads to use for parsing and serializing the games
+   * @param annotationTransformer the transformer from PGN annotations to annotations that can be
+   *     stored in the database, or null to store the PGN annotations as is
+   * @param gamesPerTransaction the number of games added in every transaction
+   */
+  public PgnImporter(
+      @NotNull Database database,
+      int parallelism,
+      @Nullable AnnotationTransformer annotationTransformer,
+      int gamesPerTransaction) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    if (gamesPerTransaction < 1) {
+      throw new IllegalArgumentException("gamesPerTransaction must be at least 1");
+    }
+    this.database = database;
+    this.parallelism = parallelism;
+    this.gamesPerTransaction = gamesPerTransaction;
+    this.parser = new PgnParser(annotationTransformer);
+  }
+
+  /**
+   * Imports all games in a PGN file
+   *
+   * @param file the PGN file
+   * @param progressCallback called once for every game read from the file
+   * @return the number of imported and skipped games
+   * @throws IOException if the file couldn't be read
+   */
+  public @NotNull Result importFile(@NotNull File file, @NotNull Runnable progressCallback)
+      throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      return importGames(in, progressCallback);
+    }
+  }
+
+  /**
+   * Imports all games in a PGN stream. The text in the games is decoded as UTF-8, or as
+   * ISO-8859-1 if it's not valid UTF-8.
+   *
+   * @param in the stream to read the games from
+   * @param progressCallback called once for every game read from the stream
+   * @return the number of imported and skipped games
+   * @throws IOException if the stream couldn't be read
+   */
+  public @NotNull Result importGames(@NotNull InputStream in, @NotNull Runnable progressCallback)
+      throws IOException {
+    long start = System.currentTimeMillis();
+    PgnGameSplitter splitter = new PgnGameSplitter(in);
+    ImportState state = new ImportState(progressCallback);
+    try {
+      if (parallelism == 1) {
+        List<RawGame> batch;
+        while (!(batch = readBatch(splitter)).isEmpty()) {
+          state.addGames(parseBatch(batch));
+        }
+      } else {
+        importInParallel(splitter, state);
+      }
+      state.commit();
+    } finally {
+      state.close();
+    }
+
+    log.info(
+        "Imported {} games ({} failed) in {} ms",
+        state.numImported,
+        state.numFailed,
+        System.currentTimeMillis() - start);
+    return new Result(state.numImported, state.numFailed);
+  }
+
+  private void importInParallel(@NotNull PgnGameSplitter splitter, @NotNull ImportState state)
+      throws IOException {
+    int maxPending = parallelism * MAX_PENDING_BATCHES_PER_THREAD;
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      ArrayDeque<Future<List<ParsedGame>>> pending = new ArrayDeque<>();
+      boolean endOfInput = false;
+      while (!endOfInput || !pending.isEmpty()) {
+        while (!endOfInput && pending.size() < maxPending) {
+          List<RawGame> batch = readBatch(splitter);
+          if (batch.isEmpty()) {
+            endOfInput = true;
+          } else {
+            pending.add(executor.submit(() -> parseBatch(batch)));
+          }
+        }
+        if (!pending.isEmpty()) {
+          state.addGames(pending.poll().get());
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MorphyException("Interrupted while importing games");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      if (e.getCause() instanceof Error err) {
+        throw err;
+      }
+      throw new MorphyException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private @NotNull List<RawGame> readBatch(@NotNull PgnGameSplitter splitter) throws IOException {
+    ArrayList<RawGame> batch = new ArrayList<>(GAMES_PER_BATCH);
+    byte[] bytes;
+    while (batch.size() < GAMES_PER_BATCH && (bytes = splitter.next()) != null) {
+      batch.add(new RawGame(bytes, splitter.gameStartLine()));
+    }
+    return batch;
+  }
+
+  private @NotNull List<ParsedGame> parseBatch(@NotNull List<RawGame> batch) {
+    ArrayList<ParsedGame> games = new ArrayList<>(batch.size());
+    for (RawGame rawGame : batch) {
+      games.add(parseGame(rawGame));
+    }
+    return games;
+  }
+
+  private @NotNull ParsedGame parseGame(@NotNull RawGame rawGame) {
+    GameModel model;
+    try {
+      model = parser.parseGame(ByteBuffer.wrap(rawGame.bytes));
+    } catch (PgnFormatException | RuntimeException e) {
+      return ParsedGame.failed(
+          String.format("Failed to parse game at line %d: %s", rawGame.line, e.getMessage()));
+    }
+
+    ImmutableGameHeader.Builder header = ImmutableGameHeader.builder();
+    ImmutableExtendedGameHeader.Builder extendedHeader = ImmutableExtendedGameHeader.builder();
+    ByteBuffer movesBlob, annotationsBlob;
+    try {
+      gameAdapter.setGameData(header, extendedHeader, model);
+      movesBlob = database.moveRepository().moveSerializer().serializeMoves(model.moves());
+      annotationsBlob =
+          model.moves().countAnnotations() > 0
+              ? database
+                  .annotationRepository()
+                  .annotationSerializer()
+                  .serializeAnnotations(0, model.moves())
+              : null;
+    } catch (RuntimeException e) {
+      return ParsedGame.failed(
+          String.format("Failed to convert game at line %d: %s", rawGame.line, e.getMessage()));
+    }
+    GameEvents events =
+        database.gameEventStorage() != null ? new GameEvents(model.moves()) : null;
+
+    return new ParsedGame(
+        null, model, header, extendedHeader, movesBlob, annotationsBlob, events);
+  }
+
+  /** The raw bytes of a game, and the line it starts at in the input */
+  private record RawGame(byte @NotNull [] bytes, int line) {}
+
+  /** A parsed and serialized game ready to be added to the database, or the reason it failed */
+  private record ParsedGame(
+      @Nullable String error,
+      @Nullable GameModel model,
+      ImmutableGameHeader.@Nullable Builder header,
+      ImmutableExtendedGameHeader.@Nullable Builder extendedHeader,
+      @Nullable ByteBuffer movesBlob,
+      @Nullable ByteBuffer annotationsBlob,
+      @Nullable GameEvents events) {
+    static @NotNull ParsedGame failed(@NotNull String error) {
+      return new ParsedGame(error, null, null, null, null, null, null);
+    }
+  }
+
+  /** The state of the writer, only accessed on the calling thread */
+  private class ImportState {
+    private final @NotNull Runnable progressCallback;
+    private @Nullable DatabaseWriteTransaction txn;
+    private int numInTransaction;
+    private int numImported;
+    private int numFailed;
+
+    private ImportState(@NotNull Runnable progressCallback) {
+      this.progressCallback = progressCallback;
+    }
+
+    private void addGames(@NotNull List<ParsedGame> games) {
+      for (ParsedGame game : games) {
+        if (game.error != null) {
+          if (numFailed < MAX_LOGGED_ERRORS) {
+            log.warn(game.error);
+          } else if (numFailed == MAX_LOGGED_ERRORS) {
+            log.warn("Too many failed games; no further errors will be logged");
+          }
+          numFailed += 1;
+        } else {
+          if (txn == null) {
+            txn = new DatabaseWriteTransaction(database);
+          }
+          assert game.model != null && game.header != null && game.extendedHeader != null;
+          assert game.movesBlob != null;
+          txn.buildEntities(game.header, game.extendedHeader, game.model.header());
+          txn.putGame(
+              0,
+              game.header,
+              game.extendedHeader,
+              game.movesBlob,
+              game.annotationsBlob,
+              TopGamesStorage.TopGameStatus.UNKNOWN,
+              game.events);
+          numImported += 1;
+          if (++numInTransaction == gamesPerTransaction) {
+            commit();
+          }
+        }
+        progressCallback.run();
+      }
+    }
+
+    private void commit() {
+      if (txn != null) {
+        txn.commit();
+        txn.close();
+        txn = null;
+        numInTransaction = 0;
+      }
+    }
+
+    private void close() {
+      if (txn != null) {
+        txn.close();
+        txn = null;
+      }
+    }
+  }
+}
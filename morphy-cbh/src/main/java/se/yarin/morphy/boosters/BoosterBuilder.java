@@ -0,0 +1,343 @@
+package se.yarin.morphy.boosters;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseContext;
+import se.yarin.morphy.DatabaseMode;
+import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.Game;
+import se.yarin.morphy.entities.EntityType;
+import se.yarin.morphy.exceptions.MorphyException;
+import se.yarin.morphy.games.MoveOffsetStorage;
+import se.yarin.morphy.util.CBUtil;
+import se.yarin.morphy.util.GameRanges;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds the search boosters of a database from scratch: the game entity indexes (.cit/.cib and
+ * .cit2/.cib2), the game events (.cbb) and the move offsets (.cbgi).
+ *
+ * <p>All boosters are built in a single pass over the games. The games are split into ranges that
+ * are processed on multiple threads; each thread reads the game headers and decodes the moves of
+ * its range. The results are then consumed in game id order by the calling thread, which writes
+ * the game events and move offsets and collects the games of every entity. The entity indexes are
+ * written at the end, with the blocks of each entity laid out consecutively.
+ *
+ * <p>The games of all entities are kept in memory until the end, which requires about 4 bytes for
+ * every entity reference in the database.
+ */
+public class BoosterBuilder {
+  private static final Logger log = LoggerFactory.getLogger(BoosterBuilder.class);
+
+  // The extensions of the files built by this class
+  public static final List<String> BOOSTER_EXTENSIONS =
+      List.of(".cit", ".cib", ".cit2", ".cib2", ".cbb", ".cbgi");
+
+  // The move offsets storage rewrites large chunks on every update, so write them in batches
+  private static final int MOVE_OFFSETS_BATCH_SIZE = 100_000;
+
+  private final @NotNull Database database;
+  private final int parallelism;
+
+  public BoosterBuilder(@NotNull Database database) {
+    this(database, 1);
+  }
+
+  /**
+   * Creates a booster builder for a database
+   *
+   * @param database the database to build the boosters from
+   * @param parallelism the number of threads to use when reading the games
+   */
+  public BoosterBuilder(@NotNull Database database, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.database = database;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Rebuilds the search boosters of a database on disk, replacing the existing boosters if there
+   * are any. The database is opened in read-only mode while the boosters are built into a
+   * temporary directory next to it, so a failure leaves the database untouched. Once done, each
+   * new booster file is atomically moved into place.
+   *
+   * @param file the database file (.cbh); the database must not be opened elsewhere
+   * @param parallelism the number of threads to use when reading the games
+   * @param progressCallback called once for every game; may be called from multiple threads
+   * @throws IOException if there was an error reading the database or writing the boosters
+   */
+  public static void rebuild(
+      @NotNull File file, int parallelism, @NotNull Runnable progressCallback) throws IOException {
+    File directory = file.getAbsoluteFile().getParentFile();
+    Path tempDirectory =
+        Files.createTempDirectory(directory.toPath(), "." + CBUtil.baseName(file) + "-boosters");
+    try {
+      File tempFile = new File(tempDirectory.toFile(), file.getName());
+      try (Database database = Database.open(file, DatabaseMode.READ_ONLY)) {
+        new BoosterBuilder(database, parallelism).build(tempFile, progressCallback);
+      }
+
+      for (String extension : BOOSTER_EXTENSIONS) {
+        Files.move(
+            CBUtil.fileWithExtension(tempFile, extension).toPath(),
+            CBUtil.fileWithExtension(file, extension).toPath(),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      try (Stream<Path> remainingFiles = Files.list(tempDirectory)) {
+        for (Path path : remainingFiles.toList()) {
+          Files.delete(path);
+        }
+      }
+      Files.delete(tempDirectory);
+    }
+  }
+
+  /**
+   * Builds the search boosters into new files.
+   *
+   * @param file the name of the database file (.cbh) to build the boosters for; none of the
+   *     booster files may exist
+   * @param progressCallback called once for every game; may be called from multiple threads
+   * @throws IOException if there was an error creating the booster files
+   */
+  public void build(@NotNull File file, @NotNull Runnable progressCallback) throws IOException {
+    if (!CBUtil.extension(file).equals(".cbh")) {
+      throw new IllegalArgumentException("The extension of the database file must be .cbh");
+    }
+
+    DatabaseContext context = new DatabaseContext();
+    GameEntityIndex primary =
+        GameEntityIndex.create(
+            CBUtil.fileWithExtension(file, ".cit"),
+            CBUtil.fileWithExtension(file, ".cib"),
+            context);
+    GameEntityIndex secondary =
+        GameEntityIndex.create(
+            CBUtil.fileWithExtension(file, ".cit2"),
+            CBUtil.fileWithExtension(file, ".cib2"),
+            context);
+    GameEventStorage gameEvents =
+        GameEventStorage.create(CBUtil.fileWithExtension(file, ".cbb"), context);
+    MoveOffsetStorage moveOffsets =
+        MoveOffsetStorage.create(CBUtil.fileWithExtension(file, ".cbgi"), context);
+    try {
+      build(primary, secondary, gameEvents, moveOffsets, progressCallback);
+    } finally {
+      primary.close();
+      secondary.close();
+      gameEvents.close();
+      moveOffsets.close();
+    }
+  }
+
+  /**
+   * Builds the search boosters into the given empty storages.
+   *
+   * @param primary the game entity index for the primary entity types
+   * @param secondary the game entity index for the secondary entity types (game tags)
+   * @param gameEvents the game events storage
+   * @param moveOffsets the move offsets storage
+   * @param progressCallback called once for every game; may be called from multiple threads
+   */
+  public void build(
+      @NotNull GameEntityIndex primary,
+      @NotNull GameEntityIndex secondary,
+      @NotNull GameEventStorage gameEvents,
+      @NotNull MoveOffsetStorage moveOffsets,
+      @NotNull Runnable progressCallback) {
+    if (gameEvents.count() != 0 || moveOffsets.count() != 0) {
+      throw new IllegalStateException("The booster storages must be empty");
+    }
+
+    long start = System.currentTimeMillis();
+
+    EnumMap<EntityType, EntityGames> entityGames = new EnumMap<>(EntityType.class);
+    for (EntityType entityType : EntityType.values()) {
+      entityGames.put(entityType, new EntityGames());
+    }
+
+    HashMap<Integer, Integer> pendingMoveOffsets = new HashMap<>();
+    GameRanges.process(
+        database.count(),
+        parallelism,
+        (startId, endId) -> processRange(startId, endId, progressCallback),
+        range -> {
+          gameEvents.putAll(range.startId, Arrays.asList(range.gameEvents));
+          for (int i = 0; i < range.numGames; i++) {
+            pendingMoveOffsets.put(range.startId + i, range.movesOffsets[i]);
+          }
+          if (pendingMoveOffsets.size() >= MOVE_OFFSETS_BATCH_SIZE) {
+            moveOffsets.putOffsets(pendingMoveOffsets);
+            pendingMoveOffsets.clear();
+          }
+          for (EntityType entityType : EntityType.values()) {
+            entityGames.get(entityType).addAll(range.references.get(entityType));
+          }
+        });
+    moveOffsets.putOffsets(pendingMoveOffsets);
+
+    putEntities(primary, GameEntityIndex.PRIMARY_TYPES, entityGames);
+    putEntities(secondary, GameEntityIndex.SECONDARY_TYPES, entityGames);
+
+    log.info(
+        "Built search boosters for {} games in {} ms",
+        database.count(),
+        System.currentTimeMillis() - start);
+  }
+
+  private void putEntities(
+      @NotNull GameEntityIndex gameEntityIndex,
+      @NotNull List<EntityType> entityTypes,
+      @NotNull Map<EntityType, EntityGames> entityGames) {
+    int numEntities = 0;
+    EnumMap<EntityType, int[][]> gameIds = new EnumMap<>(EntityType.class);
+    for (EntityType entityType : entityTypes) {
+      EntityGames games = entityGames.get(entityType);
+      numEntities =
+          Math.max(
+              numEntities,
+              Math.max(database.entityIndex(entityType).capacity(), games.numEntities()));
+      gameIds.put(entityType, games.toArrays());
+    }
+    gameEntityIndex.putAll(numEntities, gameIds);
+  }
+
+  private @NotNull RangeResult processRange(int startId, int endId, Runnable progressCallback) {
+    RangeResult result = new RangeResult(startId, endId - startId);
+    try (var txn = new DatabaseReadTransaction(database)) {
+      for (Game game : txn.iterable(startId, endId)) {
+        int gameId = game.id();
+        int index = gameId - startId;
+
+        result.movesOffsets[index] = game.header().movesOffset();
+
+        if (!game.guidingText()) {
+          result.add(EntityType.PLAYER, game.whitePlayerId(), gameId);
+          result.add(EntityType.PLAYER, game.blackPlayerId(), gameId);
+          result.add(EntityType.TEAM, game.whiteTeamId(), gameId);
+          result.add(EntityType.TEAM, game.blackTeamId(), gameId);
+        }
+        result.add(EntityType.TOURNAMENT, game.tournamentId(), gameId);
+        result.add(EntityType.ANNOTATOR, game.annotatorId(), gameId);
+        result.add(EntityType.SOURCE, game.sourceId(), gameId);
+        result.add(EntityType.GAME_TAG, game.gameTagId(), gameId);
+
+        GameEvents events = new GameEvents();
+        if (!game.guidingText()) {
+          try {
+            events =
+                new GameEvents(database.moveRepository().getMoves(game.getMovesOffset(), gameId));
+          } catch (MorphyException e) {
+            log.warn("Failed to get the game events of game {}: {}", gameId, e.getMessage());
+          }
+        }
+        result.gameEvents[index] = events;
+
+        progressCallback.run();
+      }
+    }
+    return result;
+  }
+
+  /** The boosters data of a consecutive range of games */
+  private static class RangeResult {
+    private final int startId;
+    private final int numGames;
+    private final GameEvents[] gameEvents;
+    private final int[] movesOffsets;
+    private final EnumMap<EntityType, References> references = new EnumMap<>(EntityType.class);
+
+    private RangeResult(int startId, int numGames) {
+      this.startId = startId;
+      this.numGames = numGames;
+      this.gameEvents = new GameEvents[numGames];
+      this.movesOffsets = new int[numGames];
+      for (EntityType entityType : EntityType.values()) {
+        references.put(entityType, new References());
+      }
+    }
+
+    private void add(EntityType entityType, int entityId, int gameId) {
+      if (entityId < 0) {
+        // For Teams, -1 is a valid reference meaning "no team"
+        return;
+      }
+      references.get(entityType).add(entityId, gameId);
+    }
+  }
+
+  /** A list of (entity id, game id) pairs, in the order the games were read */
+  private static class References {
+    private int[] data = new int[32];
+    private int size;
+
+    private void add(int entityId, int gameId) {
+      if (size + 2 > data.length) {
+        data = Arrays.copyOf(data, data.length * 2);
+      }
+      data[size++] = entityId;
+      data[size++] = gameId;
+    }
+  }
+
+  /** The sorted game ids of every entity of one type */
+  private static class EntityGames {
+    private int[][] gameIds = new int[16][];
+    private int[] sizes = new int[16];
+    private int numEntities;
+
+    private void addAll(@NotNull References references) {
+      for (int i = 0; i < references.size; i += 2) {
+        add(references.data[i], references.data[i + 1]);
+      }
+    }
+
+    private void add(int entityId, int gameId) {
+      if (entityId >= gameIds.length) {
+        int newLength = Math.max(gameIds.length * 2, entityId + 1);
+        gameIds = Arrays.copyOf(gameIds, newLength);
+        sizes = Arrays.copyOf(sizes, newLength);
+      }
+      int[] games = gameIds[entityId];
+      if (games == null) {
+        games = gameIds[entityId] = new int[4];
+      } else if (sizes[entityId] == games.length) {
+        games = gameIds[entityId] = Arrays.copyOf(games, games.length * 2);
+      }
+      games[sizes[entityId]++] = gameId;
+      numEntities = Math.max(numEntities, entityId + 1);
+    }
+
+    private int numEntities() {
+      return numEntities;
+    }
+
+    private int[][] toArrays() {
+      int[][] result = new int[numEntities][];
+      for (int i = 0; i < numEntities; i++) {
+        if (gameIds[i] != null) {
+          result[i] = Arrays.copyOf(gameIds[i], sizes[i]);
+          gameIds[i] = null; // Release the memory as we go
+        }
+      }
+      return result;
+    }
+  }
+}
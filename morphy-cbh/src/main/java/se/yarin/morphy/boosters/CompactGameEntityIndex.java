@@ -0,0 +1,488 @@
+package se.yarin.morphy.boosters;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import se.yarin.morphy.entities.EntityType;
+import se.yarin.morphy.exceptions.MorphyIOException;
+import se.yarin.morphy.exceptions.MorphyInvalidDataException;
+import se.yarin.morphy.exceptions.MorphyNotSupportedException;
+import se.yarin.util.PagedBlobChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A read-only, Morphy-native alternative to the ChessBase game entity index (.cit/.cib).
+ *
+ * <p>The game ids of every entity are stored contiguously as delta encoded varints, with a skip
+ * pointer every {@link #SKIP_INTERVAL} games. Reading the games of an entity is a single
+ * sequential read instead of following a chain of scattered blocks, the data is typically several
+ * times smaller than the .cib file, and {@link PostingIterator#advance(int)} makes it cheap to
+ * intersect the games of multiple entities.
+ *
+ * <p>The index can't be updated. It's created from a {@link GameEntityIndex} and can be converted
+ * back to one using {@link #copyEntities(GameEntityIndex)}.
+ *
+ * <p>File layout (all integers are big endian):
+ *
+ * <pre>
+ *   header:    magic, version, numEntities, numTypes, numTypes x entity type ordinal
+ *   table:     numTypes x (numEntities + 1) x file offset of the posting list
+ *   postings:  for every entity type, for every entity id, in that order:
+ *                varint count (including duplicates); if count > 0:
+ *                (count - 1) / SKIP_INTERVAL skip pointers (int lastGameIdBefore, int dataOffset)
+ *                count varint deltas to the previous game id
+ * </pre>
+ */
+public class CompactGameEntityIndex {
+  private static final int MAGIC = 0x4D474549; // MGEI
+  public static final int VERSION = 1;
+
+  // The number of game ids between every skip pointer
+  public static final int SKIP_INTERVAL = 128;
+
+  private final @NotNull List<EntityType> entityTypes;
+  private final int numEntities;
+  private final int tableOffset;
+
+  // Exactly one of these is set
+  private final @Nullable ByteBuffer data;
+  private final @Nullable FileChannel channel;
+
+  private CompactGameEntityIndex(@Nullable ByteBuffer data, @Nullable FileChannel channel) {
+    this.data = data;
+    this.channel = channel;
+
+    ByteBuffer buf = read(0, 16);
+    if (buf.getInt() != MAGIC) {
+      throw new MorphyInvalidDataException("Not a compact game entity index");
+    }
+    int version = buf.getInt();
+    if (version != VERSION) {
+      throw new MorphyNotSupportedException(
+          "Unsupported compact game entity index version: " + version);
+    }
+    this.numEntities = buf.getInt();
+    int numTypes = buf.getInt();
+    ByteBuffer typeBuf = read(16, numTypes * 4);
+    ArrayList<EntityType> types = new ArrayList<>();
+    for (int i = 0; i < numTypes; i++) {
+      types.add(EntityType.values()[typeBuf.getInt()]);
+    }
+    this.entityTypes = Collections.unmodifiableList(types);
+    this.tableOffset = 16 + numTypes * 4;
+  }
+
+  /**
+   * Creates an in-memory compact index with the same contents as a game entity index.
+   *
+   * @param source the index to copy the games from
+   * @return an in-memory compact index
+   */
+  public static @NotNull CompactGameEntityIndex fromGameEntityIndex(
+      @NotNull GameEntityIndex source) {
+    return new CompactGameEntityIndex(serialize(source), null);
+  }
+
+  /**
+   * Creates a new compact index file with the same contents as a game entity index.
+   *
+   * @param file the file to create; it must not exist
+   * @param source the index to copy the games from
+   * @return the opened compact index
+   * @throws IOException if the file couldn't be written
+   */
+  public static @NotNull CompactGameEntityIndex create(
+      @NotNull File file, @NotNull GameEntityIndex source) throws IOException {
+    ByteBuffer buf = serialize(source);
+    try (FileChannel out = FileChannel.open(file.toPath(), WRITE, CREATE_NEW)) {
+      while (buf.hasRemaining()) {
+        out.write(buf);
+      }
+    }
+    return open(file);
+  }
+
+  public static @NotNull CompactGameEntityIndex open(@NotNull File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), READ);
+    try {
+      return new CompactGameEntityIndex(null, channel);
+    } catch (RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public @NotNull List<EntityType> entityTypes() {
+    return entityTypes;
+  }
+
+  public int getNumEntities() {
+    return numEntities;
+  }
+
+  public long numDiskPages() {
+    return channel != null ? size() / PagedBlobChannel.PAGE_SIZE + 1 : 0;
+  }
+
+  /** @return the total size of the index in bytes */
+  public long size() {
+    try {
+      return data != null ? data.limit() : channel.size();
+    } catch (IOException e) {
+      throw new MorphyIOException(e);
+    }
+  }
+
+  /**
+   * Copies all entities in this index to an empty game entity index in the ChessBase format.
+   *
+   * @param target the index to copy to; it must be empty and manage the same entity types
+   */
+  public void copyEntities(@NotNull GameEntityIndex target) {
+    if (!new HashSet<>(entityTypes).equals(target.entityTypes())) {
+      throw new IllegalArgumentException("The target index must manage the same entity types");
+    }
+    EnumMap<EntityType, int[][]> gameIds = new EnumMap<>(EntityType.class);
+    for (EntityType type : entityTypes) {
+      int[][] typeGameIds = new int[numEntities][];
+      for (int entityId = 0; entityId < numEntities; entityId++) {
+        typeGameIds[entityId] = getGameIdsArray(entityId, type, true);
+      }
+      gameIds.put(type, typeGameIds);
+    }
+    target.putAll(numEntities, gameIds);
+  }
+
+  /**
+   * Gets the game ids for a given entity and type
+   *
+   * @param entityId the id of the entity to get games for
+   * @param type the type of entity
+   * @param includeDuplicates if true, duplicate games are included multiple times in the output
+   * @return an array of game ids in sorted order
+   */
+  public int @NotNull [] getGameIdsArray(
+      int entityId, @NotNull EntityType type, boolean includeDuplicates) {
+    PostingIterator iterator = iterator(entityId, type, includeDuplicates);
+    int[] gameIds = new int[iterator.count];
+    int size = 0;
+    while (iterator.hasNext()) {
+      gameIds[size++] = iterator.nextInt();
+    }
+    return size == gameIds.length ? gameIds : Arrays.copyOf(gameIds, size);
+  }
+
+  /** @see GameEntityIndex#getGameIds(int, EntityType, boolean) */
+  public @NotNull List<Integer> getGameIds(
+      int entityId, @NotNull EntityType type, boolean includeDuplicates) {
+    return Arrays.stream(getGameIdsArray(entityId, type, includeDuplicates)).boxed().toList();
+  }
+
+  /**
+   * Gets the number of games an entity occurs in, without decoding the game ids
+   *
+   * @param entityId the id of the entity
+   * @param type the type of entity
+   * @return the number of games, with games where the entity occurs twice counted twice
+   */
+  public int count(int entityId, @NotNull EntityType type) {
+    return iterator(entityId, type, true).count;
+  }
+
+  /**
+   * Gets the ids of the games that all the given entities occur in
+   *
+   * @param entityIds the ids of the entities
+   * @param types the type of each entity
+   * @return the common game ids in sorted order, without duplicates
+   */
+  public int @NotNull [] intersect(
+      int @NotNull [] entityIds, @NotNull EntityType @NotNull [] types) {
+    if (entityIds.length != types.length || entityIds.length == 0) {
+      throw new IllegalArgumentException("There must be an entity type for every entity id");
+    }
+    PostingIterator[] iterators = new PostingIterator[entityIds.length];
+    for (int i = 0; i < entityIds.length; i++) {
+      iterators[i] = iterator(entityIds[i], types[i], false);
+    }
+    // Drive the intersection by the shortest list, and skip ahead in the others
+    Arrays.sort(iterators, Comparator.comparingInt(it -> it.count));
+
+    int[] result = new int[iterators[0].count];
+    int size = 0;
+    int candidate = iterators[0].advance(1);
+    while (candidate != PostingIterator.NO_MORE_GAMES) {
+      int next = candidate;
+      for (int i = 1; i < iterators.length && next == candidate; i++) {
+        next = iterators[i].advance(candidate);
+      }
+      if (next == candidate) {
+        result[size++] = candidate;
+        next = candidate + 1;
+      }
+      candidate =
+          next == PostingIterator.NO_MORE_GAMES
+              ? PostingIterator.NO_MORE_GAMES
+              : iterators[0].advance(next);
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  public @NotNull PostingIterator iterator(int entityId, @NotNull EntityType type) {
+    return iterator(entityId, type, false);
+  }
+
+  public @NotNull PostingIterator iterator(
+      int entityId, @NotNull EntityType type, boolean includeDuplicates) {
+    int order = entityTypes.indexOf(type);
+    if (order < 0) {
+      throw new IllegalArgumentException(
+          "Entity type " + type.nameSingularCapitalized() + " is not managed by this index");
+    }
+    if (entityId < 0 || entityId >= numEntities) {
+      return new PostingIterator(ByteBuffer.allocate(0), includeDuplicates);
+    }
+    ByteBuffer offsets = read(tableOffset + ((long) order * (numEntities + 1) + entityId) * 4, 8);
+    int start = offsets.getInt(), end = offsets.getInt();
+    if (end < start) {
+      throw new MorphyInvalidDataException(
+          String.format(
+              "Invalid posting list offsets for %s with id %d",
+              type.nameSingular(), entityId));
+    }
+    return new PostingIterator(read(start, end - start), includeDuplicates);
+  }
+
+  public @NotNull Stream<Integer> stream(int entityId, @NotNull EntityType type) {
+    PostingIterator iterator = iterator(entityId, type, false);
+    return StreamSupport.stream(
+        Spliterators.spliteratorUnknownSize(
+            iterator, Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL),
+        false);
+  }
+
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  private @NotNull ByteBuffer read(long offset, int length) {
+    if (data != null) {
+      return data.slice((int) offset, length);
+    }
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    try {
+      while (buf.hasRemaining()) {
+        if (channel.read(buf, offset + buf.position()) < 0) {
+          throw new MorphyInvalidDataException("Unexpected end of compact game entity index");
+        }
+      }
+    } catch (IOException e) {
+      throw new MorphyIOException(e);
+    }
+    return buf.flip();
+  }
+
+  /**
+   * Iterates over the sorted game ids of a single entity. The skip pointers are used in {@link
+   * #advance(int)} to avoid decoding game ids that are not needed.
+   */
+  public static class PostingIterator implements PrimitiveIterator.OfInt {
+    public static final int NO_MORE_GAMES = -1;
+
+    private final @NotNull ByteBuffer buf;
+    private final boolean includeDuplicates;
+    private final int count;
+    private final int skipsStart;
+    private final int numSkips;
+    private final int dataStart;
+
+    // The number of game ids decoded so far (including skipped over duplicates)
+    private int index;
+    // The last decoded game id
+    private int current;
+
+    private PostingIterator(@NotNull ByteBuffer buf, boolean includeDuplicates) {
+      this.buf = buf;
+      this.includeDuplicates = includeDuplicates;
+      this.count = buf.hasRemaining() ? readVarInt(buf) : 0;
+      this.numSkips = count > 0 ? (count - 1) / SKIP_INTERVAL : 0;
+      this.skipsStart = buf.position();
+      this.dataStart = skipsStart + numSkips * 8;
+      buf.position(dataStart);
+    }
+
+    /**
+     * @return the number of game ids in the list, including duplicates, regardless of how many
+     *     have been read
+     */
+    public int count() {
+      return count;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (includeDuplicates || index == 0) {
+        return index < count;
+      }
+      // Peek past any duplicates of the current game id
+      int savedPosition = buf.position(), savedIndex = index;
+      while (index < count) {
+        if (readVarInt(buf) != 0) {
+          buf.position(savedPosition);
+          index = savedIndex;
+          return true;
+        }
+        index += 1;
+        savedPosition = buf.position();
+        savedIndex = index;
+      }
+      return false;
+    }
+
+    @Override
+    public int nextInt() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("End of game iteration reached");
+      }
+      current += readVarInt(buf);
+      index += 1;
+      return current;
+    }
+
+    /**
+     * Advances to the first game id that is at least the given target. If the last returned game
+     * id is already at least the target, it's returned again and the iterator doesn't move.
+     *
+     * @param target the game id to advance to
+     * @return the first game id that is not less than target, or {@link #NO_MORE_GAMES}
+     */
+    public int advance(int target) {
+      if (index > 0 && current >= target) {
+        return current;
+      }
+
+      // Find the last skip pointer where all game ids before it are less than the target
+      int low = 0, high = numSkips - 1, skip = -1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (buf.getInt(skipsStart + mid * 8) < target) {
+          skip = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      if (skip >= 0 && (skip + 1) * SKIP_INTERVAL > index) {
+        current = buf.getInt(skipsStart + skip * 8);
+        buf.position(dataStart + buf.getInt(skipsStart + skip * 8 + 4));
+        index = (skip + 1) * SKIP_INTERVAL;
+      }
+
+      while (hasNext()) {
+        int gameId = nextInt();
+        if (gameId >= target) {
+          return gameId;
+        }
+      }
+      return NO_MORE_GAMES;
+    }
+  }
+
+  private static @NotNull ByteBuffer serialize(@NotNull GameEntityIndex source) {
+    List<EntityType> types = source.orderedEntityTypes();
+    int numEntities = source.getNumEntities();
+    int tableOffset = 16 + types.size() * 4;
+    int postingsOffset = tableOffset + types.size() * (numEntities + 1) * 4;
+
+    ByteBuffer table = ByteBuffer.allocate(postingsOffset - tableOffset);
+    ByteBuffer postings = ByteBuffer.allocate(1024);
+    for (EntityType type : types) {
+      for (int entityId = 0; entityId < numEntities; entityId++) {
+        table.putInt(postingsOffset + postings.position());
+        List<Integer> gameIds = source.getGameIds(entityId, type, true);
+        postings =
+            ensureCapacity(
+                postings, 5 + gameIds.size() * 5 + (gameIds.size() / SKIP_INTERVAL) * 8);
+        putPostings(postings, gameIds);
+      }
+      table.putInt(postingsOffset + postings.position());
+    }
+
+    ByteBuffer buf = ByteBuffer.allocate(postingsOffset + postings.position());
+    buf.putInt(MAGIC);
+    buf.putInt(VERSION);
+    buf.putInt(numEntities);
+    buf.putInt(types.size());
+    for (EntityType type : types) {
+      buf.putInt(type.ordinal());
+    }
+    buf.put(table.flip());
+    buf.put(postings.flip());
+    return buf.flip();
+  }
+
+  private static void putPostings(@NotNull ByteBuffer buf, @NotNull List<Integer> gameIds) {
+    if (gameIds.isEmpty()) {
+      return;
+    }
+    putVarInt(buf, gameIds.size());
+    int numSkips = (gameIds.size() - 1) / SKIP_INTERVAL;
+    int skipsStart = buf.position();
+    int dataStart = skipsStart + numSkips * 8;
+    buf.position(dataStart);
+    int last = 0;
+    for (int i = 0; i < gameIds.size(); i++) {
+      if (i > 0 && i % SKIP_INTERVAL == 0) {
+        int skip = i / SKIP_INTERVAL - 1;
+        buf.putInt(skipsStart + skip * 8, last);
+        buf.putInt(skipsStart + skip * 8 + 4, buf.position() - dataStart);
+      }
+      int gameId = gameIds.get(i);
+      if (gameId < last) {
+        throw new MorphyInvalidDataException("The game ids of an entity are not sorted");
+      }
+      putVarInt(buf, gameId - last);
+      last = gameId;
+    }
+  }
+
+  private static @NotNull ByteBuffer ensureCapacity(@NotNull ByteBuffer buf, int needed) {
+    if (buf.remaining() >= needed) {
+      return buf;
+    }
+    ByteBuffer newBuf =
+        ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + needed));
+    newBuf.put(buf.flip());
+    return newBuf;
+  }
+
+  static void putVarInt(@NotNull ByteBuffer buf, int value) {
+    while ((value & ~0x7F) != 0) {
+      buf.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    buf.put((byte) value);
+  }
+
+  static int readVarInt(@NotNull ByteBuffer buf) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buf.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new MorphyInvalidDataException("Invalid varint in compact game entity index");
+  }
+}
@@ -18,6 +18,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.OpenOption;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -53,6 +54,13 @@ public class GameEntityIndex implements MetricsProvider {
     return citOrder.keySet();
   }
 
+  /** @return the entity types managed by this index, in the order they appear in the .cit file */
+  public @NotNull List<EntityType> orderedEntityTypes() {
+    EntityType[] types = new EntityType[citOrder.size()];
+    citOrder.forEach((type, order) -> types[order] = type);
+    return List.of(types);
+  }
+
   public GameEntityIndex(@NotNull List<EntityType> entityTypes) {
     this(entityTypes, null);
   }
@@ -460,6 +468,54 @@ public class GameEntityIndex implements MetricsProvider {
         new IndexBlockHeader(currentHeader.itemSize(), nextNewBlockId, nextDeletedId));
   }
 
+  /**
+   * Writes the games of all entities to an empty index. The blocks of every entity are laid out
+   * consecutively, and every index table item is only written once, so this is much faster than
+   * calling {@link #updateEntity(int, EntityType, Map)} for every entity.
+   *
+   * @param numEntities the number of items in the index table
+   * @param gameIds for every entity type in this index, an array indexed by entity id containing
+   *     the sorted game ids the entity occurs in (an id occurs twice if the entity occurs twice in
+   *     the game); null or empty if the entity occurs in no games
+   */
+  public void putAll(int numEntities, @NotNull Map<EntityType, int[][]> gameIds) {
+    if (!citStorage.isEmpty() || !cibStorage.isEmpty() || getNumBlocks() != 0) {
+      throw new IllegalStateException("The index must be empty");
+    }
+
+    int chunkSize = gamesPerBlock();
+    int nextBlockId = 0;
+    for (int entityId = 0; entityId < numEntities; entityId++) {
+      int[] headTails = IndexItem.emptyCIT(citOrder.size()).headTails();
+      for (Map.Entry<EntityType, Integer> entry : citOrder.entrySet()) {
+        int[][] typeGameIds = gameIds.get(entry.getKey());
+        int[] entityGameIds =
+            typeGameIds != null && entityId < typeGameIds.length ? typeGameIds[entityId] : null;
+        if (entityGameIds == null || entityGameIds.length == 0) {
+          continue;
+        }
+        headTails[entry.getValue() * 2] = nextBlockId;
+        for (int cur = 0; cur < entityGameIds.length; cur += chunkSize) {
+          int end = Math.min(entityGameIds.length, cur + chunkSize);
+          List<Integer> blockGames =
+              Arrays.stream(entityGameIds, cur, end).boxed().collect(Collectors.toList());
+          int currentBlockId = nextBlockId++;
+          cibStorage.putItem(
+              currentBlockId,
+              new IndexBlockItem(
+                  end < entityGameIds.length ? nextBlockId : -1,
+                  0,
+                  Collections.unmodifiableList(blockGames)));
+          headTails[entry.getValue() * 2 + 1] = currentBlockId;
+        }
+      }
+      citStorage.putItem(entityId, new IndexItem(headTails));
+    }
+
+    IndexBlockHeader currentHeader = cibStorage.getHeader();
+    cibStorage.putHeader(new IndexBlockHeader(currentHeader.itemSize(), nextBlockId, 0));
+  }
+
   public @NotNull List<Integer> getDeletedBlockIds() {
     ArrayList<Integer> result = new ArrayList<>();
     int current = cibStorage.getHeader().deletedBlockId();
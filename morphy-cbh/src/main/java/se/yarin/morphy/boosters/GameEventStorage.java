@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.OpenOption;
+import java.util.List;
 import java.util.Set;
 
 import static java.nio.file.StandardOpenOption.*;
@@ -141,6 +142,24 @@ public class GameEventStorage
     }
   }
 
+  /**
+   * Puts the game events of consecutive games, appending them to the storage.
+   *
+   * @param firstGameId the id of the first game; must be the game after the last game in storage
+   * @param gameEvents the game events of the games, in order
+   */
+  public void putAll(int firstGameId, @NotNull List<GameEvents> gameEvents) {
+    if (firstGameId != count() + 1) {
+      throw new IllegalArgumentException(
+          "Game events must be appended after the last game (%d != %d)"
+              .formatted(firstGameId, count() + 1));
+    }
+    for (int i = 0; i < gameEvents.size(); i++) {
+      storage.putItem(firstGameId + i, gameEvents.get(i));
+    }
+    storage.putHeader(Prolog.withCount(firstGameId + gameEvents.size() - 1));
+  }
+
   public @NotNull GameEvents get(int gameId) {
     return storage.getItem(gameId);
   }
@@ -40,6 +40,9 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>> implements M
   private final AtomicInteger currentVersion;
   private final MetricsRef<ItemMetrics> itemMetricsRef;
 
+  // Optional in-memory index over the entity names; maintained on commit if enabled
+  private volatile @Nullable EntityNameIndex nameIndex;
+
   public @NotNull EntityIndexHeader storageHeader() {
     return storage.getHeader();
   }
@@ -127,6 +130,53 @@ public abstract class EntityIndex<T extends Entity & Comparable<T>> implements M
     return new EntityIndexReadTransaction<>(this);
   }
 
+  /**
+   * Gets the name index of this entity index, if it has been enabled.
+   *
+   * @return the name index, or null if not enabled
+   */
+  public @Nullable EntityNameIndex nameIndex() {
+    return nameIndex;
+  }
+
+  /**
+   * Enables the name index for this entity index, allowing fast case-insensitive prefix, infix and
+   * fuzzy name searches. The index is built by scanning all entities, and will then be kept up to
+   * date when committing write transactions. If the name index is already enabled, nothing happens.
+   *
+   * @return the name index
+   * @throws MorphyNotSupportedException if the entity type has no searchable name
+   */
+  public @NotNull EntityNameIndex enableNameIndex() {
+    if (!EntityNameIndex.isSupported(entityType)) {
+      throw new MorphyNotSupportedException(
+          "Name index is not supported for " + entityType.namePlural());
+    }
+    // Hold the update lock so no transaction can be committed while building the index
+    try (var txn = new EntityIndexReadTransaction<>(this, DatabaseContext.DatabaseLock.UPDATE)) {
+      if (nameIndex == null) {
+        long start = System.currentTimeMillis();
+        EntityNameIndex newNameIndex = new EntityNameIndex(entityType);
+        txn.stream()
+            .forEach(
+                entity -> newNameIndex.put(entity.id(), EntityNameIndex.searchableName(entity)));
+        nameIndex = newNameIndex;
+        log.info(
+            String.format(
+                "Built %s name index with %d entities in %d ms",
+                entityType.nameSingular(),
+                newNameIndex.count(),
+                System.currentTimeMillis() - start));
+      }
+      return nameIndex;
+    }
+  }
+
+  /** Disables the name index, releasing the memory it occupies */
+  public void disableNameIndex() {
+    nameIndex = null;
+  }
+
   int bumpVersion() {
     return this.currentVersion.incrementAndGet();
   }
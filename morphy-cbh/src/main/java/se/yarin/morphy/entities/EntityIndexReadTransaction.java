@@ -21,7 +21,12 @@ public class EntityIndexReadTransaction<T extends Entity & Comparable<T>>
   private final int version;
 
   public EntityIndexReadTransaction(@NotNull EntityIndex<T> index) {
-    super(DatabaseContext.DatabaseLock.READ, index);
+    this(index, DatabaseContext.DatabaseLock.READ);
+  }
+
+  EntityIndexReadTransaction(
+      @NotNull EntityIndex<T> index, @NotNull DatabaseContext.DatabaseLock lock) {
+    super(lock, index);
 
     this.version = index.currentVersion();
   }
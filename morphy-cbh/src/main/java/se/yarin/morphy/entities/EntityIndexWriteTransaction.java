@@ -8,6 +8,8 @@ import se.yarin.morphy.DatabaseContext;
 import se.yarin.morphy.exceptions.MorphyEntityIndexException;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -113,10 +115,23 @@ public class EntityIndexWriteTransaction<T extends Entity & Comparable<T>>
     try {
       validateCommit();
 
+      // The name index changes are resolved before the nodes are written, since the old versions
+      // of the nodes are needed, but only applied once all nodes have been written
+      EntityNameIndex nameIndex = index().nameIndex();
+      Map<Integer, String> nameChanges = new HashMap<>();
+      if (nameIndex != null) {
+        int committedCapacity = index().storage.getHeader().capacity();
+        for (EntityNode node : changes.values()) {
+          resolveNameChange(nameChanges, node, committedCapacity);
+        }
+      }
       for (EntityNode node : changes.values()) {
         index().storage.putItem(node.getId(), node);
       }
       index().storage.putHeader(header);
+      if (nameIndex != null) {
+        nameChanges.forEach(nameIndex::put);
+      }
 
       if (additionalCommitAction != null) {
         additionalCommitAction.run();
@@ -134,6 +149,25 @@ public class EntityIndexWriteTransaction<T extends Entity & Comparable<T>>
     }
   }
 
+  // Must be called before the node is written to the storage, so the old version is still there.
+  // A null name means the entity is removed from the name index.
+  private void resolveNameChange(
+      @NotNull Map<Integer, String> nameChanges, @NotNull EntityNode node, int committedCapacity) {
+    if (node.isDeleted()) {
+      nameChanges.put(node.getId(), null);
+      return;
+    }
+    if (node.getId() < committedCapacity) {
+      // Most changed nodes are only due to rebalancing of the tree, so avoid deserializing those
+      EntityNode oldNode = index().storage.getItem(node.getId());
+      if (!oldNode.isDeleted()
+          && Arrays.equals(oldNode.getSerializedEntity(), node.getSerializedEntity())) {
+        return;
+      }
+    }
+    nameChanges.put(node.getId(), EntityNameIndex.searchableName(deserializeEntity(node)));
+  }
+
   protected void clearChanges() {
     this.header = index().storage.getHeader();
     this.version = index().currentVersion();
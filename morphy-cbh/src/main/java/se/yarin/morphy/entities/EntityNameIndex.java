@@ -0,0 +1,415 @@
+package se.yarin.morphy.entities;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory side-car index over the names of the entities in an {@link EntityIndex}.
+ *
+ * <p>The entity index itself is an AVL tree ordered by the case-sensitive entity key, which makes
+ * case-insensitive, diacritic-insensitive and substring searches degrade into full table scans. This
+ * index keeps a normalized (lower case, diacritics folded, whitespace collapsed) version of every
+ * entity name, both in a sorted map for prefix searches and as trigram posting lists for infix and
+ * fuzzy searches.
+ *
+ * <p>The index is built from a full scan of the entity index when enabled (see {@link
+ * EntityIndex#enableNameIndex()}) and is then kept up to date by {@link
+ * EntityIndexWriteTransaction} on commit. Modifications are only done while holding the database
+ * write lock, and searches must be done while holding at least the read lock (i.e. within a
+ * transaction).
+ */
+public class EntityNameIndex {
+  private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  // Minimum trigram similarity for a fuzzy match if not otherwise specified
+  public static final double DEFAULT_FUZZY_SIMILARITY = 0.4;
+
+  public enum MatchType {
+    PREFIX,
+    INFIX,
+    FUZZY
+  }
+
+  /**
+   * A search in the name index
+   *
+   * @param text the text to search for; will be normalized before searching
+   * @param matchType how to match the text
+   */
+  public record Search(@NotNull String text, @NotNull MatchType matchType) {
+    public static @NotNull Search prefix(@NotNull String text) {
+      return new Search(text, MatchType.PREFIX);
+    }
+
+    public static @NotNull Search infix(@NotNull String text) {
+      return new Search(text, MatchType.INFIX);
+    }
+
+    public static @NotNull Search fuzzy(@NotNull String text) {
+      return new Search(text, MatchType.FUZZY);
+    }
+
+    @Override
+    public String toString() {
+      return "%s '%s'".formatted(matchType.name().toLowerCase(Locale.ROOT), text);
+    }
+  }
+
+  private final @NotNull EntityType entityType;
+  // Normalized name for every indexed entity id; null if the id is not in use
+  private final @NotNull ArrayList<String> keysById = new ArrayList<>();
+  private final @NotNull TreeMap<String, Postings> keys = new TreeMap<>();
+  private final @NotNull HashMap<String, Postings> trigrams = new HashMap<>();
+  private int numEntities;
+
+  EntityNameIndex(@NotNull EntityType entityType) {
+    this.entityType = entityType;
+  }
+
+  public @NotNull EntityType entityType() {
+    return entityType;
+  }
+
+  /** @return the number of entities in the name index */
+  public int count() {
+    return numEntities;
+  }
+
+  /**
+   * Gets the name of an entity as used by the name index, or null if the entity type doesn't
+   * support name searches.
+   *
+   * @param entity the entity
+   * @return the non-normalized searchable name of the entity
+   */
+  public static @Nullable String searchableName(@NotNull Entity entity) {
+    if (entity instanceof Player player) {
+      return player.getFullName();
+    }
+    if (entity instanceof Tournament tournament) {
+      return tournament.title();
+    }
+    if (entity instanceof Team team) {
+      return team.title();
+    }
+    if (entity instanceof Source source) {
+      return source.title();
+    }
+    return null;
+  }
+
+  /**
+   * Checks if an entity type has searchable names that can be put in a name index
+   *
+   * @param entityType the entity type
+   * @return true if an index of the given entity type supports a name index
+   */
+  public static boolean isSupported(@NotNull EntityType entityType) {
+    return switch (entityType) {
+      case PLAYER, TOURNAMENT, TEAM, SOURCE -> true;
+      default -> false;
+    };
+  }
+
+  /**
+   * Normalizes a name so that searches are case and diacritic insensitive. For instance, "Dvořák,
+   * Štěpán" is normalized to "dvorak, stepan".
+   *
+   * @param name the name to normalize
+   * @return the normalized name
+   */
+  public static @NotNull String normalize(@NotNull String name) {
+    String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+    String folded = DIACRITICS.matcher(decomposed).replaceAll("");
+    return WHITESPACE.matcher(folded.toLowerCase(Locale.ROOT)).replaceAll(" ").strip();
+  }
+
+  /**
+   * Checks if a normalized name matches a normalized search text
+   *
+   * @param matchType the type of match
+   * @param normalizedText the normalized search text
+   * @param normalizedName the normalized name
+   * @return true if the name matches
+   */
+  public static boolean matches(
+      @NotNull MatchType matchType, @NotNull String normalizedText, @NotNull String normalizedName) {
+    return switch (matchType) {
+      case PREFIX -> normalizedName.startsWith(normalizedText);
+      case INFIX -> normalizedName.contains(normalizedText);
+      case FUZZY ->
+          isFuzzyInfix(normalizedText, normalizedName)
+              || similarity(normalizedText, normalizedName) >= DEFAULT_FUZZY_SIMILARITY;
+    };
+  }
+
+  // A fuzzy search also matches all names containing the search text, as long as it's long enough
+  // to share at least one trigram with the name
+  private static boolean isFuzzyInfix(
+      @NotNull String normalizedText, @NotNull String normalizedName) {
+    return normalizedText.length() >= 3 && normalizedName.contains(normalizedText);
+  }
+
+  /**
+   * Calculates the trigram similarity between two normalized strings, as the number of shared
+   * trigrams divided by the total number of distinct trigrams in both strings.
+   *
+   * @return a value between 0.0 (nothing in common) and 1.0 (same set of trigrams)
+   */
+  public static double similarity(@NotNull String normalizedA, @NotNull String normalizedB) {
+    Set<String> a = paddedTrigrams(normalizedA), b = paddedTrigrams(normalizedB);
+    if (a.isEmpty() || b.isEmpty()) {
+      return 0.0;
+    }
+    int shared = 0;
+    for (String trigram : a) {
+      if (b.contains(trigram)) {
+        shared += 1;
+      }
+    }
+    return 1.0 * shared / (a.size() + b.size() - shared);
+  }
+
+  // The trigrams of a string, used for infix searches
+  private static @NotNull Set<String> trigrams(@NotNull String s) {
+    HashSet<String> result = new HashSet<>();
+    for (int i = 0; i + 3 <= s.length(); i++) {
+      result.add(s.substring(i, i + 3));
+    }
+    return result;
+  }
+
+  // The trigrams of a string including word boundaries, used for fuzzy searches
+  private static @NotNull Set<String> paddedTrigrams(@NotNull String s) {
+    return s.isEmpty() ? Set.of() : trigrams("  " + s + " ");
+  }
+
+  /**
+   * Adds, updates or removes the name of an entity in the index.
+   *
+   * @param id the id of the entity
+   * @param name the new (non-normalized) name of the entity, or null if the entity was deleted
+   */
+  void put(int id, @Nullable String name) {
+    String newKey = name == null ? null : normalize(name);
+    String oldKey = id < keysById.size() ? keysById.get(id) : null;
+    if (Objects.equals(oldKey, newKey)) {
+      return;
+    }
+    if (oldKey != null) {
+      removeKey(id, oldKey);
+    }
+    while (keysById.size() <= id) {
+      keysById.add(null);
+    }
+    keysById.set(id, newKey);
+    if (newKey != null) {
+      addKey(id, newKey);
+    }
+  }
+
+  private void addKey(int id, @NotNull String key) {
+    numEntities += 1;
+    keys.computeIfAbsent(key, k -> new Postings()).add(id);
+    for (String trigram : paddedTrigrams(key)) {
+      trigrams.computeIfAbsent(trigram, k -> new Postings()).add(id);
+    }
+  }
+
+  private void removeKey(int id, @NotNull String key) {
+    numEntities -= 1;
+    removePosting(keys, key, id);
+    for (String trigram : paddedTrigrams(key)) {
+      removePosting(trigrams, trigram, id);
+    }
+  }
+
+  private static void removePosting(
+      @NotNull Map<String, Postings> map, @NotNull String key, int id) {
+    Postings postings = map.get(key);
+    if (postings != null && postings.remove(id) && postings.size() == 0) {
+      map.remove(key);
+    }
+  }
+
+  /**
+   * Searches the index.
+   *
+   * @param search the search to perform
+   * @return the ids of all matching entities, in ascending order
+   */
+  public int[] search(@NotNull Search search) {
+    String text = normalize(search.text());
+    return switch (search.matchType()) {
+      case PREFIX -> prefixSearch(text);
+      case INFIX -> infixSearch(text);
+      case FUZZY -> fuzzySearch(text, DEFAULT_FUZZY_SIMILARITY);
+    };
+  }
+
+  private int[] prefixSearch(@NotNull String normalizedPrefix) {
+    Collection<Postings> matching =
+        keys.subMap(normalizedPrefix, true, normalizedPrefix + Character.MAX_VALUE, false).values();
+    int[] result = new int[matching.stream().mapToInt(Postings::size).sum()];
+    int pos = 0;
+    for (Postings postings : matching) {
+      pos = postings.copyTo(result, pos);
+    }
+    // An entity only has a single key, so there are no duplicates
+    Arrays.sort(result);
+    return result;
+  }
+
+  private int[] infixSearch(@NotNull String normalizedText) {
+    if (normalizedText.length() < 3) {
+      // Too short to use the trigrams, but the keys are in memory so no disk access is needed
+      return scanKeys(key -> key.contains(normalizedText));
+    }
+
+    // Intersect the posting lists, starting with the shortest one
+    List<Postings> lists = new ArrayList<>();
+    for (String trigram : trigrams(normalizedText)) {
+      Postings postings = trigrams.get(trigram);
+      if (postings == null) {
+        return new int[0];
+      }
+      lists.add(postings);
+    }
+    lists.sort(Comparator.comparingInt(Postings::size));
+    int[] candidates = lists.get(0).toSortedArray();
+    int numCandidates = candidates.length;
+    for (int i = 1; i < lists.size() && numCandidates > 0; i++) {
+      numCandidates = lists.get(i).retainAll(candidates, numCandidates);
+    }
+
+    // Trigrams may match in the wrong order, so the actual key must be verified
+    int numMatches = 0;
+    for (int i = 0; i < numCandidates; i++) {
+      if (keysById.get(candidates[i]).contains(normalizedText)) {
+        candidates[numMatches++] = candidates[i];
+      }
+    }
+    return Arrays.copyOf(candidates, numMatches);
+  }
+
+  private int[] fuzzySearch(@NotNull String normalizedText, double minSimilarity) {
+    Set<String> searchTrigrams = paddedTrigrams(normalizedText);
+    if (searchTrigrams.isEmpty()) {
+      return new int[0];
+    }
+
+    // Count the number of shared trigrams for every entity having at least one in common
+    HashMap<Integer, Integer> sharedCount = new HashMap<>();
+    for (String trigram : searchTrigrams) {
+      Postings postings = trigrams.get(trigram);
+      if (postings != null) {
+        postings.forEach(id -> sharedCount.merge(id, 1, Integer::sum));
+      }
+    }
+
+    int[] result = new int[sharedCount.size()];
+    int numMatches = 0;
+    for (Map.Entry<Integer, Integer> entry : sharedCount.entrySet()) {
+      String key = keysById.get(entry.getKey());
+      int shared = entry.getValue();
+      int total = searchTrigrams.size() + paddedTrigrams(key).size() - shared;
+      if (1.0 * shared / total >= minSimilarity || isFuzzyInfix(normalizedText, key)) {
+        result[numMatches++] = entry.getKey();
+      }
+    }
+    result = Arrays.copyOf(result, numMatches);
+    Arrays.sort(result);
+    return result;
+  }
+
+  private int[] scanKeys(@NotNull Predicate<String> predicate) {
+    Postings result = new Postings();
+    for (int id = 0; id < keysById.size(); id++) {
+      String key = keysById.get(id);
+      if (key != null && predicate.test(key)) {
+        result.add(id);
+      }
+    }
+    return result.toSortedArray();
+  }
+
+  /**
+   * A growable, sorted list of entity ids. Ids are typically appended in increasing order when
+   * building the index, making the common case an amortized O(1) operation.
+   */
+  private static class Postings {
+    private int[] ids = new int[2];
+    private int size;
+
+    int size() {
+      return size;
+    }
+
+    void add(int id) {
+      int pos = size == 0 || ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+      if (pos >= 0) {
+        return;
+      }
+      pos = -pos - 1;
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
+      }
+      System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+      ids[pos] = id;
+      size += 1;
+    }
+
+    int copyTo(int[] target, int offset) {
+      System.arraycopy(ids, 0, target, offset, size);
+      return offset + size;
+    }
+
+    boolean remove(int id) {
+      int pos = Arrays.binarySearch(ids, 0, size, id);
+      if (pos < 0) {
+        return false;
+      }
+      System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+      size -= 1;
+      return true;
+    }
+
+    void forEach(@NotNull IntConsumer consumer) {
+      for (int i = 0; i < size; i++) {
+        consumer.accept(ids[i]);
+      }
+    }
+
+    /**
+     * Keeps only the candidates that exist in this posting list, by merging the two sorted lists.
+     *
+     * @return the number of remaining candidates, stored first in the candidates array
+     */
+    int retainAll(int[] candidates, int numCandidates) {
+      int i = 0, j = 0, kept = 0;
+      while (i < numCandidates && j < size) {
+        if (candidates[i] < ids[j]) {
+          i++;
+        } else if (candidates[i] > ids[j]) {
+          j++;
+        } else {
+          candidates[kept++] = candidates[i];
+          i++;
+          j++;
+        }
+      }
+      return kept;
+    }
+
+    int[] toSortedArray() {
+      return Arrays.copyOf(ids, size);
+    }
+  }
+}
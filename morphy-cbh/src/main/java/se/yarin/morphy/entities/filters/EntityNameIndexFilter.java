@@ -0,0 +1,27 @@
+package se.yarin.morphy.entities.filters;
+
+import org.jetbrains.annotations.Nullable;
+import se.yarin.morphy.entities.EntityNameIndex;
+
+/**
+ * An entity filter that can use an {@link EntityNameIndex} to find candidate entities, if the
+ * entity index has one enabled.
+ */
+public interface EntityNameIndexFilter<T> extends EntityFilter<T> {
+  /**
+   * Gets the search to perform in the name index. The search must return all entities matching
+   * the filter, but may also return additional entities.
+   *
+   * @return a search in the name index, or null if the name index can't be used for this filter
+   */
+  @Nullable
+  EntityNameIndex.Search nameIndexSearch();
+
+  /**
+   * @return true if the result of {@link #nameIndexSearch()} contains exactly the matching
+   *     entities, so the filter doesn't have to be applied again
+   */
+  default boolean isCoveredByNameIndex() {
+    return false;
+  }
+}
@@ -0,0 +1,62 @@
+package se.yarin.morphy.entities.filters;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.entities.Entity;
+import se.yarin.morphy.entities.EntityNameIndex;
+import se.yarin.morphy.entities.EntityType;
+
+/**
+ * A case and diacritic insensitive filter on the name of an entity (full name for players, title
+ * for tournaments, teams and sources). Supports prefix, infix and fuzzy matching; all of them can
+ * be answered by an {@link EntityNameIndex} if one is enabled, otherwise a table scan is needed.
+ */
+public class NameSearchFilter<T extends Entity> implements EntityNameIndexFilter<T> {
+  private final @NotNull EntityType entityType;
+  private final @NotNull EntityNameIndex.Search search;
+  private final @NotNull String normalizedText;
+
+  public NameSearchFilter(
+      @NotNull EntityType entityType,
+      @NotNull String text,
+      @NotNull EntityNameIndex.MatchType matchType) {
+    if (!EntityNameIndex.isSupported(entityType)) {
+      throw new IllegalArgumentException(
+          "Name search is not supported for " + entityType.namePlural());
+    }
+    this.entityType = entityType;
+    this.search = new EntityNameIndex.Search(text, matchType);
+    this.normalizedText = EntityNameIndex.normalize(text);
+  }
+
+  public @NotNull EntityNameIndex.Search search() {
+    return search;
+  }
+
+  @Override
+  public boolean matches(@NotNull T entity) {
+    String name = EntityNameIndex.searchableName(entity);
+    return name != null
+        && EntityNameIndex.matches(
+            search.matchType(), normalizedText, EntityNameIndex.normalize(name));
+  }
+
+  @Override
+  public EntityType entityType() {
+    return entityType;
+  }
+
+  @Override
+  public @NotNull EntityNameIndex.Search nameIndexSearch() {
+    return search;
+  }
+
+  @Override
+  public boolean isCoveredByNameIndex() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "name " + search;
+  }
+}
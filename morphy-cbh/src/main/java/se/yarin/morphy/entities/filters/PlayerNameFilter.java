@@ -2,13 +2,15 @@ package se.yarin.morphy.entities.filters;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import se.yarin.morphy.entities.EntityNameIndex;
 import se.yarin.morphy.entities.EntityType;
 import se.yarin.morphy.entities.Player;
 import se.yarin.util.ByteBufferUtil;
 
 import java.nio.ByteBuffer;
 
-public class PlayerNameFilter implements EntityIndexFilter<Player> {
+public class PlayerNameFilter
+    implements EntityIndexFilter<Player>, EntityNameIndexFilter<Player> {
   private final @NotNull String lastName;
   private final @NotNull String firstName;
   private final boolean caseSensitive;
@@ -104,6 +106,12 @@ public class PlayerNameFilter implements EntityIndexFilter<Player> {
     }
   }
 
+  @Override
+  public @NotNull EntityNameIndex.Search nameIndexSearch() {
+    // Matching normalized prefixes yields a superset of the entities matching this filter
+    return EntityNameIndex.Search.prefix(lastName);
+  }
+
   @Override
   public EntityType entityType() {
     return EntityType.PLAYER;
@@ -1,10 +1,11 @@
 package se.yarin.morphy.entities.filters;
 
 import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.entities.EntityNameIndex;
 import se.yarin.morphy.entities.EntityType;
 import se.yarin.morphy.entities.Source;
 
-public class SourceTitleFilter implements EntityFilter<Source> {
+public class SourceTitleFilter implements EntityNameIndexFilter<Source> {
   private final @NotNull String title;
   private final boolean caseSensitive;
   private final boolean exactMatch;
@@ -40,6 +41,12 @@ public class SourceTitleFilter implements EntityFilter<Source> {
     }
   }
 
+  @Override
+  public @NotNull EntityNameIndex.Search nameIndexSearch() {
+    // Matching normalized prefixes yields a superset of the entities matching this filter
+    return EntityNameIndex.Search.prefix(title);
+  }
+
   @Override
   public EntityType entityType() {
     return EntityType.SOURCE;
@@ -1,10 +1,11 @@
 package se.yarin.morphy.entities.filters;
 
 import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.entities.EntityNameIndex;
 import se.yarin.morphy.entities.EntityType;
 import se.yarin.morphy.entities.Team;
 
-public class TeamTitleFilter implements EntityFilter<Team> {
+public class TeamTitleFilter implements EntityNameIndexFilter<Team> {
   private final @NotNull String title;
   private final boolean caseSensitive;
   private final boolean exactMatch;
@@ -38,6 +39,12 @@ public class TeamTitleFilter implements EntityFilter<Team> {
     }
   }
 
+  @Override
+  public @NotNull EntityNameIndex.Search nameIndexSearch() {
+    // Matching normalized prefixes yields a superset of the entities matching this filter
+    return EntityNameIndex.Search.prefix(title);
+  }
+
   @Override
   public EntityType entityType() {
     return EntityType.TEAM;
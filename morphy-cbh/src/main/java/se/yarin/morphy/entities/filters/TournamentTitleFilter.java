@@ -1,13 +1,14 @@
 package se.yarin.morphy.entities.filters;
 
 import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.entities.EntityNameIndex;
 import se.yarin.morphy.entities.EntityType;
 import se.yarin.morphy.entities.Tournament;
 import se.yarin.util.ByteBufferUtil;
 
 import java.nio.ByteBuffer;
 
-public class TournamentTitleFilter implements EntityFilter<Tournament> {
+public class TournamentTitleFilter implements EntityNameIndexFilter<Tournament> {
   @NotNull private final String title;
   private final boolean caseSensitive;
   private final boolean exactMatch;
@@ -52,6 +53,12 @@ public class TournamentTitleFilter implements EntityFilter<Tournament> {
     }
   }
 
+  @Override
+  public @NotNull EntityNameIndex.Search nameIndexSearch() {
+    // Matching normalized prefixes yields a superset of the entities matching this filter
+    return EntityNameIndex.Search.prefix(title);
+  }
+
   @Override
   public EntityType entityType() {
     return EntityType.TOURNAMENT;
@@ -8,6 +8,7 @@ import se.yarin.chess.GameMovesModel;
 import se.yarin.morphy.DatabaseContext;
 import se.yarin.morphy.DatabaseMode;
 import se.yarin.morphy.games.annotations.AnnotationsSerializer;
+import se.yarin.morphy.storage.BlobBatchReader;
 import se.yarin.morphy.storage.BlobSizeRetriever;
 import se.yarin.morphy.storage.BlobStorage;
 import se.yarin.morphy.storage.FileBlobStorage;
@@ -19,6 +20,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
+import java.util.List;
 import java.util.Set;
 
 import static java.nio.file.StandardOpenOption.*;
@@ -29,6 +31,7 @@ public class AnnotationRepository implements BlobSizeRetriever {
   private final @NotNull BlobStorage storage;
   private final @NotNull DatabaseContext context;
   private final @NotNull AnnotationsSerializer annotationsSerializer;
+  private boolean lazyDecoding = false; // If true, annotations are decoded when first accessed
 
   /** Creates a new in-memory annotation repository that is initially empty. */
   public AnnotationRepository() {
@@ -68,6 +71,17 @@ public class AnnotationRepository implements BlobSizeRetriever {
     return annotationsSerializer;
   }
 
+  /**
+   * Sets whether annotations should be decoded lazily. If true, loading the annotations of a game
+   * only finds out which node each annotation belongs to; the annotations of a node are decoded
+   * the first time they are accessed.
+   *
+   * @param lazyDecoding true if annotations should be decoded lazily
+   */
+  public void setLazyDecoding(boolean lazyDecoding) {
+    this.lazyDecoding = lazyDecoding;
+  }
+
   public static AnnotationRepository create(@NotNull File file, @Nullable DatabaseContext context)
       throws IOException {
     return new AnnotationRepository(file, Set.of(READ, WRITE, CREATE_NEW), context);
@@ -137,7 +151,21 @@ public class AnnotationRepository implements BlobSizeRetriever {
    */
   public void getAnnotations(@NotNull GameMovesModel model, long ofs) {
     if (ofs > 0) {
-      ByteBuffer blob = storage.getBlob(ofs);
+      decodeAnnotations(model, storage.getBlob(ofs));
+    }
+  }
+
+  /**
+   * Decorates a game with annotations from a blob that has already been read from the repository.
+   * This method may be called from any thread.
+   *
+   * @param model the game to decorate with annotations
+   * @param blob the annotations blob of the game
+   */
+  public void decodeAnnotations(@NotNull GameMovesModel model, @NotNull ByteBuffer blob) {
+    if (lazyDecoding) {
+      annotationsSerializer.deserializeAnnotationsLazily(blob, model);
+    } else {
       annotationsSerializer.deserializeAnnotations(blob, model);
     }
   }
@@ -156,6 +184,18 @@ public class AnnotationRepository implements BlobSizeRetriever {
     return storage.getBlob(ofs).asReadOnlyBuffer();
   }
 
+  /**
+   * Gets the serialized annotations of many games at once. The blobs are read in ascending offset
+   * order, with nearby blobs read in a single range.
+   *
+   * @param offsets the offsets in the repository where the annotations data are stored; 0 if the
+   *     game has no annotations
+   * @return the blobs in the same order as the offsets, or null where the offset was 0
+   */
+  public @Nullable ByteBuffer @NotNull [] getAnnotationsBlobs(long @NotNull [] offsets) {
+    return BlobBatchReader.readBlobs(storage, this, offsets);
+  }
+
   /**
    * Gets the size of the annotation blob that make up the annotations of the game.
    *
@@ -207,6 +247,16 @@ public class AnnotationRepository implements BlobSizeRetriever {
     return storage.appendBlob(blob);
   }
 
+  /**
+   * Appends the annotations of multiple new games to the annotation repository in a single write
+   *
+   * @param blobs the serialized annotations to store
+   * @return the offsets where the annotations were stored
+   */
+  public long[] appendAnnotationsBlobs(@NotNull List<ByteBuffer> blobs) {
+    return storage.appendBlobs(blobs);
+  }
+
   /**
    * Removes an annotation blob
    *
@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import se.yarin.chess.CompactGameMoves;
 import se.yarin.chess.GameMovesModel;
 import se.yarin.morphy.DatabaseContext;
 import se.yarin.morphy.DatabaseMode;
@@ -19,6 +20,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.OpenOption;
+import java.util.List;
 import java.util.Set;
 
 import static java.nio.file.StandardOpenOption.*;
@@ -151,6 +153,18 @@ public class MoveRepository implements BlobSizeRetriever {
     return blob.asReadOnlyBuffer();
   }
 
+  /**
+   * Gets the serialized moves of many games at once. The blobs are read in ascending offset order,
+   * with nearby blobs read in a single range, which is much faster than getting them one by one
+   * when the games are scattered in the repository.
+   *
+   * @param offsets the offsets in the repository where the moves data are stored; 0 if none
+   * @return the blobs in the same order as the offsets, or null where the offset was 0
+   */
+  public @Nullable ByteBuffer @NotNull [] getMovesBlobs(long @NotNull [] offsets) {
+    return BlobBatchReader.readBlobs(storage, this, offsets);
+  }
+
   /**
    * Gets the size of the moves blob that make up the moves of the game.
    *
@@ -171,7 +185,19 @@ public class MoveRepository implements BlobSizeRetriever {
    *     the moves
    */
   public GameMovesModel getMoves(long offset, int gameId) throws MorphyInvalidDataException {
-    ByteBuffer blob = storage.getBlob(offset);
+    return decodeMoves(storage.getBlob(offset), gameId);
+  }
+
+  /**
+   * Decodes the moves of a game from a blob that has already been read from the repository. This
+   * method may be called from any thread.
+   *
+   * @param blob the moves blob of the game
+   * @param gameId the id of the game to decode; only used in logging statements
+   * @return a model of the game
+   */
+  public GameMovesModel decodeMoves(@NotNull ByteBuffer blob, int gameId)
+      throws MorphyInvalidDataException {
     try {
       return moveSerializer.deserializeMoves(blob, validateDecodedMoves, gameId);
     } catch (MorphyMoveDecodingException e) {
@@ -181,6 +207,28 @@ public class MoveRepository implements BlobSizeRetriever {
     }
   }
 
+  /**
+   * Decodes the moves of a game into a compact model, without validating the moves. This is much
+   * faster than {@link #decodeMoves(ByteBuffer, int)} and intended for bulk processing of trusted
+   * databases; annotations are not included. If the move data can't be decoded this way, the moves
+   * are decoded in the ordinary way instead. This method may be called from any thread.
+   *
+   * @param blob the moves blob of the game
+   * @param gameId the id of the game to decode; only used in logging statements
+   * @return a compact model of the game moves
+   */
+  public CompactGameMoves decodeMovesTrusted(@NotNull ByteBuffer blob, int gameId)
+      throws MorphyInvalidDataException {
+    int position = blob.position();
+    try {
+      return moveSerializer.deserializeMovesTrusted(blob, gameId);
+    } catch (MorphyMoveDecodingException e) {
+      log.debug("Trusted decoding of moves in game " + gameId + " failed: " + e.getMessage());
+      blob.position(position);
+      return CompactGameMoves.of(decodeMoves(blob, gameId));
+    }
+  }
+
   /**
    * Gets the contents of a text entry from the move repository
    *
@@ -239,6 +287,16 @@ public class MoveRepository implements BlobSizeRetriever {
     return storage.appendBlob(blob);
   }
 
+  /**
+   * Appends the moves of multiple new games to the move repository in a single write
+   *
+   * @param blobs the serialized moves to store
+   * @return the offsets where the game moves were stored
+   */
+  public long[] appendMovesBlobs(@NotNull List<ByteBuffer> blobs) {
+    return storage.appendBlobs(blobs);
+  }
+
   /**
    * Removes a moves blob
    *
@@ -0,0 +1,154 @@
+package se.yarin.morphy.games.annotations;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.chess.annotations.Annotation;
+
+import java.util.Arrays;
+
+/**
+ * The clock times, time spent and computer evaluations along the main line of a game, as compact
+ * primitive arrays. Every series has one entry per annotation, in the order they are stored in the
+ * game (normally by ply). The ply is the number of moves from the start of the game (or setup
+ * position) to the annotated node.
+ *
+ * @param gameId the id of the game
+ * @param whiteClock the remaining time on White's clock, in centiseconds
+ * @param blackClock the remaining time on Black's clock, in centiseconds
+ * @param timeSpent the time spent on the move, in seconds
+ * @param evaluation the computer evaluations
+ */
+public record AnnotationTimeSeries(
+    int gameId,
+    @NotNull Series whiteClock,
+    @NotNull Series blackClock,
+    @NotNull Series timeSpent,
+    @NotNull EvaluationSeries evaluation) {
+
+  private static final int WHITE_CLOCK_TYPE =
+      new WhiteClockAnnotation.Serializer().getAnnotationType();
+  private static final int BLACK_CLOCK_TYPE =
+      new BlackClockAnnotation.Serializer().getAnnotationType();
+  private static final int TIME_SPENT_TYPE =
+      new TimeSpentAnnotation.Serializer().getAnnotationType();
+  private static final int EVALUATION_TYPE =
+      new ComputerEvaluationAnnotation.Serializer().getAnnotationType();
+
+  /**
+   * A series of integer values.
+   *
+   * @param plies the ply of every value
+   * @param values the values
+   */
+  public record Series(int @NotNull [] plies, int @NotNull [] values) {
+    public int size() {
+      return plies.length;
+    }
+  }
+
+  /**
+   * A series of computer evaluations.
+   *
+   * @param plies the ply of every evaluation
+   * @param evals the evaluations, see {@link ComputerEvaluationAnnotation#eval()}
+   * @param evalTypes the evaluation types, see {@link ComputerEvaluationAnnotation#evalType()}
+   * @param depths the search depths, see {@link ComputerEvaluationAnnotation#ply()}
+   */
+  public record EvaluationSeries(
+      int @NotNull [] plies,
+      int @NotNull [] evals,
+      int @NotNull [] evalTypes,
+      int @NotNull [] depths) {
+    public int size() {
+      return plies.length;
+    }
+  }
+
+  /**
+   * @return true if there are no values in any of the series
+   */
+  public boolean isEmpty() {
+    return whiteClock.size() == 0
+        && blackClock.size() == 0
+        && timeSpent.size() == 0
+        && evaluation.size() == 0;
+  }
+
+  public static @NotNull AnnotationTimeSeries empty(int gameId) {
+    return new Builder().build(gameId);
+  }
+
+  static boolean isTimeSeriesAnnotation(int annotationType) {
+    return annotationType == WHITE_CLOCK_TYPE
+        || annotationType == BLACK_CLOCK_TYPE
+        || annotationType == TIME_SPENT_TYPE
+        || annotationType == EVALUATION_TYPE;
+  }
+
+  static class Builder {
+    private final SeriesBuilder whiteClock = new SeriesBuilder(1);
+    private final SeriesBuilder blackClock = new SeriesBuilder(1);
+    private final SeriesBuilder timeSpent = new SeriesBuilder(1);
+    private final SeriesBuilder evaluation = new SeriesBuilder(3);
+
+    void add(int ply, @NotNull Annotation annotation) {
+      if (annotation instanceof WhiteClockAnnotation clock) {
+        whiteClock.add(ply, clock.clockTime());
+      } else if (annotation instanceof BlackClockAnnotation clock) {
+        blackClock.add(ply, clock.clockTime());
+      } else if (annotation instanceof TimeSpentAnnotation spent) {
+        timeSpent.add(ply, spent.hours() * 3600 + spent.minutes() * 60 + spent.seconds());
+      } else if (annotation instanceof ComputerEvaluationAnnotation eval) {
+        evaluation.add(ply, eval.eval(), eval.evalType(), eval.ply());
+      }
+    }
+
+    @NotNull
+    AnnotationTimeSeries build(int gameId) {
+      return new AnnotationTimeSeries(
+          gameId,
+          new Series(whiteClock.plies(), whiteClock.values(0)),
+          new Series(blackClock.plies(), blackClock.values(0)),
+          new Series(timeSpent.plies(), timeSpent.values(0)),
+          new EvaluationSeries(
+              evaluation.plies(), evaluation.values(0), evaluation.values(1), evaluation.values(2)));
+    }
+  }
+
+  /** Collects (ply, value...) tuples in a single array. */
+  private static class SeriesBuilder {
+    private final int numValues;
+    private int[] data = new int[0];
+    private int size;
+
+    SeriesBuilder(int numValues) {
+      this.numValues = numValues;
+    }
+
+    void add(int ply, int... values) {
+      int stride = numValues + 1;
+      if ((size + 1) * stride > data.length) {
+        data = Arrays.copyOf(data, Math.max(16 * stride, data.length * 2));
+      }
+      data[size * stride] = ply;
+      System.arraycopy(values, 0, data, size * stride + 1, numValues);
+      size += 1;
+    }
+
+    int[] plies() {
+      return column(0);
+    }
+
+    int[] values(int index) {
+      return column(index + 1);
+    }
+
+    private int[] column(int index) {
+      int stride = numValues + 1;
+      int[] column = new int[size];
+      for (int i = 0; i < size; i++) {
+        column[i] = data[i * stride + index];
+      }
+      return column;
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package se.yarin.morphy.games.annotations;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.morphy.DatabaseContext;
@@ -11,6 +12,7 @@ import se.yarin.morphy.metrics.MetricsRef;
 import se.yarin.util.ByteBufferUtil;
 import se.yarin.chess.GameMovesModel;
 import se.yarin.chess.annotations.Annotation;
+import se.yarin.chess.annotations.LazyAnnotations;
 
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -119,8 +121,15 @@ public final class AnnotationsSerializer {
   }
 
   public void deserializeAnnotations(@NotNull ByteBuffer buf, @NotNull GameMovesModel model) {
-    itemMetricsRef.update(metrics -> metrics.addDeserialization(1));
+    long start = System.nanoTime();
+    try {
+      decodeAnnotations(buf, model);
+    } finally {
+      itemMetricsRef.get().addTimedDeserialization(System.nanoTime() - start);
+    }
+  }
 
+  private void decodeAnnotations(@NotNull ByteBuffer buf, @NotNull GameMovesModel model) {
     if (!buf.hasRemaining()) {
       return;
     }
@@ -176,6 +185,196 @@ public final class AnnotationsSerializer {
     }
   }
 
+  /**
+   * Attaches the annotations in a serialized annotations blob to the nodes of a {@link
+   * GameMovesModel} without decoding them. The blob is only scanned to find out which annotation
+   * records belong to which node; the records of a node are decoded the first time the annotations
+   * of the node are accessed, see {@link GameMovesModel.Node#setLazyAnnotations(LazyAnnotations)}.
+   * The model keeps a reference to the buffer, so it must not be modified afterwards.
+   *
+   * @param buf the serialized annotations
+   * @param model the game model to attach the annotations to
+   */
+  public void deserializeAnnotationsLazily(
+      @NotNull ByteBuffer buf, @NotNull GameMovesModel model) {
+    itemMetricsRef.update(metrics -> metrics.addDeserialization(1));
+
+    List<GameMovesModel.Node> allNodes = model.getAllNodes();
+    int[][] nodeRecords = new int[allNodes.size()][];
+    int[] nodeCounts = new int[allNodes.size()];
+    scanAnnotationRecords(
+        buf,
+        (gameId, posNo, annotationType, recordStart) -> {
+          if (posNo < 0 || posNo >= allNodes.size()) {
+            log.warn(
+                "Invalid move position for an annotation in game " + gameId + ": " + (posNo - 1));
+            return;
+          }
+          if (nodeRecords[posNo] == null) {
+            nodeRecords[posNo] = new int[1];
+          } else if (nodeCounts[posNo] == nodeRecords[posNo].length) {
+            nodeRecords[posNo] = Arrays.copyOf(nodeRecords[posNo], nodeCounts[posNo] * 2);
+          }
+          nodeRecords[posNo][nodeCounts[posNo]++] = recordStart;
+        });
+
+    ByteBuffer blob = buf.duplicate();
+    for (int posNo = 0; posNo < nodeRecords.length; posNo++) {
+      if (nodeRecords[posNo] != null) {
+        int[] records = Arrays.copyOf(nodeRecords[posNo], nodeCounts[posNo]);
+        allNodes.get(posNo).setLazyAnnotations(new LazyNodeAnnotations(blob, records));
+      }
+    }
+  }
+
+  /**
+   * Extracts the clock times, time spent and computer evaluations in a serialized annotations blob
+   * without decoding the other annotations. Only annotations on the main line are included. The
+   * ply of an annotation is the number of moves from the start of the game (or setup position) to
+   * the node the annotation is on.
+   *
+   * @param gameId the id of the game
+   * @param buf the serialized annotations
+   * @param nodePlies the ply of every node in the game, in the order of {@link
+   *     GameMovesModel#getAllNodes()}, or -1 if the node is not on the main line. If null, the game
+   *     is assumed to have no variations, so the nodes are all on the main line.
+   * @return the extracted time series
+   */
+  public @NotNull AnnotationTimeSeries extractTimeSeries(
+      int gameId, @NotNull ByteBuffer buf, int @Nullable [] nodePlies) {
+    itemMetricsRef.update(metrics -> metrics.addDeserialization(1));
+
+    ByteBuffer blob = buf.duplicate();
+    AnnotationTimeSeries.Builder builder = new AnnotationTimeSeries.Builder();
+    scanAnnotationRecords(
+        buf,
+        (id, posNo, annotationType, recordStart) -> {
+          if (!AnnotationTimeSeries.isTimeSeriesAnnotation(annotationType)) {
+            return;
+          }
+          int ply = posNo;
+          if (nodePlies != null) {
+            ply = posNo >= 0 && posNo < nodePlies.length ? nodePlies[posNo] : -1;
+          }
+          if (ply < 0) {
+            return;
+          }
+          try {
+            builder.add(ply, deserializeAnnotation(blob.position(recordStart)));
+          } catch (MorphyFatalAnnotationDecodingException e) {
+            // Can't happen since the record size has already been validated
+            throw new IllegalStateException(e);
+          }
+        });
+    return builder.build(gameId);
+  }
+
+  @FunctionalInterface
+  private interface AnnotationRecordVisitor {
+    void visit(int gameId, int posNo, int annotationType, int recordStart);
+  }
+
+  /**
+   * Finds the annotation records in a serialized annotations blob without decoding them.
+   *
+   * @param buf the serialized annotations
+   * @param visitor gets the node position and annotation type of every record, and the position
+   *     in the buffer where the record starts
+   */
+  private static void scanAnnotationRecords(
+      @NotNull ByteBuffer buf, @NotNull AnnotationRecordVisitor visitor) {
+    if (!buf.hasRemaining()) {
+      return;
+    }
+    int gameId = ByteBufferUtil.getUnsigned24BitB(buf);
+    int unknown = ByteBufferUtil.getIntB(buf);
+    if (unknown != 0x01000E0E) {
+      log.warn(
+          String.format(
+              "Unknown bytes in annotation header for game " + gameId + ": %08X", unknown));
+    }
+    int noAnnotations = ByteBufferUtil.getUnsigned24BitB(buf) - 1;
+    ByteBufferUtil.getIntB(buf); // Total size
+
+    for (int i = 0; i < noAnnotations; i++) {
+      if (buf.remaining() < 6) {
+        log.warn("Annotation data in game " + gameId + " ended after " + i + " annotations");
+        break;
+      }
+      int posNo = ByteBufferUtil.getSigned24BitB(buf) + 1;
+      int recordStart = buf.position();
+      int annotationType = ByteBufferUtil.getUnsignedByte(buf);
+      int annotationSize = ByteBufferUtil.getSignedShortB(buf) - 6;
+      if (annotationSize < 0) {
+        log.warn(
+            "Invalid annotation data at position "
+                + recordStart
+                + ", no more annotations in this game parsed");
+        break;
+      }
+      buf.position(Math.min(buf.limit(), buf.position() + annotationSize));
+      visitor.visit(gameId, posNo, annotationType, recordStart);
+    }
+  }
+
+  /**
+   * The not yet decoded annotations of a single node. All nodes in a game share the same
+   * annotations blob, and each keep the positions of their own annotation records in it.
+   */
+  private static final class LazyNodeAnnotations implements LazyAnnotations {
+    private final @NotNull ByteBuffer blob;
+    private final int @NotNull [] recordStarts;
+    // The annotation of every record, once it has been decoded. Since the annotations are
+    // immutable, a race between two threads decoding the same record is harmless.
+    private final @Nullable Annotation @NotNull [] decoded;
+
+    private LazyNodeAnnotations(@NotNull ByteBuffer blob, int @NotNull [] recordStarts) {
+      this.blob = blob;
+      this.recordStarts = recordStarts;
+      this.decoded = new Annotation[recordStarts.length];
+    }
+
+    @Override
+    public int size() {
+      return recordStarts.length;
+    }
+
+    @Override
+    public @NotNull List<Annotation> decodeAll() {
+      return decode(Annotation.class);
+    }
+
+    @Override
+    public @NotNull <T extends Annotation> List<T> decode(@NotNull Class<T> clazz) {
+      ArrayList<T> annotations = new ArrayList<>();
+      for (int i = 0; i < recordStarts.length; i++) {
+        Annotation annotation = decoded[i];
+        if (annotation == null) {
+          AnnotationSerializer serializer =
+              annotationSerializers.get(blob.get(recordStarts[i]) & 0xFF);
+          Class<?> annotationClass =
+              serializer != null ? serializer.getAnnotationClass() : UnknownAnnotation.class;
+          // Invalid annotations are only known once decoded, so those have to be decoded as well
+          if (!clazz.isAssignableFrom(annotationClass)
+              && !clazz.isAssignableFrom(InvalidAnnotation.class)) {
+            continue;
+          }
+          try {
+            annotation = deserializeAnnotation(blob.duplicate().position(recordStarts[i]));
+          } catch (MorphyFatalAnnotationDecodingException e) {
+            // Can't happen since the record sizes were validated when the blob was scanned
+            throw new IllegalStateException(e);
+          }
+          decoded[i] = annotation;
+        }
+        if (clazz.isInstance(annotation)) {
+          annotations.add(clazz.cast(annotation));
+        }
+      }
+      return annotations;
+    }
+  }
+
   /**
    * Serializes a ChessBase annotation into a {@link ByteBuffer}.
    *
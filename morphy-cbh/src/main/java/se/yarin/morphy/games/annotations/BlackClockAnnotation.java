@@ -13,7 +13,7 @@ import java.util.regex.Pattern;
 @Value.Immutable
 public abstract class BlackClockAnnotation extends Annotation implements StatisticalAnnotation {
   @Value.Parameter
-  abstract int clockTime();
+  public abstract int clockTime();
 
   @Override
   public String toString() {
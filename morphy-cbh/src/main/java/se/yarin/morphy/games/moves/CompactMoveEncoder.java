@@ -3,18 +3,20 @@ package se.yarin.morphy.games.moves;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.morphy.exceptions.MorphyMoveDecodingException;
-import se.yarin.morphy.util.KeyProvider;
-import se.yarin.util.ByteBufferUtil;
 import se.yarin.chess.*;
 
 import java.nio.ByteBuffer;
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 
 import static se.yarin.chess.Chess.*;
 
 /**
  * This is the default encoder used to encode moves of a ChessBase game. Most moves are encoded as a
  * single byte.
+ *
+ * <p>An encoder holds no state between games, so a single instance can be used to encode and
+ * decode games on many threads at the same time.
  */
 public class CompactMoveEncoder implements MoveEncoder {
   private static final Logger log = LoggerFactory.getLogger(CompactMoveEncoder.class);
@@ -64,6 +66,8 @@ public class CompactMoveEncoder implements MoveEncoder {
   private static final CompactMoveEncoder.OpcodeMap[] opcodeMap =
       new CompactMoveEncoder.OpcodeMap[256];
 
+  private static final Stone[] STONES = Stone.values();
+
   private static final int[] kingDir = new int[] {1, 9, 8, 7, -1, -9, -8, -7};
   private static final int[] knightDir = new int[] {17, 10, -6, -15, -17, -10, 6, 15};
 
@@ -101,46 +105,44 @@ public class CompactMoveEncoder implements MoveEncoder {
     }
   }
 
-  private final boolean modifierFlag;
   private final boolean reverseScanOrder;
-  private final short[] encryptionMap;
-  private final short[] decryptionMap;
+  private final MoveCipher cipher;
 
-  private int modifier;
+  private record Branch(GameMovesModel.Node node, int undoMark) {}
 
   public CompactMoveEncoder(int keyNo, boolean modifierFlag, boolean reverseScanOrder) {
-    this.encryptionMap = KeyProvider.getMoveSerializationKey(keyNo);
-    this.decryptionMap = KeyProvider.getMoveSerializationKey(keyNo + 1);
-    this.modifierFlag = modifierFlag;
+    this.cipher = MoveCipher.forKey(keyNo, modifierFlag);
     this.reverseScanOrder = reverseScanOrder;
   }
 
   @Override
-  public synchronized void encode(ByteBuffer buf, GameMovesModel movesModel) {
-    StonePositions piecePosition =
+  public void encode(ByteBuffer buf, GameMovesModel movesModel) {
+    StonePositions stonePositions =
         StonePositions.fromPosition(movesModel.root().position(), reverseScanOrder);
-    encodeMoves(buf, movesModel.root(), piecePosition);
+    encodeMoves(cipher.cursor(buf), movesModel.root(), stonePositions);
   }
 
-  private void encodeMoves(ByteBuffer buf, GameMovesModel.Node node, StonePositions piecePosition) {
+  private void encodeMoves(
+      MoveCipher.Cursor cursor, GameMovesModel.Node node, StonePositions stonePositions) {
     if (INTEGRITY_CHECKS_ENABLED) {
-      piecePosition.validate(node.position());
+      stonePositions.validate(node.position());
     }
 
     if (node.children().size() == 0) {
-      put(buf, OPCODE_END_VARIANT);
+      cursor.put(OPCODE_END_VARIANT);
       return;
     }
 
     for (int i = 0; i < node.children().size(); i++) {
       GameMovesModel.Node child = node.children().get(i);
       Move move = child.lastMove();
+      int undoMark = stonePositions.undoMark();
       try {
-        int opcode = encodeMove(move, piecePosition, node.position());
+        int opcode = encodeMove(move, stonePositions, node.position());
         if (i + 1 < node.children().size()) {
-          put(buf, OPCODE_START_VARIANT);
+          cursor.put(OPCODE_START_VARIANT);
         }
-        put(buf, opcode);
+        cursor.put(opcode);
 
         if (log.isDebugEnabled()) {
           log.debug(String.format("Serialized move %s to opcode %02X", move.toLAN(), opcode));
@@ -148,23 +150,26 @@ public class CompactMoveEncoder implements MoveEncoder {
 
         if (opcode == OPCODE_TWO_BYTES) {
           opcode = encodeSpecialMove(move);
-          put(buf, opcode / 256);
-          put(buf, opcode % 256);
+          cursor.put(opcode / 256);
+          cursor.put(opcode % 256);
 
           if (log.isDebugEnabled()) {
             log.debug(String.format("Serialized move %s to opcode %04X", move.toLAN(), opcode));
           }
         }
-        modifier++;
-        encodeMoves(buf, child, piecePosition.doMove(move));
+        cursor.nextMove();
+        stonePositions.doMove(move);
+        encodeMoves(cursor, child, stonePositions);
       } catch (IllegalArgumentException e) {
         // Shouldn't happen if the game model contains legal moves
         // If it does, we don't encode the remainder of this variation
         // This is not tested since it shouldn't be possible to
         // construct a GameMovesModel with illegal moves...
         log.warn("Failed to encode illegal move", e);
-        put(buf, OPCODE_END_VARIANT);
+        cursor.put(OPCODE_END_VARIANT);
       }
+      // Restore the stone positions before the next variation
+      stonePositions.undo(undoMark);
     }
   }
 
@@ -256,19 +261,18 @@ public class CompactMoveEncoder implements MoveEncoder {
   }
 
   @Override
-  public synchronized void decode(
-      ByteBuffer buf, GameMovesModel movesModel, boolean checkLegalMoves)
+  public void decode(ByteBuffer buf, GameMovesModel movesModel, boolean checkLegalMoves)
       throws MorphyMoveDecodingException {
 
+    MoveCipher.Cursor cursor = cipher.cursor(buf);
     GameMovesModel.Node currentNode = movesModel.root();
-    StonePositions piecePosition =
+    StonePositions stonePositions =
         StonePositions.fromPosition(currentNode.position(), reverseScanOrder);
 
-    Stack<GameMovesModel.Node> nodeStack = new Stack<>();
-    Stack<StonePositions> piecePositionStack = new Stack<>();
+    ArrayDeque<Branch> branches = new ArrayDeque<>();
 
     while (true) {
-      int opcode = get(buf);
+      int opcode = cursor.get();
       //                log.info(String.format("Decoded byte %02X", opcode));
 
       if (opcode == OPCODE_IGNORE) {
@@ -281,16 +285,16 @@ public class CompactMoveEncoder implements MoveEncoder {
         continue;
       }
       if (opcode == OPCODE_START_VARIANT) {
-        nodeStack.push(currentNode);
-        piecePositionStack.push(piecePosition);
+        branches.push(new Branch(currentNode, stonePositions.undoMark()));
         continue;
       }
       if (opcode == OPCODE_END_VARIANT) {
         // Also used to mark the end of the game
-        if (nodeStack.size() == 0) break;
+        if (branches.isEmpty()) break;
 
-        currentNode = nodeStack.pop();
-        piecePosition = piecePositionStack.pop();
+        Branch branch = branches.pop();
+        currentNode = branch.node();
+        stonePositions.undo(branch.undoMark());
         continue;
       }
 
@@ -299,10 +303,10 @@ public class CompactMoveEncoder implements MoveEncoder {
       if (opcode == OPCODE_TWO_BYTES) {
         // In rare cases a move has to be encoded as two bytes
         // Typically pawn promotions or if a player has more than 3 pieces of some kind
-        opcode = get(buf) * 256 + get(buf);
+        opcode = cursor.get() * 256 + cursor.get();
         move = decodeTwoByteMove(opcode, currentNode.position());
       } else {
-        move = decodeSingleByteMove(opcode, piecePosition, currentNode.position());
+        move = decodeSingleByteMove(opcode, stonePositions, currentNode.position());
       }
 
       if (log.isDebugEnabled()) {
@@ -310,14 +314,260 @@ public class CompactMoveEncoder implements MoveEncoder {
       }
 
       // Update position of the moved piece
-      piecePosition = piecePosition.doMove(move);
+      stonePositions.doMove(move);
       currentNode = checkLegalMoves ? currentNode.addMove(move) : currentNode.addMoveUnsafe(move);
 
       if (INTEGRITY_CHECKS_ENABLED) {
-        piecePosition.validate(currentNode.position());
+        stonePositions.validate(currentNode.position());
       }
 
-      modifier++;
+      cursor.nextMove();
+    }
+  }
+
+  /**
+   * Decodes the moves of a game without validating them and without creating any {@link Position}
+   * or {@link Move} objects. The moves are replayed using only the stone positions and a plain
+   * board array, and added to a {@link CompactGameMoves.Builder}. This should only be used for
+   * trusted data in regular chess (not Chess960), since broken move data may result in a game
+   * tree with illegal moves.
+   *
+   * @param buf the buffer containing the encoded moves
+   * @param builder the builder to add the moves to; must only contain the root
+   * @throws MorphyMoveDecodingException if the move data couldn't be decoded
+   */
+  public void decodeTrusted(ByteBuffer buf, CompactGameMoves.Builder builder)
+      throws MorphyMoveDecodingException {
+    MoveCipher.Cursor cursor = cipher.cursor(buf);
+    Position startPosition = builder.startPosition();
+    if (!startPosition.isRegularChess()) {
+      throw new IllegalArgumentException("Trusted decoding is not supported for Chess960");
+    }
+    StonePositions stonePositions = StonePositions.fromPosition(startPosition, reverseScanOrder);
+    Board board = new Board(startPosition);
+
+    Player playerToMove = startPosition.playerToMove();
+    int currentNode = 0;
+    ArrayDeque<TrustedBranch> branches = new ArrayDeque<>();
+
+    while (true) {
+      int opcode = cursor.get();
+
+      if (opcode == OPCODE_IGNORE) {
+        continue;
+      }
+      if (opcode > OPCODE_IGNORE && opcode < OPCODE_START_VARIANT) {
+        log.warn(String.format("Unknown opcode in game data, ignoring: 0x%02X", opcode));
+        continue;
+      }
+      if (opcode == OPCODE_START_VARIANT) {
+        branches.push(
+            new TrustedBranch(
+                currentNode, playerToMove, stonePositions.undoMark(), board.undoMark()));
+        continue;
+      }
+      if (opcode == OPCODE_END_VARIANT) {
+        // Also used to mark the end of the game
+        if (branches.isEmpty()) break;
+
+        TrustedBranch branch = branches.pop();
+        currentNode = branch.node();
+        playerToMove = branch.playerToMove();
+        stonePositions.undo(branch.stoneUndoMark());
+        board.undo(branch.boardUndoMark());
+        continue;
+      }
+
+      if (opcode == OPCODE_NULLMOVE) {
+        currentNode = builder.addNullMove(currentNode);
+      } else {
+        int fromSqi, toSqi;
+        Stone promotionStone = Stone.NO_STONE;
+        if (opcode == OPCODE_TWO_BYTES) {
+          opcode = cursor.get() * 256 + cursor.get();
+          fromSqi = opcode % 64;
+          toSqi = (opcode / 64) % 64;
+          Stone stone = board.stoneAt(fromSqi);
+          if (stone.isNoStone()) {
+            throw new MorphyMoveDecodingException(
+                "No piece at source square: " + Chess.sqiToStr(fromSqi));
+          }
+          if (stone.toPiece() == Piece.PAWN) {
+            int toRow = Chess.sqiToRow(toSqi);
+            if (toRow > 0 && toRow < 7) {
+              throw new MorphyMoveDecodingException(
+                  "Double bytes used for non-promotion pawn move");
+            }
+            promotionStone =
+                switch (opcode / 4096) {
+                  case 0 -> Piece.QUEEN.toStone(playerToMove);
+                  case 1 -> Piece.ROOK.toStone(playerToMove);
+                  case 2 -> Piece.BISHOP.toStone(playerToMove);
+                  case 3 -> Piece.KNIGHT.toStone(playerToMove);
+                  default ->
+                      throw new MorphyMoveDecodingException(
+                          "Illegal promoted piece: " + opcode / 4096);
+                };
+          }
+        } else {
+          fromSqi = decodeSourceSquare(opcode, stonePositions, playerToMove);
+          toSqi = decodeTargetSquare(opcode, fromSqi, playerToMove);
+        }
+
+        currentNode =
+            doTrustedMove(
+                builder, currentNode, board, stonePositions, fromSqi, toSqi, promotionStone);
+      }
+
+      playerToMove = playerToMove.otherPlayer();
+      cursor.nextMove();
+    }
+  }
+
+  private static int decodeSourceSquare(
+      int opcode, StonePositions stonePositions, Player playerToMove)
+      throws MorphyMoveDecodingException {
+    if (opcode < OPCODE_NULLMOVE || opcode > OPCODE_TWO_BYTES) {
+      throw new MorphyMoveDecodingException("Invalid opcode: " + opcode);
+    }
+    Piece piece = opcodeMap[opcode].piece();
+    int stoneNo = opcodeMap[opcode].pieceNo();
+    int sqi = stonePositions.getSqi(piece.toStone(playerToMove), stoneNo);
+    if (sqi < 0) {
+      throw new MorphyMoveDecodingException(
+          String.format("No piece coordinate for %s %s number %d", playerToMove, piece, stoneNo));
+    }
+    return sqi;
+  }
+
+  private static int decodeTargetSquare(int opcode, int sqi, Player playerToMove)
+      throws MorphyMoveDecodingException {
+    Piece piece = opcodeMap[opcode].piece();
+    int ofs = opcodeMap[opcode].ofs();
+    int toSqi;
+    if (piece == Piece.KING) {
+      int backRank = playerToMove == Player.WHITE ? 0 : 7;
+      if (ofs == 8) return Chess.coorToSqi(6, backRank);
+      if (ofs == 9) return Chess.coorToSqi(2, backRank);
+      toSqi = sqi + kingDir[ofs];
+    } else if (piece == Piece.BISHOP || piece == Piece.ROOK || piece == Piece.QUEEN) {
+      int px = Chess.sqiToCol(sqi), py = Chess.sqiToRow(sqi);
+      int dir = ofs / 7, stride = ofs % 7 + 1;
+      toSqi =
+          switch (dir + (piece == Piece.BISHOP ? 2 : 0)) {
+            case 0 -> Chess.coorToSqi(px, (py + stride) % 8);
+            case 1 -> Chess.coorToSqi((px + stride) % 8, py);
+            case 2 -> Chess.coorToSqi((px + stride) % 8, (py + stride) % 8);
+            case 3 -> Chess.coorToSqi((px + stride) % 8, (py + 8 - stride) % 8);
+            default -> throw new MorphyMoveDecodingException("Invalid direction: " + dir);
+          };
+    } else if (piece == Piece.KNIGHT) {
+      toSqi = sqi + knightDir[ofs];
+    } else if (piece == Piece.PAWN) {
+      int dir = playerToMove == Player.WHITE ? 1 : -1;
+      toSqi =
+          switch (ofs) {
+            case 0 -> sqi + dir;
+            case 1 -> sqi + dir * 2;
+            case 2 -> sqi + dir * 9;
+            case 3 -> sqi - dir * 7;
+            default -> throw new MorphyMoveDecodingException("Invalid pawn offset: " + ofs);
+          };
+    } else {
+      throw new MorphyMoveDecodingException("Invalid opcode: " + opcode);
+    }
+    if (toSqi < 0 || toSqi >= 64) {
+      throw new MorphyMoveDecodingException("Invalid move with opcode: " + opcode);
+    }
+    return toSqi;
+  }
+
+  private static int doTrustedMove(
+      CompactGameMoves.Builder builder,
+      int parentNode,
+      Board board,
+      StonePositions stonePositions,
+      int fromSqi,
+      int toSqi,
+      Stone promotionStone) {
+    Stone stone = board.stoneAt(fromSqi);
+    Stone capturedStone = board.stoneAt(toSqi);
+    int captureSqi = toSqi;
+    int rookFromSqi = -1, rookToSqi = -1;
+    int fromCol = Chess.sqiToCol(fromSqi), toCol = Chess.sqiToCol(toSqi);
+
+    if (stone.toPiece() == Piece.PAWN && fromCol != toCol && capturedStone.isNoStone()) {
+      // A diagonal pawn move to an empty square must be an en passant capture
+      captureSqi = Chess.coorToSqi(toCol, Chess.sqiToRow(fromSqi));
+      capturedStone = board.stoneAt(captureSqi);
+    }
+    boolean castles = stone.toPiece() == Piece.KING && fromCol == 4 && Math.abs(toCol - 4) == 2;
+    if (castles) {
+      int row = Chess.sqiToRow(fromSqi);
+      rookFromSqi = Chess.coorToSqi(toCol == 6 ? 7 : 0, row);
+      rookToSqi = Chess.coorToSqi(toCol == 6 ? 5 : 3, row);
+    }
+
+    stonePositions.doMove(
+        stone,
+        fromSqi,
+        toSqi,
+        promotionStone,
+        capturedStone,
+        captureSqi,
+        rookFromSqi,
+        rookToSqi);
+
+    if (!capturedStone.isNoStone()) {
+      board.set(captureSqi, Stone.NO_STONE);
+    }
+    board.set(fromSqi, Stone.NO_STONE);
+    board.set(toSqi, promotionStone.isNoStone() ? stone : promotionStone);
+    if (castles) {
+      board.set(rookToSqi, board.stoneAt(rookFromSqi));
+      board.set(rookFromSqi, Stone.NO_STONE);
+      return builder.addCastles(parentNode, fromSqi, toSqi, toCol == 6);
+    }
+    return builder.addMove(parentNode, fromSqi, toSqi, promotionStone);
+  }
+
+  private record TrustedBranch(
+      int node, Player playerToMove, int stoneUndoMark, int boardUndoMark) {}
+
+  /** A plain board array with an undo log, used when decoding trusted moves */
+  private static class Board {
+    private final Stone[] squares = new Stone[64];
+    private int[] undoLog = new int[64];
+    private int undoLogSize;
+
+    Board(Position position) {
+      for (int sqi = 0; sqi < 64; sqi++) {
+        squares[sqi] = position.stoneAt(sqi);
+      }
+    }
+
+    Stone stoneAt(int sqi) {
+      return squares[sqi];
+    }
+
+    void set(int sqi, Stone stone) {
+      if (undoLogSize + 2 > undoLog.length) {
+        undoLog = Arrays.copyOf(undoLog, undoLog.length * 2);
+      }
+      undoLog[undoLogSize++] = sqi;
+      undoLog[undoLogSize++] = squares[sqi].ordinal();
+      squares[sqi] = stone;
+    }
+
+    int undoMark() {
+      return undoLogSize;
+    }
+
+    void undo(int mark) {
+      while (undoLogSize > mark) {
+        undoLogSize -= 2;
+        squares[undoLog[undoLogSize]] = STONES[undoLog[undoLogSize + 1]];
+      }
     }
   }
 
@@ -425,25 +675,4 @@ public class CompactMoveEncoder implements MoveEncoder {
 
     return new Move(board, fromSqi, toSqi, promotedPiece.toStone(playerToMove));
   }
-
-  public void put(ByteBuffer buf, int value) {
-    if (modifierFlag) {
-      value = encryptionMap[value] + modifier;
-    } else {
-      value = (encryptionMap[(value + modifier) % 256]);
-    }
-    buf.put((byte) value);
-  }
-
-  public int get(ByteBuffer buf) {
-    int key = ByteBufferUtil.getUnsignedByte(buf);
-    if (modifierFlag) {
-      key = ((key - modifier) % 256 + 256) % 256;
-    }
-    int value = decryptionMap[key];
-    if (!modifierFlag) {
-      value = ((value - modifier) % 256 + 256) % 256;
-    }
-    return value;
-  }
 }
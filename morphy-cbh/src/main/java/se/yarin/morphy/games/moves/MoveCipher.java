@@ -0,0 +1,86 @@
+package se.yarin.morphy.games.moves;
+
+import se.yarin.morphy.util.KeyProvider;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The byte level encryption of ChessBase move data. Every byte is translated using one of the move
+ * serialization keys, offset by a modifier that is increased after every move. The translation is
+ * precomputed for all 256 values of the modifier, so every byte is encrypted or decrypted with a
+ * single table lookup.
+ *
+ * <p>This class is immutable and can be shared between threads. The modifier is kept in a {@link
+ * Cursor}, which must be confined to the thread encoding or decoding a game.
+ */
+final class MoveCipher {
+  // The ciphers are shared by all encoders using the same key
+  private static final ConcurrentHashMap<Integer, MoveCipher> ciphers = new ConcurrentHashMap<>();
+
+  private final byte[] encryptionTable = new byte[65536];
+  private final byte[] decryptionTable = new byte[65536];
+
+  /**
+   * Gets the cipher for a move serialization key
+   *
+   * @param keyNo the key used for encryption; the next key is used for decryption
+   * @param modifierFlag if true, the modifier is applied to the encrypted byte, otherwise to the
+   *     plain byte
+   * @return the cipher
+   */
+  static MoveCipher forKey(int keyNo, boolean modifierFlag) {
+    return ciphers.computeIfAbsent(
+        keyNo * 2 + (modifierFlag ? 1 : 0), key -> new MoveCipher(keyNo, modifierFlag));
+  }
+
+  private MoveCipher(int keyNo, boolean modifierFlag) {
+    short[] encryptionMap = KeyProvider.getMoveSerializationKey(keyNo);
+    short[] decryptionMap = KeyProvider.getMoveSerializationKey(keyNo + 1);
+    for (int modifier = 0; modifier < 256; modifier++) {
+      for (int value = 0; value < 256; value++) {
+        int index = modifier << 8 | value;
+        if (modifierFlag) {
+          encryptionTable[index] = (byte) (encryptionMap[value] + modifier);
+          decryptionTable[index] = (byte) decryptionMap[(value - modifier) & 0xFF];
+        } else {
+          encryptionTable[index] = (byte) encryptionMap[(value + modifier) & 0xFF];
+          decryptionTable[index] = (byte) (decryptionMap[value] - modifier);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts encoding or decoding a game
+   *
+   * @param buf the buffer to write to or read from
+   * @return a cursor with the modifier set to 0
+   */
+  Cursor cursor(ByteBuffer buf) {
+    return new Cursor(buf);
+  }
+
+  /** The state of a single encoding or decoding. Not thread-safe. */
+  final class Cursor {
+    private final ByteBuffer buf;
+    private int modifier;
+
+    private Cursor(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    void put(int value) {
+      buf.put(encryptionTable[(modifier & 0xFF) << 8 | (value & 0xFF)]);
+    }
+
+    int get() {
+      return decryptionTable[(modifier & 0xFF) << 8 | (buf.get() & 0xFF)] & 0xFF;
+    }
+
+    /** Increases the modifier; called after every encoded or decoded move */
+    void nextMove() {
+      modifier++;
+    }
+  }
+}
@@ -4,8 +4,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.chess.*;
 import se.yarin.morphy.exceptions.MorphyMoveDecodingException;
-import se.yarin.morphy.util.KeyProvider;
-import se.yarin.util.ByteBufferUtil;
 
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -18,27 +16,20 @@ import java.util.Stack;
 public class SimpleMoveEncoder implements MoveEncoder {
   private static final Logger log = LoggerFactory.getLogger(SimpleMoveEncoder.class);
 
-  private final boolean modifierFlag;
   private final boolean inverseSquareOrder;
-  private final short[] encryptionMap;
-  private final short[] decryptionMap;
-
-  private int modifier;
+  private final MoveCipher cipher;
 
   public SimpleMoveEncoder(int keyNo, boolean modifierFlag, boolean inverseSquareOrder) {
-    this.encryptionMap = KeyProvider.getMoveSerializationKey(keyNo);
-    this.decryptionMap = KeyProvider.getMoveSerializationKey(keyNo + 1);
+    this.cipher = MoveCipher.forKey(keyNo, modifierFlag);
     this.inverseSquareOrder = inverseSquareOrder;
-    this.modifierFlag = modifierFlag;
   }
 
   @Override
-  public synchronized void encode(ByteBuffer buf, GameMovesModel movesModel) {
-    this.modifier = 0;
-    encode(buf, movesModel.root());
+  public void encode(ByteBuffer buf, GameMovesModel movesModel) {
+    encode(cipher.cursor(buf), movesModel.root());
   }
 
-  private void encode(ByteBuffer buf, GameMovesModel.Node current) {
+  private void encode(MoveCipher.Cursor cursor, GameMovesModel.Node current) {
     List<GameMovesModel.Node> children = current.children();
     for (int i = 0; i < children.size(); i++) {
       GameMovesModel.Node child = children.get(i);
@@ -68,14 +59,14 @@ public class SimpleMoveEncoder implements MoveEncoder {
         log.debug(String.format("Outputting %s with flags %d", move.toString(), value >> 14));
       }
 
-      put(buf, value);
-      modifier++;
-      encode(buf, child);
+      put(cursor, value);
+      cursor.nextMove();
+      encode(cursor, child);
     }
   }
 
   @Override
-  public synchronized void decode(
+  public void decode(
       ByteBuffer buf, GameMovesModel movesModel, boolean checkLegalMoves)
       throws MorphyMoveDecodingException {
     if (!buf.hasRemaining()) {
@@ -83,14 +74,13 @@ public class SimpleMoveEncoder implements MoveEncoder {
       return;
     }
 
-    this.modifier = 0;
-
+    MoveCipher.Cursor cursor = cipher.cursor(buf);
     GameMovesModel.Node current = movesModel.root();
     Stack<GameMovesModel.Node> stack = new Stack<>();
     stack.add(null);
 
     while (current != null) {
-      int value = get(buf);
+      int value = get(cursor);
 
       if ((value & (1 << 15)) > 0) {
         stack.push(current);
@@ -138,39 +128,18 @@ public class SimpleMoveEncoder implements MoveEncoder {
         current = stack.pop();
       }
 
-      modifier++;
+      cursor.nextMove();
     }
   }
 
-  public void put(ByteBuffer buf, int value) {
-    int v1 = value / 256, v2 = value % 256;
-    if (!modifierFlag) {
-      v1 = (v1 + modifier) % 256;
-      v2 = (v2 + modifier) % 256;
-    }
-    int k1 = encryptionMap[v1];
-    int k2 = encryptionMap[v2];
-    if (modifierFlag) {
-      k1 = (k1 + modifier) % 256;
-      k2 = (k2 + modifier) % 256;
-    }
-    ByteBufferUtil.putByte(buf, k1);
-    ByteBufferUtil.putByte(buf, k2);
+  private static void put(MoveCipher.Cursor cursor, int value) {
+    cursor.put(value / 256);
+    cursor.put(value % 256);
   }
 
-  public int get(ByteBuffer buf) {
-    int k1 = ByteBufferUtil.getUnsignedByte(buf);
-    int k2 = ByteBufferUtil.getUnsignedByte(buf);
-    if (modifierFlag) {
-      k1 = ((k1 - modifier) % 256 + 256) % 256;
-      k2 = ((k2 - modifier) % 256 + 256) % 256;
-    }
-    int v1 = decryptionMap[k1];
-    int v2 = decryptionMap[k2];
-    if (!modifierFlag) {
-      v1 = ((v1 - modifier) % 256 + 256) % 256;
-      v2 = ((v2 - modifier) % 256 + 256) % 256;
-    }
+  private static int get(MoveCipher.Cursor cursor) {
+    int v1 = cursor.get();
+    int v2 = cursor.get();
     return v1 * 256 + v2;
   }
 }
@@ -3,6 +3,8 @@ package se.yarin.morphy.games.moves;
 import org.jetbrains.annotations.NotNull;
 import se.yarin.chess.*;
 
+import java.util.Arrays;
+
 import static se.yarin.chess.Chess.*;
 import static se.yarin.chess.Player.WHITE;
 
@@ -14,13 +16,19 @@ import static se.yarin.chess.Player.WHITE;
  * <p>If there are more than 3 knights, bishops, rooks or queens, those piece will silently be
  * ignored. Referring to those pieces are done in a special way in {@link MoveSerializer}.
  *
- * <p>This class is immutable.
+ * <p>This class is mutable; {@link #doMove(Move)} updates the positions in place. All changes are
+ * recorded in an undo log, so that the positions can be restored when going back to the start of a
+ * variation, see {@link #undoMark()} and {@link #undo(int)}.
  */
 class StonePositions {
   // For every stone, there's a list of square indexes
   private final int[] pieceSqi;
   private static final int[] stoneOffset = {0, 1, 4, 7, 10, 13, 21, 21, 29, 32, 35, 38, 41, 42};
 
+  // Pairs of (index in pieceSqi, previous square) for every change
+  private int[] undoLog = new int[64];
+  private int undoLogSize;
+
   private StonePositions(int[] pieceSqi) {
     this.pieceSqi = pieceSqi;
   }
@@ -52,8 +60,37 @@ class StonePositions {
     return new StonePositions(pps);
   }
 
-  private int[] cloneData() {
-    return pieceSqi.clone();
+  private void set(int index, int sqi) {
+    if (pieceSqi[index] == sqi) {
+      return;
+    }
+    if (undoLogSize + 2 > undoLog.length) {
+      undoLog = Arrays.copyOf(undoLog, undoLog.length * 2);
+    }
+    undoLog[undoLogSize++] = index;
+    undoLog[undoLogSize++] = pieceSqi[index];
+    pieceSqi[index] = sqi;
+  }
+
+  /**
+   * Gets a mark that can be used to undo all moves made after this point
+   *
+   * @return the current position in the undo log
+   */
+  public int undoMark() {
+    return undoLogSize;
+  }
+
+  /**
+   * Undoes all moves made since a mark was taken
+   *
+   * @param mark a mark returned by {@link #undoMark()}
+   */
+  public void undo(int mark) {
+    while (undoLogSize > mark) {
+      undoLogSize -= 2;
+      pieceSqi[undoLog[undoLogSize]] = undoLog[undoLogSize + 1];
+    }
   }
 
   /**
@@ -87,93 +124,127 @@ class StonePositions {
   }
 
   /**
-   * Moves a piece and returns a new instance with correct stone positions. No checking is done if
-   * the move is a valid chess move.
+   * Moves a piece and updates the stone positions in place. No checking is done if the move is a
+   * valid chess move.
    *
    * @param move the move to make
-   * @return the updated position
    */
-  public StonePositions doMove(@NotNull Move move) {
+  public void doMove(@NotNull Move move) {
     if (move.isNullMove()) {
-      return this;
+      return;
     }
 
-    int[] pieces = cloneData();
     Stone stone = move.movingStone();
-    int stoneNo = getStoneNo(stone, move.fromSqi());
+    int rookFromSqi = -1, rookToSqi = -1;
+    if (move.isCastle()) {
+      int sp = move.position().chess960StartPosition();
+      Player toMove = stone.toPlayer();
+      if (move.isShortCastle()) {
+        rookFromSqi = Chess960.getHRookSqi(sp, toMove);
+        rookToSqi = toMove == WHITE ? F1 : F8;
+      } else {
+        rookFromSqi = Chess960.getARookSqi(sp, toMove);
+        rookToSqi = toMove == WHITE ? D1 : D8;
+      }
+    }
+
+    Stone capturedStone = Stone.NO_STONE;
+    int captureSqi = -1;
+    if (move.isCapture()) {
+      capturedStone = move.capturedStone();
+      captureSqi =
+          move.isEnPassant() ? Chess.coorToSqi(move.toCol(), move.fromRow()) : move.toSqi();
+    }
+
+    doMove(
+        stone,
+        move.fromSqi(),
+        move.toSqi(),
+        move.promotionStone(),
+        capturedStone,
+        captureSqi,
+        rookFromSqi,
+        rookToSqi);
+  }
+
+  /**
+   * Moves a piece and updates the stone positions in place, given all the details of the move
+   * that affect the stones. No checking is done if the move is a valid chess move.
+   *
+   * @param stone the moving stone
+   * @param fromSqi the square the stone moves from
+   * @param toSqi the square the stone moves to
+   * @param promotionStone the stone a pawn is promoted to, or {@link Stone#NO_STONE}
+   * @param capturedStone the captured stone, or {@link Stone#NO_STONE}
+   * @param captureSqi the square of the captured stone (differs from toSqi on en passant)
+   * @param rookFromSqi the square the rook moves from if castling, otherwise -1
+   * @param rookToSqi the square the rook moves to if castling, otherwise -1
+   */
+  void doMove(
+      @NotNull Stone stone,
+      int fromSqi,
+      int toSqi,
+      @NotNull Stone promotionStone,
+      @NotNull Stone capturedStone,
+      int captureSqi,
+      int rookFromSqi,
+      int rookToSqi) {
+    int stoneNo = getStoneNo(stone, fromSqi);
     if (stoneNo >= 0) {
-      pieces[stoneOffset[stone.index()] + stoneNo] = move.toSqi();
+      set(stoneOffset[stone.index()] + stoneNo, toSqi);
     }
 
     // In case of pawn promotion, the pawn must be removed and the promoted piece added
-    if (move.promotionStone() != Stone.NO_STONE && stone.toPiece() == Piece.PAWN) {
+    if (promotionStone != Stone.NO_STONE && stone.toPiece() == Piece.PAWN) {
       // Remove the pawn (pawn positions are not adjusted)
-      pieces[stoneOffset[stone.index()] + stoneNo] = -1;
+      set(stoneOffset[stone.index()] + stoneNo, -1);
 
       // Add the promotion piece by finding the first available position for that stone
       // If there are no available positions, the new piece will not be added (which is okay)
-      int from = stoneOffset[move.promotionStone().index()],
-          to = stoneOffset[move.promotionStone().index() + 1];
+      int from = stoneOffset[promotionStone.index()], to = stoneOffset[promotionStone.index() + 1];
       for (int j = from; j < to; j++) {
-        if (pieces[j] == -1) {
-          pieces[j] = move.toSqi();
+        if (pieceSqi[j] == -1) {
+          set(j, toSqi);
           break;
         }
       }
     }
 
     // In case of castle, we need to update the rook position as well
-    if (move.isCastle()) {
-      int rookFromSqi, rookToSqi, sp = move.position().chess960StartPosition();
-      Player toMove = stone.toPlayer();
-      if (move.isShortCastle()) {
-        rookFromSqi = Chess960.getHRookSqi(sp, toMove);
-        rookToSqi = toMove == WHITE ? F1 : F8;
-      } else {
-        rookFromSqi = Chess960.getARookSqi(sp, toMove);
-        rookToSqi = toMove == WHITE ? D1 : D8;
-      }
-
-      Stone rook = Piece.ROOK.toStone(toMove);
+    if (rookFromSqi >= 0) {
+      Stone rook = Piece.ROOK.toStone(stone.toPlayer());
       int rookNo = getStoneNo(rook, rookFromSqi);
       // This can probably be -1 in case of a setup position with more than 3 rooks and castling
       // still allowed...
       if (rookNo >= 0) {
-        pieces[stoneOffset[rook.index()] + rookNo] = rookToSqi;
+        set(stoneOffset[rook.index()] + rookNo, rookToSqi);
       }
     }
 
     // In case of a capture, we need to remove the capture piece
-    if (move.isCapture()) {
-      int captureSqi = move.toSqi();
-      Stone capturedStone = move.capturedStone();
-      if (move.isEnPassant()) {
-        captureSqi = Chess.coorToSqi(move.toCol(), move.fromRow());
-      }
+    if (!capturedStone.isNoStone()) {
       int pno = getStoneNo(capturedStone, captureSqi);
       int removeFrom = stoneOffset[capturedStone.index()],
           removeTo = stoneOffset[capturedStone.index() + 1];
 
       // If it's a pawn, just remove it
       if (capturedStone.toPiece() == Piece.PAWN) {
-        pieces[removeFrom + pno] = -1;
+        set(removeFrom + pno, -1);
       } else {
         // Otherwise we must adjust the pieces (shift left)
         int i = removeFrom, j = removeFrom;
         while (i < removeTo) {
-          if (pieces[i] != captureSqi) {
-            pieces[j++] = pieces[i++];
+          if (pieceSqi[i] != captureSqi) {
+            set(j++, pieceSqi[i++]);
           } else {
             i++;
           }
         }
         while (j < removeTo) {
-          pieces[j++] = -1;
+          set(j++, -1);
         }
       }
     }
-
-    return new StonePositions(pieces);
   }
 
   void validate(@NotNull Position position) {
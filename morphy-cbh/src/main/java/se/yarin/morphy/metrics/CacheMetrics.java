@@ -0,0 +1,124 @@
+package se.yarin.morphy.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.Instrumentation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CacheMetrics implements Metrics {
+  private final @NotNull String name;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  public CacheMetrics(@NotNull String name) {
+    this.name = name;
+  }
+
+  public static MetricsRef<CacheMetrics> register(
+      @NotNull Instrumentation instrumentation, @NotNull String name) {
+    return instrumentation.register("caches", name, () -> new CacheMetrics(name), true);
+  }
+
+  public void addHit() {
+    hits.increment();
+  }
+
+  public void addMiss() {
+    misses.increment();
+  }
+
+  public void addPut() {
+    puts.increment();
+  }
+
+  public void addEvictions(int count) {
+    evictions.add(count);
+  }
+
+  public void addInvalidations(int count) {
+    invalidations.add(count);
+  }
+
+  public int hits() {
+    return hits.intValue();
+  }
+
+  public int misses() {
+    return misses.intValue();
+  }
+
+  public int puts() {
+    return puts.intValue();
+  }
+
+  public int evictions() {
+    return evictions.intValue();
+  }
+
+  public int invalidations() {
+    return invalidations.intValue();
+  }
+
+  public void clear() {
+    hits.reset();
+    misses.reset();
+    puts.reset();
+    evictions.reset();
+    invalidations.reset();
+  }
+
+  @Override
+  public void merge(@NotNull Metrics metrics) {
+    CacheMetrics other = (CacheMetrics) metrics;
+
+    hits.add(other.hits.sum());
+    misses.add(other.misses.sum());
+    puts.add(other.puts.sum());
+    evictions.add(other.evictions.sum());
+    invalidations.add(other.invalidations.sum());
+  }
+
+  @Override
+  public String formatHeaderRow() {
+    return """
+                Cache                 hit      miss       put     evict     inval    \s
+                -------------------------------------------------------------------""";
+  }
+
+  @Override
+  public String formatTableRow() {
+    return String.format(
+        "%-15s %9d %9d %9d %9d %9d",
+        name,
+        hits.sum(),
+        misses.sum(),
+        puts.sum(),
+        evictions.sum(),
+        invalidations.sum());
+  }
+
+  public boolean isEmpty(int threshold) {
+    return hits.sum() <= threshold
+        && misses.sum() <= threshold
+        && puts.sum() <= threshold
+        && evictions.sum() <= threshold
+        && invalidations.sum() <= threshold;
+  }
+
+  @Override
+  public @NotNull Map<String, Long> counters() {
+    LinkedHashMap<String, Long> counters = new LinkedHashMap<>();
+    counters.put("hits", hits.sum());
+    counters.put("misses", misses.sum());
+    counters.put("puts", puts.sum());
+    counters.put("evictions", evictions.sum());
+    counters.put("invalidations", invalidations.sum());
+    return counters;
+  }
+}
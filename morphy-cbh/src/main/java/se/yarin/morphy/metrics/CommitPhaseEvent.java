@@ -0,0 +1,49 @@
+package se.yarin.morphy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for a phase of a commit of a write transaction. Disabled by default.
+ */
+@Name("se.yarin.morphy.CommitPhase")
+@Label("Commit Phase")
+@Category({"Morphy", "Transaction"})
+@Description("A phase of the commit of a database write transaction")
+@Enabled(false)
+@StackTrace(false)
+public class CommitPhaseEvent extends Event {
+  public static final String SHIFT_BLOBS = "Shift blobs";
+  public static final String WRITE_GAMES = "Write games";
+  public static final String UPDATE_ENTITIES = "Update entities";
+  public static final String UPDATE_BOOSTERS = "Update boosters";
+
+  @Label("Phase")
+  public String phase;
+
+  @Label("Games")
+  @Description("The number of games updated or added in the transaction")
+  public int games;
+
+  /**
+   * Starts timing a commit phase
+   *
+   * @param phase the name of the phase
+   * @param games the number of games in the transaction
+   * @return the event, which should be committed when the phase is done
+   */
+  public static CommitPhaseEvent start(String phase, int games) {
+    CommitPhaseEvent event = new CommitPhaseEvent();
+    if (event.isEnabled()) {
+      event.phase = phase;
+      event.games = games;
+      event.begin();
+    }
+    return event;
+  }
+}
@@ -4,13 +4,17 @@ import org.jetbrains.annotations.NotNull;
 import se.yarin.morphy.Instrumentation;
 
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class FileMetrics implements Metrics {
   private final @NotNull String fileName;
 
-  private int physicalPageReads;
-  private int logicalPageReads;
-  private int pageWrites;
+  private final LongAdder physicalPageReads = new LongAdder();
+  private final LongAdder logicalPageReads = new LongAdder();
+  private final LongAdder pageWrites = new LongAdder();
+  private final LatencyHistogram physicalReadLatency = new LatencyHistogram();
 
   public FileMetrics(@NotNull String fileName) {
     this.fileName = fileName;
@@ -32,61 +36,96 @@ public class FileMetrics implements Metrics {
   }
 
   public void addPhysicalReads(int count) {
-    physicalPageReads += count;
+    physicalPageReads.add(count);
+  }
+
+  /**
+   * Adds a single physical page read
+   *
+   * @param nanos the time it took to read the page
+   */
+  public void addPhysicalRead(long nanos) {
+    physicalPageReads.increment();
+    physicalReadLatency.record(nanos);
   }
 
   public void addLogicalReads(int count) {
-    logicalPageReads += count;
+    logicalPageReads.add(count);
   }
 
   public void addWrites(int count) {
-    pageWrites += count;
+    pageWrites.add(count);
   }
 
   public int physicalPageReads() {
-    return physicalPageReads;
+    return physicalPageReads.intValue();
   }
 
   public int logicalPageReads() {
-    return logicalPageReads;
+    return logicalPageReads.intValue();
   }
 
   public int pageWrites() {
-    return pageWrites;
+    return pageWrites.intValue();
+  }
+
+  public @NotNull LatencyHistogram physicalReadLatency() {
+    return physicalReadLatency;
   }
 
   public void clear() {
-    physicalPageReads = 0;
-    logicalPageReads = 0;
-    pageWrites = 0;
+    physicalPageReads.reset();
+    logicalPageReads.reset();
+    pageWrites.reset();
+    physicalReadLatency.clear();
   }
 
   @Override
   public void merge(@NotNull Metrics metrics) {
     FileMetrics other = (FileMetrics) metrics;
 
-    physicalPageReads += other.physicalPageReads;
-    logicalPageReads += other.logicalPageReads;
-    pageWrites += other.pageWrites;
+    physicalPageReads.add(other.physicalPageReads.sum());
+    logicalPageReads.add(other.logicalPageReads.sum());
+    pageWrites.add(other.pageWrites.sum());
+    physicalReadLatency.merge(other.physicalReadLatency);
   }
 
   @Override
   public String formatHeaderRow() {
     return """
-                File       phyrd   logrd    wrts    \s
-                -------------------------------------""";
+                File       phyrd   logrd    wrts   p99 us    \s
+                ----------------------------------------------""";
   }
 
   @Override
   public String formatTableRow() {
     return String.format(
-        "%-8s %7d %7d %7d", fileName, physicalPageReads, logicalPageReads, pageWrites);
+        "%-8s %7d %7d %7d %8d",
+        fileName,
+        physicalPageReads.sum(),
+        logicalPageReads.sum(),
+        pageWrites.sum(),
+        physicalReadLatency.valueAtPercentile(99) / 1000);
   }
 
   @Override
   public boolean isEmpty(int threshold) {
-    return physicalPageReads <= threshold
-        && logicalPageReads <= threshold
-        && pageWrites <= threshold;
+    return physicalPageReads.sum() <= threshold
+        && logicalPageReads.sum() <= threshold
+        && pageWrites.sum() <= threshold;
+  }
+
+  @Override
+  public @NotNull Map<String, Long> counters() {
+    LinkedHashMap<String, Long> counters = new LinkedHashMap<>();
+    counters.put("physical_page_reads", physicalPageReads.sum());
+    counters.put("logical_page_reads", logicalPageReads.sum());
+    counters.put("page_writes", pageWrites.sum());
+    return counters;
+  }
+
+  @Override
+  public @NotNull Map<String, LatencyHistogram> histograms() {
+    return Map.of("physical_read", physicalReadLatency);
   }
 }
@@ -3,14 +3,19 @@ package se.yarin.morphy.metrics;
 import org.jetbrains.annotations.NotNull;
 import se.yarin.morphy.Instrumentation;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 public class ItemMetrics implements Metrics {
   private final @NotNull String name;
 
-  private int gets;
-  private int getRaws;
-  private int puts;
-  private int deserializations;
-  private int serializations;
+  private final LongAdder gets = new LongAdder();
+  private final LongAdder getRaws = new LongAdder();
+  private final LongAdder puts = new LongAdder();
+  private final LongAdder deserializations = new LongAdder();
+  private final LongAdder serializations = new LongAdder();
+  private final LatencyHistogram deserializationLatency = new LatencyHistogram();
 
   public ItemMetrics(@NotNull String name) {
     this.name = name;
@@ -26,62 +31,79 @@ public class ItemMetrics implements Metrics {
   }
 
   public void addDeserialization(int count) {
-    deserializations += count;
+    deserializations.add(count);
+  }
+
+  /**
+   * Adds a single deserialization
+   *
+   * @param nanos the time it took to deserialize the item
+   */
+  public void addTimedDeserialization(long nanos) {
+    deserializations.increment();
+    deserializationLatency.record(nanos);
   }
 
   public void addSerialization(int count) {
-    serializations += count;
+    serializations.add(count);
   }
 
   public void addGet(int count) {
-    gets += count;
+    gets.add(count);
   }
 
   public void addPut(int count) {
-    puts += count;
+    puts.add(count);
   }
 
   public void addGetRaw(int count) {
-    getRaws += count;
+    getRaws.add(count);
   }
 
   public int deserializations() {
-    return deserializations;
+    return deserializations.intValue();
   }
 
   public int serializations() {
-    return serializations;
+    return serializations.intValue();
   }
 
   public int gets() {
-    return gets;
+    return gets.intValue();
   }
 
   public int puts() {
-    return puts;
+    return puts.intValue();
   }
 
   public int getGetRaws() {
-    return getRaws;
+    return getRaws.intValue();
+  }
+
+  /** The latencies of the deserializations that were timed */
+  public @NotNull LatencyHistogram deserializationLatency() {
+    return deserializationLatency;
   }
 
   public void clear() {
-    gets = 0;
-    getRaws = 0;
-    puts = 0;
-    deserializations = 0;
-    serializations = 0;
+    gets.reset();
+    getRaws.reset();
+    puts.reset();
+    deserializations.reset();
+    serializations.reset();
+    deserializationLatency.clear();
   }
 
   @Override
   public void merge(@NotNull Metrics metrics) {
     ItemMetrics other = (ItemMetrics) metrics;
 
-    gets += other.gets;
-    getRaws += other.getRaws;
-    puts += other.puts;
-    deserializations += other.deserializations;
-    serializations += other.serializations;
+    gets.add(other.gets.sum());
+    getRaws.add(other.getRaws.sum());
+    puts.add(other.puts.sum());
+    deserializations.add(other.deserializations.sum());
+    serializations.add(other.serializations.sum());
+    deserializationLatency.merge(other.deserializationLatency);
   }
 
   @Override
@@ -94,13 +116,34 @@ public class ItemMetrics implements Metrics {
   @Override
   public String formatTableRow() {
     return String.format(
-        "%-15s %9d %9d %9d %9d", name, gets + getRaws, puts, deserializations, serializations);
+        "%-15s %9d %9d %9d %9d",
+        name,
+        gets.sum() + getRaws.sum(),
+        puts.sum(),
+        deserializations.sum(),
+        serializations.sum());
   }
 
   public boolean isEmpty(int threshold) {
-    return gets + getRaws <= threshold
-        && puts <= threshold
-        && deserializations <= threshold
-        && serializations <= threshold;
+    return gets.sum() + getRaws.sum() <= threshold
+        && puts.sum() <= threshold
+        && deserializations.sum() <= threshold
+        && serializations.sum() <= threshold;
+  }
+
+  @Override
+  public @NotNull Map<String, Long> counters() {
+    LinkedHashMap<String, Long> counters = new LinkedHashMap<>();
+    counters.put("gets", gets.sum());
+    counters.put("raw_gets", getRaws.sum());
+    counters.put("puts", puts.sum());
+    counters.put("deserializations", deserializations.sum());
+    counters.put("serializations", serializations.sum());
+    return counters;
+  }
+
+  @Override
+  public @NotNull Map<String, LatencyHistogram> histograms() {
+    return Map.of("deserialization", deserializationLatency);
   }
 }
@@ -0,0 +1,188 @@
+package se.yarin.morphy.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Exports the metrics in a {@link MetricsRepository} as JMX MBeans, one MBean per metrics key. The
+ * attributes are read from the metrics when they're requested, so they're always up to date.
+ * Latency histograms are exported as a count and a few percentiles in microseconds.
+ *
+ * <p>The MBeans are named <code>se.yarin.morphy:instance=&lt;instance&gt;,type=&lt;group&gt;,
+ * name=&lt;name&gt;</code>.
+ */
+public class JmxExporter implements AutoCloseable {
+  public static final String DOMAIN = "se.yarin.morphy";
+
+  private final @NotNull MetricsRepository repository;
+  private final @NotNull String instanceName;
+  private final @NotNull MBeanServer server;
+  private final List<ObjectName> registeredNames = new ArrayList<>();
+
+  /**
+   * Creates a new exporter using the platform MBean server
+   *
+   * @param repository the metrics to export
+   * @param instanceName a name that is unique for the repository, for instance the database name
+   */
+  public JmxExporter(@NotNull MetricsRepository repository, @NotNull String instanceName) {
+    this(repository, instanceName, ManagementFactory.getPlatformMBeanServer());
+  }
+
+  public JmxExporter(
+      @NotNull MetricsRepository repository,
+      @NotNull String instanceName,
+      @NotNull MBeanServer server) {
+    this.repository = repository;
+    this.instanceName = instanceName;
+    this.server = server;
+  }
+
+  /**
+   * Registers MBeans for all metrics in the repository that haven't been registered yet. Metrics
+   * that are registered in the repository later on require another call to this method.
+   *
+   * @return the number of registered MBeans
+   */
+  public synchronized int register() {
+    for (Map.Entry<MetricsKey, Metrics> entry : repository.getAllMetrics().entrySet()) {
+      ObjectName objectName = objectName(entry.getKey());
+      if (registeredNames.contains(objectName)) {
+        continue;
+      }
+      try {
+        server.registerMBean(new MetricsMBean(entry.getValue()), objectName);
+      } catch (InstanceAlreadyExistsException e) {
+        throw new IllegalStateException("Metrics already exported: " + objectName, e);
+      } catch (JMException e) {
+        throw new IllegalStateException("Failed to export metrics " + objectName, e);
+      }
+      registeredNames.add(objectName);
+    }
+    return registeredNames.size();
+  }
+
+  /** Unregisters all MBeans registered by this exporter */
+  @Override
+  public synchronized void close() {
+    for (ObjectName objectName : registeredNames) {
+      try {
+        server.unregisterMBean(objectName);
+      } catch (InstanceNotFoundException e) {
+        // Already unregistered by someone else
+      } catch (JMException e) {
+        throw new IllegalStateException("Failed to unregister metrics " + objectName, e);
+      }
+    }
+    registeredNames.clear();
+  }
+
+  public @NotNull ObjectName objectName(@NotNull MetricsKey metricsKey) {
+    try {
+      return new ObjectName(
+          String.format(
+              "%s:instance=%s,type=%s,name=%s",
+              DOMAIN,
+              ObjectName.quote(instanceName),
+              ObjectName.quote(metricsKey.group()),
+              ObjectName.quote(metricsKey.name())));
+    } catch (MalformedObjectNameException e) {
+      throw new IllegalArgumentException("Invalid metrics name: " + metricsKey, e);
+    }
+  }
+
+  private static class MetricsMBean implements DynamicMBean {
+    private final Map<String, LongSupplier> attributes = new LinkedHashMap<>();
+    private final MBeanInfo info;
+
+    MetricsMBean(@NotNull Metrics metrics) {
+      for (String counter : metrics.counters().keySet()) {
+        attributes.put(counter, () -> metrics.counters().getOrDefault(counter, 0L));
+      }
+      for (Map.Entry<String, LatencyHistogram> entry : metrics.histograms().entrySet()) {
+        String name = entry.getKey();
+        LatencyHistogram histogram = entry.getValue();
+        attributes.put(name + "_count", histogram::count);
+        attributes.put(name + "_mean_us", () -> (long) histogram.mean() / 1000);
+        attributes.put(name + "_p50_us", () -> histogram.valueAtPercentile(50) / 1000);
+        attributes.put(name + "_p99_us", () -> histogram.valueAtPercentile(99) / 1000);
+        attributes.put(name + "_max_us", () -> histogram.max() / 1000);
+      }
+
+      MBeanAttributeInfo[] attributeInfos =
+          attributes.keySet().stream()
+              .map(
+                  name ->
+                      new MBeanAttributeInfo(
+                          name, "long", name.replace('_', ' '), true, false, false))
+              .toArray(MBeanAttributeInfo[]::new);
+      this.info =
+          new MBeanInfo(
+              metrics.getClass().getName(),
+              "Morphy metrics",
+              attributeInfos,
+              null,
+              null,
+              null);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+      LongSupplier supplier = attributes.get(attribute);
+      if (supplier == null) {
+        throw new AttributeNotFoundException(attribute);
+      }
+      return supplier.getAsLong();
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+      throw new AttributeNotFoundException("Metrics attributes are read-only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+      AttributeList list = new AttributeList();
+      for (String attribute : attributes) {
+        LongSupplier supplier = this.attributes.get(attribute);
+        if (supplier != null) {
+          list.add(new Attribute(attribute, supplier.getAsLong()));
+        }
+      }
+      return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+      return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+      throw new UnsupportedOperationException("Metrics have no operations");
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+      return info;
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package se.yarin.morphy.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe histogram of latencies in nanoseconds, in the style of HdrHistogram. Every power of
+ * two is divided into 16 linear buckets, so the recorded values are accurate to within about 6%
+ * over the whole range of a long.
+ *
+ * <p>The buckets are only allocated once the first value is recorded, since most histograms in
+ * short-lived metrics contexts are never used.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int NUM_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+  private volatile AtomicLongArray buckets;
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  /**
+   * Records a latency
+   *
+   * @param nanos the latency in nanoseconds; negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    nanos = Math.max(0, nanos);
+    buckets().incrementAndGet(bucketIndex(nanos));
+    count.increment();
+    sum.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  /** The sum of all recorded latencies, in nanoseconds */
+  public long sum() {
+    return sum.sum();
+  }
+
+  /** The highest recorded latency, in nanoseconds */
+  public long max() {
+    return max.get();
+  }
+
+  /** The mean of all recorded latencies, in nanoseconds */
+  public double mean() {
+    long count = count();
+    return count == 0 ? 0 : (double) sum() / count;
+  }
+
+  /**
+   * Gets an estimate of a percentile of the recorded latencies
+   *
+   * @param percentile the percentile, between 0 and 100
+   * @return the highest latency in the bucket containing the percentile, in nanoseconds, or 0 if
+   *     nothing has been recorded
+   */
+  public long valueAtPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    AtomicLongArray buckets = this.buckets;
+    long count = count();
+    if (buckets == null || count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += buckets.get(i);
+      if (seen >= target) {
+        return Math.min(bucketUpperBound(i) - 1, max());
+      }
+    }
+    return max();
+  }
+
+  public void merge(@NotNull LatencyHistogram other) {
+    AtomicLongArray otherBuckets = other.buckets;
+    if (otherBuckets == null) {
+      return;
+    }
+    AtomicLongArray buckets = buckets();
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      long value = otherBuckets.get(i);
+      if (value != 0) {
+        buckets.addAndGet(i, value);
+      }
+    }
+    count.add(other.count());
+    sum.add(other.sum());
+    max.accumulate(other.max());
+  }
+
+  public void clear() {
+    AtomicLongArray buckets = this.buckets;
+    if (buckets != null) {
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        buckets.set(i, 0);
+      }
+    }
+    count.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index + 1;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long upper = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT + 1) << shift;
+    return upper < 0 ? Long.MAX_VALUE : upper;
+  }
+
+  private AtomicLongArray buckets() {
+    AtomicLongArray buckets = this.buckets;
+    if (buckets == null) {
+      synchronized (this) {
+        buckets = this.buckets;
+        if (buckets == null) {
+          buckets = new AtomicLongArray(NUM_BUCKETS);
+          this.buckets = buckets;
+        }
+      }
+    }
+    return buckets;
+  }
+}
@@ -0,0 +1,67 @@
+package se.yarin.morphy.metrics;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.Instrumentation;
+
+import java.util.Map;
+
+/** Metrics for the latency of an operation that isn't tied to a specific file or storage */
+public class LatencyMetrics implements Metrics {
+  private final @NotNull String name;
+
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  public LatencyMetrics(@NotNull String name) {
+    this.name = name;
+  }
+
+  public static MetricsRef<LatencyMetrics> register(
+      @NotNull Instrumentation instrumentation, @NotNull String name) {
+    return instrumentation.register("latency", name, () -> new LatencyMetrics(name), true);
+  }
+
+  public void record(long nanos) {
+    latency.record(nanos);
+  }
+
+  public @NotNull LatencyHistogram latency() {
+    return latency;
+  }
+
+  public void clear() {
+    latency.clear();
+  }
+
+  @Override
+  public void merge(@NotNull Metrics metrics) {
+    latency.merge(((LatencyMetrics) metrics).latency);
+  }
+
+  @Override
+  public String formatHeaderRow() {
+    return """
+                Operation           count   mean ms    p50 ms    p99 ms    max ms    \s
+                -------------------------------------------------------------------""";
+  }
+
+  @Override
+  public String formatTableRow() {
+    return String.format(
+        "%-15s %9d %9.1f %9.1f %9.1f %9.1f",
+        name,
+        latency.count(),
+        latency.mean() / 1e6,
+        latency.valueAtPercentile(50) / 1e6,
+        latency.valueAtPercentile(99) / 1e6,
+        latency.max() / 1e6);
+  }
+
+  public boolean isEmpty(int threshold) {
+    return latency.count() <= threshold;
+  }
+
+  @Override
+  public @NotNull Map<String, LatencyHistogram> histograms() {
+    return Map.of("duration", latency);
+  }
+}
@@ -0,0 +1,28 @@
+package se.yarin.morphy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A Java Flight Recorder event for waiting on a database lock. Disabled by default, and only
+ * recorded for waits longer than the threshold when enabled.
+ */
+@Name("se.yarin.morphy.LockWait")
+@Label("Database Lock Wait")
+@Category({"Morphy", "Transaction"})
+@Description("Waiting to acquire a database lock")
+@Enabled(false)
+@Threshold("1 ms")
+public class LockWaitEvent extends Event {
+  @Label("Lock")
+  public String lock;
+
+  @Label("Acquired")
+  @Description("False if the lock couldn't be acquired")
+  public boolean acquired;
+}
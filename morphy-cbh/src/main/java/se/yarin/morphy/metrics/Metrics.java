@@ -2,6 +2,8 @@ package se.yarin.morphy.metrics;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Map;
+
 public interface Metrics {
 
   void merge(@NotNull Metrics metrics);
@@ -17,4 +19,24 @@ public interface Metrics {
   }
 
   boolean isEmpty(int threshold);
+
+  /**
+   * Gets the current value of all counters in these metrics, used when exporting them. The keys
+   * should be in snake case.
+   *
+   * @return a map from counter name to value
+   */
+  default @NotNull Map<String, Long> counters() {
+    return Map.of();
+  }
+
+  /**
+   * Gets all latency histograms in these metrics, used when exporting them. The keys should be in
+   * snake case.
+   *
+   * @return a map from histogram name to histogram
+   */
+  default @NotNull Map<String, LatencyHistogram> histograms() {
+    return Map.of();
+  }
 }
@@ -6,7 +6,7 @@ import se.yarin.morphy.Instrumentation;
 import java.util.function.Consumer;
 
 public record MetricsRef<T extends Metrics>(
-    @NotNull Instrumentation instrumentation, @NotNull MetricsKey metricsKey) {
+    @NotNull Instrumentation instrumentation, @NotNull MetricsKey metricsKey, int slot) {
   public void update(Consumer<T> metricUpdater) {
     metricUpdater.accept(get());
   }
@@ -17,7 +17,7 @@ public record MetricsRef<T extends Metrics>(
    * @return an instance of this metric
    */
   public T get() {
-    return instrumentation.getCurrent().getMetrics(metricsKey);
+    return instrumentation.getCurrent().getMetrics(slot, metricsKey);
   }
 
   /**
@@ -26,6 +26,6 @@ public record MetricsRef<T extends Metrics>(
    * @return an instance of this metric
    */
   public T get(@NotNull MetricsRepository metricsRepository) {
-    return metricsRepository.getMetrics(metricsKey);
+    return metricsRepository.getMetrics(slot, metricsKey);
   }
 }
@@ -0,0 +1,13 @@
+package se.yarin.morphy.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
+/**
+ * A registered metric. The slot is a small, unique number assigned when the metric is registered,
+ * which lets a {@link MetricsRef} find its metrics in a {@link MetricsRepository} without a hash
+ * lookup.
+ */
+public record MetricsRegistration(
+    @NotNull MetricsKey metricsKey, int slot, @NotNull Supplier<? extends Metrics> factory) {}
@@ -4,17 +4,22 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import se.yarin.morphy.Instrumentation;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Supplier;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class MetricsRepository implements AutoCloseable {
   private final @Nullable MetricsRepository parent;
   private final @NotNull String contextName;
   private final boolean mergeOnPop;
-  private final HashMap<MetricsKey, Metrics> metrics = new HashMap<>();
+  private final ConcurrentHashMap<MetricsKey, Metrics> metrics = new ConcurrentHashMap<>();
+  // The same metrics indexed by the slot of their registration; replaced when a metric is added
+  private volatile Metrics[] metricsBySlot = new Metrics[0];
 
   protected MetricsRepository(@NotNull String contextName) {
     this.contextName = contextName;
@@ -25,14 +30,18 @@ public class MetricsRepository implements AutoCloseable {
   public MetricsRepository(
       @NotNull String contextName,
       @NotNull MetricsRepository parent,
-      @NotNull HashMap<MetricsKey, Supplier<? extends Metrics>> registeredMetrics,
+      @NotNull List<MetricsRegistration> registeredMetrics,
       boolean mergeOnPop) {
     this.contextName = contextName;
     this.parent = parent;
     this.mergeOnPop = mergeOnPop;
-    for (Map.Entry<MetricsKey, Supplier<? extends Metrics>> entry : registeredMetrics.entrySet()) {
-      metrics.put(entry.getKey(), entry.getValue().get());
+    Metrics[] metricsBySlot = new Metrics[registeredMetrics.size()];
+    for (MetricsRegistration registration : registeredMetrics) {
+      Metrics metric = registration.factory().get();
+      metrics.put(registration.metricsKey(), metric);
+      metricsBySlot[registration.slot()] = metric;
     }
+    this.metricsBySlot = metricsBySlot;
   }
 
   public @Nullable MetricsRepository parent() {
@@ -65,8 +74,14 @@ public class MetricsRepository implements AutoCloseable {
     }
   }
 
-  protected <T extends Metrics> void addMetric(@NotNull MetricsKey metricsKey, @NotNull T metric) {
-    metrics.put(metricsKey, metric);
+  protected synchronized <T extends Metrics> void addMetric(
+      @NotNull MetricsRegistration registration, @NotNull T metric) {
+    metrics.put(registration.metricsKey(), metric);
+    Metrics[] metricsBySlot =
+        Arrays.copyOf(
+            this.metricsBySlot, Math.max(this.metricsBySlot.length, registration.slot() + 1));
+    metricsBySlot[registration.slot()] = metric;
+    this.metricsBySlot = metricsBySlot;
   }
 
   public @NotNull <T extends Metrics> T getMetrics(@NotNull String group, @NotNull String name) {
@@ -81,6 +96,34 @@ public class MetricsRepository implements AutoCloseable {
     return (T) metrics; // TODO: test when using wrong type
   }
 
+  /**
+   * Gets metrics by the slot of their registration. This is the fast path used by {@link
+   * MetricsRef}.
+   *
+   * @param slot the slot of the registration
+   * @param metricsKey the key of the registration, used in the error message
+   * @return the metrics
+   * @throws IllegalArgumentException if the metrics weren't registered when this repository was
+   *     created
+   */
+  public @NotNull <T extends Metrics> T getMetrics(int slot, @NotNull MetricsKey metricsKey) {
+    Metrics[] metricsBySlot = this.metricsBySlot;
+    Metrics metrics = slot < metricsBySlot.length ? metricsBySlot[slot] : null;
+    if (metrics == null) {
+      throw new IllegalArgumentException("No such metrics: " + metricsKey);
+    }
+    return (T) metrics;
+  }
+
+  /**
+   * Gets all metrics in this repository
+   *
+   * @return a map of all metrics, sorted by key
+   */
+  public @NotNull SortedMap<MetricsKey, Metrics> getAllMetrics() {
+    return new TreeMap<>(metrics);
+  }
+
   public <T extends Metrics> Map<MetricsKey, T> getMetricsByType(@NotNull Class<T> clazz) {
     HashMap<MetricsKey, T> result = new HashMap<>();
     for (Map.Entry<MetricsKey, Metrics> entry : metrics.entrySet()) {
@@ -0,0 +1,41 @@
+package se.yarin.morphy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for physical I/O in a database file, either a page read that missed
+ * the page cache, a run of pages read ahead during a sequential scan or an insertion that shifted
+ * the rest of the file. Disabled by default.
+ */
+@Name("se.yarin.morphy.PageIO")
+@Label("Page I/O")
+@Category({"Morphy", "I/O"})
+@Description("A physical page read or a shift of a database file")
+@Enabled(false)
+@StackTrace(false)
+public class PageIOEvent extends Event {
+  public static final String READ = "Read";
+  public static final String READ_AHEAD = "ReadAhead";
+  public static final String INSERT = "Insert";
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("File")
+  @Description("The extension of the database file")
+  public String file;
+
+  @Label("Offset")
+  public long offset;
+
+  @Label("Bytes")
+  @DataAmount
+  public long bytes;
+}
@@ -0,0 +1,171 @@
+package se.yarin.morphy.metrics;
+
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports the metrics in a {@link MetricsRepository} in the Prometheus text format. The metrics can
+ * either be written to a file, to be picked up by a node exporter textfile collector, or be served
+ * over HTTP on the loopback interface.
+ *
+ * <p>Counters are exported as <code>morphy_&lt;group&gt;_&lt;counter&gt;_total</code> and latency
+ * histograms as summaries named <code>morphy_&lt;group&gt;_&lt;histogram&gt;_seconds</code>, all
+ * with the name of the metrics as a label.
+ */
+public class PrometheusExporter implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(PrometheusExporter.class);
+
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+  private final @NotNull MetricsRepository repository;
+  private @Nullable HttpServer server;
+
+  public PrometheusExporter(@NotNull MetricsRepository repository) {
+    this.repository = repository;
+  }
+
+  private record Family(@NotNull String type, @NotNull List<String> samples) {}
+
+  /**
+   * Formats the current value of all metrics
+   *
+   * @return the metrics in the Prometheus text format
+   */
+  public @NotNull String format() {
+    LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+    for (Map.Entry<MetricsKey, Metrics> entry : repository.getAllMetrics().entrySet()) {
+      String prefix = "morphy_" + sanitize(entry.getKey().group()) + "_";
+      String label = "name=\"" + escapeLabel(entry.getKey().name()) + "\"";
+      Metrics metrics = entry.getValue();
+
+      for (Map.Entry<String, Long> counter : metrics.counters().entrySet()) {
+        String name = prefix + sanitize(counter.getKey()) + "_total";
+        family(families, name, "counter")
+            .samples()
+            .add(name + "{" + label + "} " + counter.getValue());
+      }
+      for (Map.Entry<String, LatencyHistogram> histogram : metrics.histograms().entrySet()) {
+        String name = prefix + sanitize(histogram.getKey()) + "_seconds";
+        LatencyHistogram latency = histogram.getValue();
+        List<String> samples = family(families, name, "summary").samples();
+        long count = latency.count();
+        if (count > 0) {
+          for (double quantile : QUANTILES) {
+            samples.add(
+                String.format(
+                    "%s{%s,quantile=\"%s\"} %s",
+                    name,
+                    label,
+                    quantile,
+                    seconds(latency.valueAtPercentile(quantile * 100))));
+          }
+        }
+        samples.add(name + "_sum{" + label + "} " + seconds(latency.sum()));
+        samples.add(name + "_count{" + label + "} " + count);
+      }
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Family> entry : families.entrySet()) {
+      sb.append("# TYPE ").append(entry.getKey()).append(" ").append(entry.getValue().type());
+      sb.append("\n");
+      for (String sample : entry.getValue().samples()) {
+        sb.append(sample).append("\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the current value of all metrics to a file. The file is replaced atomically, so readers
+   * never see a partially written file.
+   *
+   * @param file the file to write to
+   * @throws IOException if the file couldn't be written
+   */
+  public void writeTo(@NotNull Path file) throws IOException {
+    Path absoluteFile = file.toAbsolutePath();
+    Path tempFile =
+        Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+    try {
+      Files.writeString(tempFile, format(), StandardCharsets.UTF_8);
+      Files.move(
+          tempFile,
+          absoluteFile,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  /**
+   * Starts serving the metrics over HTTP on the loopback interface, at the path /metrics
+   *
+   * @param port the port to listen to, or 0 to pick any free port
+   * @return the port the server is listening to
+   * @throws IOException if the server couldn't be started
+   */
+  public synchronized int serve(int port) throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("The metrics are already being served");
+    }
+    HttpServer server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext(
+        "/metrics",
+        exchange -> {
+          byte[] body = format().getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+          }
+        });
+    server.start();
+    this.server = server;
+    log.info("Serving metrics on port " + server.getAddress().getPort());
+    return server.getAddress().getPort();
+  }
+
+  /** Stops serving the metrics over HTTP, if they were */
+  @Override
+  public synchronized void close() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  private static Family family(Map<String, Family> families, String name, String type) {
+    return families.computeIfAbsent(name, key -> new Family(type, new ArrayList<>()));
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+
+  static @NotNull String sanitize(@NotNull String name) {
+    return name.replaceAll("[^a-zA-Z0-9_]", "_").toLowerCase();
+  }
+
+  static @NotNull String escapeLabel(@NotNull String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
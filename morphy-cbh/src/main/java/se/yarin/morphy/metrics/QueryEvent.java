@@ -0,0 +1,44 @@
+package se.yarin.morphy.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event for the execution of a query. Disabled by default; the plan is only
+ * formatted if the event is going to be committed.
+ */
+@Name("se.yarin.morphy.Query")
+@Label("Query")
+@Category({"Morphy", "Query"})
+@Description("Execution of a database query")
+@Enabled(false)
+@StackTrace(false)
+public class QueryEvent extends Event {
+  @Label("Query")
+  @Description("The type of the query or of the outermost query operator")
+  public String query;
+
+  @Label("Plan")
+  @Description("The query plan with estimated and actual costs, if available")
+  public String plan;
+
+  @Label("Estimated Rows")
+  @Description("The estimated number of rows, or -1 if unknown")
+  public long estimatedRows;
+
+  @Label("Actual Rows")
+  public long actualRows;
+
+  @Label("Physical Page Reads")
+  @Description("The number of pages read from disk, or -1 if unknown")
+  public long physicalPageReads;
+
+  @Label("Deserializations")
+  @Description("The number of deserialized items, or -1 if unknown")
+  public long deserializations;
+}
@@ -2,7 +2,14 @@ package se.yarin.morphy.qqueries;
 
 import org.jetbrains.annotations.NotNull;
 import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.entities.Entity;
+import se.yarin.morphy.entities.EntityIndexReadTransaction;
+import se.yarin.morphy.entities.EntityNameIndex;
+import se.yarin.morphy.entities.filters.EntityNameIndexFilter;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public abstract class ItemQuery<T> {
@@ -16,4 +23,58 @@ public abstract class ItemQuery<T> {
 
   @NotNull
   public abstract Stream<T> stream(@NotNull DatabaseReadTransaction txn);
+
+  /** Gets the queries that this query is composed of */
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of();
+  }
+
+  /**
+   * Gets the name of this type of query, used as the key of the query latency metrics. Queries
+   * whose behavior depends on something else than their class, such as a filter, should include
+   * that in the name.
+   */
+  public @NotNull String queryName() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * Gets a description of the structure of this query without any parameter values, so queries
+   * that only differ in their parameters get the same description.
+   */
+  public @NotNull String normalizedQuery() {
+    List<ItemQuery<?>> subQueries = subQueries();
+    if (subQueries.isEmpty()) {
+      return queryName();
+    }
+    return subQueries.stream()
+        .map(ItemQuery::normalizedQuery)
+        .sorted()
+        .collect(Collectors.joining(", ", queryName() + "(", ")"));
+  }
+
+  /**
+   * Gets all entities matching a name filter, using the name index of the entity index if enabled
+   * and otherwise a full scan.
+   */
+  static <E extends Entity & Comparable<E>> @NotNull Stream<E> streamByName(
+      @NotNull EntityIndexReadTransaction<E> txn, @NotNull EntityNameIndexFilter<E> filter) {
+    EntityNameIndex nameIndex = txn.index().nameIndex();
+    EntityNameIndex.Search search = filter.nameIndexSearch();
+    if (nameIndex == null || search == null) {
+      return txn.stream().filter(filter::matches);
+    }
+    return Arrays.stream(nameIndex.search(search)).mapToObj(txn::get).filter(filter::matches);
+  }
+
+  /** Gets a rough estimate of the number of entities matching a name filter */
+  static <E extends Entity & Comparable<E>> int rowEstimateByName(
+      @NotNull EntityIndexReadTransaction<E> txn, @NotNull EntityNameIndexFilter<E> filter) {
+    EntityNameIndex nameIndex = txn.index().nameIndex();
+    EntityNameIndex.Search search = filter.nameIndexSearch();
+    if (nameIndex == null || search == null) {
+      return INFINITE;
+    }
+    return nameIndex.search(search).length;
+  }
 }
@@ -56,4 +56,9 @@ public class QAnd<T> extends ItemQuery<T> {
     assert stream != null;
     return stream;
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.copyOf(andQueries);
+  }
 }
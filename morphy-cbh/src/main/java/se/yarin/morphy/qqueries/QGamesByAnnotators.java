@@ -49,4 +49,9 @@ public class QGamesByAnnotators extends ItemQuery<Game> {
     assert annotatorFilter != null;
     return txn.stream(GameFilter.of(annotatorFilter, null));
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(annotatorQuery);
+  }
 }
@@ -49,4 +49,9 @@ public class QGamesByGameTag extends ItemQuery<Game> {
     assert gameTagFilter != null;
     return txn.stream(GameFilter.of(null, gameTagFilter));
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(gameTagQuery);
+  }
 }
@@ -58,4 +58,9 @@ public class QGamesByPlayers extends ItemQuery<Game> {
     assert playerFilter != null;
     return txn.stream(GameFilter.of(playerFilter, null));
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(playerQuery);
+  }
 }
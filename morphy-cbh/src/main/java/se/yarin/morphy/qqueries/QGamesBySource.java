@@ -49,4 +49,9 @@ public class QGamesBySource extends ItemQuery<Game> {
     assert sourceFilter != null;
     return txn.stream(GameFilter.of(sourceFilter, null));
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(sourceQuery);
+  }
 }
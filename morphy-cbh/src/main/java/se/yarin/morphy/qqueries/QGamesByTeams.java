@@ -49,4 +49,9 @@ public class QGamesByTeams extends ItemQuery<Game> {
     assert teamFilter != null;
     return txn.stream(GameFilter.of(null, teamFilter));
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(teamQuery);
+  }
 }
@@ -49,4 +49,9 @@ public class QGamesByTournaments extends ItemQuery<Game> {
     assert tournamentFilter != null;
     return txn.stream(GameFilter.of(tournamentFilter, null));
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(tournamentQuery);
+  }
 }
@@ -17,6 +17,11 @@ public class QGamesWithFilter extends ItemQuery<Game> {
     this.filter = filter;
   }
 
+  @Override
+  public @NotNull String queryName() {
+    return "QGamesWithFilter(" + filter.getClass().getSimpleName() + ")";
+  }
+
   @Override
   public boolean matches(@NotNull DatabaseReadTransaction txn, @NotNull Game game) {
     ItemStorageFilter<GameHeader> headerFilter = filter.gameHeaderFilter();
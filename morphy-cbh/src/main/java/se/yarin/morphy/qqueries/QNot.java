@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import se.yarin.morphy.DatabaseReadTransaction;
 import se.yarin.morphy.exceptions.MorphyNotSupportedException;
 
+import java.util.List;
 import java.util.stream.Stream;
 
 public class QNot<T> extends ItemQuery<T> {
@@ -28,4 +29,9 @@ public class QNot<T> extends ItemQuery<T> {
     // TODO: Support this
     throw new MorphyNotSupportedException("Can't stream from a NOT query");
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(negatedQuery);
+  }
 }
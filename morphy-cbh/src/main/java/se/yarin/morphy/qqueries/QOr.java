@@ -46,4 +46,9 @@ public class QOr<T> extends ItemQuery<T> {
     }
     return items.stream();
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.copyOf(orQueries);
+  }
 }
@@ -65,4 +65,9 @@ public class QPlayersByGames extends ItemQuery<Player> {
     assert aggregatedPlayers != null;
     return aggregatedPlayers.stream();
   }
+
+  @Override
+  protected @NotNull List<ItemQuery<?>> subQueries() {
+    return List.of(gameQuery);
+  }
 }
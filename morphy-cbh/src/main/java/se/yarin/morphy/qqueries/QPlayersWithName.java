@@ -33,14 +33,11 @@ public class QPlayersWithName extends ItemQuery<Player> {
 
   @Override
   public int rowEstimate(@NotNull DatabaseReadTransaction txn) {
-    // TODO: if case sensitive, we can iterate alphabetically in the index and know if there are few
-    // matching
-    return INFINITE;
+    return rowEstimateByName(txn.playerTransaction(), filter);
   }
 
   @Override
   public @NotNull Stream<Player> stream(@NotNull DatabaseReadTransaction txn) {
-    // TODO: Serialization stream
-    return txn.playerTransaction().stream().filter(player -> matches(txn, player));
+    return streamByName(txn.playerTransaction(), filter);
   }
 }
@@ -21,14 +21,11 @@ public class QSourcesWithTitle extends ItemQuery<Source> {
 
   @Override
   public int rowEstimate(@NotNull DatabaseReadTransaction txn) {
-    // TODO: if case sensitive, we can iterate alphabetically in the index and know if there are few
-    // matching
-    return INFINITE;
+    return rowEstimateByName(txn.sourceTransaction(), filter);
   }
 
   @Override
   public @NotNull Stream<Source> stream(@NotNull DatabaseReadTransaction txn) {
-    // TODO: Serialization stream
-    return txn.sourceTransaction().stream().filter(source -> matches(txn, source));
+    return streamByName(txn.sourceTransaction(), filter);
   }
 }
@@ -25,14 +25,11 @@ public class QTeamsWithTitle extends ItemQuery<Team> {
 
   @Override
   public int rowEstimate(@NotNull DatabaseReadTransaction txn) {
-    // TODO: if case sensitive, we can iterate alphabetically in the index and know if there are few
-    // matching
-    return INFINITE;
+    return rowEstimateByName(txn.teamTransaction(), filter);
   }
 
   @Override
   public @NotNull Stream<Team> stream(@NotNull DatabaseReadTransaction txn) {
-    // TODO: Serialization stream
-    return txn.teamTransaction().stream().filter(team -> matches(txn, team));
+    return streamByName(txn.teamTransaction(), filter);
   }
 }
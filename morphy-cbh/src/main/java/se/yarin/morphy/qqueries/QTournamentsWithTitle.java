@@ -25,11 +25,11 @@ public class QTournamentsWithTitle extends ItemQuery<Tournament> {
 
   @Override
   public int rowEstimate(@NotNull DatabaseReadTransaction txn) {
-    return INFINITE;
+    return rowEstimateByName(txn.tournamentTransaction(), filter);
   }
 
   @Override
   public @NotNull Stream<Tournament> stream(@NotNull DatabaseReadTransaction txn) {
-    return txn.tournamentTransaction().stream().filter(tournament -> matches(txn, tournament));
+    return streamByName(txn.tournamentTransaction(), filter);
   }
 }
@@ -3,6 +3,12 @@ package se.yarin.morphy.qqueries;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.Instrumentation;
+import se.yarin.morphy.metrics.FileMetrics;
+import se.yarin.morphy.metrics.ItemMetrics;
+import se.yarin.morphy.metrics.MetricsRepository;
+import se.yarin.morphy.metrics.QueryEvent;
+import se.yarin.morphy.queries.SlowQueryLog;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -41,31 +47,11 @@ public class QueryExecutor<T> {
    * @return the query result
    */
   public QueryResult<T> execute(@NotNull ItemQuery<T> query, int limit, boolean countAll) {
-    AtomicInteger hitsFound = new AtomicInteger(0);
     long startTime = System.currentTimeMillis();
-
-    Stream<T> searchStream = query.stream(transaction);
-    if (!countAll && limit > 0) {
-      searchStream = searchStream.limit(limit);
-    }
-
     ArrayList<T> result = new ArrayList<>();
-    searchStream.forEachOrdered(
-        item -> {
-          int hits = hitsFound.incrementAndGet();
-          if (hits <= limit || limit == 0) {
-            result.add(item);
-          }
-          if (progressUpdater != null) {
-            progressUpdater.accept(item);
-          }
-        });
+    int hitsFound = run(query, limit, countAll, result::add);
 
-    return new QueryResult<>(
-        hitsFound.get(),
-        0,
-        result,
-        System.currentTimeMillis() - startTime);
+    return new QueryResult<>(hitsFound, 0, result, System.currentTimeMillis() - startTime);
   }
 
   /**
@@ -78,29 +64,118 @@ public class QueryExecutor<T> {
    */
   public QueryResult<T> execute(
       @NotNull ItemQuery<T> query, int limit, boolean countAll, @NotNull Consumer<T> consumer) {
-    AtomicInteger hitsFound = new AtomicInteger(0), hitsConsumed = new AtomicInteger(0);
+    AtomicInteger hitsConsumed = new AtomicInteger(0);
     long startTime = System.currentTimeMillis();
+    int hitsFound =
+        run(
+            query,
+            limit,
+            countAll,
+            item -> {
+              hitsConsumed.incrementAndGet();
+              consumer.accept(item);
+            });
+
+    return new QueryResult<>(
+        hitsFound, hitsConsumed.get(), List.of(), System.currentTimeMillis() - startTime);
+  }
+
+  /**
+   * Runs a query, passing the hits within the limit to a consumer, and records the query in the
+   * metrics, JFR and the slow query log
+   *
+   * @return the number of hits found
+   */
+  private int run(
+      @NotNull ItemQuery<T> query, int limit, boolean countAll, @NotNull Consumer<T> hitConsumer) {
+    AtomicInteger hitsFound = new AtomicInteger(0);
+    long startNanos = System.nanoTime();
+    QueryEvent event = new QueryEvent();
+    event.begin();
+
+    // The I/O of the query is only tracked separately if the query may end up in the slow query
+    // log, since it requires a nested metrics context
+    Instrumentation instrumentation = transaction.database().context().instrumentation();
+    SlowQueryLog slowQueryLog = transaction.database().context().slowQueryLog();
+    MetricsRepository queryMetrics =
+        slowQueryLog == null ? null : instrumentation.pushContext("query", true);
+    try {
+      Stream<T> searchStream = query.stream(transaction);
+      if (!countAll && limit > 0) {
+        searchStream = searchStream.limit(limit);
+      }
 
-    Stream<T> searchStream = query.stream(transaction);
-    if (!countAll && limit > 0) {
-      searchStream = searchStream.limit(limit);
+      searchStream.forEachOrdered(
+          item -> {
+            int hits = hitsFound.incrementAndGet();
+            if (hits <= limit || limit == 0) {
+              hitConsumer.accept(item);
+            }
+            if (progressUpdater != null) {
+              progressUpdater.accept(item);
+            }
+          });
+    } finally {
+      if (queryMetrics != null) {
+        instrumentation.popContext();
+      }
     }
+    long durationNanos = System.nanoTime() - startNanos;
+    event.end();
 
-    searchStream.forEachOrdered(
-        item -> {
-          int hits = hitsFound.incrementAndGet();
-          if (hits <= limit || limit == 0) {
-            hitsConsumed.incrementAndGet();
-            consumer.accept(item);
-          }
-          if (progressUpdater != null) {
-            progressUpdater.accept(item);
-          }
-        });
-    return new QueryResult<>(
-        hitsFound.get(),
-        hitsConsumed.get(),
-        List.of(),
-        System.currentTimeMillis() - startTime);
+    // The latencies are kept in the global metrics since the query is registered while the
+    // transaction context is already open
+    transaction
+        .database()
+        .context()
+        .queryLatencyMetrics(query.queryName())
+        .get(instrumentation)
+        .record(durationNanos);
+
+    boolean logQuery = slowQueryLog != null && slowQueryLog.shouldLog(durationNanos);
+    if (!event.shouldCommit() && !logQuery) {
+      return hitsFound.get();
+    }
+
+    int estimatedRows = query.rowEstimate(transaction);
+    long physicalPageReads = -1, logicalPageReads = -1, deserializations = -1;
+    if (queryMetrics != null) {
+      physicalPageReads = 0;
+      logicalPageReads = 0;
+      deserializations = 0;
+      for (FileMetrics fileMetrics : queryMetrics.getMetricsByType(FileMetrics.class).values()) {
+        physicalPageReads += fileMetrics.physicalPageReads();
+        logicalPageReads += fileMetrics.logicalPageReads();
+      }
+      for (ItemMetrics itemMetrics : queryMetrics.getMetricsByType(ItemMetrics.class).values()) {
+        deserializations += itemMetrics.deserializations();
+      }
+    }
+
+    if (event.shouldCommit()) {
+      event.query = query.queryName();
+      event.estimatedRows = estimatedRows;
+      event.actualRows = hitsFound.get();
+      event.physicalPageReads = physicalPageReads;
+      event.deserializations = deserializations;
+      event.commit();
+    }
+    if (logQuery) {
+      slowQueryLog.log(
+          new SlowQueryLog.Entry(
+              "items",
+              query.normalizedQuery(),
+              null,
+              durationNanos,
+              estimatedRows,
+              hitsFound.get(),
+              Double.NaN,
+              -1,
+              -1,
+              physicalPageReads,
+              logicalPageReads,
+              deserializations));
+    }
+    return hitsFound.get();
   }
 }
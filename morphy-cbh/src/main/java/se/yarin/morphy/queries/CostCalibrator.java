@@ -0,0 +1,169 @@
+package se.yarin.morphy.queries;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseMode;
+import se.yarin.morphy.games.GameHeaderIndex;
+import se.yarin.morphy.util.CBUtil;
+import se.yarin.util.PagedBlobChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Measures the query planner cost constants on the storage a database is on.
+ *
+ * <p>The page read costs are measured by reading pages of the largest file of the database, first
+ * at random positions and then sequentially. The deserialization cost is measured as the
+ * difference between getting game headers and getting the same game headers without deserializing
+ * them. The measurements reflect the current state of the OS page cache, so a database that is
+ * mostly cached gets low page read costs; calibrate under the conditions the database is normally
+ * queried under.
+ */
+public class CostCalibrator {
+  private static final Logger log = LoggerFactory.getLogger(CostCalibrator.class);
+
+  private static final int DESERIALIZATION_ROUNDS = 3;
+
+  private final @NotNull File cbhFile;
+  private final int samples;
+  private final @NotNull Random random;
+
+  /**
+   * Creates a new calibrator
+   *
+   * @param cbhFile the database to calibrate against
+   * @param samples the number of pages and game headers to sample in each measurement
+   */
+  public CostCalibrator(@NotNull File cbhFile, int samples) {
+    this(cbhFile, samples, new Random());
+  }
+
+  CostCalibrator(@NotNull File cbhFile, int samples, @NotNull Random random) {
+    if (samples < 1) {
+      throw new IllegalArgumentException("At least one sample is needed");
+    }
+    this.cbhFile = cbhFile;
+    this.samples = samples;
+    this.random = random;
+  }
+
+  /**
+   * Measures all cost constants. Constants that can't be measured, e.g. the deserialization cost
+   * in an empty database, get the default value.
+   *
+   * @return the measured cost constants
+   * @throws IOException if the database couldn't be read
+   */
+  public @NotNull PlannerCostConstants calibrate() throws IOException {
+    File file = largestFile();
+    double scatteredIOPageCost = PlannerCostConstants.DEFAULT.scatteredIOPageCost();
+    double burstIOPageCost = PlannerCostConstants.DEFAULT.burstIOPageCost();
+    if (file.length() >= 2L * PagedBlobChannel.PAGE_SIZE) {
+      scatteredIOPageCost = measureScatteredIOPageCost(file);
+      // Sequential reads should never be more expensive; if they are, it's measurement noise
+      burstIOPageCost = Math.min(measureBurstIOPageCost(file), scatteredIOPageCost);
+    } else {
+      log.info("The database is too small to measure the page read costs");
+    }
+
+    double deserializationCost = measureDeserializationCost();
+    if (Double.isNaN(deserializationCost)) {
+      log.info("The database has no games to measure the deserialization cost");
+      deserializationCost = PlannerCostConstants.DEFAULT.deserializationCost();
+    }
+
+    return new PlannerCostConstants(scatteredIOPageCost, burstIOPageCost, deserializationCost);
+  }
+
+  private @NotNull File largestFile() {
+    File largest = cbhFile;
+    for (String extension : new String[] {".cbg", ".cba", ".cbj"}) {
+      File file = CBUtil.fileWithExtension(cbhFile, extension);
+      if (file.length() > largest.length()) {
+        largest = file;
+      }
+    }
+    return largest;
+  }
+
+  /** Measures the time in milliseconds to read a page at a random position in a file */
+  double measureScatteredIOPageCost(@NotNull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long numPages = channel.size() / PagedBlobChannel.PAGE_SIZE;
+      long[] pages = new long[samples];
+      for (int i = 0; i < samples; i++) {
+        pages[i] = (long) (random.nextDouble() * numPages);
+      }
+
+      ByteBuffer buf = ByteBuffer.allocate(PagedBlobChannel.PAGE_SIZE);
+      long start = System.nanoTime();
+      for (long page : pages) {
+        buf.clear();
+        channel.read(buf, page * PagedBlobChannel.PAGE_SIZE);
+      }
+      return (System.nanoTime() - start) / 1e6 / samples;
+    }
+  }
+
+  /** Measures the time in milliseconds to read a page when scanning a file sequentially */
+  double measureBurstIOPageCost(@NotNull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long numPages = channel.size() / PagedBlobChannel.PAGE_SIZE;
+      int numReads = (int) Math.min(samples, numPages);
+      long startPage = (long) (random.nextDouble() * (numPages - numReads + 1));
+
+      ByteBuffer buf = ByteBuffer.allocate(PagedBlobChannel.PAGE_SIZE);
+      channel.position(startPage * PagedBlobChannel.PAGE_SIZE);
+      long start = System.nanoTime();
+      for (int i = 0; i < numReads; i++) {
+        buf.clear();
+        channel.read(buf);
+      }
+      return (System.nanoTime() - start) / 1e6 / numReads;
+    }
+  }
+
+  /**
+   * Measures the time in milliseconds to deserialize a game header
+   *
+   * @return the cost, or NaN if the database has no games
+   */
+  double measureDeserializationCost() throws IOException {
+    try (Database database = Database.open(cbhFile, DatabaseMode.READ_ONLY)) {
+      GameHeaderIndex index = database.gameHeaderIndex();
+      int count = index.count();
+      if (count == 0) {
+        return Double.NaN;
+      }
+      int numGames = Math.min(samples, count);
+      int[] gameIds = new int[numGames];
+      for (int i = 0; i < numGames; i++) {
+        gameIds[i] = 1 + (int) ((long) i * count / numGames);
+      }
+
+      // Take the best of a few rounds, the first round also brings the pages into the cache
+      long rawNanos = Long.MAX_VALUE, deserializedNanos = Long.MAX_VALUE;
+      for (int round = 0; round < DESERIALIZATION_ROUNDS; round++) {
+        long start = System.nanoTime();
+        for (int gameId : gameIds) {
+          index.getRaw(gameId);
+        }
+        rawNanos = Math.min(rawNanos, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int gameId : gameIds) {
+          index.getGameHeader(gameId);
+        }
+        deserializedNanos = Math.min(deserializedNanos, System.nanoTime() - start);
+      }
+      return Math.max(0, deserializedNanos - rawNanos) / 1e6 / numGames;
+    }
+  }
+}
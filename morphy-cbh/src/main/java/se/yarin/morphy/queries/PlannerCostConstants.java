@@ -0,0 +1,126 @@
+package se.yarin.morphy.queries;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.morphy.util.CBUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The constants used by the query planner to turn estimated page reads and deserializations into a
+ * cost. All costs are in milliseconds. The best values depend a lot on the storage the database is
+ * on, so they can be measured with {@link CostCalibrator} and stored either next to a database or
+ * in a file shared by all databases on the host.
+ *
+ * @param scatteredIOPageCost the cost of reading a page at a random position in a file
+ * @param burstIOPageCost the cost of reading a page when scanning a file sequentially
+ * @param deserializationCost the cost of deserializing a single item
+ */
+public record PlannerCostConstants(
+    double scatteredIOPageCost, double burstIOPageCost, double deserializationCost) {
+  private static final Logger log = LoggerFactory.getLogger(PlannerCostConstants.class);
+
+  // The defaults were measured on a laptop with an NVMe disk
+  public static final PlannerCostConstants DEFAULT = new PlannerCostConstants(0.08, 0.02, 0.0006);
+
+  public static final String DATABASE_FILE_EXTENSION = ".planner.properties";
+
+  private static final String SCATTERED_IO_PAGE_COST = "scatteredIOPageCost";
+  private static final String BURST_IO_PAGE_COST = "burstIOPageCost";
+  private static final String DESERIALIZATION_COST = "deserializationCost";
+
+  public PlannerCostConstants {
+    if (!(scatteredIOPageCost >= 0) || !(burstIOPageCost >= 0) || !(deserializationCost >= 0)) {
+      throw new IllegalArgumentException("Planner costs must be non-negative numbers");
+    }
+  }
+
+  /** Gets the file with cost constants shared by all databases on this host */
+  public static @NotNull Path hostFile() {
+    return Path.of(System.getProperty("user.home"), ".morphy", "planner-costs.properties");
+  }
+
+  /** Gets the file with cost constants specific to a database */
+  public static @NotNull Path databaseFile(@NotNull File cbhFile) {
+    return CBUtil.fileWithExtension(cbhFile, DATABASE_FILE_EXTENSION).toPath();
+  }
+
+  /**
+   * Gets the cost constants to use for a database: the ones calibrated for the database itself if
+   * they exist, otherwise the ones calibrated for the host, otherwise the defaults.
+   *
+   * @param cbhFile the database file
+   * @return the cost constants to use
+   */
+  public static @NotNull PlannerCostConstants resolve(@NotNull File cbhFile) {
+    for (Path file : new Path[] {databaseFile(cbhFile), hostFile()}) {
+      if (Files.exists(file)) {
+        try {
+          return load(file);
+        } catch (IOException | IllegalArgumentException e) {
+          log.warn("Failed to read the planner costs in " + file + ": " + e.getMessage());
+        }
+      }
+    }
+    return DEFAULT;
+  }
+
+  /**
+   * Loads cost constants from a properties file. Costs missing in the file get the default value.
+   *
+   * @param file the file to load from
+   * @return the loaded cost constants
+   * @throws IOException if the file couldn't be read
+   * @throws IllegalArgumentException if a cost in the file isn't a valid number
+   */
+  public static @NotNull PlannerCostConstants load(@NotNull Path file) throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      properties.load(reader);
+    }
+    return new PlannerCostConstants(
+        parse(properties, SCATTERED_IO_PAGE_COST, DEFAULT.scatteredIOPageCost()),
+        parse(properties, BURST_IO_PAGE_COST, DEFAULT.burstIOPageCost()),
+        parse(properties, DESERIALIZATION_COST, DEFAULT.deserializationCost()));
+  }
+
+  private static double parse(@NotNull Properties properties, @NotNull String key, double value) {
+    String property = properties.getProperty(key);
+    if (property == null) {
+      return value;
+    }
+    try {
+      return Double.parseDouble(property.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + key + ": " + property);
+    }
+  }
+
+  /**
+   * Saves the cost constants to a properties file, creating the parent directory if needed
+   *
+   * @param file the file to save to
+   * @throws IOException if the file couldn't be written
+   */
+  public void save(@NotNull Path file) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(SCATTERED_IO_PAGE_COST, Double.toString(scatteredIOPageCost));
+    properties.setProperty(BURST_IO_PAGE_COST, Double.toString(burstIOPageCost));
+    properties.setProperty(DESERIALIZATION_COST, Double.toString(deserializationCost));
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      properties.store(writer, "Query planner costs in milliseconds");
+    }
+  }
+}
@@ -12,10 +12,24 @@ import se.yarin.morphy.entities.EntityType;
 public class QueryContext {
   private final @NotNull DatabaseReadTransaction txn;
   private final boolean traceCost;
+  private final boolean bulkScan;
 
   public QueryContext(@NotNull DatabaseReadTransaction txn, boolean traceCost) {
+    this(txn, traceCost, false);
+  }
+
+  /**
+   * Creates a new query context
+   *
+   * @param txn the transaction to run the query in
+   * @param traceCost if true, the actual cost of the operators are traced
+   * @param bulkScan if true, table scans in the query run as bulk scans of the database; see
+   *     {@link DatabaseContext#beginBulkScan()}
+   */
+  public QueryContext(@NotNull DatabaseReadTransaction txn, boolean traceCost, boolean bulkScan) {
     this.txn = txn;
     this.traceCost = traceCost;
+    this.bulkScan = bulkScan;
   }
 
   public @NotNull DatabaseReadTransaction transaction() {
@@ -46,4 +60,8 @@ public class QueryContext {
   public boolean traceCost() {
     return traceCost;
   }
+
+  public boolean bulkScan() {
+    return bulkScan;
+  }
 }
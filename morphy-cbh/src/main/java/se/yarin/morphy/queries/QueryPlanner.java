@@ -8,6 +8,7 @@ import se.yarin.morphy.Database;
 import se.yarin.morphy.DatabaseReadTransaction;
 import se.yarin.morphy.Game;
 import se.yarin.morphy.IdObject;
+import se.yarin.morphy.boosters.CompactGameEntityIndex;
 import se.yarin.morphy.boosters.GameEntityIndex;
 import se.yarin.morphy.entities.*;
 import se.yarin.morphy.entities.filters.*;
@@ -234,6 +235,14 @@ public class QueryPlanner {
     return estimateUniquePages(citPages, count) + estimateUniquePages(cibPages, count);
   }
 
+  public long estimateCompactGameEntityIndexPageReads(@NotNull EntityType entityType, long count) {
+    CompactGameEntityIndex compactGameEntityIndex = database.compactGameEntityIndex(entityType);
+    assert compactGameEntityIndex != null;
+
+    // The games associated with an entity are stored contiguously, typically within a single page
+    return estimateUniquePages(compactGameEntityIndex.numDiskPages(), count);
+  }
+
   public @NotNull <T extends IdObject> QueryOperator<T> selectBestQueryPlan(
       @NotNull List<QueryOperator<T>> queryPlans) {
     if (queryPlans.isEmpty()) {
@@ -358,7 +367,7 @@ public class QueryPlanner {
       QueryOperator<?> entityQueryPlan =
           selectBestQueryPlan(getEntityQueryPlans(context, entityJoin.entityQuery(), false));
       QueryOperator<Game> gameOp =
-          new GameIdsByEntities<>(context, entityQueryPlan, entityJoin.getEntityType());
+          gameIdsByEntities(context, entityQueryPlan, entityJoin.getEntityType());
       // If joining with e.g. White players only, we still need to filter on this later on as the
       // index will return
       // games where the player is either White or Black
@@ -376,7 +385,7 @@ public class QueryPlanner {
     for (GameFilter gameFilter : gameQuery.gameFilters()) {
       if (gameFilter instanceof GameEntityFilter<?> entityFilter) {
         QueryOperator<Game> gameOp =
-            new GameIdsByEntities<>(
+            gameIdsByEntities(
                 context,
                 new Manual<>(context, Set.copyOf(entityFilter.entityIds())),
                 entityFilter.entityType());
@@ -393,6 +402,16 @@ public class QueryPlanner {
     return sources;
   }
 
+  private <T extends IdObject> QueryOperator<Game> gameIdsByEntities(
+      @NotNull QueryContext context,
+      @NotNull QueryOperator<T> source,
+      @NotNull EntityType entityType) {
+    if (database.compactGameEntityIndex(entityType) != null) {
+      return new CompactGameIdsByEntities<>(context, source, entityType);
+    }
+    return new GameIdsByEntities<>(context, source, entityType);
+  }
+
   <T extends SourceQuery<?>> List<List<T>> sourceCombinations(@NotNull List<T> sources) {
     ArrayList<List<T>> combinations = new ArrayList<>();
     int n = sources.size();
@@ -483,6 +502,17 @@ public class QueryPlanner {
         p = indexFilter.end();
         if (p != null && (endEntity == null || p.compareTo(endEntity) < 0)) endEntity = p;
       }
+      EntityNameIndex nameIndex = context.entityIndex(entityQuery.entityType()).nameIndex();
+      if (nameIndex != null
+          && filter instanceof EntityNameIndexFilter<T> nameFilter
+          && nameFilter.nameIndexSearch() != null) {
+        QueryOperator<T> entities =
+            new EntityNameIndexScan<>(
+                context, entityQuery.entityType(), nameIndex, nameFilter.nameIndexSearch());
+        sources.add(
+            EntitySourceQuery.fromQueryOperator(
+                entities, true, nameFilter.isCoveredByNameIndex() ? List.of(filter) : List.of()));
+      }
     }
 
     sources.add(
@@ -0,0 +1,180 @@
+package se.yarin.morphy.queries;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import se.yarin.morphy.DatabaseConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static se.yarin.morphy.queries.operations.QueryExplain.quote;
+
+/**
+ * A log of slow queries, written as one JSON object per line to a local file. Queries taking at
+ * least the threshold time are always logged; faster queries can be sampled to get a baseline to
+ * compare against. The file is rotated when it grows too large, the rotated files getting the
+ * suffix .1, .2 etc with .1 being the most recent.
+ *
+ * <p>Failing to write to the log never fails the query; the error is logged instead.
+ */
+public class SlowQueryLog {
+  private static final Logger log = LoggerFactory.getLogger(SlowQueryLog.class);
+
+  private final @NotNull Path file;
+  private final long thresholdNanos;
+  private final double sampleRate;
+  private final long maxBytes;
+  private final int maxFiles;
+
+  /**
+   * An entry in the slow query log. Values that aren't known are -1, or NaN for the cost.
+   *
+   * @param engine the query engine that executed the query, "planner" or "items"
+   * @param query the normalized query, without any parameter values
+   * @param plan the executed query plan as JSON, or null if not available
+   */
+  public record Entry(
+      @NotNull String engine,
+      @NotNull String query,
+      @Nullable String plan,
+      long durationNanos,
+      long estimatedRows,
+      long actualRows,
+      double estimatedCost,
+      long estimatedPageReads,
+      long estimatedDeserializations,
+      long physicalPageReads,
+      long logicalPageReads,
+      long deserializations) {}
+
+  public SlowQueryLog(
+      @NotNull Path file, long thresholdMillis, double sampleRate, long maxBytes, int maxFiles) {
+    if (maxFiles < 1) {
+      throw new IllegalArgumentException("The slow query log must keep at least one file");
+    }
+    this.file = file;
+    this.thresholdNanos = thresholdMillis * 1_000_000;
+    this.sampleRate = sampleRate;
+    this.maxBytes = maxBytes;
+    this.maxFiles = maxFiles;
+  }
+
+  /**
+   * Creates a slow query log from the database configuration
+   *
+   * @return the slow query log, or null if it's not enabled
+   */
+  public static @Nullable SlowQueryLog fromConfig(@NotNull DatabaseConfig config) {
+    if (config.slowQueryLogFile() == null) {
+      return null;
+    }
+    return new SlowQueryLog(
+        config.slowQueryLogFile(),
+        config.slowQueryThresholdMillis(),
+        config.slowQuerySampleRate(),
+        config.slowQueryLogMaxBytes(),
+        config.slowQueryLogMaxFiles());
+  }
+
+  public @NotNull Path file() {
+    return file;
+  }
+
+  public boolean isSlow(long durationNanos) {
+    return durationNanos >= thresholdNanos;
+  }
+
+  /**
+   * Decides whether a query should be logged. Slow queries are always logged, other queries are
+   * sampled. Callers should check this before gathering the data for the entry.
+   *
+   * @param durationNanos the time it took to execute the query
+   * @return true if the query should be logged
+   */
+  public boolean shouldLog(long durationNanos) {
+    return isSlow(durationNanos)
+        || (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+  }
+
+  public void log(@NotNull Entry entry) {
+    String line = format(entry, Instant.now()) + "\n";
+    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    synchronized (this) {
+      try {
+        rotateIfNeeded(bytes.length);
+        Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        log.warn("Failed to write to the slow query log " + file, e);
+      }
+    }
+  }
+
+  @NotNull
+  String format(@NotNull Entry entry, @NotNull Instant timestamp) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"time\":")
+        .append(quote(timestamp.toString()))
+        .append(",\"slow\":")
+        .append(isSlow(entry.durationNanos()))
+        .append(",\"durationMs\":")
+        .append(String.format(Locale.ROOT, "%.3f", entry.durationNanos() / 1e6))
+        .append(",\"engine\":")
+        .append(quote(entry.engine()))
+        .append(",\"query\":")
+        .append(quote(entry.query()))
+        .append(",\"estimatedRows\":")
+        .append(entry.estimatedRows())
+        .append(",\"actualRows\":")
+        .append(entry.actualRows())
+        .append(",\"estimatedCost\":")
+        .append(
+            Double.isFinite(entry.estimatedCost())
+                ? String.format(Locale.ROOT, "%.3f", entry.estimatedCost())
+                : "null")
+        .append(",\"estimatedPageReads\":")
+        .append(entry.estimatedPageReads())
+        .append(",\"estimatedDeserializations\":")
+        .append(entry.estimatedDeserializations())
+        .append(",\"physicalPageReads\":")
+        .append(entry.physicalPageReads())
+        .append(",\"logicalPageReads\":")
+        .append(entry.logicalPageReads())
+        .append(",\"deserializations\":")
+        .append(entry.deserializations());
+    if (entry.plan() != null) {
+      sb.append(",\"plan\":").append(entry.plan());
+    }
+    return sb.append("}").toString();
+  }
+
+  private void rotateIfNeeded(int pendingBytes) throws IOException {
+    if (!Files.exists(file) || Files.size(file) + pendingBytes <= maxBytes) {
+      return;
+    }
+    if (maxFiles == 1) {
+      Files.delete(file);
+      return;
+    }
+    Files.deleteIfExists(rotatedFile(maxFiles - 1));
+    for (int i = maxFiles - 2; i >= 1; i--) {
+      if (Files.exists(rotatedFile(i))) {
+        Files.move(rotatedFile(i), rotatedFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.move(file, rotatedFile(1), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @NotNull
+  Path rotatedFile(int index) {
+    return file.resolveSibling(file.getFileName() + "." + index);
+  }
+}
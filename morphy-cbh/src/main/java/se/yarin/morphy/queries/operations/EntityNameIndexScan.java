@@ -0,0 +1,76 @@
+package se.yarin.morphy.queries.operations;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.entities.Entity;
+import se.yarin.morphy.entities.EntityNameIndex;
+import se.yarin.morphy.entities.EntityType;
+import se.yarin.morphy.queries.QueryContext;
+import se.yarin.morphy.queries.QuerySortOrder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Finds the ids of all entities matching a search in the in-memory {@link EntityNameIndex}. No
+ * entity data is read; the ids are returned in ascending order.
+ */
+public class EntityNameIndexScan<T extends Entity & Comparable<T>> extends QueryOperator<T> {
+  private final @NotNull EntityType entityType;
+  private final @NotNull EntityNameIndex nameIndex;
+  private final @NotNull EntityNameIndex.Search search;
+  private int[] matchingIds; // Lazily evaluated; also used for the cost estimate
+
+  public EntityNameIndexScan(
+      @NotNull QueryContext queryContext,
+      @NotNull EntityType entityType,
+      @NotNull EntityNameIndex nameIndex,
+      @NotNull EntityNameIndex.Search search) {
+    super(queryContext, false);
+    if (nameIndex.entityType() != entityType) {
+      throw new IllegalArgumentException("Name index is for the wrong entity type");
+    }
+    this.entityType = entityType;
+    this.nameIndex = nameIndex;
+    this.search = search;
+  }
+
+  private int[] matchingIds() {
+    if (matchingIds == null) {
+      matchingIds = nameIndex.search(search);
+    }
+    return matchingIds;
+  }
+
+  @Override
+  public List<QueryOperator<?>> sources() {
+    return List.of();
+  }
+
+  public @NotNull QuerySortOrder<T> sortOrder() {
+    return QuerySortOrder.byId();
+  }
+
+  public boolean mayContainDuplicates() {
+    return false;
+  }
+
+  @Override
+  protected Stream<QueryData<T>> operatorStream() {
+    return Arrays.stream(matchingIds()).mapToObj(id -> new QueryData<T>(id));
+  }
+
+  @Override
+  protected void estimateOperatorCost(@NotNull ImmutableOperatorCost.Builder operatorCost) {
+    // Searching the in-memory index is cheap enough to be done when planning the query
+    operatorCost
+        .estimateRows(OperatorCost.capRowEstimate(matchingIds().length))
+        .estimatePageReads(0)
+        .estimateDeserializations(0);
+  }
+
+  @Override
+  public String toString() {
+    return entityType.nameSingularCapitalized() + "NameIndexScan(search: " + search + ")";
+  }
+}
@@ -2,6 +2,7 @@ package se.yarin.morphy.queries.operations;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import se.yarin.morphy.DatabaseContext;
 import se.yarin.morphy.Game;
 import se.yarin.morphy.games.filters.GameFilter;
 import se.yarin.morphy.metrics.MetricsProvider;
@@ -9,8 +10,12 @@ import se.yarin.morphy.queries.QueryContext;
 import se.yarin.morphy.queries.QuerySortOrder;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class GameTableScan extends QueryOperator<Game> {
   private final @Nullable GameFilter gameFilter;
@@ -47,7 +52,63 @@ public class GameTableScan extends QueryOperator<Game> {
 
   @Override
   public Stream<QueryData<Game>> operatorStream() {
-    return transaction().stream(startId, endId, gameFilter).map(QueryData::new);
+    Stream<QueryData<Game>> stream =
+        transaction().stream(startId, endId, gameFilter).map(QueryData::new);
+    if (!context().bulkScan()) {
+      return stream;
+    }
+    return StreamSupport.stream(
+        new BulkScanSpliterator<>(stream.spliterator(), context().databaseContext()), false);
+  }
+
+  /**
+   * Reads the games of the table scan as a bulk scan of the database. The bulk scan is only active
+   * while the next game is read, so it ends when the consumer stops pulling games even if the
+   * stream is never closed.
+   */
+  private static class BulkScanSpliterator<E> implements Spliterator<E> {
+    private final @NotNull Spliterator<E> source;
+    private final @NotNull DatabaseContext databaseContext;
+    private E current;
+
+    BulkScanSpliterator(@NotNull Spliterator<E> source, @NotNull DatabaseContext databaseContext) {
+      this.source = source;
+      this.databaseContext = databaseContext;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+      boolean advanced;
+      try (DatabaseContext.BulkScan ignored = databaseContext.beginBulkScan()) {
+        advanced = source.tryAdvance(element -> current = element);
+      }
+      if (advanced) {
+        E element = current;
+        current = null;
+        action.accept(element);
+      }
+      return advanced;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+      return source.characteristics() & ~(SUBSIZED | CONCURRENT);
+    }
+
+    @Override
+    public Comparator<? super E> getComparator() {
+      return source.getComparator();
+    }
   }
 
   @Override
@@ -44,6 +44,28 @@ public abstract class OperatorCost {
     return false;
   }
 
+  /** The time spent in this operator and all its sources, in nanoseconds */
+  @Value.Default
+  public long actualTotalNanos() {
+    return 0;
+  }
+
+  /** The time spent in this operator alone, in nanoseconds */
+  @Value.Default
+  public long actualSelfNanos() {
+    return 0;
+  }
+
+  /**
+   * Gets how far off the row estimate was from the actual number of rows, as a factor that is
+   * always at least 1 (the q-error). Both values are assumed to be at least 1 to avoid dividing by
+   * zero.
+   */
+  public double rowEstimateError() {
+    double estimate = Math.max(1, estimateRows()), actual = Math.max(1, actualRows());
+    return Math.max(estimate / actual, actual / estimate);
+  }
+
   static long capRowEstimate(long value) {
     return Math.max(1, Math.min(value, Integer.MAX_VALUE));
   }
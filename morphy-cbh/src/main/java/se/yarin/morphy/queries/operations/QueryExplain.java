@@ -0,0 +1,205 @@
+package se.yarin.morphy.queries.operations;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Renders a query plan together with its cost, either as an indented tree or as JSON. If the plan
+ * has been executed with {@link QueryOperator#executeProfiled()}, the actual rows, timings, page
+ * reads and deserializations of each operator are included (EXPLAIN ANALYZE); otherwise only the
+ * estimates are (EXPLAIN).
+ *
+ * <p>The self time of an operator is the time spent in the operator itself, excluding the time
+ * spent in its sources. The total time includes the sources. The estimation error is the factor
+ * between the estimated and actual number of rows, always at least 1.
+ */
+public class QueryExplain {
+  private final @NotNull QueryOperator<?> queryPlan;
+
+  public QueryExplain(@NotNull QueryOperator<?> queryPlan) {
+    this.queryPlan = queryPlan;
+  }
+
+  /**
+   * Formats the query plan as a tree, one operator per line
+   *
+   * @return the formatted query plan
+   */
+  public @NotNull String format() {
+    StringBuilder sb = new StringBuilder();
+    formatOperator(sb, queryPlan, "", "");
+    if (queryPlan.isProfiled()) {
+      OperatorCost cost = queryPlan.getOperatorCost();
+      QueryCost queryCost = queryPlan.getQueryCost();
+      sb.append(
+          String.format(
+              Locale.ROOT,
+              "Execution time: %.3f ms, rows: %d, physical page reads: %d, logical page reads: %d, deserializations: %d%n",
+              cost.actualTotalNanos() / 1e6,
+              cost.actualRows(),
+              queryCost.actualPhysicalPageReads(),
+              queryCost.actualLogicalPageReads(),
+              queryCost.actualDeserializations()));
+    }
+    return sb.toString();
+  }
+
+  private void formatOperator(
+      @NotNull StringBuilder sb,
+      @NotNull QueryOperator<?> operator,
+      @NotNull String firstPrefix,
+      @NotNull String prefix) {
+    OperatorCost cost = operator.getOperatorCost();
+    sb.append(firstPrefix).append(operator).append("\n");
+
+    List<QueryOperator<?>> sources = operator.sources();
+    String detailPrefix = prefix + (sources.isEmpty() ? "     " : "  |  ");
+    sb.append(detailPrefix)
+        .append(
+            String.format(
+                Locale.ROOT,
+                "estimate: rows=%d, pageReads=%d, deser=%d",
+                cost.estimateRows(),
+                cost.estimatePageReads(),
+                cost.estimateDeserializations()))
+        .append("\n");
+    if (operator.isProfiled()) {
+      sb.append(detailPrefix)
+          .append(
+              String.format(
+                  Locale.ROOT,
+                  "actual: rows=%d (in %d, error x%.1f), time=%.3f/%.3f ms, physicalReads=%d, logicalReads=%d, deser=%d%s",
+                  cost.actualRows(),
+                  rowsIn(operator),
+                  cost.rowEstimateError(),
+                  cost.actualSelfNanos() / 1e6,
+                  cost.actualTotalNanos() / 1e6,
+                  cost.actualPhysicalPageReads(),
+                  cost.actualLogicalPageReads(),
+                  cost.actualDeserializations(),
+                  cost.actualIsDuplicate() ? " (*)" : ""))
+          .append("\n");
+    }
+
+    for (int i = 0; i < sources.size(); i++) {
+      boolean last = i == sources.size() - 1;
+      formatOperator(sb, sources.get(i), prefix + "  +- ", prefix + (last ? "     " : "  |  "));
+    }
+  }
+
+  /**
+   * Formats the query plan as a JSON document. Each operator is an object with the fields
+   * <code>operator</code>, <code>estimate</code>, <code>actual</code> (only if profiled) and
+   * <code>sources</code>. Times are in milliseconds.
+   *
+   * @return the query plan as JSON
+   */
+  public @NotNull String toJson() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{");
+    if (queryPlan.isProfiled()) {
+      QueryCost queryCost = queryPlan.getQueryCost();
+      sb.append("\"executionTimeMs\":")
+          .append(millis(queryPlan.getOperatorCost().actualTotalNanos()))
+          .append(",\"physicalPageReads\":")
+          .append(queryCost.actualPhysicalPageReads())
+          .append(",\"logicalPageReads\":")
+          .append(queryCost.actualLogicalPageReads())
+          .append(",\"deserializations\":")
+          .append(queryCost.actualDeserializations())
+          .append(",");
+    }
+    sb.append("\"estimatedTotalCost\":")
+        .append(number(queryPlan.getQueryCost().estimatedTotalCost()))
+        .append(",\"plan\":");
+    operatorToJson(sb, queryPlan);
+    sb.append("}");
+    return sb.toString();
+  }
+
+  private void operatorToJson(@NotNull StringBuilder sb, @NotNull QueryOperator<?> operator) {
+    OperatorCost cost = operator.getOperatorCost();
+    sb.append("{\"operator\":")
+        .append(quote(operator.toString()))
+        .append(",\"fullData\":")
+        .append(operator.hasFullData())
+        .append(",\"estimate\":{\"rows\":")
+        .append(cost.estimateRows())
+        .append(",\"pageReads\":")
+        .append(cost.estimatePageReads())
+        .append(",\"deserializations\":")
+        .append(cost.estimateDeserializations())
+        .append("}");
+    if (operator.isProfiled()) {
+      sb.append(",\"actual\":{\"rows\":")
+          .append(cost.actualRows())
+          .append(",\"rowsIn\":")
+          .append(rowsIn(operator))
+          .append(",\"rowEstimateError\":")
+          .append(number(cost.rowEstimateError()))
+          .append(",\"selfTimeMs\":")
+          .append(millis(cost.actualSelfNanos()))
+          .append(",\"totalTimeMs\":")
+          .append(millis(cost.actualTotalNanos()))
+          .append(",\"physicalPageReads\":")
+          .append(cost.actualPhysicalPageReads())
+          .append(",\"logicalPageReads\":")
+          .append(cost.actualLogicalPageReads())
+          .append(",\"deserializations\":")
+          .append(cost.actualDeserializations())
+          .append(",\"sharedMetrics\":")
+          .append(cost.actualIsDuplicate())
+          .append("}");
+    }
+    sb.append(",\"sources\":[");
+    List<QueryOperator<?>> sources = operator.sources();
+    for (int i = 0; i < sources.size(); i++) {
+      if (i > 0) {
+        sb.append(",");
+      }
+      operatorToJson(sb, sources.get(i));
+    }
+    sb.append("]}");
+  }
+
+  private static long rowsIn(@NotNull QueryOperator<?> operator) {
+    return operator.sources().stream()
+        .mapToLong(source -> source.getOperatorCost().actualRows())
+        .sum();
+  }
+
+  private static String millis(long nanos) {
+    return number(nanos / 1e6);
+  }
+
+  private static String number(double value) {
+    if (!Double.isFinite(value)) {
+      return "null";
+    }
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+  public static @NotNull String quote(@NotNull String value) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"' -> sb.append("\\\"");
+        case '\\' -> sb.append("\\\\");
+        case '\n' -> sb.append("\\n");
+        case '\r' -> sb.append("\\r");
+        case '\t' -> sb.append("\\t");
+        default -> {
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+        }
+      }
+    }
+    return sb.append("\"").toString();
+  }
+}
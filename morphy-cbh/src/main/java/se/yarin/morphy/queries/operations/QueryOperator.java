@@ -7,25 +7,27 @@ import se.yarin.morphy.DatabaseReadTransaction;
 import se.yarin.morphy.IdObject;
 import se.yarin.morphy.Instrumentation;
 import se.yarin.morphy.metrics.*;
+import se.yarin.morphy.queries.PlannerCostConstants;
 import se.yarin.morphy.queries.QueryContext;
 import se.yarin.morphy.queries.QuerySortOrder;
+import se.yarin.morphy.queries.SlowQueryLog;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public abstract class QueryOperator<T extends IdObject> {
-  private static final double SCATTERED_IO_COST_MULTIPLIER = 4;
-  private static final double SCATTERED_IO_PAGE_COST = 0.08;
-  private static final double BURST_IO_PAGES_COST = 0.02;
-  private static final double DESERIALIZATION_COST = 0.0006;
-
   private final @NotNull QueryContext queryContext;
   private final boolean hasFullData; // If true, data() will be set in the stream, otherwise not
   private @Nullable OperatorCost actualOperatorCost; // Only actual fields set
   private final AtomicInteger actualRowCount = new AtomicInteger(0);
+  // Time spent producing rows in this operator, including the time spent in its sources
+  private final AtomicLong actualTotalNanos = new AtomicLong(0);
 
   // These fields are set on the outermost query operator after the query has been executed
   private @Nullable MetricsRepository queryMetrics;
@@ -67,20 +69,79 @@ public abstract class QueryOperator<T extends IdObject> {
   public abstract boolean mayContainDuplicates();
 
   public final Stream<QueryData<T>> stream() {
+    if (!queryContext.traceCost()) {
+      return operatorStream();
+    }
+    // Some operators do work already when the stream is created, so include that as well
+    long start = System.nanoTime();
     Stream<QueryData<T>> stream = operatorStream();
-    if (queryContext.traceCost()) {
-      stream = stream.peek(t -> actualRowCount.incrementAndGet());
+    actualTotalNanos.addAndGet(System.nanoTime() - start);
+    return StreamSupport.stream(
+            new TimedSpliterator<>(stream.spliterator(), actualTotalNanos), false)
+        .onClose(stream::close)
+        .peek(t -> actualRowCount.incrementAndGet());
+  }
+
+  /**
+   * A spliterator that measures the time it takes to get each element from the source. The element
+   * is passed on to the consumer outside the timed section, since in a pipeline of streams the
+   * consumer does the work of the operator downstream.
+   */
+  private static class TimedSpliterator<E> implements Spliterator<E> {
+    private final @NotNull Spliterator<E> source;
+    private final @NotNull AtomicLong nanos;
+    private E current;
+
+    TimedSpliterator(@NotNull Spliterator<E> source, @NotNull AtomicLong nanos) {
+      this.source = source;
+      this.nanos = nanos;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super E> action) {
+      long start = System.nanoTime();
+      boolean advanced = source.tryAdvance(element -> current = element);
+      nanos.addAndGet(System.nanoTime() - start);
+      if (advanced) {
+        E element = current;
+        current = null;
+        action.accept(element);
+      }
+      return advanced;
+    }
+
+    @Override
+    public Spliterator<E> trySplit() {
+      return null;
+    }
+
+    @Override
+    public long estimateSize() {
+      return source.estimateSize();
+    }
+
+    @Override
+    public int characteristics() {
+      return source.characteristics() & ~(SUBSIZED | CONCURRENT);
+    }
+
+    @Override
+    public Comparator<? super E> getComparator() {
+      return source.getComparator();
     }
-    return stream;
   }
 
   public final List<QueryData<T>> executeProfiled() {
     Instrumentation instrumentation = context().databaseContext().instrumentation();
     var queryMetrics = instrumentation.pushContext("query", true);
+    QueryEvent event = new QueryEvent();
+    event.begin();
     try {
-      long start = System.currentTimeMillis();
+      long start = System.nanoTime();
       List<QueryData<T>> queryResult = stream().collect(Collectors.toList());
-      this.actualWallClockTime = System.currentTimeMillis() - start;
+      long durationNanos = System.nanoTime() - start;
+      this.actualWallClockTime = durationNanos / 1_000_000;
+      event.end();
       Set<MetricsKey> duplicateKeys =
           streamMetricsKeys()
               .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
@@ -91,12 +152,82 @@ public abstract class QueryOperator<T extends IdObject> {
               .collect(Collectors.toSet());
       setOperatorActualMetrics(queryMetrics, duplicateKeys);
       this.queryMetrics = queryMetrics;
+      if (event.shouldCommit()) {
+        QueryCost queryCost = getQueryCost();
+        event.query = getClass().getSimpleName();
+        event.plan = debugString(true);
+        event.estimatedRows = getOperatorCost().estimateRows();
+        event.actualRows = queryResult.size();
+        event.physicalPageReads = queryCost.actualPhysicalPageReads();
+        event.deserializations = queryCost.actualDeserializations();
+        event.commit();
+      }
+      SlowQueryLog slowQueryLog = context().databaseContext().slowQueryLog();
+      if (slowQueryLog != null && slowQueryLog.shouldLog(durationNanos)) {
+        QueryCost queryCost = getQueryCost();
+        slowQueryLog.log(
+            new SlowQueryLog.Entry(
+                "planner",
+                normalizedQuery(),
+                new QueryExplain(this).toJson(),
+                durationNanos,
+                getOperatorCost().estimateRows(),
+                queryResult.size(),
+                queryCost.estimatedTotalCost(),
+                queryCost.estimatedPageReads(),
+                queryCost.estimatedDeserializations(),
+                queryCost.actualPhysicalPageReads(),
+                queryCost.actualLogicalPageReads(),
+                queryCost.actualDeserializations()));
+      }
       return queryResult;
     } finally {
       instrumentation.popContext();
     }
   }
 
+  /**
+   * Streams the result of the query, like {@link #stream()}, and records it in the slow query log
+   * when the stream is closed. The duration is the time from when the stream is created until it's
+   * closed, so it includes the time the consumer spends on the rows. The I/O of the query isn't
+   * tracked, so unlike {@link #executeProfiled()} only the estimates and the number of rows are
+   * logged.
+   *
+   * @return a stream of the query result, which must be closed for the query to be logged
+   */
+  public final Stream<QueryData<T>> streamLogged() {
+    SlowQueryLog slowQueryLog = context().databaseContext().slowQueryLog();
+    if (slowQueryLog == null) {
+      return stream();
+    }
+    long start = System.nanoTime();
+    AtomicLong rows = new AtomicLong();
+    return stream()
+        .peek(data -> rows.incrementAndGet())
+        .onClose(
+            () -> {
+              long durationNanos = System.nanoTime() - start;
+              if (!slowQueryLog.shouldLog(durationNanos)) {
+                return;
+              }
+              QueryCost queryCost = getQueryCost();
+              slowQueryLog.log(
+                  new SlowQueryLog.Entry(
+                      "planner",
+                      normalizedQuery(),
+                      new QueryExplain(this).toJson(),
+                      durationNanos,
+                      getOperatorCost().estimateRows(),
+                      rows.get(),
+                      queryCost.estimatedTotalCost(),
+                      queryCost.estimatedPageReads(),
+                      queryCost.estimatedDeserializations(),
+                      -1,
+                      -1,
+                      -1));
+            });
+  }
+
   protected Stream<MetricsKey> streamMetricsKeys() {
     Stream<MetricsKey> metricsKeys =
         metricProviders().stream()
@@ -114,6 +245,11 @@ public abstract class QueryOperator<T extends IdObject> {
       source.setOperatorActualMetrics(metricsRepository, duplicateKeys);
     }
 
+    long sourceNanos = 0;
+    for (QueryOperator<?> source : sources()) {
+      sourceNanos += source.actualTotalNanos.get();
+    }
+
     int deserializations = 0, physicalReads = 0, logicalReads = 0;
     boolean duplicate = false;
     for (MetricsProvider metricProvider : metricProviders()) {
@@ -141,9 +277,30 @@ public abstract class QueryOperator<T extends IdObject> {
             .actualLogicalPageReads(logicalReads)
             .actualRows(actualRowCount.get())
             .actualIsDuplicate(duplicate)
+            .actualTotalNanos(actualTotalNanos.get())
+            .actualSelfNanos(Math.max(0, actualTotalNanos.get() - sourceNanos))
             .build();
   }
 
+  /**
+   * Gets a description of the structure of the query plan without any parameter values, so plans
+   * that only differ in their parameters get the same description.
+   */
+  public String normalizedQuery() {
+    List<QueryOperator<?>> sources = sources();
+    if (sources.isEmpty()) {
+      return getClass().getSimpleName();
+    }
+    return sources.stream()
+        .map(QueryOperator::normalizedQuery)
+        .collect(Collectors.joining(", ", getClass().getSimpleName() + "(", ")"));
+  }
+
+  /** Gets if this operator has been executed with {@link #executeProfiled()} */
+  public boolean isProfiled() {
+    return actualOperatorCost != null;
+  }
+
   protected List<MetricsProvider> metricProviders() {
     return List.of();
   }
@@ -177,6 +334,7 @@ public abstract class QueryOperator<T extends IdObject> {
     long totalEstimateRows = 0, totalEstimatePageReads = 0, totalEstimateDeserializations = 0;
     double totalEstimateIOCost = 0.0, totalEstimateCPUCost = 0.0;
     long totalActualRows = 0;
+    PlannerCostConstants costs = context().databaseContext().config().plannerCostConstants();
 
     // Process operators in BFS order
     Queue<QueryOperator<?>> operators = new LinkedList<>();
@@ -192,11 +350,11 @@ public abstract class QueryOperator<T extends IdObject> {
       totalEstimateDeserializations += opCost.estimateDeserializations();
 
       if (op.getClass().getName().contains("TableScan")) {
-        totalEstimateIOCost += opCost.estimatePageReads() * BURST_IO_PAGES_COST;
+        totalEstimateIOCost += opCost.estimatePageReads() * costs.burstIOPageCost();
       } else {
-        totalEstimateIOCost += opCost.estimatePageReads() * SCATTERED_IO_PAGE_COST;
+        totalEstimateIOCost += opCost.estimatePageReads() * costs.scatteredIOPageCost();
       }
-      totalEstimateCPUCost += opCost.estimateDeserializations() * DESERIALIZATION_COST;
+      totalEstimateCPUCost += opCost.estimateDeserializations() * costs.deserializationCost();
 
       // Actual
       totalActualRows += op.actualRowCount.get();
@@ -0,0 +1,90 @@
+package se.yarin.morphy.storage;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Reads many blobs from a {@link BlobStorage} at once. The blobs are read in ascending offset
+ * order, and blobs that are close to each other are read in a single range, so reading the blobs
+ * of a set of games that are scattered in the storage turns into a few large sequential reads
+ * instead of many random ones. The blobs are returned in the order they were requested.
+ */
+public final class BlobBatchReader {
+  // The maximum number of bytes read in a single range
+  static final int MAX_READ_SIZE = 1 << 20;
+
+  // Blobs further apart than this are read in separate ranges
+  static final int MAX_READ_GAP = 1 << 16;
+
+  // The number of bytes read after the start of the last blob in a range; if the blob is larger,
+  // it's read separately
+  private static final int LAST_BLOB_PREFETCH_SIZE = 4096;
+
+  // Enough bytes to get the size of both moves and annotations blobs
+  private static final int MIN_BLOB_HEADER_SIZE = 16;
+
+  private BlobBatchReader() {}
+
+  /**
+   * Reads blobs from a storage. Blobs that are close to each other are read in a single range,
+   * regardless of the order of the offsets.
+   *
+   * @param storage the storage to read from
+   * @param blobSizeRetriever gets the size of a blob
+   * @param offsets the offsets of the blobs to read; 0 if there is no blob
+   * @return the blobs at the offsets, or null where the offset was 0
+   */
+  public static @Nullable ByteBuffer @NotNull [] readBlobs(
+      @NotNull BlobStorage storage,
+      @NotNull BlobSizeRetriever blobSizeRetriever,
+      long @NotNull [] offsets) {
+    ByteBuffer[] blobs = new ByteBuffer[offsets.length];
+    int[] order =
+        IntStream.range(0, offsets.length)
+            .filter(i -> offsets[i] > 0)
+            .boxed()
+            .sorted(Comparator.comparingLong(i -> offsets[i]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+
+    int rangeFirst = 0;
+    while (rangeFirst < order.length) {
+      long rangeStart = offsets[order[rangeFirst]];
+      int rangeLast = rangeFirst;
+      while (rangeLast + 1 < order.length
+          && offsets[order[rangeLast + 1]] - offsets[order[rangeLast]] <= MAX_READ_GAP
+          && offsets[order[rangeLast + 1]] - rangeStart < MAX_READ_SIZE) {
+        rangeLast += 1;
+      }
+      long rangeEnd = offsets[order[rangeLast]] + LAST_BLOB_PREFETCH_SIZE;
+      ByteBuffer range = storage.getBytes(rangeStart, (int) (rangeEnd - rangeStart));
+
+      for (int i = rangeFirst; i <= rangeLast; i++) {
+        long offset = offsets[order[i]];
+        if (i > rangeFirst && offset == offsets[order[i - 1]]) {
+          // The same blob requested more than once
+          blobs[order[i]] = blobs[order[i - 1]].duplicate();
+          continue;
+        }
+        int pos = (int) (offset - rangeStart);
+        ByteBuffer blob = null;
+        if (range.limit() - pos >= MIN_BLOB_HEADER_SIZE) {
+          int blobSize = blobSizeRetriever.getBlobSize(range.slice(pos, range.limit() - pos));
+          if (blobSize > 0 && pos + blobSize <= range.limit()) {
+            blob = ByteBuffer.allocate(blobSize);
+            blob.put(range.slice(pos, blobSize));
+            blob.position(0);
+          }
+        }
+        // The blob didn't fit in the range
+        blobs[order[i]] = blob != null ? blob : storage.getBlob(offset);
+      }
+      rangeFirst = rangeLast + 1;
+    }
+    return blobs;
+  }
+}
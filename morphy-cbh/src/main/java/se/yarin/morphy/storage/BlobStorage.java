@@ -6,6 +6,7 @@ import se.yarin.morphy.exceptions.MorphyInvalidDataException;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 /**
  * Interface for a simple blob storage. Blobs can be read and written to given their starting
@@ -36,6 +37,17 @@ public interface BlobStorage {
    */
   int getBlobSize(long offset);
 
+  /**
+   * Reads a range of raw bytes from the storage. The range may span multiple blobs, or parts of
+   * blobs.
+   *
+   * @param offset the offset to start reading from
+   * @param length the number of bytes to read
+   * @return a buffer containing the bytes; the limit will be less than length if the end of the
+   *     storage was reached
+   */
+  ByteBuffer getBytes(long offset, int length);
+
   /**
    * Writes a new blob to the end of the storage
    *
@@ -44,6 +56,31 @@ public interface BlobStorage {
    */
   long appendBlob(@NotNull ByteBuffer blob);
 
+  /**
+   * Writes multiple new blobs to the end of the storage, in a single write
+   *
+   * @param blobs the blobs to append
+   * @return the offsets in the storage to the blobs
+   */
+  default long[] appendBlobs(@NotNull List<ByteBuffer> blobs) {
+    int totalSize = 0;
+    for (ByteBuffer blob : blobs) {
+      totalSize += blob.limit();
+    }
+    ByteBuffer chunk = ByteBuffer.allocate(totalSize);
+    long[] offsets = new long[blobs.size()];
+    long offset = getSize();
+    for (int i = 0; i < blobs.size(); i++) {
+      offsets[i] = offset + chunk.position();
+      chunk.put(blobs.get(i).duplicate().position(0));
+    }
+    chunk.flip();
+    if (totalSize > 0) {
+      appendBlob(chunk);
+    }
+    return offsets;
+  }
+
   /**
    * Writes a blob to the storage at the specific offset. It's up to the caller to ensure that the
    * blob doesn't overwrite anything. If replacing an existing blob, make sure to call {@link
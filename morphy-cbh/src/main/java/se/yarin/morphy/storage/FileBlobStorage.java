@@ -134,6 +134,19 @@ public class FileBlobStorage implements BlobStorage {
     }
   }
 
+  @Override
+  public @NotNull ByteBuffer getBytes(long offset, int length) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("offset must be non-negative");
+    }
+    try {
+      return channel.read(offset, (int) Math.max(0, Math.min(length, getSize() - offset)));
+    } catch (IOException e) {
+      throw new MorphyIOException(
+          "Failed to get " + length + " bytes at offset " + offset + " in " + file.getName());
+    }
+  }
+
   @Override
   public long appendBlob(@NotNull ByteBuffer blob) {
     long offset = getSize();
@@ -100,6 +100,19 @@ public class InMemoryBlobStorage implements BlobStorage {
     }
   }
 
+  @Override
+  public @NotNull ByteBuffer getBytes(long offset, int length) {
+    if (offset < 0) {
+      throw new IllegalArgumentException("offset must be non-negative");
+    }
+    int start = (int) Math.min(offset, data.limit());
+    int end = (int) Math.min(offset + length, data.limit());
+    ByteBuffer buf = ByteBuffer.allocate(end - start);
+    buf.put(data.slice(start, end - start));
+    buf.position(0);
+    return buf;
+  }
+
   @Override
   public long appendBlob(@NotNull ByteBuffer blob) {
     long offset = data.limit();
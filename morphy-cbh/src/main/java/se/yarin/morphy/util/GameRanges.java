@@ -0,0 +1,119 @@
+package se.yarin.morphy.util;
+
+import org.jetbrains.annotations.NotNull;
+import se.yarin.morphy.exceptions.MorphyException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Splits the game ids of a database into consecutive ranges that can be processed independently
+ * on multiple threads. There are more ranges than threads so that a few slow ranges (e.g. heavily
+ * annotated games) don't leave the other threads idle.
+ */
+public final class GameRanges {
+  // The maximum number of games in a single range
+  public static final int MAX_RANGE_SIZE = 10000;
+
+  // Aim for at least this many ranges per thread to even out the load
+  private static final int RANGES_PER_THREAD = 4;
+
+  // The number of ranges that may be processed or waiting to be consumed, per thread
+  private static final int MAX_PENDING_RANGES_PER_THREAD = 3;
+
+  public interface RangeTask<R> {
+    /**
+     * Processes all games with ids in the given range.
+     *
+     * @param startId the first game id (inclusive)
+     * @param endId the last game id (exclusive)
+     * @return the result for this range
+     */
+    R process(int startId, int endId);
+  }
+
+  private GameRanges() {}
+
+  /**
+   * Runs a task over all game ids in a database and returns the results of each range, in game id
+   * order. If parallelism is 1, all ranges are processed on the calling thread.
+   *
+   * @param numGames the number of games in the database; the ids are 1 to numGames
+   * @param parallelism the number of threads to use
+   * @param task the task to run on every range
+   * @return a list of the results of every range, sorted by game id
+   */
+  public static <R> @NotNull List<R> process(
+      int numGames, int parallelism, @NotNull RangeTask<R> task) {
+    List<R> results = new ArrayList<>();
+    process(numGames, parallelism, task, results::add);
+    return results;
+  }
+
+  /**
+   * Runs a task over all game ids in a database and passes the result of each range to a consumer,
+   * in game id order. The consumer is always called on the calling thread. Only a limited number
+   * of ranges are processed ahead of the consumer, so the results don't all have to fit in memory
+   * at the same time.
+   *
+   * @param numGames the number of games in the database; the ids are 1 to numGames
+   * @param parallelism the number of threads to use
+   * @param task the task to run on every range
+   * @param consumer receives the result of every range, sorted by game id
+   */
+  public static <R> void process(
+      int numGames, int parallelism, @NotNull RangeTask<R> task, @NotNull Consumer<R> consumer) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    if (parallelism == 1) {
+      for (int startId = 1; startId <= numGames; startId += MAX_RANGE_SIZE) {
+        consumer.accept(task.process(startId, Math.min(startId + MAX_RANGE_SIZE, numGames + 1)));
+      }
+      return;
+    }
+
+    int rangeSize =
+        Math.max(
+            1,
+            Math.min(
+                MAX_RANGE_SIZE,
+                (numGames + parallelism * RANGES_PER_THREAD - 1)
+                    / (parallelism * RANGES_PER_THREAD)));
+
+    int maxPending = parallelism * MAX_PENDING_RANGES_PER_THREAD;
+
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      ArrayDeque<Future<R>> pending = new ArrayDeque<>();
+      int nextStartId = 1;
+      while (nextStartId <= numGames || !pending.isEmpty()) {
+        while (nextStartId <= numGames && pending.size() < maxPending) {
+          int rangeStart = nextStartId, rangeEnd = Math.min(nextStartId + rangeSize, numGames + 1);
+          pending.add(executor.submit(() -> task.process(rangeStart, rangeEnd)));
+          nextStartId = rangeEnd;
+        }
+        consumer.accept(pending.poll().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MorphyException("Interrupted while processing games");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException re) {
+        throw re;
+      }
+      if (e.getCause() instanceof Error err) {
+        throw err;
+      }
+      throw new MorphyException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
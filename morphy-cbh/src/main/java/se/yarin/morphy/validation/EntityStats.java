@@ -1,5 +1,8 @@
 package se.yarin.morphy.validation;
 
+import se.yarin.morphy.entities.EntityType;
+
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,4 +14,41 @@ public class EntityStats {
   public Map<Integer, List<Integer>> sources = new HashMap<>();
   public Map<Integer, List<Integer>> teams = new HashMap<>();
   public Map<Integer, List<Integer>> gameTags = new HashMap<>();
+
+  /**
+   * Gets the game ids of all entities of a type
+   *
+   * @param entityType the type of entity
+   * @return a map from entity id to the sorted game ids the entity occurs in
+   */
+  public Map<Integer, List<Integer>> get(EntityType entityType) {
+    return switch (entityType) {
+      case PLAYER -> players;
+      case TOURNAMENT -> tournaments;
+      case ANNOTATOR -> annotators;
+      case SOURCE -> sources;
+      case TEAM -> teams;
+      case GAME_TAG -> gameTags;
+    };
+  }
+
+  /**
+   * Appends the statistics from games that come after all games in this instance. The game id
+   * lists are kept sorted as long as the ranges are merged in order.
+   *
+   * @param other statistics calculated over a later range of games
+   */
+  public void merge(EntityStats other) {
+    merge(players, other.players);
+    merge(tournaments, other.tournaments);
+    merge(annotators, other.annotators);
+    merge(sources, other.sources);
+    merge(teams, other.teams);
+    merge(gameTags, other.gameTags);
+  }
+
+  private static void merge(Map<Integer, List<Integer>> target, Map<Integer, List<Integer>> src) {
+    src.forEach(
+        (id, gameIds) -> target.computeIfAbsent(id, k -> new ArrayList<>()).addAll(gameIds));
+  }
 }
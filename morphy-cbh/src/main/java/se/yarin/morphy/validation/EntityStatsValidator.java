@@ -12,6 +12,7 @@ import se.yarin.morphy.entities.EntityIndex;
 import se.yarin.morphy.entities.EntityIndexReadTransaction;
 import se.yarin.morphy.entities.EntityType;
 import se.yarin.morphy.exceptions.MorphyEntityIndexException;
+import se.yarin.morphy.util.GameRanges;
 
 import java.util.*;
 
@@ -33,8 +34,35 @@ public class EntityStatsValidator {
   }
 
   public void calculateEntityStats(Runnable progressCallback) {
+    calculateEntityStats(progressCallback, 1);
+  }
+
+  /**
+   * Calculates which games every entity occurs in. The games are split into ranges that are
+   * processed on separate threads, each range in its own read transaction, and the results are
+   * merged in game id order.
+   *
+   * @param progressCallback called once for every game; may be called from multiple threads
+   * @param parallelism the number of threads to use
+   */
+  public void calculateEntityStats(Runnable progressCallback, int parallelism) {
+    List<EntityStats> rangeStats =
+        GameRanges.process(
+            database.gameHeaderIndex().count(),
+            parallelism,
+            database
+                .context()
+                .inheritBulkScan(
+                    (startId, endId) -> calculateEntityStats(startId, endId, progressCallback)));
+    for (EntityStats rangeStat : rangeStats) {
+      stats.merge(rangeStat);
+    }
+  }
+
+  private EntityStats calculateEntityStats(int startId, int endId, Runnable progressCallback) {
+    EntityStats stats = new EntityStats();
     try (var txn = new DatabaseReadTransaction(database)) {
-      for (Game game : txn.iterable()) {
+      for (Game game : txn.iterable(startId, endId)) {
         int gameId = game.id();
 
         if (!game.guidingText()) {
@@ -51,6 +79,36 @@ public class EntityStatsValidator {
         progressCallback.run();
       }
     }
+    return stats;
+  }
+
+  /**
+   * Calculates which games every entity of a type occurs in using the game entity index (the
+   * .cit/.cib files) instead of reading all game headers. The result is only as reliable as the
+   * index itself, so this should not be used when validating the index.
+   *
+   * @param entityType the type of entity to calculate the statistics for
+   * @param progressCallback called once for every entity
+   * @throws IllegalStateException if the database has no game entity index for the entity type
+   */
+  public void calculateEntityStatsFromGameEntityIndex(
+      @NotNull EntityType entityType, Runnable progressCallback) {
+    GameEntityIndex gameEntityIndex = database.gameEntityIndex(entityType);
+    if (gameEntityIndex == null) {
+      throw new IllegalStateException(
+          "The database has no game entity index for " + entityType.namePlural());
+    }
+
+    Map<Integer, List<Integer>> map = stats.get(entityType);
+    try (var txn = new DatabaseReadTransaction(database)) {
+      for (Entity entity : txn.entityTransaction(entityType).iterable()) {
+        List<Integer> gameIds = gameEntityIndex.getGameIds(entity.id(), entityType, true);
+        if (gameIds.size() > 0) {
+          map.put(entity.id(), gameIds);
+        }
+        progressCallback.run();
+      }
+    }
   }
 
   private void updateEntityStats(Map<Integer, List<Integer>> map, int entityId, int gameId) {
@@ -15,12 +15,18 @@ import se.yarin.morphy.games.ExtendedGameHeader;
 import se.yarin.morphy.games.GameHeader;
 import se.yarin.morphy.games.MoveOffsetStorage;
 import se.yarin.morphy.games.moves.MoveSerializer;
+import se.yarin.morphy.util.GameRanges;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class GamesValidator {
   private static final Logger log = LoggerFactory.getLogger(GamesValidator.class);
 
+  // The maximum number of errors of the same kind that are logged
+  private static final int MAX_LOGGED_ERRORS = 5;
+
   private final Database db;
 
   public GamesValidator(Database db) {
@@ -97,6 +103,30 @@ public class GamesValidator {
   }
 
   public int processGames(boolean loadMoves, boolean warningAsErrors, Runnable progressCallback) {
+    return processGames(loadMoves, warningAsErrors, progressCallback, 1);
+  }
+
+  /**
+   * Validates all games in the database. The games are split into ranges that are processed on
+   * separate threads, each range in its own read transaction. The statistics of the ranges are then
+   * merged in game id order, so the result is the same regardless of the parallelism.
+   *
+   * @param loadMoves if true, also decode the moves and annotations of every game
+   * @param warningAsErrors if true, warnings are counted as errors
+   * @param progressCallback called once for every game; may be called from multiple threads
+   * @param parallelism the number of threads to use
+   * @return the number of errors found
+   */
+  public int processGames(
+      boolean loadMoves, boolean warningAsErrors, Runnable progressCallback, int parallelism) {
+    List<GameRangeStats> rangeStats =
+        GameRanges.process(
+            db.count(),
+            parallelism,
+            db.context()
+                .inheritBulkScan(
+                    (startId, endId) -> processGames(startId, endId, loadMoves, progressCallback)));
+
     int numGames = 0,
         numDeleted = 0,
         numAnnotated = 0,
@@ -108,133 +138,93 @@ public class GamesValidator {
     long lastAnnotationOfs = this.db.annotationRepository().getStorage().getHeader().headerSize();
     int numOverlappingAnnotations = 0, numOverlappingMoves = 0;
     int numAnnotationGaps = 0, numMoveGaps = 0;
-    int annotationFreeSpace = 0, moveFreeSpace = 0;
+    long annotationFreeSpace = 0, moveFreeSpace = 0;
     int numMoveDecodingErrors = 0, numInvalidEntityReferences = 0;
     boolean moveOffsetDiffers = false, annotationOffsetDiffers = false;
 
-    MoveSerializer movesSerializer = new MoveSerializer(db.context());
-    movesSerializer.setLogDetailedErrors(true);
-
-    try (var txn = new DatabaseReadTransaction(db)) {
-      for (Game game : txn.iterable()) {
-        GameHeader header = game.header();
-        ExtendedGameHeader extendedHeader = game.extendedHeader();
-
-        if (extendedHeader.movesOffset() != 0
-            && extendedHeader.movesOffset() != header.movesOffset()
-            && !moveOffsetDiffers) {
-          log.warn(
-              String.format(
-                  "Game %d: Move offset differs between header files (%d != %d) [ignoring similar errors]",
-                  header.id(), header.movesOffset(), extendedHeader.movesOffset()));
-          moveOffsetDiffers = true; // If this happens in one game, it usually happens in many games
-          numWarnings += 1;
-        }
-
-        if (extendedHeader.annotationOffset() != 0
-            && extendedHeader.annotationOffset() != header.annotationOffset()
-            && !annotationOffsetDiffers) {
-          log.warn(
-              String.format(
-                  "Game %d: Annotation offset differs between header files (%d != %d) [ignoring similar errors]",
-                  header.id(), header.annotationOffset(), extendedHeader.annotationOffset()));
-          annotationOffsetDiffers =
-              true; // If this happens in one game, it usually happens in many games
-          numWarnings += 1;
-        }
+    for (GameRangeStats range : rangeStats) {
+      if (range.moveOffsetDiffers != null && !moveOffsetDiffers) {
+        log.warn(range.moveOffsetDiffers);
+        moveOffsetDiffers = true;
+        numWarnings += 1;
+      }
+      if (range.annotationOffsetDiffers != null && !annotationOffsetDiffers) {
+        log.warn(range.annotationOffsetDiffers);
+        annotationOffsetDiffers = true;
+        numWarnings += 1;
+      }
 
-        if (header.annotationOffset() > 0) {
-          int annotationSize =
-              db.annotationRepository().getAnnotationsBlobSize(header.annotationOffset());
-          int annotationEnd = header.annotationOffset() + annotationSize;
-          if (log.isDebugEnabled()) {
-            log.debug(
+      // The first game in each range wasn't compared with the last game in the previous range
+      if (range.firstAnnotationOfs >= 0) {
+        if (range.firstAnnotationOfs < lastAnnotationOfs) {
+          if (numOverlappingAnnotations == 0) {
+            log.warn(
                 String.format(
-                    "Game %d: Annotation [%d, %d)",
-                    header.id(), header.annotationOffset(), annotationEnd));
-          }
-          if (header.annotationOffset() < lastAnnotationOfs) {
-            if (numOverlappingAnnotations == 0) {
-              log.warn(
-                  String.format(
-                      "Game %d has annotation data at offset %d but previous game annotation data ended at %d",
-                      game.id(), header.annotationOffset(), lastAnnotationOfs));
-              numWarnings += 1;
-            }
-            numOverlappingAnnotations += 1;
-          } else if (header.annotationOffset() > lastAnnotationOfs) {
-            numAnnotationGaps += 1;
-            annotationFreeSpace += header.annotationOffset() - lastAnnotationOfs;
+                    "Game %d has annotation data at offset %d but previous game annotation data ended at %d",
+                    range.firstAnnotatedGameId, range.firstAnnotationOfs, lastAnnotationOfs));
+            numWarnings += 1;
           }
-          lastAnnotationOfs = annotationEnd;
+          numOverlappingAnnotations += 1;
+        } else if (range.firstAnnotationOfs > lastAnnotationOfs) {
+          numAnnotationGaps += 1;
+          annotationFreeSpace += range.firstAnnotationOfs - lastAnnotationOfs;
         }
+        lastAnnotationOfs = range.lastAnnotationEnd;
+      }
+      if (range.overlappingAnnotations != null && numOverlappingAnnotations == 0) {
+        log.warn(range.overlappingAnnotations);
+        numWarnings += 1;
+      }
 
-        int movesSize = db.moveRepository().getMovesBlobSize(header.movesOffset());
-        int movesEnd = header.movesOffset() + movesSize;
-        if (log.isDebugEnabled()) {
-          log.debug(
-              String.format(
-                  "Game %d: Moves [%d, %d)", header.id(), header.movesOffset(), movesEnd));
-        }
-        if (header.movesOffset() < lastMovesOfs) {
+      if (range.firstMovesOfs >= 0) {
+        if (range.firstMovesOfs < lastMovesOfs) {
           if (numOverlappingMoves == 0) {
             log.warn(
                 String.format(
                     "Game %d has move data at offset %d but previous game move data ended at %d",
-                    game.id(), header.movesOffset(), lastMovesOfs));
+                    range.firstGameId, range.firstMovesOfs, lastMovesOfs));
             numWarnings += 1;
           }
           numOverlappingMoves += 1;
-        } else if (header.movesOffset() > lastMovesOfs) {
+        } else if (range.firstMovesOfs > lastMovesOfs) {
           numMoveGaps += 1;
-          moveFreeSpace += header.movesOffset() - lastMovesOfs;
+          moveFreeSpace += range.firstMovesOfs - lastMovesOfs;
         }
-        lastMovesOfs = movesEnd;
+        lastMovesOfs = range.lastMovesEnd;
+      }
+      if (range.overlappingMoves != null && numOverlappingMoves == 0) {
+        log.warn(range.overlappingMoves);
+        numWarnings += 1;
+      }
 
-        try {
-          if (header.chess960StartPosition() >= 0) {
-            numChess960 += 1;
-          }
-          if (header.annotationOffset() > 0) {
-            numAnnotated += 1;
-          }
-          if (header.deleted()) {
-            numDeleted += 1;
-          }
-          if (header.guidingText()) {
-            numText += 1;
-          }
-          if (!header.guidingText()) {
-            // Deserialize the game header (and lookup player, team, source, commentator)
-            game.getGameHeaderModel();
+      numOverlappingAnnotations += range.numOverlappingAnnotations;
+      numOverlappingMoves += range.numOverlappingMoves;
+      numAnnotationGaps += range.numAnnotationGaps;
+      numMoveGaps += range.numMoveGaps;
+      annotationFreeSpace += range.annotationFreeSpace;
+      moveFreeSpace += range.moveFreeSpace;
 
-            if (loadMoves) {
-              // Deserialize explicitly to be able to catch the exceptions
-              ByteBuffer movesBlob = this.db.moveRepository().getMovesBlob(game.getMovesOffset());
-              GameMovesModel moves = movesSerializer.deserializeMoves(movesBlob, true, game.id());
-              this.db.annotationRepository().getAnnotations(moves, game.getAnnotationOffset());
-            }
-            numGames += 1;
-          }
-        } catch (MorphyMoveDecodingException e) {
-          if (numMoveDecodingErrors < 5) {
-            log.error("Move decoding error in game " + game.id() + ": " + e.getMessage());
-          }
-          numMoveDecodingErrors += 1;
-          numErrors += 1;
-        } catch (MorphyInvalidDataException e) {
-          if (numInvalidEntityReferences < 5) {
-            log.error("Invalid data in game " + game.id() + ": " + e.getMessage());
-          }
-          numInvalidEntityReferences += 1;
-          numErrors += 1;
-        } catch (MorphyIOException | AssertionError e) {
-          log.error("Critical error in game " + game.id() + ": " + e.getMessage());
-          numErrors += 1;
-        } finally {
-          progressCallback.run();
+      for (String error : range.moveDecodingErrors) {
+        if (numMoveDecodingErrors++ < MAX_LOGGED_ERRORS) {
+          log.error(error);
+        }
+      }
+      for (String error : range.invalidDataErrors) {
+        if (numInvalidEntityReferences++ < MAX_LOGGED_ERRORS) {
+          log.error(error);
         }
       }
+      range.criticalErrors.forEach(log::error);
+      numMoveDecodingErrors += range.numMoveDecodingErrors - range.moveDecodingErrors.size();
+      numInvalidEntityReferences +=
+          range.numInvalidEntityReferences - range.invalidDataErrors.size();
+
+      numGames += range.numGames;
+      numDeleted += range.numDeleted;
+      numAnnotated += range.numAnnotated;
+      numText += range.numText;
+      numChess960 += range.numChess960;
+      numErrors += range.numErrors;
     }
 
     long movesStorageSize = this.db.moveRepository().getStorage().getSize();
@@ -301,4 +291,162 @@ public class GamesValidator {
 
     return numErrors;
   }
+
+  /** Statistics and deferred log messages from validating a consecutive range of games */
+  private static class GameRangeStats {
+    private int firstGameId, firstAnnotatedGameId;
+    // Offsets and ends of the first and last blobs in this range; -1 if there are none
+    private long firstMovesOfs = -1, lastMovesEnd = -1;
+    private long firstAnnotationOfs = -1, lastAnnotationEnd = -1;
+
+    private int numGames, numDeleted, numAnnotated, numText, numErrors, numChess960;
+    private int numOverlappingAnnotations, numOverlappingMoves;
+    private int numAnnotationGaps, numMoveGaps;
+    private long annotationFreeSpace, moveFreeSpace;
+    private int numMoveDecodingErrors, numInvalidEntityReferences;
+
+    // Only the first warning of each kind is logged
+    private String moveOffsetDiffers, annotationOffsetDiffers;
+    private String overlappingMoves, overlappingAnnotations;
+
+    private final List<String> moveDecodingErrors = new ArrayList<>();
+    private final List<String> invalidDataErrors = new ArrayList<>();
+    private final List<String> criticalErrors = new ArrayList<>();
+  }
+
+  private GameRangeStats processGames(
+      int startId, int endId, boolean loadMoves, Runnable progressCallback) {
+    GameRangeStats stats = new GameRangeStats();
+    long lastMovesOfs = -1, lastAnnotationOfs = -1;
+
+    MoveSerializer movesSerializer = new MoveSerializer(db.context());
+    movesSerializer.setLogDetailedErrors(true);
+
+    try (var txn = new DatabaseReadTransaction(db)) {
+      for (Game game : txn.iterable(startId, endId)) {
+        GameHeader header = game.header();
+        ExtendedGameHeader extendedHeader = game.extendedHeader();
+
+        if (extendedHeader.movesOffset() != 0
+            && extendedHeader.movesOffset() != header.movesOffset()
+            && stats.moveOffsetDiffers == null) {
+          // If this happens in one game, it usually happens in many games
+          stats.moveOffsetDiffers =
+              String.format(
+                  "Game %d: Move offset differs between header files (%d != %d) [ignoring similar errors]",
+                  header.id(), header.movesOffset(), extendedHeader.movesOffset());
+        }
+
+        if (extendedHeader.annotationOffset() != 0
+            && extendedHeader.annotationOffset() != header.annotationOffset()
+            && stats.annotationOffsetDiffers == null) {
+          // If this happens in one game, it usually happens in many games
+          stats.annotationOffsetDiffers =
+              String.format(
+                  "Game %d: Annotation offset differs between header files (%d != %d) [ignoring similar errors]",
+                  header.id(), header.annotationOffset(), extendedHeader.annotationOffset());
+        }
+
+        if (header.annotationOffset() > 0) {
+          int annotationSize =
+              db.annotationRepository().getAnnotationsBlobSize(header.annotationOffset());
+          int annotationEnd = header.annotationOffset() + annotationSize;
+          if (log.isDebugEnabled()) {
+            log.debug(
+                String.format(
+                    "Game %d: Annotation [%d, %d)",
+                    header.id(), header.annotationOffset(), annotationEnd));
+          }
+          if (lastAnnotationOfs < 0) {
+            stats.firstAnnotatedGameId = game.id();
+            stats.firstAnnotationOfs = header.annotationOffset();
+          } else if (header.annotationOffset() < lastAnnotationOfs) {
+            if (stats.numOverlappingAnnotations == 0) {
+              stats.overlappingAnnotations =
+                  String.format(
+                      "Game %d has annotation data at offset %d but previous game annotation data ended at %d",
+                      game.id(), header.annotationOffset(), lastAnnotationOfs);
+            }
+            stats.numOverlappingAnnotations += 1;
+          } else if (header.annotationOffset() > lastAnnotationOfs) {
+            stats.numAnnotationGaps += 1;
+            stats.annotationFreeSpace += header.annotationOffset() - lastAnnotationOfs;
+          }
+          lastAnnotationOfs = annotationEnd;
+          stats.lastAnnotationEnd = annotationEnd;
+        }
+
+        int movesSize = db.moveRepository().getMovesBlobSize(header.movesOffset());
+        int movesEnd = header.movesOffset() + movesSize;
+        if (log.isDebugEnabled()) {
+          log.debug(
+              String.format(
+                  "Game %d: Moves [%d, %d)", header.id(), header.movesOffset(), movesEnd));
+        }
+        if (lastMovesOfs < 0) {
+          stats.firstGameId = game.id();
+          stats.firstMovesOfs = header.movesOffset();
+        } else if (header.movesOffset() < lastMovesOfs) {
+          if (stats.numOverlappingMoves == 0) {
+            stats.overlappingMoves =
+                String.format(
+                    "Game %d has move data at offset %d but previous game move data ended at %d",
+                    game.id(), header.movesOffset(), lastMovesOfs);
+          }
+          stats.numOverlappingMoves += 1;
+        } else if (header.movesOffset() > lastMovesOfs) {
+          stats.numMoveGaps += 1;
+          stats.moveFreeSpace += header.movesOffset() - lastMovesOfs;
+        }
+        lastMovesOfs = movesEnd;
+        stats.lastMovesEnd = movesEnd;
+
+        try {
+          if (header.chess960StartPosition() >= 0) {
+            stats.numChess960 += 1;
+          }
+          if (header.annotationOffset() > 0) {
+            stats.numAnnotated += 1;
+          }
+          if (header.deleted()) {
+            stats.numDeleted += 1;
+          }
+          if (header.guidingText()) {
+            stats.numText += 1;
+          }
+          if (!header.guidingText()) {
+            // Deserialize the game header (and lookup player, team, source, commentator)
+            game.getGameHeaderModel();
+
+            if (loadMoves) {
+              // Deserialize explicitly to be able to catch the exceptions
+              ByteBuffer movesBlob = this.db.moveRepository().getMovesBlob(game.getMovesOffset());
+              GameMovesModel moves = movesSerializer.deserializeMoves(movesBlob, true, game.id());
+              this.db.annotationRepository().getAnnotations(moves, game.getAnnotationOffset());
+            }
+            stats.numGames += 1;
+          }
+        } catch (MorphyMoveDecodingException e) {
+          if (stats.moveDecodingErrors.size() < MAX_LOGGED_ERRORS) {
+            stats.moveDecodingErrors.add(
+                "Move decoding error in game " + game.id() + ": " + e.getMessage());
+          }
+          stats.numMoveDecodingErrors += 1;
+          stats.numErrors += 1;
+        } catch (MorphyInvalidDataException e) {
+          if (stats.invalidDataErrors.size() < MAX_LOGGED_ERRORS) {
+            stats.invalidDataErrors.add("Invalid data in game " + game.id() + ": " + e.getMessage());
+          }
+          stats.numInvalidEntityReferences += 1;
+          stats.numErrors += 1;
+        } catch (MorphyIOException | AssertionError e) {
+          stats.criticalErrors.add("Critical error in game " + game.id() + ": " + e.getMessage());
+          stats.numErrors += 1;
+        } finally {
+          progressCallback.run();
+        }
+      }
+    }
+    return stats;
+  }
 }
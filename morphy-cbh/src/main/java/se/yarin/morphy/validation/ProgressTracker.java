@@ -3,6 +3,7 @@ package se.yarin.morphy.validation;
 import me.tongfei.progressbar.ProgressBar;
 
 interface ProgressTracker extends AutoCloseable {
+  /** Advances the progress one step. Must be safe to call from multiple threads. */
   void step();
 
   void close();
@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseContext;
 import se.yarin.morphy.boosters.GameEntityIndex;
 import se.yarin.morphy.entities.EntityIndex;
 import se.yarin.morphy.entities.EntityType;
@@ -25,7 +26,9 @@ public class Validator {
 
     // Checks that entities are sorted correctly
     ENTITY_SORT_ORDER,
-    // Checks that statistics (first game and count) for each entity is correct
+    // Checks that statistics (first game and count) for each entity is correct.
+    // Unless GAME_ENTITY_INDEX is also checked, the expected statistics are taken from the
+    // game entity index if the database has one, instead of reading all game headers.
     ENTITY_STATISTICS,
 
     // Check Player, Tournament, Annotator, Source, Team and Game Tag entity types (statistics,
@@ -47,6 +50,36 @@ public class Validator {
     GAMES_LOAD,
   }
 
+  private final int parallelism;
+  private boolean bulkScan;
+
+  public Validator() {
+    this(1);
+  }
+
+  /**
+   * Creates a validator that checks the games using multiple threads.
+   *
+   * @param parallelism the number of threads to use when processing the games
+   */
+  public Validator(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Sets whether the validation runs as a bulk scan of the database, reading the game data with
+   * direct I/O where possible so it doesn't evict other data from the OS page cache.
+   *
+   * @param bulkScan true to validate the database as a bulk scan
+   * @see DatabaseContext#beginBulkScan()
+   */
+  public void setBulkScan(boolean bulkScan) {
+    this.bulkScan = bulkScan;
+  }
+
   private static class EntityTypeCheck {
     private final EntityType entityType;
     private final EntityIndex<?> index;
@@ -90,6 +123,18 @@ public class Validator {
       boolean throwOnWarning,
       boolean showProgressBar)
       throws MorphyException {
+    try (DatabaseContext.BulkScan ignored = bulkScan ? db.context().beginBulkScan() : null) {
+      validateChecks(db, checks, throwOnError, throwOnWarning, showProgressBar);
+    }
+  }
+
+  private void validateChecks(
+      Database db,
+      EnumSet<Checks> checks,
+      boolean throwOnError,
+      boolean throwOnWarning,
+      boolean showProgressBar)
+      throws MorphyException {
     boolean hasCriticalErrors = false;
 
     // Validates the integrity of the binary search tree (proper binary tree)
@@ -149,10 +194,27 @@ public class Validator {
         }
       }
 
-      if (checks.contains(Checks.ENTITY_STATISTICS) || checks.contains(Checks.GAME_ENTITY_INDEX)) {
+      if (checks.contains(Checks.GAME_ENTITY_INDEX)) {
         try (ProgressTracker progressTracker =
             trackerFactory.create("Entity stats", db.gameHeaderIndex().count())) {
-          entityStatsValidator.calculateEntityStats(progressTracker::step);
+          entityStatsValidator.calculateEntityStats(progressTracker::step, parallelism);
+        }
+      } else if (checks.contains(Checks.ENTITY_STATISTICS)) {
+        if (entityTypeCheck.stream().allMatch(tc -> db.gameEntityIndex(tc.entityType) != null)) {
+          // The game entity index is trusted, so we don't need to read all the game headers
+          long numEntities = entityTypeCheck.stream().mapToLong(tc -> tc.getIndex().count()).sum();
+          try (ProgressTracker progressTracker =
+              trackerFactory.create("Entity stats", numEntities)) {
+            for (EntityTypeCheck typeCheck : entityTypeCheck) {
+              entityStatsValidator.calculateEntityStatsFromGameEntityIndex(
+                  typeCheck.getEntityType(), progressTracker::step);
+            }
+          }
+        } else {
+          try (ProgressTracker progressTracker =
+              trackerFactory.create("Entity stats", db.gameHeaderIndex().count())) {
+            entityStatsValidator.calculateEntityStats(progressTracker::step, parallelism);
+          }
         }
       }
 
@@ -201,7 +263,10 @@ public class Validator {
         try {
           int numErrors =
               gamesValidator.processGames(
-                  checks.contains(Checks.GAMES_LOAD), throwOnWarning, progressTracker::step);
+                  checks.contains(Checks.GAMES_LOAD),
+                  throwOnWarning,
+                  progressTracker::step,
+                  parallelism);
           if (numErrors > 0) {
             hasCriticalErrors = true;
           }
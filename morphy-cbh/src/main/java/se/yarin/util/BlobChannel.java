@@ -18,7 +18,10 @@ public interface BlobChannel {
   // Used by new code
   static BlobChannel open(Path path, DatabaseContext context, Set<? extends OpenOption> openOptions)
       throws IOException {
-    return PagedBlobChannel.open(path, context.instrumentation(), openOptions);
+    PagedBlobChannel channel = PagedBlobChannel.open(path, context.instrumentation(), openOptions);
+    channel.setMaxReadAheadPages(context.config().maxReadAheadPages());
+    channel.setBulkScanIndicator(context::inBulkScan);
+    return channel;
   }
 
   void setChunkSize(int chunkSize);
@@ -1,34 +1,131 @@
 package se.yarin.util;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import se.yarin.morphy.Instrumentation;
 import se.yarin.morphy.metrics.FileMetrics;
 import se.yarin.morphy.metrics.MetricsKey;
 import se.yarin.morphy.metrics.MetricsProvider;
 import se.yarin.morphy.metrics.MetricsRef;
+import se.yarin.morphy.metrics.PageIOEvent;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
+/**
+ * A {@link BlobChannel} that reads the file in pages, keeping the most recently used pages in a
+ * small cache.
+ *
+ * <p>When pages are read sequentially, e.g. during a scan, the following pages are read ahead
+ * asynchronously on a background I/O thread, so that the I/O latency is hidden while the current
+ * pages are being processed. The read-ahead starts after a few sequential page reads and doubles
+ * as long as the access stays sequential, up to a configurable maximum. Any non-sequential read
+ * or write discards the pages read ahead.
+ *
+ * <p>During a bulk scan, the pages read ahead are read with direct I/O if the file system supports
+ * it, so that huge scans don't evict more useful pages from the OS page cache. Pages read one at
+ * a time, e.g. random lookups, always go through the OS page cache.
+ *
+ * <p>All public methods are synchronized, so the channel may be shared by multiple threads; only
+ * the physical reads of the pages read ahead happen on the background threads.
+ */
 public class PagedBlobChannel implements BlobChannel, MetricsProvider {
+  private static final Logger log = LoggerFactory.getLogger(PagedBlobChannel.class);
+
   public static final int PAGE_SIZE = 16384;
   private static final int DEFAULT_INSERT_CHUNK_SIZE = 1024 * 1024;
+  public static final int DEFAULT_MAX_READ_AHEAD_PAGES = 64;
+  private static final int MIN_READ_AHEAD_PAGES = 4;
+  private static final int SEQUENTIAL_READS_BEFORE_READ_AHEAD = 2;
+
+  private static final AtomicInteger prefetchThreadCount = new AtomicInteger();
+  private static final ExecutorService prefetchExecutor =
+      Executors.newFixedThreadPool(
+          4,
+          runnable -> {
+            Thread thread =
+                new Thread(runnable, "morphy-prefetch-" + prefetchThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+
   private final @NotNull FileChannel channel;
+  private final @Nullable Path path;
   private final @NotNull MetricsRef<FileMetrics> fileMetricsRef;
   private long size; // Should match channel.size()
   private int chunkSize;
   private final SimpleLRUCache<Integer, ByteBuffer> pageCache;
 
+  // Read-ahead state
+  private int maxReadAheadPages = DEFAULT_MAX_READ_AHEAD_PAGES;
+  private int nextSequentialPage = -1;
+  private int sequentialReads;
+  private int readAheadPages;
+  private int prefetchedUntil; // Exclusive
+  private final HashMap<Integer, Future<PrefetchedPages>> prefetchedPages = new HashMap<>();
+
+  // Direct I/O state, used for reading ahead during bulk scans
+  // ExtendedOpenOption.DIRECT is JDK specific, so it's looked up by reflection; null if missing
+  private static final @Nullable OpenOption DIRECT_OPEN_OPTION = lookupDirectOpenOption();
+  private @NotNull BooleanSupplier bulkScanIndicator = () -> false;
+  private @Nullable FileChannel directChannel;
+  private int directAlignment;
+  private volatile boolean directUnsupported;
+
+  /** A run of consecutive pages read ahead in a single read */
+  private record PrefetchedPages(int firstPage, @NotNull ByteBuffer data, long nanosPerPage) {
+    @NotNull
+    ByteBuffer page(int page) {
+      int start = (page - firstPage) * PAGE_SIZE;
+      ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
+      if (start < data.limit()) {
+        buf.put(data.array(), start, Math.min(PAGE_SIZE, data.limit() - start));
+      }
+      buf.flip();
+      return buf;
+    }
+  }
+
   public PagedBlobChannel(
       @NotNull FileChannel channel, @NotNull MetricsRef<FileMetrics> fileMetricsRef)
       throws IOException {
+    this(channel, null, fileMetricsRef);
+  }
+
+  /**
+   * Creates a new paged channel
+   *
+   * @param channel the underlying file channel
+   * @param path the path of the file, needed for direct I/O during bulk scans; if null, bulk scans
+   *     read the file as usual
+   * @param fileMetricsRef the metrics to update
+   */
+  public PagedBlobChannel(
+      @NotNull FileChannel channel,
+      @Nullable Path path,
+      @NotNull MetricsRef<FileMetrics> fileMetricsRef)
+      throws IOException {
     this.channel = channel;
+    this.path = path;
     this.fileMetricsRef = fileMetricsRef;
     this.size = this.channel.size();
     this.chunkSize = DEFAULT_INSERT_CHUNK_SIZE;
@@ -38,30 +135,65 @@ public class PagedBlobChannel implements BlobChannel, MetricsProvider {
   // Used by old code
   public static PagedBlobChannel open(Path path, OpenOption... openOptions) throws IOException {
     return new PagedBlobChannel(
-        FileChannel.open(path, openOptions), FileMetrics.register(new Instrumentation(), path));
+        FileChannel.open(path, openOptions),
+        path,
+        FileMetrics.register(new Instrumentation(), path));
   }
 
   public static PagedBlobChannel open(
       Path path, Instrumentation instrumentation, Set<? extends OpenOption> openOptions)
       throws IOException {
     return new PagedBlobChannel(
-        FileChannel.open(path, openOptions), FileMetrics.register(instrumentation, path));
+        FileChannel.open(path, openOptions), path, FileMetrics.register(instrumentation, path));
   }
 
-  public void setChunkSize(int chunkSize) {
+  public synchronized void setChunkSize(int chunkSize) {
     this.chunkSize = chunkSize;
   }
 
-  public long size() {
+  /**
+   * Sets the maximum number of pages to read ahead when the file is read sequentially
+   *
+   * @param maxReadAheadPages the maximum number of pages, or 0 to disable read-ahead
+   */
+  public synchronized void setMaxReadAheadPages(int maxReadAheadPages) {
+    if (maxReadAheadPages < 0) {
+      throw new IllegalArgumentException("The number of pages to read ahead can't be negative");
+    }
+    this.maxReadAheadPages = maxReadAheadPages;
+    resetReadAhead();
+  }
+
+  /**
+   * Sets the indicator that determines if a bulk scan is active, in which case the pages read
+   * ahead are read with direct I/O. This has no effect if read-ahead is disabled.
+   *
+   * @param bulkScanIndicator returns true when a bulk scan is active
+   */
+  public synchronized void setBulkScanIndicator(@NotNull BooleanSupplier bulkScanIndicator) {
+    this.bulkScanIndicator = bulkScanIndicator;
+  }
+
+  public synchronized long size() {
     return size;
   }
 
   private ByteBuffer readPageUncached(int page) throws IOException {
-    fileMetricsRef.update(metrics -> metrics.addPhysicalReads(1));
+    PageIOEvent event = new PageIOEvent();
+    event.begin();
+    long start = System.nanoTime();
     ByteBuffer buf = ByteBuffer.allocate(PAGE_SIZE);
-    channel.position((long) page * PAGE_SIZE);
-    channel.read(buf);
+    channel.read(buf, (long) page * PAGE_SIZE);
     buf.flip();
+    fileMetricsRef.get().addPhysicalRead(System.nanoTime() - start);
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = PageIOEvent.READ;
+      event.file = fileMetricsRef.metricsKey().name();
+      event.offset = (long) page * PAGE_SIZE;
+      event.bytes = buf.limit();
+      event.commit();
+    }
     return buf;
   }
 
@@ -73,15 +205,214 @@ public class PagedBlobChannel implements BlobChannel, MetricsProvider {
         fileMetricsRef.update(metrics -> metrics.addLogicalReads(1));
         pages.add(cached);
       } else {
-        ByteBuffer data = readPageUncached(page);
+        ByteBuffer data = takePrefetchedPage(page);
+        if (data == null) {
+          data = readPageUncached(page);
+        }
         pages.add(data);
         pageCache.set(page, data);
+        readAhead(page);
       }
     }
     return pages;
   }
 
-  public void read(long offset, ByteBuffer buf) throws IOException {
+  private @Nullable ByteBuffer takePrefetchedPage(int page) throws IOException {
+    Future<PrefetchedPages> future = prefetchedPages.remove(page);
+    if (future == null) {
+      return null;
+    }
+    try {
+      PrefetchedPages prefetched = future.get();
+      fileMetricsRef.get().addPhysicalRead(prefetched.nanosPerPage());
+      return prefetched.page(page);
+    } catch (ExecutionException | CancellationException e) {
+      // The page is read again in the foreground instead
+      log.debug("Failed to read ahead page " + page, e);
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for page " + page);
+    }
+  }
+
+  /**
+   * Updates the read-ahead state after a page has been read that wasn't in the page cache, and
+   * starts reading ahead if the access is sequential and half of the pages read ahead so far have
+   * been consumed.
+   */
+  private void readAhead(int page) {
+    if (maxReadAheadPages == 0) {
+      return;
+    }
+    if (page != nextSequentialPage) {
+      resetReadAhead();
+    }
+    sequentialReads += 1;
+    nextSequentialPage = page + 1;
+    if (sequentialReads <= SEQUENTIAL_READS_BEFORE_READ_AHEAD
+        || prefetchedUntil - page > readAheadPages / 2) {
+      return;
+    }
+
+    readAheadPages =
+        Math.min(maxReadAheadPages, Math.max(MIN_READ_AHEAD_PAGES, readAheadPages * 2));
+    int firstPage = Math.max(prefetchedUntil, page + 1);
+    int lastPage = (int) Math.min(page + readAheadPages, (size - 1) / PAGE_SIZE);
+    if (firstPage > lastPage) {
+      return;
+    }
+    int numPages = lastPage - firstPage + 1;
+    FileChannel direct = bulkScanIndicator.getAsBoolean() ? directChannel() : null;
+    int alignment = directAlignment;
+    Future<PrefetchedPages> future =
+        prefetchExecutor.submit(() -> prefetch(firstPage, numPages, direct, alignment));
+    for (int i = firstPage; i <= lastPage; i++) {
+      prefetchedPages.put(i, future);
+    }
+    prefetchedUntil = lastPage + 1;
+  }
+
+  /**
+   * Reads a run of pages; called on the background I/O thread
+   *
+   * @param direct the channel to read from with direct I/O, or null to read through the page cache
+   * @param alignment the required alignment of buffers, offsets and lengths for direct I/O
+   */
+  private @NotNull PrefetchedPages prefetch(
+      int firstPage, int numPages, @Nullable FileChannel direct, int alignment)
+      throws IOException {
+    PageIOEvent event = new PageIOEvent();
+    event.begin();
+    long start = System.nanoTime();
+    long offset = (long) firstPage * PAGE_SIZE;
+    ByteBuffer buf = null;
+    if (direct != null && !directUnsupported) {
+      try {
+        buf = readDirect(direct, offset, numPages * PAGE_SIZE, alignment);
+      } catch (IOException e) {
+        log.info(
+            "Direct I/O failed for {}, reading through the page cache: {}", path, e.getMessage());
+        directUnsupported = true;
+      }
+    }
+    if (buf == null) {
+      buf = ByteBuffer.allocate(numPages * PAGE_SIZE);
+      while (buf.hasRemaining()) {
+        if (channel.read(buf, offset + buf.position()) < 0) {
+          break;
+        }
+      }
+      buf.flip();
+    }
+    long nanos = System.nanoTime() - start;
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = PageIOEvent.READ_AHEAD;
+      event.file = fileMetricsRef.metricsKey().name();
+      event.offset = offset;
+      event.bytes = buf.limit();
+      event.commit();
+    }
+    return new PrefetchedPages(firstPage, buf, nanos / numPages);
+  }
+
+  /**
+   * Reads a range of the file with direct I/O. The offset and length must be multiples of the
+   * alignment, which is why the pages are read into an aligned direct buffer and then copied.
+   */
+  private static @NotNull ByteBuffer readDirect(
+      @NotNull FileChannel direct, long offset, int length, int alignment) throws IOException {
+    ByteBuffer aligned =
+        ByteBuffer.allocateDirect(length + alignment).alignedSlice(alignment).limit(length);
+    while (aligned.hasRemaining()) {
+      int read = direct.read(aligned, offset + aligned.position());
+      // A short read means the end of the file, and further reads would be unaligned anyway
+      if (read <= 0 || aligned.position() % alignment != 0) {
+        break;
+      }
+    }
+    aligned.flip();
+    ByteBuffer buf = ByteBuffer.allocate(length);
+    buf.put(aligned);
+    buf.flip();
+    return buf;
+  }
+
+  /**
+   * Gets the channel used for direct I/O, opening it the first time
+   *
+   * @return the channel, or null if direct I/O isn't supported for this file
+   */
+  private @Nullable FileChannel directChannel() {
+    if (directChannel == null && !directUnsupported) {
+      if (path == null) {
+        directUnsupported = true;
+        return null;
+      }
+      try {
+        int alignment = (int) Files.getFileStore(path).getBlockSize();
+        if (alignment <= 0 || PAGE_SIZE % alignment != 0) {
+          throw new IOException("Unsupported block size " + alignment);
+        }
+        if (DIRECT_OPEN_OPTION == null) {
+          throw new UnsupportedOperationException("ExtendedOpenOption.DIRECT is not available");
+        }
+        directChannel = FileChannel.open(path, StandardOpenOption.READ, DIRECT_OPEN_OPTION);
+        directAlignment = alignment;
+      } catch (IOException | UnsupportedOperationException e) {
+        log.info(
+            "Direct I/O is not supported for {}, reading through the page cache: {}",
+            path,
+            e.getMessage());
+        directUnsupported = true;
+      }
+    }
+    return directUnsupported ? null : directChannel;
+  }
+
+  private static @Nullable OpenOption lookupDirectOpenOption() {
+    try {
+      Class<?> optionClass = Class.forName("com.sun.nio.file.ExtendedOpenOption");
+      Object[] options = optionClass.getEnumConstants();
+      if (options != null) {
+        for (Object option : options) {
+          if (option instanceof OpenOption openOption
+              && ((Enum<?>) option).name().equals("DIRECT")) {
+            return openOption;
+          }
+        }
+      }
+    } catch (ClassNotFoundException e) {
+      // Not a JDK that supports direct I/O
+    }
+    return null;
+  }
+
+  /** Determines if direct I/O is used for bulk scans; only known after the first bulk scan */
+  synchronized boolean usesDirectIO() {
+    return directChannel != null && !directUnsupported;
+  }
+
+  /** The number of pages that have been read ahead, or are being read ahead, but not yet used */
+  synchronized int readAheadPageCount() {
+    return prefetchedPages.size();
+  }
+
+  /** Discards all pages read ahead and starts over detecting sequential access */
+  private void resetReadAhead() {
+    for (Future<PrefetchedPages> future : prefetchedPages.values()) {
+      // Never interrupt, since that would close the file channel
+      future.cancel(false);
+    }
+    prefetchedPages.clear();
+    nextSequentialPage = -1;
+    sequentialReads = 0;
+    readAheadPages = 0;
+    prefetchedUntil = 0;
+  }
+
+  public synchronized void read(long offset, ByteBuffer buf) throws IOException {
     int length = buf.remaining();
 
     int startPage = (int) (offset / PAGE_SIZE), lastPage = (int) ((offset + length) / PAGE_SIZE);
@@ -109,7 +440,7 @@ public class PagedBlobChannel implements BlobChannel, MetricsProvider {
     }
   }
 
-  public ByteBuffer read(long offset, int length) throws IOException {
+  public synchronized ByteBuffer read(long offset, int length) throws IOException {
     if (length == 0) {
       return ByteBuffer.allocate(0);
     }
@@ -120,12 +451,13 @@ public class PagedBlobChannel implements BlobChannel, MetricsProvider {
     return buf;
   }
 
-  public int append(ByteBuffer buf) throws IOException {
+  public synchronized int append(ByteBuffer buf) throws IOException {
     pageCache.evict((int) (size / PAGE_SIZE));
     return write(size, buf);
   }
 
-  public int write(long offset, ByteBuffer buf) throws IOException {
+  public synchronized int write(long offset, ByteBuffer buf) throws IOException {
+    resetReadAhead();
     channel.position(offset);
     int written = channel.write(buf);
     size = Math.max(size, offset + written);
@@ -139,13 +471,16 @@ public class PagedBlobChannel implements BlobChannel, MetricsProvider {
     return written;
   }
 
-  public void insert(long offset, long noBytes) throws IOException {
+  public synchronized void insert(long offset, long noBytes) throws IOException {
     if (noBytes < 0) {
       throw new IllegalArgumentException("Number of bytes to insert must be non-negative");
     }
     if (noBytes == 0) {
       return;
     }
+    resetReadAhead();
+    PageIOEvent event = new PageIOEvent();
+    event.begin();
     ByteBuffer buf = ByteBuffer.allocateDirect(chunkSize);
     long pos = size;
     while (pos > offset) {
@@ -169,10 +504,23 @@ public class PagedBlobChannel implements BlobChannel, MetricsProvider {
     }
     size += noBytes;
     pageCache.clear();
+    event.end();
+    if (event.shouldCommit()) {
+      event.operation = PageIOEvent.INSERT;
+      event.file = fileMetricsRef.metricsKey().name();
+      event.offset = offset;
+      event.bytes = noBytes;
+      event.commit();
+    }
   }
 
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    resetReadAhead();
     channel.close();
+    if (directChannel != null) {
+      directChannel.close();
+      directChannel = null;
+    }
     pageCache.clear();
   }
 
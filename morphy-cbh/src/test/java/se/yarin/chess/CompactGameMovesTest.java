@@ -0,0 +1,159 @@
+package se.yarin.chess;
+
+import org.junit.Test;
+import se.yarin.chess.annotations.Annotation;
+import se.yarin.chess.annotations.CommentaryAfterMoveAnnotation;
+import se.yarin.chess.annotations.NAGAnnotation;
+import se.yarin.morphy.GameGenerator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static se.yarin.chess.Chess.*;
+
+public class CompactGameMovesTest {
+
+  private static void assertSameTree(GameMovesModel.Node expected, CompactGameMoves.Node actual) {
+    assertEquals(expected.isRoot(), actual.isRoot());
+    assertEquals(expected.ply(), actual.ply());
+    assertEquals(expected.position(), actual.position());
+    assertEquals(expected.lastMove(), actual.lastMove());
+    assertEquals(expected.mainMove(), actual.mainMove());
+    assertEquals(expected.hasMoves(), actual.hasMoves());
+    assertEquals(expected.hasVariations(), actual.hasVariations());
+    assertEquals(expected.numMoves(), actual.numMoves());
+    assertEquals(expected.isMainLine(), actual.isMainLine());
+    assertEquals(new ArrayList<Annotation>(expected.getAnnotations()), actual.getAnnotations());
+    if (!expected.isRoot()) {
+      assertEquals(expected.parent().position(), actual.parent().position());
+    }
+
+    List<GameMovesModel.Node> expectedChildren = expected.children();
+    List<CompactGameMoves.Node> actualChildren = actual.children();
+    assertEquals(expectedChildren.size(), actualChildren.size());
+    for (int i = 0; i < expectedChildren.size(); i++) {
+      assertEquals(actual, actualChildren.get(i).parent());
+      assertSameTree(expectedChildren.get(i), actualChildren.get(i));
+    }
+  }
+
+  private static void assertSameGame(GameMovesModel expected, CompactGameMoves actual) {
+    assertEquals(expected.getAllNodes().size(), actual.numNodes());
+    assertEquals(expected.countPly(true), actual.countPly(true));
+    assertEquals(expected.countPly(false), actual.countPly(false));
+    assertEquals(expected.countAnnotations(), actual.countAnnotations());
+    assertEquals(expected.isSetupPosition(), actual.isSetupPosition());
+    assertSameTree(expected.root(), actual.root());
+
+    List<GameMovesModel.Node> allNodes = expected.getAllNodes();
+    for (int i = 0; i < allNodes.size(); i++) {
+      assertEquals(allNodes.get(i).position(), actual.node(i).position());
+    }
+    assertEquals(expected.toString(), actual.toGameMovesModel().toString());
+  }
+
+  @Test
+  public void emptyGame() {
+    GameMovesModel moves = new GameMovesModel();
+    CompactGameMoves compact = CompactGameMoves.of(moves);
+
+    assertEquals(1, compact.numNodes());
+    assertFalse(compact.root().hasMoves());
+    assertNull(compact.root().mainNode());
+    assertNull(compact.root().lastMove());
+    assertSameGame(moves, compact);
+  }
+
+  @Test
+  public void gameWithVariationsAndAnnotations() {
+    GameMovesModel moves = new GameMovesModel();
+    moves
+        .root()
+        .addAnnotation(new CommentaryAfterMoveAnnotation("start"))
+        .addMove(E2, E4)
+        .addMove(E7, E5)
+        .addMove(G1, F3)
+        .addAnnotation(new NAGAnnotation(NAG.GOOD_MOVE))
+        .addMove(B8, C6)
+        .addMove(F1, C4)
+        .addMove(G8, F6)
+        .addMove(E1, G1)
+        .parent()
+        .addMove(F3, G5)
+        .addAnnotation(new CommentaryAfterMoveAnnotation("aggressive"));
+    moves.root().mainNode().addMove(C7, C5).addMove(G1, F3);
+
+    for (int interval : new int[] {1, 2, 3, 16}) {
+      CompactGameMoves compact = CompactGameMoves.of(moves, interval);
+      assertSameGame(moves, compact);
+      CompactGameMoves.Node castles = compact.root();
+      for (int i = 0; i < 7; i++) {
+        castles = castles.mainNode();
+      }
+      assertTrue(castles.lastMove().isShortCastle());
+    }
+  }
+
+  @Test
+  public void setupPosition() {
+    GameMovesModel game = new GameMovesModel();
+    game.root().addMove(D2, D4).addMove(D7, D5).addMove(C2, C4);
+    Position position = game.root().mainNode().mainNode().mainNode().position();
+
+    GameMovesModel moves = new GameMovesModel(position, 2);
+    moves.root().addMove(D5, C4).addMove(E2, E4).parent().addMove(E2, E3);
+
+    CompactGameMoves compact = CompactGameMoves.of(moves, 2);
+    assertTrue(compact.isSetupPosition());
+    assertEquals(3, compact.root().ply());
+    assertSameGame(moves, compact);
+  }
+
+  @Test
+  public void randomGames() {
+    GameGenerator generator = new GameGenerator(11);
+    for (int i = 0; i < 50; i++) {
+      GameMovesModel moves = generator.getRandomGame(i % 2 == 0, i % 3 == 0).moves();
+      assertSameGame(moves, CompactGameMoves.of(moves, 1 + i % 20));
+    }
+  }
+
+  @Test
+  public void builtGamesHaveCheckpoints() {
+    GameGenerator generator = new GameGenerator(17);
+    for (int checkpointInterval = 1; checkpointInterval <= 20; checkpointInterval += 3) {
+      GameMovesModel moves = generator.getRandomGameMoves(150);
+      generator.addRandomVariationMoves(moves, 100);
+
+      List<GameMovesModel.Node> allNodes = moves.getAllNodes();
+      IdentityHashMap<GameMovesModel.Node, Integer> nodeIndexes = new IdentityHashMap<>();
+      CompactGameMoves.Builder builder =
+          new CompactGameMoves.Builder(moves.root().position(), 0, checkpointInterval);
+      nodeIndexes.put(moves.root(), 0);
+      for (GameMovesModel.Node node : allNodes.subList(1, allNodes.size())) {
+        int parent = nodeIndexes.get(node.parent());
+        Move move = node.lastMove();
+        int index;
+        if (move.isNullMove()) {
+          index = builder.addNullMove(parent);
+        } else if (move.isCastle()) {
+          index = builder.addCastles(parent, move.fromSqi(), move.toSqi(), move.isShortCastle());
+        } else {
+          index = builder.addMove(parent, move.fromSqi(), move.toSqi(), move.promotionStone());
+        }
+        nodeIndexes.put(node, index);
+      }
+      CompactGameMoves compact = builder.build();
+
+      // Positions deep into the game are computed from the closest checkpoint
+      assertSameGame(moves, compact);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidCheckpointInterval() {
+    CompactGameMoves.of(new GameMovesModel(), 0);
+  }
+}
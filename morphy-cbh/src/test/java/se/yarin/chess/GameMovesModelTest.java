@@ -1,12 +1,15 @@
 package se.yarin.chess;
 
+import org.jetbrains.annotations.NotNull;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import se.yarin.chess.annotations.*;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 
 import static org.junit.Assert.*;
 import static se.yarin.chess.Chess.*;
@@ -396,6 +399,59 @@ public class GameMovesModelTest {
     assertEquals("1. e4 a6? +/=", moves.toString());
   }
 
+  @Test
+  public void testLazyAnnotations() {
+    int[] numDecoded = new int[1];
+    List<Annotation> lazy =
+        List.of(
+            new NAGAnnotation(NAG.GOOD_MOVE), new NAGAnnotation(NAG.WHITE_SLIGHT_ADVANTAGE));
+    GameMovesModel.Node node = moves.root().addMove(E2, E4);
+    node.addAnnotation(new CommentaryAfterMoveAnnotation("first"));
+    numFiredChanges = 0;
+    node.setLazyAnnotations(
+        new LazyAnnotations() {
+          @Override
+          public int size() {
+            return lazy.size();
+          }
+
+          @Override
+          public @NotNull List<Annotation> decodeAll() {
+            numDecoded[0] += lazy.size();
+            return lazy;
+          }
+
+          @Override
+          public @NotNull <T extends Annotation> List<T> decode(@NotNull Class<T> clazz) {
+            List<T> result = new ArrayList<>();
+            for (Annotation annotation : lazy) {
+              if (clazz.isInstance(annotation)) {
+                numDecoded[0] += 1;
+                result.add(clazz.cast(annotation));
+              }
+            }
+            return result;
+          }
+        });
+    assertEquals(0, numFiredChanges);
+    assertEquals(3, moves.countAnnotations());
+    assertEquals(0, numDecoded[0]);
+
+    assertEquals(new NAGAnnotation(NAG.GOOD_MOVE), node.getAnnotation(NAGAnnotation.class));
+    assertEquals(2, node.getAnnotations(NAGAnnotation.class).size());
+    assertEquals(4, numDecoded[0]);
+
+    GameMovesModel copy = new GameMovesModel(moves);
+    assertEquals(3, copy.countAnnotations());
+    assertEquals(4, numDecoded[0]);
+
+    assertEquals("1. e4! +/= { first }", moves.toString());
+    assertEquals(6, numDecoded[0]);
+    assertEquals(3, node.getAnnotations().size());
+    assertEquals("1. e4! +/= { first }", copy.toString());
+    assertEquals(8, numDecoded[0]);
+  }
+
   @Test
   public void testDeleteAllAnnotations() {
     moves
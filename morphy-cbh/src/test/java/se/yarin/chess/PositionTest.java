@@ -4,7 +4,10 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 import static se.yarin.chess.Player.*;
@@ -572,6 +575,55 @@ public class PositionTest {
         "r....rk.", position.doMove(Move.shortCastles(position)).toString().substring(0, 8));
   }
 
+  @Test
+  public void testGenerateMovesToMatchesAllMoves() {
+    Random random = new Random(17);
+    for (int game = 0; game < 10; game++) {
+      Position position = Position.start();
+      for (int ply = 0; ply < 150; ply++) {
+        List<Move> pseudoLegalMoves = position.generateAllPseudoLegalMoves();
+        for (int sqi = 0; sqi < 64; sqi++) {
+          for (Piece piece : EnumSet.range(Piece.PAWN, Piece.KING)) {
+            Set<Move> expected = new HashSet<>();
+            for (Move move : pseudoLegalMoves) {
+              if (move.toSqi() == sqi && move.movingPiece() == piece && !move.isCastle()) {
+                expected.add(move);
+              }
+            }
+            assertEquals(expected, new HashSet<>(position.generatePseudoLegalMovesTo(sqi, piece)));
+          }
+        }
+        for (Move move : pseudoLegalMoves) {
+          if (!move.isCastle()) {
+            assertEquals(
+                !position.doMove(move).canCaptureKing(), position.isPseudoLegalMoveLegal(move));
+          }
+        }
+
+        List<Move> legalMoves = position.generateAllLegalMoves();
+        if (legalMoves.isEmpty()) {
+          break;
+        }
+        position = position.doMove(legalMoves.get(random.nextInt(legalMoves.size())));
+      }
+    }
+  }
+
+  @Test
+  public void testGenerateMovesToEnPassant() {
+    Position position =
+        Position.fromString(
+            "....k...\n" + "........\n" + "........\n" + "K..pP..r\n",
+            WHITE,
+            EnumSet.noneOf(Castles.class),
+            3);
+    List<Move> moves = position.generatePseudoLegalMovesTo(D6, Piece.PAWN);
+    assertEquals(List.of(new Move(position, E5, D6)), moves);
+    assertTrue(moves.get(0).isEnPassant());
+    // Capturing en passant removes both pawns from the rank, exposing the king to the rook
+    assertFalse(position.isPseudoLegalMoveLegal(moves.get(0)));
+  }
+
   private int numEmptySquares(Position position) {
     int cnt = 0;
     for (int i = 0; i < 64; i++) {
@@ -0,0 +1,156 @@
+package se.yarin.chess.pgn;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.chess.GameModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class PgnByteLexerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PGN = """
+            [Event "Test \\"quoted\\" \\\\ event"]
+            [Site "Göteborg"]
+            [Date "2024.01.15"]
+            [Round "1"]
+            [White "Player 1"]
+            [Black "Player 2"]
+            [Result "1/2-1/2"]
+
+            % An escaped line [with brackets]
+            1. e4 $1 e5 ; rest of line comment
+            (1... c5 {Sicilian,
+            multiple lines} 2. Nf3) 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5
+            7. Bb3 d6 8. c3 O-O 9. h3 Nb8 10. d4 Nbd7 11. c4 c6 12. cxb5 axb5 13. Nc3 Bb7
+            14. Bg5 b4 15. Nb1 h6 16. Bh4 c5 17. dxe5 Nxe4 18. Bxe7 Qxe7 19. exd6 Qf6
+            20. Nbd2 Nxd6 21. Nc4 Nxc4 22. Bxc4 Nb6 23. Ne5 Rae8 24. Bxf7+ Rxf7 25. Nxf7 Rxe1+
+            26. Qxe1 Kxf7 27. Qe3 Qg5 28. Qxg5 hxg5 29. b3 Ke6 30. a3 Kd6 31. axb4 cxb4
+            32. Ra5 Nd5 33. f3 Bc8 34. Kf2 Bf5 35. Ra7 g6 36. Ra6+ Kc5 37. Ke1 Nf4 38. g3 Nxh3
+            39. Kd2 Kb5 40. Rd6 Kc5 41. Ra6 Nf2 42. g4 Bd3 43. Re6 1/2-1/2
+            """;
+
+    private static List<PgnToken> lexerTokens(String pgn) throws PgnFormatException {
+        PgnLexer lexer = new PgnLexer(new StringReader(pgn));
+        List<PgnToken> tokens = new ArrayList<>();
+        PgnToken token;
+        do {
+            token = lexer.nextToken();
+            tokens.add(token);
+        } while (token.type() != PgnToken.TokenType.EOF);
+        return tokens;
+    }
+
+    private static List<PgnToken> byteLexerTokens(byte[] bytes) throws PgnFormatException {
+        PgnByteLexer lexer = new PgnByteLexer(ByteBuffer.wrap(bytes));
+        List<PgnToken> tokens = new ArrayList<>();
+        PgnToken token;
+        do {
+            token = lexer.nextToken();
+            tokens.add(token);
+        } while (token.type() != PgnToken.TokenType.EOF);
+        return tokens;
+    }
+
+    private static List<PgnToken> withoutPositions(List<PgnToken> tokens) {
+        return tokens.stream().map(token -> new PgnToken(token.type(), token.value(), 0, 0)).toList();
+    }
+
+    @Test
+    public void sameTokensAsCharacterLexer() throws PgnFormatException {
+        String ascii = PGN.replace('ö', 'o');
+        assertEquals(lexerTokens(ascii), byteLexerTokens(ascii.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void utf8Text() throws PgnFormatException {
+        List<PgnToken> tokens = byteLexerTokens(PGN.getBytes(StandardCharsets.UTF_8));
+        // Columns are counted in bytes, so only compare the values
+        assertEquals(withoutPositions(lexerTokens(PGN)), withoutPositions(tokens));
+    }
+
+    @Test
+    public void latin1Text() throws PgnFormatException {
+        List<PgnToken> tokens = byteLexerTokens(PGN.getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(lexerTokens(PGN), tokens);
+    }
+
+    @Test
+    public void byteOrderMarkIsSkipped() throws PgnFormatException {
+        byte[] pgn = "1. e4 *".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[pgn.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(pgn, 0, bytes, 3, pgn.length);
+        assertEquals(lexerTokens("1. e4 *"), byteLexerTokens(bytes));
+    }
+
+    @Test
+    public void tokenOffsets() throws PgnFormatException {
+        ByteBuffer buf = ByteBuffer.wrap("xx 12. Nf3 {hello}".getBytes(StandardCharsets.US_ASCII));
+        buf.position(3);
+        PgnByteLexer lexer = new PgnByteLexer(buf);
+
+        assertEquals(PgnToken.TokenType.MOVE_NUMBER, lexer.next());
+        assertEquals(3, lexer.tokenStart());
+        assertEquals(6, lexer.tokenEnd());
+
+        assertEquals(PgnToken.TokenType.MOVE_TEXT, lexer.next());
+        assertEquals(7, lexer.tokenStart());
+        assertEquals(10, lexer.tokenEnd());
+        assertEquals("Nf3", lexer.chars().toString());
+
+        assertEquals(PgnToken.TokenType.COMMENT, lexer.next());
+        assertEquals("hello", lexer.text());
+        assertEquals(18, lexer.position());
+
+        assertEquals(PgnToken.TokenType.EOF, lexer.next());
+        assertEquals(3, buf.position());
+    }
+
+    @Test(expected = PgnFormatException.class)
+    public void unclosedComment() throws PgnFormatException {
+        byteLexerTokens("1. e4 { never closed".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void parseMappedFile() throws IOException, PgnFormatException {
+        String pgn = PGN + "\n" + PGN.replace("Player 1", "Player 3");
+        File file = folder.newFile("games.pgn");
+        Files.writeString(file.toPath(), pgn, StandardCharsets.UTF_8);
+
+        PgnParser parser = new PgnParser();
+        List<String> expected = parser.parseGames(new StringReader(pgn))
+                .map(PgnByteLexerTest::summary)
+                .collect(Collectors.toList());
+        List<String> actual;
+        try (Stream<GameModel> games = parser.parseGames(file)) {
+            actual = games.map(PgnByteLexerTest::summary).collect(Collectors.toList());
+        }
+
+        assertEquals(2, actual.size());
+        assertEquals(expected, actual);
+        assertEquals("Göteborg", parser.parseGame(ByteBuffer.wrap(pgn.getBytes(StandardCharsets.UTF_8)))
+                .header().getEventSite());
+    }
+
+    private static String summary(GameModel game) {
+        return game.header().getEvent() + "|" + game.header().getEventSite() + "|" + game.header().getWhite()
+                + "|" + game.moves().countPly(true) + "|" + game.moves().countAnnotations();
+    }
+}
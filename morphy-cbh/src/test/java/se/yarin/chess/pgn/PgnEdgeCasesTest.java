@@ -231,6 +231,20 @@ public class PgnEdgeCasesTest {
         new PgnParser().parseGame(pgn);
     }
 
+    @Test
+    public void testTooManyDisambiguationCharacters() {
+        PgnMoveParser parser = new PgnMoveParser(Position.start());
+        StringBuilder san = new StringBuilder("Ngb1c3");
+        try {
+            parser.parseMove(san);
+            fail("Expected the move to be rejected");
+        } catch (PgnFormatException e) {
+            // The message must not change if the buffer is reused
+            san.setLength(0);
+            assertEquals("Invalid move format: Ngb1c3", e.getMessage());
+        }
+    }
+
     @Test(expected = PgnFormatException.class)
     public void testMissingHeaders() throws PgnFormatException {
         String pgn = """
@@ -0,0 +1,107 @@
+package se.yarin.chess.pgn;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.GameMovesModel;
+import se.yarin.chess.Move;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class PgnFileWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<GameModel> randomGames(int numGames) {
+        Random random = new Random(7);
+        List<GameModel> games = new ArrayList<>();
+        for (int i = 0; i < numGames; i++) {
+            GameModel game = new GameModel();
+            game.header().setEvent("Game " + i);
+            game.header().setWhite("White " + i);
+            game.header().setBlack("Black " + i);
+            GameMovesModel.Node node = game.moves().root();
+            int numMoves = random.nextInt(80);
+            for (int j = 0; j < numMoves; j++) {
+                List<Move> moves = node.position().generateAllLegalMoves();
+                if (moves.isEmpty()) {
+                    break;
+                }
+                node = node.addMove(moves.get(random.nextInt(moves.size())));
+            }
+            games.add(game);
+        }
+        return games;
+    }
+
+    private static String expectedPgn(List<GameModel> games) throws IOException {
+        StringWriter writer = new StringWriter();
+        new PgnExporter().exportGames(games.stream(), writer);
+        return writer.toString();
+    }
+
+    private void writeAndVerify(int parallelism, PgnFileWriter.Compression compression) throws IOException {
+        List<GameModel> games = randomGames(200);
+        File file = folder.newFile();
+        try (PgnFileWriter writer = new PgnFileWriter(file, new PgnExporter(), parallelism, compression)) {
+            for (GameModel game : games) {
+                writer.write(() -> game);
+            }
+            writer.flush();
+            assertEquals(games.size(), writer.numGames());
+        }
+
+        String actual;
+        if (compression == PgnFileWriter.Compression.GZIP) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+                actual = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } else {
+            actual = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        }
+        assertEquals(expectedPgn(games), actual);
+    }
+
+    @Test
+    public void writeSequentially() throws IOException {
+        writeAndVerify(1, PgnFileWriter.Compression.NONE);
+    }
+
+    @Test
+    public void writeInParallel() throws IOException {
+        writeAndVerify(4, PgnFileWriter.Compression.NONE);
+    }
+
+    @Test
+    public void writeCompressed() throws IOException {
+        writeAndVerify(4, PgnFileWriter.Compression.GZIP);
+    }
+
+    @Test
+    public void renderingErrorIsPropagated() throws IOException {
+        File file = folder.newFile();
+        try (PgnFileWriter writer = new PgnFileWriter(file, new PgnExporter(), 2, PgnFileWriter.Compression.NONE)) {
+            writer.write(() -> {
+                throw new IllegalStateException("Broken game");
+            });
+            writer.flush();
+            fail("Expected the rendering error to be thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("Broken game", e.getMessage());
+        }
+    }
+}
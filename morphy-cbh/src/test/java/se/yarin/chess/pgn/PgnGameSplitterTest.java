@@ -0,0 +1,103 @@
+package se.yarin.chess.pgn;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PgnGameSplitterTest {
+
+    private static List<String> split(String pgn) throws IOException {
+        return split(pgn.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> split(byte[] bytes) throws IOException {
+        PgnGameSplitter splitter = new PgnGameSplitter(new ByteArrayInputStream(bytes));
+        List<String> games = new ArrayList<>();
+        byte[] game;
+        while ((game = splitter.next()) != null) {
+            games.add(new String(game, StandardCharsets.UTF_8));
+        }
+        return games;
+    }
+
+    @Test
+    public void splitGames() throws IOException {
+        String game1 = """
+                [Event "A"]
+                [White "B"]
+
+                1. e4 e5 1-0
+                """;
+        String game2 = """
+                [Event "C"]
+
+                1. d4 d5 *
+                """;
+        // Blank lines between games belong to the previous game
+        assertEquals(List.of(game1 + "\n\n", game2), split(game1 + "\n\n" + game2));
+    }
+
+    @Test
+    public void emptyInput() throws IOException {
+        assertEquals(List.of(), split(""));
+        assertEquals(List.of(), split("\n  \n"));
+    }
+
+    @Test
+    public void bracketInCommentDoesNotSplit() throws IOException {
+        String game1 = """
+                [Event "A"]
+
+                1. e4 {A long comment
+                [%clk 0:10:00] that continues} e5 1-0
+                """;
+        String game2 = """
+                [Event "B"]
+
+                1. d4 ; a comment {
+                d5 *
+                """;
+        List<String> games = split(game1 + game2);
+        assertEquals(List.of(game1, game2), games);
+    }
+
+    @Test
+    public void escapedLineDoesNotCountAsMoveText() throws IOException {
+        String game = """
+                % Generated by some program
+                [Event "A"]
+
+                1. e4 1-0
+                """;
+        assertEquals(List.of(game), split(game));
+    }
+
+    @Test
+    public void gameStartLine() throws IOException {
+        String pgn = "\n[Event \"A\"]\n\n1. e4 1-0\n\n[Event \"B\"]\n\n1. d4 *\n";
+        PgnGameSplitter splitter =
+                new PgnGameSplitter(new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(splitter.next());
+        assertEquals(2, splitter.gameStartLine());
+        assertNotNull(splitter.next());
+        assertEquals(6, splitter.gameStartLine());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    public void skipByteOrderMark() throws IOException {
+        byte[] game = "[Event \"A\"]\n\n1. e4 1-0\n".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[game.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(game, 0, bytes, 3, game.length);
+        assertEquals(List.of(new String(game, StandardCharsets.UTF_8)), split(bytes));
+    }
+}
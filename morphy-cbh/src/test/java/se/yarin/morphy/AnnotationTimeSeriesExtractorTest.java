@@ -0,0 +1,119 @@
+package se.yarin.morphy;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.GameMovesModel;
+import se.yarin.chess.annotations.Annotation;
+import se.yarin.morphy.games.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AnnotationTimeSeriesExtractorTest {
+  private static final int NUM_GAMES = 300;
+
+  private Database database;
+
+  @Before
+  public void createDatabase() {
+    database = new Database();
+    GameGenerator generator = new GameGenerator(5);
+    Random random = new Random(5);
+    for (int i = 0; i < NUM_GAMES; i++) {
+      GameModel game = generator.getRandomGame(i % 3 == 0, i % 4 == 0);
+      if (i % 5 != 0) {
+        addTimeSeriesAnnotations(game.moves(), random);
+      }
+      database.addGame(game);
+    }
+  }
+
+  private static void addTimeSeriesAnnotations(GameMovesModel moves, Random random) {
+    for (GameMovesModel.Node node : moves.getAllNodes()) {
+      if (node.isRoot()) {
+        continue;
+      }
+      int clock = random.nextInt(1000000);
+      node.addAnnotation(
+          node.ply() % 2 == 1
+              ? ImmutableWhiteClockAnnotation.of(clock)
+              : ImmutableBlackClockAnnotation.of(clock));
+      if (random.nextInt(3) == 0) {
+        node.addAnnotation(ImmutableTimeSpentAnnotation.of(0, random.nextInt(60), 7, 0));
+      }
+      if (random.nextInt(2) == 0) {
+        node.addAnnotation(
+            ImmutableComputerEvaluationAnnotation.of(
+                random.nextInt(600) - 300, random.nextInt(2), random.nextInt(30)));
+      }
+    }
+  }
+
+  private static List<Integer> flatten(int[]... columns) {
+    List<Integer> values = new ArrayList<>();
+    for (int i = 0; i < columns[0].length; i++) {
+      for (int[] column : columns) {
+        values.add(column[i]);
+      }
+    }
+    return values;
+  }
+
+  private static void assertSameAsModel(GameModel model, AnnotationTimeSeries series) {
+    List<Integer> whiteClock = new ArrayList<>(), blackClock = new ArrayList<>();
+    List<Integer> timeSpent = new ArrayList<>(), evaluation = new ArrayList<>();
+    GameMovesModel.Node node = model.moves().root();
+    for (int ply = 0; node != null; ply++) {
+      for (Annotation annotation : node.getAnnotations()) {
+        if (annotation instanceof WhiteClockAnnotation a) {
+          whiteClock.addAll(List.of(ply, a.clockTime()));
+        } else if (annotation instanceof BlackClockAnnotation a) {
+          blackClock.addAll(List.of(ply, a.clockTime()));
+        } else if (annotation instanceof TimeSpentAnnotation a) {
+          timeSpent.addAll(List.of(ply, a.minutes() * 60 + a.seconds()));
+        } else if (annotation instanceof ComputerEvaluationAnnotation a) {
+          evaluation.addAll(List.of(ply, a.eval(), a.evalType(), a.ply()));
+        }
+      }
+      node = node.hasMoves() ? node.mainNode() : null;
+    }
+
+    assertEquals(whiteClock, flatten(series.whiteClock().plies(), series.whiteClock().values()));
+    assertEquals(blackClock, flatten(series.blackClock().plies(), series.blackClock().values()));
+    assertEquals(timeSpent, flatten(series.timeSpent().plies(), series.timeSpent().values()));
+    AnnotationTimeSeries.EvaluationSeries eval = series.evaluation();
+    assertEquals(
+        evaluation, flatten(eval.plies(), eval.evals(), eval.evalTypes(), eval.depths()));
+  }
+
+  @Test
+  public void extractSingleGames() {
+    AnnotationTimeSeriesExtractor extractor = new AnnotationTimeSeriesExtractor(database);
+    for (int gameId = 1; gameId <= NUM_GAMES; gameId++) {
+      AnnotationTimeSeries series = extractor.extract(database.getGame(gameId));
+      assertEquals(gameId, series.gameId());
+      assertSameAsModel(database.getGameModel(gameId), series);
+    }
+  }
+
+  @Test
+  public void extractAllInParallel() {
+    AnnotationTimeSeriesExtractor extractor = new AnnotationTimeSeriesExtractor(database);
+    List<AnnotationTimeSeries> sequential = extractor.extract(1, NUM_GAMES + 1);
+    List<AnnotationTimeSeries> parallel = new ArrayList<>();
+    extractor.extractAll(4, parallel::add);
+
+    assertTrue(sequential.size() >= NUM_GAMES * 4 / 5);
+    assertEquals(sequential.size(), parallel.size());
+    for (int i = 0; i < sequential.size(); i++) {
+      AnnotationTimeSeries series = parallel.get(i);
+      assertEquals(sequential.get(i).gameId(), series.gameId());
+      assertFalse(series.isEmpty());
+      assertSameAsModel(database.getGameModel(series.gameId()), series);
+    }
+  }
+}
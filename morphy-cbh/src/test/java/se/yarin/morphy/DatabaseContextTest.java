@@ -0,0 +1,53 @@
+package se.yarin.morphy;
+
+import org.junit.Test;
+import se.yarin.morphy.util.GameRanges;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class DatabaseContextTest {
+  @Test
+  public void bulkScanOnlyAffectsTheCurrentThread() throws Exception {
+    DatabaseContext context = new DatabaseContext();
+    assertFalse(context.inBulkScan());
+    try (DatabaseContext.BulkScan ignored = context.beginBulkScan()) {
+      assertTrue(context.inBulkScan());
+      assertFalse(CompletableFuture.supplyAsync(context::inBulkScan).get());
+
+      try (DatabaseContext.BulkScan nested = context.beginBulkScan()) {
+        assertTrue(context.inBulkScan());
+      }
+      assertTrue(context.inBulkScan());
+    }
+    assertFalse(context.inBulkScan());
+  }
+
+  @Test
+  public void closeBulkScanTwice() {
+    DatabaseContext context = new DatabaseContext();
+    DatabaseContext.BulkScan outer = context.beginBulkScan();
+    DatabaseContext.BulkScan inner = context.beginBulkScan();
+    inner.close();
+    inner.close();
+    assertTrue(context.inBulkScan());
+    outer.close();
+    assertFalse(context.inBulkScan());
+  }
+
+  @Test
+  public void rangeTasksInheritBulkScan() {
+    DatabaseContext context = new DatabaseContext();
+    GameRanges.RangeTask<Boolean> task = (startId, endId) -> context.inBulkScan();
+
+    List<Boolean> results = GameRanges.process(100, 2, context.inheritBulkScan(task));
+    assertFalse(results.contains(true));
+    try (DatabaseContext.BulkScan ignored = context.beginBulkScan()) {
+      results = GameRanges.process(100, 2, context.inheritBulkScan(task));
+    }
+    assertFalse(results.isEmpty());
+    assertFalse(results.contains(false));
+  }
+}
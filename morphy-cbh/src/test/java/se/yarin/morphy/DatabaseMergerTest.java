@@ -0,0 +1,214 @@
+package se.yarin.morphy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.morphy.games.ImmutableExtendedGameHeader;
+import se.yarin.morphy.games.ImmutableGameHeader;
+import se.yarin.morphy.games.filters.DateRangeFilter;
+import se.yarin.morphy.validation.EntityStatsValidator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class DatabaseMergerTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final int NUM_GAMES = 400;
+
+  private Database source;
+
+  @Before
+  public void createSource() throws IOException {
+    source = Database.create(new File(folder.getRoot(), "source.cbh"));
+    GameGenerator generator = new GameGenerator(1);
+    for (int i = 0; i < NUM_GAMES; i++) {
+      source.addGame(generator.getRandomGame(i % 5 == 0, i % 3 == 0));
+    }
+  }
+
+  @After
+  public void closeSource() throws IOException {
+    source.close();
+  }
+
+  private static Database addGames(Database source, Database target, int[] gameIds) {
+    try (DatabaseWriteTransaction txn = new DatabaseWriteTransaction(target)) {
+      for (int gameId : gameIds) {
+        txn.addGame(source.getGame(gameId));
+      }
+      txn.commit();
+    }
+    return target;
+  }
+
+  private static void assertSameGames(Database expected, Database actual) {
+    assertEquals(expected.count(), actual.count());
+    for (int gameId = 1; gameId <= expected.count(); gameId++) {
+      Game expectedGame = expected.getGame(gameId);
+      Game actualGame = actual.getGame(gameId);
+      // Entity ids depend on the order the entities are created in, so compare the entities
+      assertEquals(withoutEntityIds(expectedGame), withoutEntityIds(actualGame));
+      assertEquals(expectedGame.white(), actualGame.white());
+      assertEquals(expectedGame.black(), actualGame.black());
+      assertEquals(expectedGame.tournament(), actualGame.tournament());
+      assertEquals(expectedGame.tournamentExtra(), actualGame.tournamentExtra());
+      assertEquals(expectedGame.annotator(), actualGame.annotator());
+      assertEquals(expectedGame.source(), actualGame.source());
+      assertEquals(expectedGame.whiteTeam(), actualGame.whiteTeam());
+      assertEquals(expectedGame.blackTeam(), actualGame.blackTeam());
+      assertEquals(expectedGame.getMovesBlob(), actualGame.getMovesBlob());
+      if (expectedGame.getAnnotationOffset() > 0) {
+        assertEquals(expectedGame.getAnnotationsBlob(), actualGame.getAnnotationsBlob());
+      }
+      assertEquals(expectedGame.topGameStatus(), actualGame.topGameStatus());
+    }
+    assertEquals(expected.playerIndex().count(), actual.playerIndex().count());
+    assertEquals(expected.tournamentIndex().count(), actual.tournamentIndex().count());
+    assertEquals(expected.annotatorIndex().count(), actual.annotatorIndex().count());
+    assertEquals(expected.sourceIndex().count(), actual.sourceIndex().count());
+    assertEquals(expected.teamIndex().count(), actual.teamIndex().count());
+    assertEquals(expected.gameTagIndex().count(), actual.gameTagIndex().count());
+    new EntityStatsValidator(actual).validateEntityStatistics(true);
+  }
+
+  private static List<Object> withoutEntityIds(Game game) {
+    return List.of(
+        ImmutableGameHeader.builder()
+            .from(game.header())
+            .whitePlayerId(0)
+            .blackPlayerId(0)
+            .tournamentId(0)
+            .annotatorId(0)
+            .sourceId(0)
+            .build(),
+        ImmutableExtendedGameHeader.builder()
+            .from(game.extendedHeader())
+            .whiteTeamId(0)
+            .blackTeamId(0)
+            .gameTagId(0)
+            .build());
+  }
+
+  @Test
+  public void copyAllGames() {
+    Database target = new Database();
+    DatabaseMerger.Result result = new DatabaseMerger(source, target, 100).copyAllGames();
+
+    assertEquals(source.count(), result.numCopied());
+    int[] allGameIds = IntStream.rangeClosed(1, source.count()).toArray();
+    assertSameGames(addGames(source, new Database(), allGameIds), target);
+    assertEquals(
+        target.playerIndex().count()
+            + target.tournamentIndex().count()
+            + target.annotatorIndex().count()
+            + target.sourceIndex().count()
+            + target.teamIndex().count()
+            + target.gameTagIndex().count(),
+        result.numNewEntities());
+  }
+
+  @Test
+  public void mergeIntoDatabaseWithSameEntities() {
+    int[] firstGames = IntStream.rangeClosed(1, 100).toArray();
+    int[] subset = IntStream.rangeClosed(1, source.count()).filter(id -> id % 3 == 0).toArray();
+
+    Database target = addGames(source, new Database(), firstGames);
+    int numPlayersBefore = target.playerIndex().count();
+    AtomicInteger progress = new AtomicInteger();
+    DatabaseMerger.Result result =
+        new DatabaseMerger(source, target, 50).copyGames(subset, progress::incrementAndGet);
+
+    Database expected = addGames(source, addGames(source, new Database(), firstGames), subset);
+    assertSameGames(expected, target);
+    assertEquals(subset.length, progress.get());
+    assertTrue(result.numNewEntities() >= target.playerIndex().count() - numPlayersBefore);
+  }
+
+  @Test
+  public void copyGamesInReverseOrder() {
+    int[] gameIds =
+        IntStream.rangeClosed(1, source.count()).map(i -> source.count() + 1 - i).toArray();
+    Database target = new Database();
+    new DatabaseMerger(source, target).copyGames(gameIds, () -> {});
+
+    assertSameGames(addGames(source, new Database(), gameIds), target);
+  }
+
+  @Test
+  public void copyFilteredGames() {
+    DateRangeFilter filter = new DateRangeFilter("2016-07-01-");
+    int[] expectedIds =
+        IntStream.rangeClosed(1, source.count())
+            .filter(id -> filter.matches(id, source.getGame(id).header()))
+            .toArray();
+
+    Database target = new Database();
+    DatabaseMerger.Result result = new DatabaseMerger(source, target).copyGames(filter);
+
+    assertTrue(expectedIds.length > 0);
+    assertEquals(expectedIds.length, result.numCopied());
+    assertSameGames(addGames(source, new Database(), expectedIds), target);
+  }
+
+  @Test
+  public void copyToPersistentDatabase() throws IOException {
+    Database target = Database.create(new File(folder.getRoot(), "target.cbh"));
+    int[] gameIds = IntStream.rangeClosed(1, source.count()).filter(id -> id % 2 == 1).toArray();
+    new DatabaseMerger(source, target, 200).copyGames(gameIds, () -> {});
+
+    assertSameGames(addGames(source, new Database(), gameIds), target);
+    for (int i = 0; i < gameIds.length; i++) {
+      assertEquals(
+          source.getGameModel(gameIds[i]).moves().countPly(true),
+          target.getGameModel(i + 1).moves().countPly(true));
+    }
+    target.close();
+  }
+
+  @Test
+  public void skipGamesReferencingMissingEntities() {
+    int missingPlayerId = source.getGame(1).header().whitePlayerId();
+    source.playerIndex().delete(missingPlayerId);
+    int[] validIds =
+        IntStream.rangeClosed(1, source.count())
+            .filter(
+                id ->
+                    source.getGame(id).header().whitePlayerId() != missingPlayerId
+                        && source.getGame(id).header().blackPlayerId() != missingPlayerId)
+            .toArray();
+
+    Database target = new Database();
+    AtomicInteger progress = new AtomicInteger();
+    int[] allGameIds = IntStream.rangeClosed(1, source.count()).toArray();
+    DatabaseMerger.Result result =
+        new DatabaseMerger(source, target, 100).copyGames(allGameIds, progress::incrementAndGet);
+
+    assertTrue(validIds.length < source.count());
+    assertEquals(validIds.length, result.numCopied());
+    assertEquals(source.count() - validIds.length, result.numSkipped());
+    assertEquals(validIds.length, progress.get());
+    assertEquals(validIds.length, target.count());
+  }
+
+  @Test
+  public void copyFromEmptyDatabase() {
+    Database target = new Database();
+    DatabaseMerger.Result result = new DatabaseMerger(new Database(), target).copyAllGames();
+
+    assertEquals(0, result.numCopied());
+    assertEquals(0, target.count());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mergeIntoItself() {
+    new DatabaseMerger(source, source);
+  }
+}
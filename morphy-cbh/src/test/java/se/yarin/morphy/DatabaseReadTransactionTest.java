@@ -1,11 +1,23 @@
 package se.yarin.morphy;
 
+import org.jetbrains.annotations.Nullable;
 import org.junit.Test;
 import se.yarin.chess.Date;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.pgn.PgnExporter;
+import se.yarin.morphy.games.filters.DateRangeFilter;
+import se.yarin.morphy.queries.GameQuery;
+import se.yarin.morphy.text.ImmutableTextHeaderModel;
+import se.yarin.morphy.text.ImmutableTextModel;
+import se.yarin.morphy.text.TextContentsModel;
 import se.yarin.morphy.text.TextLanguage;
 import se.yarin.morphy.text.TextModel;
 
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -63,4 +75,91 @@ public class DatabaseReadTransactionTest {
       assertEquals("Carlsen, Magnus", lastGame.white().getFullName());
     }
   }
+
+  private static Database generatedDatabase(int numGames) {
+    Database database = new Database();
+    GameGenerator generator = new GameGenerator(3);
+    for (int i = 0; i < numGames; i++) {
+      if (i % 97 == 50) {
+        database.addText(
+            ImmutableTextModel.builder()
+                .header(ImmutableTextHeaderModel.builder().tournament("text " + i).build())
+                .contents(new TextContentsModel())
+                .build());
+      } else {
+        database.addGame(generator.getRandomGame(i % 5 == 0, i % 3 == 0));
+      }
+    }
+    return database;
+  }
+
+  private static List<String> toPgn(Stream<GameModel> models) {
+    PgnExporter exporter = new PgnExporter();
+    return models.map(exporter::exportGame).collect(Collectors.toList());
+  }
+
+  private static void assertStreamedModels(
+      Database database, @Nullable DateRangeFilter filter, int parallelism) {
+    List<String> expected =
+        toPgn(
+            IntStream.rangeClosed(1, database.count())
+                .mapToObj(database::getGame)
+                .filter(game -> !game.guidingText())
+                .filter(game -> filter == null || filter.matches(game.id(), game.header()))
+                .map(Game::getModel));
+    try (DatabaseReadTransaction txn = new DatabaseReadTransaction(database);
+        Stream<GameModel> models =
+            txn.streamModels(
+                new GameQuery(database, filter == null ? null : List.of(filter)), parallelism)) {
+      assertEquals(expected, toPgn(models));
+    }
+  }
+
+  @Test
+  public void streamModelsSequentially() {
+    Database database = generatedDatabase(700);
+    assertStreamedModels(database, null, 1);
+  }
+
+  @Test
+  public void streamModelsInParallel() {
+    Database database = generatedDatabase(700);
+    assertStreamedModels(database, null, 4);
+  }
+
+  @Test
+  public void streamFilteredModelsInParallel() {
+    Database database = generatedDatabase(700);
+    assertStreamedModels(database, new DateRangeFilter("2016-07-01-"), 3);
+  }
+
+  @Test
+  public void streamModelsPartially() {
+    Database database = generatedDatabase(2000);
+    try (DatabaseReadTransaction txn = new DatabaseReadTransaction(database);
+        Stream<GameModel> models = txn.streamModels(new GameQuery(database, null), 4)) {
+      assertEquals(10, models.limit(10).count());
+    }
+  }
+
+  @Test
+  public void getGameBlobsInRequestedOrder() {
+    Database database = generatedDatabase(300);
+    int[] gameIds = {250, 3, 51, 120, 3, 299, 1, 200};
+    try (DatabaseReadTransaction txn = new DatabaseReadTransaction(database)) {
+      List<GameBlobs> gameBlobs = txn.getGameBlobs(gameIds);
+      assertEquals(gameIds.length, gameBlobs.size());
+      for (int i = 0; i < gameIds.length; i++) {
+        GameBlobs blobs = gameBlobs.get(i);
+        Game game = txn.getGame(gameIds[i]);
+        assertEquals(gameIds[i], blobs.game().id());
+        assertEquals(game.getMovesBlob(), blobs.movesBlob());
+        if (game.getAnnotationOffset() == 0) {
+          assertNull(blobs.annotationsBlob());
+        } else {
+          assertEquals(game.getAnnotationsBlob(), blobs.annotationsBlob());
+        }
+      }
+    }
+  }
 }
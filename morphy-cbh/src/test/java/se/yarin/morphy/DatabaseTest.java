@@ -16,12 +16,15 @@ import se.yarin.morphy.games.annotations.ImmutableTextAfterMoveAnnotation;
 import se.yarin.morphy.util.CBUtil;
 import se.yarin.morphy.validation.EntityStatsValidator;
 import se.yarin.morphy.validation.GamesValidator;
+import se.yarin.morphy.validation.Validator;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -288,6 +291,32 @@ public class DatabaseTest {
     db.close();
   }
 
+  @Test
+  public void validateGamesInParallel() {
+    Database db = new Database();
+    Random random = new Random(0);
+    for (int i = 0; i < 500; i++) {
+      db.addGame(
+          TestGames.getSimpleGame(
+              "p" + random.nextInt(30), "p" + random.nextInt(30), "t" + random.nextInt(10), "", ""));
+    }
+
+    EntityStatsValidator sequential = new EntityStatsValidator(db);
+    sequential.calculateEntityStats(() -> {});
+    EntityStatsValidator parallel = new EntityStatsValidator(db);
+    AtomicInteger numSteps = new AtomicInteger();
+    parallel.calculateEntityStats(numSteps::incrementAndGet, 4);
+
+    assertEquals(500, numSteps.get());
+    assertEquals(sequential.getStats().players, parallel.getStats().players);
+    assertEquals(sequential.getStats().tournaments, parallel.getStats().tournaments);
+    assertEquals(sequential.getStats().annotators, parallel.getStats().annotators);
+    assertEquals(sequential.getStats().sources, parallel.getStats().sources);
+
+    assertEquals(0, new GamesValidator(db).processGames(true, false, () -> {}, 4));
+    new Validator(4).validate(db, EnumSet.allOf(Validator.Checks.class), true, false, false);
+  }
+
   @Test
   public void replaceGame() throws IOException {
     Database db = new Database();
@@ -329,6 +358,45 @@ public class DatabaseTest {
     db.close();
   }
 
+  @Test
+  public void replaceGamesInTransactionUpdatesFirstGame() {
+    Database db = new Database();
+    for (int i = 0; i < 6; i++) {
+      db.addGame(TestGames.getSimpleGame("a", "b" + i));
+    }
+    db.addGame(TestGames.getSimpleGame("c", "d"));
+
+    // The first three games of a are replaced in the same transaction; one of them is replaced
+    // twice. First game of a becomes 4, first game of c becomes 2.
+    try (var txn = new DatabaseWriteTransaction(db)) {
+      txn.replaceGame(1, TestGames.getSimpleGame("e", "f"));
+      txn.replaceGame(2, TestGames.getSimpleGame("a", "c"));
+      txn.replaceGame(3, TestGames.getSimpleGame("e", "f"));
+      txn.replaceGame(2, TestGames.getSimpleGame("c", "f"));
+      txn.commit();
+    }
+
+    Player a = db.playerIndex().get(Player.ofFullName("a"));
+    Player c = db.playerIndex().get(Player.ofFullName("c"));
+    assertEquals(4, a.firstGameId());
+    assertEquals(3, a.count());
+    assertEquals(2, c.firstGameId());
+    assertEquals(2, c.count());
+
+    new EntityStatsValidator(db).validateEntityStatistics(true);
+    // Validate the statistics using only the game entity index as well
+    new Validator()
+        .validate(
+            db,
+            EnumSet.of(
+                Validator.Checks.ENTITY_STATISTICS,
+                Validator.Checks.ENTITY_PLAYERS,
+                Validator.Checks.ENTITY_TOURNAMENTS),
+            true,
+            true,
+            false);
+  }
+
   @Test
   public void replaceGameCausingMoveAdjustment() throws IOException {
     Database db = new Database();
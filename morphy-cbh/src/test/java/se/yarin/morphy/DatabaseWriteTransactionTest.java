@@ -1,7 +1,11 @@
 package se.yarin.morphy;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import se.yarin.chess.*;
+import se.yarin.morphy.boosters.CompactGameEntityIndex;
+import se.yarin.morphy.boosters.GameEntityIndex;
 import se.yarin.morphy.boosters.GameEvents;
 import se.yarin.morphy.entities.*;
 import se.yarin.morphy.entities.Player;
@@ -13,7 +17,11 @@ import se.yarin.morphy.text.ImmutableTextHeaderModel;
 import se.yarin.morphy.text.ImmutableTextModel;
 import se.yarin.morphy.text.TextContentsModel;
 import se.yarin.morphy.text.TextModel;
+import se.yarin.morphy.util.CBUtil;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -23,6 +31,7 @@ import static org.junit.Assert.*;
 import static se.yarin.chess.Chess.*;
 
 public class DatabaseWriteTransactionTest extends DatabaseTestSetup {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
 
   @Test
   public void newAddSingleGameToEmptyDatabase() {
@@ -328,6 +337,93 @@ public class DatabaseWriteTransactionTest extends DatabaseTestSetup {
     assertEquals(0, wastedMoveBytes());
   }
 
+  @Test
+  public void replaceGamesCausingFirstGameToChangeWithoutGameEntityIndex() throws IOException {
+    File file = new File(folder.getRoot(), "noindex.cbh");
+    try (Database db = Database.create(file)) {
+      populateDatabase(db);
+    }
+    Files.delete(CBUtil.fileWithExtension(file, ".cit").toPath());
+    Files.delete(CBUtil.fileWithExtension(file, ".cib").toPath());
+
+    try (Database db = Database.open(file, DatabaseMode.READ_WRITE)) {
+      // The new first games are found by scanning the game headers
+      assertNull(db.gameEntityIndex(EntityType.PLAYER));
+      try (var txn = new DatabaseWriteTransaction(db)) {
+        putTestGame(txn, 3, "Caruana - Mardell", 50, 0, 0, 0);
+        txn.commit();
+      }
+      assertEquals(11, db.playerIndex().get(Player.ofFullName("Mamedyarov")).firstGameId());
+      assertEquals(7, db.playerIndex().get(Player.ofFullName("So")).firstGameId());
+      assertEquals(3, db.playerIndex().get(Player.ofFullName("Caruana")).firstGameId());
+
+      try (var txn = new DatabaseWriteTransaction(db)) {
+        putTestGame(txn, 11, "Giri - Ding", 50, 0, 0, 0);
+        putTestGame(txn, 15, "Mamedyarov - Carlsen", 50, 0, 0, 0);
+        txn.commit();
+      }
+      assertEquals(15, db.playerIndex().get(Player.ofFullName("Mamedyarov")).firstGameId());
+      validate(db);
+    }
+  }
+
+  @Test
+  public void getGameBlobsOfGamesChangedInTransaction() {
+    List<GameBlobs> uncommittedBlobs;
+    try (var txn = new DatabaseWriteTransaction(testBase)) {
+      putTestGame(txn, 3, "Caruana - Mardell", "tour1", "ann1", null, null, null, 80, 500, 7, 7);
+      putTestGame(txn, 0, "Ding - Giri", 60, 0, 8, 0);
+      uncommittedBlobs = txn.getGameBlobs(5, 3, testBase.count() + 1);
+      txn.commit();
+    }
+
+    try (var txn = new DatabaseReadTransaction(testBase)) {
+      List<GameBlobs> committedBlobs = txn.getGameBlobs(5, 3, testBase.count());
+      for (int i = 0; i < committedBlobs.size(); i++) {
+        assertEquals(committedBlobs.get(i).game().id(), uncommittedBlobs.get(i).game().id());
+        assertEquals(committedBlobs.get(i).movesBlob(), uncommittedBlobs.get(i).movesBlob());
+        assertEquals(
+            committedBlobs.get(i).annotationsBlob(), uncommittedBlobs.get(i).annotationsBlob());
+      }
+      assertNotNull(uncommittedBlobs.get(1).annotationsBlob());
+      assertNull(uncommittedBlobs.get(2).annotationsBlob());
+    }
+  }
+
+  @Test
+  public void compactGameEntityIndexIsDroppedWhenEntitiesChange() throws IOException {
+    File file = new File(folder.getRoot(), "compact.cbh");
+    File mgeiFile = CBUtil.fileWithExtension(file, ".mgei");
+    try (Database db = Database.create(file)) {
+      populateDatabase(db);
+      db.createCompactGameEntityIndex();
+    }
+    assertTrue(mgeiFile.exists());
+
+    try (Database db = Database.open(file, DatabaseMode.READ_WRITE)) {
+      CompactGameEntityIndex compact = db.compactGameEntityIndex(EntityType.PLAYER);
+      assertNotNull(compact);
+      GameEntityIndex index = db.gameEntityIndex(EntityType.PLAYER);
+      assertNotNull(index);
+      for (int playerId = 0; playerId < db.playerIndex().count(); playerId++) {
+        assertEquals(
+            index.getGameIds(playerId, EntityType.PLAYER, false),
+            compact.getGameIds(playerId, EntityType.PLAYER, false));
+      }
+
+      try (var txn = new DatabaseWriteTransaction(db)) {
+        putTestGame(txn, 0, "Caruana - Mardell", 50, 0, 0, 0);
+        txn.commit();
+      }
+      assertNull(db.compactGameEntityIndex(EntityType.PLAYER));
+      assertFalse(mgeiFile.exists());
+    }
+
+    try (Database db = Database.open(file, DatabaseMode.READ_WRITE)) {
+      assertNull(db.compactGameEntityIndex(EntityType.PLAYER));
+    }
+  }
+
   @Test
   public void replaceGameCausingFirstGameToChangeToAnotherGameInTransaction() {
     assertEquals(3, playerFirstGameId("Mamedyarov"));
@@ -0,0 +1,172 @@
+package se.yarin.morphy;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.yarin.chess.GameModel;
+import se.yarin.morphy.entities.Player;
+import se.yarin.morphy.metrics.CacheMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static se.yarin.chess.Chess.*;
+
+public class GameModelCacheTest {
+  private static final int NUM_GAMES = 20;
+
+  private GameGenerator generator;
+
+  @Before
+  public void setupGenerator() {
+    generator = new GameGenerator(17);
+  }
+
+  private Database createDatabase(long maxWeight) {
+    DatabaseConfig config = new DatabaseConfig();
+    config.setGameModelCacheMaxWeight(maxWeight);
+    Database database = new Database(config);
+    for (int i = 0; i < NUM_GAMES; i++) {
+      database.addGame(generator.getRandomGame(i % 2 == 0, i % 3 == 0));
+    }
+    return database;
+  }
+
+  private static void assertSameModel(GameModel expected, GameModel actual) {
+    assertEquals(expected.header().getAllFields(), actual.header().getAllFields());
+    assertEquals(expected.moves().toString(), actual.moves().toString());
+  }
+
+  @Test
+  public void disabledByDefault() {
+    Database database = createDatabase(0);
+    database.getGameModel(1);
+    database.getGameModel(1);
+
+    assertFalse(database.gameModelCache().isEnabled());
+    assertEquals(0, database.gameModelCache().size());
+    assertTrue(database.gameModelCache().metrics().isEmpty());
+  }
+
+  @Test
+  public void cachedModelsAreCopies() {
+    Database database = createDatabase(1_000_000_000);
+    GameModel first = database.getGameModel(3);
+    first.moves().root().addMove(A2, A3);
+    first.header().setWhite("Someone else");
+
+    GameModel second = database.getGameModel(3);
+    assertNotEquals(first.header().getWhite(), second.header().getWhite());
+    assertSameModel(database.getGame(3).getModel(), second);
+
+    CacheMetrics metrics = database.gameModelCache().metrics();
+    assertEquals(1, metrics.misses());
+    assertEquals(1, metrics.hits());
+    assertEquals(1, database.gameModelCache().size());
+  }
+
+  @Test
+  public void commitInvalidatesUpdatedGames() {
+    Database database = createDatabase(1_000_000_000);
+    for (int gameId = 1; gameId <= NUM_GAMES; gameId++) {
+      database.getGameModel(gameId);
+    }
+    assertEquals(NUM_GAMES, database.gameModelCache().size());
+
+    GameModel replacement = generator.getRandomGame(false, false);
+    database.replaceGame(5, replacement);
+    database.addGame(generator.getRandomGame(false, false));
+
+    assertEquals(NUM_GAMES - 1, database.gameModelCache().size());
+    assertSameModel(database.getGame(5).getModel(), database.getGameModel(5));
+    assertEquals(replacement.moves().toString(), database.getGameModel(5).moves().toString());
+    assertEquals(1, database.gameModelCache().metrics().hits());
+  }
+
+  @Test
+  public void entityUpdatesInvalidateAllGames() {
+    Database database = createDatabase(1_000_000_000);
+    for (int gameId = 1; gameId <= NUM_GAMES; gameId++) {
+      database.getGameModel(gameId);
+    }
+    int playerId = database.getGame(1).whitePlayerId();
+    try (var txn = new DatabaseWriteTransaction(database)) {
+      txn.updatePlayerById(playerId, Player.ofFullName("Renamed, Player"));
+      txn.commit();
+    }
+
+    assertEquals(0, database.gameModelCache().size());
+    assertEquals("Renamed, Player", database.getGameModel(1).header().getWhite());
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    long weight = GameModelCache.estimateWeight(new GameModel());
+    GameModelCache cache = new GameModelCache(new DatabaseContext(), weight * 5 / 2);
+    cache.put(1, 0, new GameModel());
+    cache.put(2, 0, new GameModel());
+    assertNotNull(cache.get(1, 0));
+    cache.put(3, 0, new GameModel());
+
+    assertNull(cache.get(2, 0));
+    assertNotNull(cache.get(1, 0));
+    assertNotNull(cache.get(3, 0));
+    assertEquals(weight * 2, cache.weight());
+    assertEquals(1, cache.metrics().evictions());
+  }
+
+  @Test
+  public void ignoreStaleVersions() {
+    Database database = createDatabase(1_000_000_000);
+    GameModel model = database.getGame(1).getModel();
+    GameModelCache cache = new GameModelCache(new DatabaseContext(), 1_000_000_000);
+
+    cache.put(1, 0, model);
+    assertNotNull(cache.get(1, 0));
+
+    // An unannounced version bump invalidates everything
+    assertNull(cache.get(1, 1));
+    cache.put(1, 0, model);
+    assertEquals(0, cache.size());
+
+    cache.put(1, 1, model);
+    cache.put(2, 1, model);
+    cache.invalidate(List.of(2), 1, 2);
+    assertNotNull(cache.get(1, 2));
+    assertNull(cache.get(2, 2));
+  }
+
+  @Test
+  public void concurrentGetsAndPuts() throws Exception {
+    long weight = GameModelCache.estimateWeight(new GameModel());
+    GameModelCache cache = new GameModelCache(new DatabaseContext(), weight * 50);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 4; thread++) {
+        int seed = thread;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < 10000; i++) {
+                    int gameId = (i * 7 + seed) % 100;
+                    if (cache.get(gameId, 0) == null) {
+                      cache.put(gameId, 0, new GameModel());
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertEquals(50, cache.size());
+    assertEquals(weight * 50, cache.weight());
+  }
+}
@@ -243,4 +243,32 @@ public class InstrumentationTest {
     assertEquals(5, foo.get().reads);
     assertEquals(5, fooAgain.get().reads);
   }
+
+  @Test
+  public void updateGlobalMetricsConcurrently() throws InterruptedException {
+    Instrumentation i = new Instrumentation();
+    MetricsRef<ItemMetrics> itemStats = ItemMetrics.register(i, "items");
+    MetricsRef<FileMetrics> fileStats = FileMetrics.register(i, "file");
+
+    int numThreads = 4, numUpdates = 20000;
+    Thread[] threads = new Thread[numThreads];
+    for (int j = 0; j < numThreads; j++) {
+      threads[j] =
+          new Thread(
+              () -> {
+                for (int k = 0; k < numUpdates; k++) {
+                  itemStats.update(metrics -> metrics.addGet(1));
+                  fileStats.update(metrics -> metrics.addPhysicalRead(100));
+                }
+              });
+      threads[j].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertEquals(numThreads * numUpdates, itemStats.get().gets());
+    assertEquals(numThreads * numUpdates, fileStats.get().physicalPageReads());
+    assertEquals(numThreads * numUpdates, fileStats.get().physicalReadLatency().count());
+  }
 }
@@ -0,0 +1,148 @@
+package se.yarin.morphy;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.yarin.chess.GameModel;
+import se.yarin.chess.pgn.PgnExporter;
+import se.yarin.chess.pgn.PgnFormatException;
+import se.yarin.chess.pgn.PgnFormatOptions;
+import se.yarin.chess.pgn.PgnParser;
+import se.yarin.morphy.games.annotations.AnnotationConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PgnImporterTest {
+  private static final int NUM_GAMES = 300;
+
+  private String pgn;
+
+  @Before
+  public void setupPgn() {
+    GameGenerator generator = new GameGenerator(1);
+    PgnExporter exporter =
+        new PgnExporter(
+            PgnFormatOptions.DEFAULT, AnnotationConverter.getRoundTripConverter()::convertToPgn);
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < NUM_GAMES; i++) {
+      sb.append(exporter.exportGame(generator.getRandomGame())).append("\n");
+    }
+    pgn = sb.toString();
+  }
+
+  private Database expectedDatabase(String pgn) throws PgnFormatException {
+    Database db = new Database();
+    PgnParser parser =
+        new PgnParser(AnnotationConverter.getRoundTripConverter()::convertToChessBase);
+    for (String gamePgn : pgn.split("\n\n(?=\\[Event)")) {
+      try {
+        db.addGame(parser.parseGame(gamePgn));
+      } catch (PgnFormatException e) {
+        // Skipped by the importer as well
+      }
+    }
+    return db;
+  }
+
+  private void assertSameGames(Database expected, Database actual) {
+    assertEquals(expected.count(), actual.count());
+    for (int gameId = 1; gameId <= expected.count(); gameId++) {
+      Game expectedGame = expected.getGame(gameId);
+      Game actualGame = actual.getGame(gameId);
+      assertEquals(expectedGame.white().getFullName(), actualGame.white().getFullName());
+      assertEquals(expectedGame.black().getFullName(), actualGame.black().getFullName());
+      assertEquals(expectedGame.tournament().title(), actualGame.tournament().title());
+      assertEquals(expectedGame.getMovesBlob(), actualGame.getMovesBlob());
+      GameModel expectedModel = expected.getGameModel(gameId);
+      GameModel actualModel = actual.getGameModel(gameId);
+      assertEquals(expectedModel.moves().countPly(true), actualModel.moves().countPly(true));
+      assertEquals(
+          expectedModel.moves().countAnnotations(), actualModel.moves().countAnnotations());
+    }
+    assertEquals(expected.playerIndex().count(), actual.playerIndex().count());
+    assertEquals(expected.tournamentIndex().count(), actual.tournamentIndex().count());
+  }
+
+  private void importAndVerify(int parallelism, int gamesPerTransaction)
+      throws IOException, PgnFormatException {
+    Database db = new Database();
+    PgnImporter importer =
+        new PgnImporter(
+            db,
+            parallelism,
+            AnnotationConverter.getRoundTripConverter()::convertToChessBase,
+            gamesPerTransaction);
+    AtomicInteger progress = new AtomicInteger();
+    PgnImporter.Result result =
+        importer.importGames(
+            new ByteArrayInputStream(pgn.getBytes(StandardCharsets.UTF_8)),
+            progress::incrementAndGet);
+
+    assertEquals(NUM_GAMES, progress.get());
+    assertEquals(NUM_GAMES, result.numImported() + result.numFailed());
+    assertEquals(NUM_GAMES, result.numImported());
+    assertSameGames(expectedDatabase(pgn), db);
+  }
+
+  @Test
+  public void importSequentially() throws IOException, PgnFormatException {
+    importAndVerify(1, PgnImporter.DEFAULT_GAMES_PER_TRANSACTION);
+  }
+
+  @Test
+  public void importInParallel() throws IOException, PgnFormatException {
+    importAndVerify(4, 37);
+  }
+
+  @Test
+  public void invalidGamesAreSkipped() throws IOException {
+    String invalid =
+        """
+        [Event "Broken"]
+        [Site "?"]
+        [Date "2024.01.01"]
+        [Round "1"]
+        [White "A"]
+        [Black "B"]
+        [Result "1-0"]
+
+        1. e4 e4 1-0
+
+        """;
+    Database db = new Database();
+    PgnImporter.Result result =
+        new PgnImporter(db, 2)
+            .importGames(
+                new ByteArrayInputStream(
+                    (pgn + "\n" + invalid + pgn).getBytes(StandardCharsets.UTF_8)),
+                () -> {});
+    assertEquals(new PgnImporter.Result(NUM_GAMES * 2, 1), result);
+    assertEquals(NUM_GAMES * 2, db.count());
+  }
+
+  @Test
+  public void latin1Fallback() throws IOException {
+    String game =
+        """
+        [Event "Test"]
+        [Site "?"]
+        [Date "2024.01.01"]
+        [Round "1"]
+        [White "Müller, José"]
+        [Black "B"]
+        [Result "1-0"]
+
+        1. e4 1-0
+        """;
+    Database db = new Database();
+    new PgnImporter(db)
+        .importGames(
+            new ByteArrayInputStream(game.getBytes(StandardCharsets.ISO_8859_1)), () -> {});
+    assertEquals(1, db.count());
+    assertEquals("Müller, José", db.getGame(1).white().getFullName());
+  }
+}
@@ -0,0 +1,107 @@
+package se.yarin.morphy.boosters;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseMode;
+import se.yarin.morphy.Game;
+import se.yarin.morphy.TestGames;
+import se.yarin.morphy.entities.EntityType;
+import se.yarin.morphy.util.CBUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BoosterBuilderTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private File file;
+  private List<List<Integer>> expectedPlayerGames;
+  private List<List<Integer>> expectedTournamentGames;
+
+  @Before
+  public void setupDatabase() throws IOException {
+    file = folder.newFile("boosters.cbh");
+    file.delete();
+
+    String[] players = {"Carlsen", "Caruana", "Anand", "Giri", "Nakamura"};
+    try (Database db = Database.create(file, false)) {
+      for (int i = 0; i < 200; i++) {
+        db.addGame(
+            TestGames.getSimpleGame(
+                players[i % players.length],
+                players[(i * 3 + 1) % players.length],
+                "Event " + (i % 7),
+                "",
+                ""));
+      }
+
+      expectedPlayerGames = gameIds(db, EntityType.PLAYER);
+      expectedTournamentGames = gameIds(db, EntityType.TOURNAMENT);
+    }
+  }
+
+  private static List<List<Integer>> gameIds(Database db, EntityType type) {
+    GameEntityIndex index = db.gameEntityIndex(type);
+    assertNotNull(index);
+    List<List<Integer>> gameIds = new ArrayList<>();
+    for (int id = 0; id < db.entityIndex(type).count(); id++) {
+      gameIds.add(index.getGameIds(id, type, true));
+    }
+    return gameIds;
+  }
+
+  private void rebuildAndVerify(int parallelism) throws IOException {
+    AtomicInteger progress = new AtomicInteger();
+    BoosterBuilder.rebuild(file, parallelism, progress::incrementAndGet);
+
+    try (Database db = Database.open(file, DatabaseMode.READ_ONLY)) {
+      assertEquals(db.count(), progress.get());
+      assertEquals(expectedPlayerGames, gameIds(db, EntityType.PLAYER));
+      assertEquals(expectedTournamentGames, gameIds(db, EntityType.TOURNAMENT));
+
+      GameEventStorage gameEvents = db.gameEventStorage();
+      assertNotNull(gameEvents);
+      assertNotNull(db.moveOffsetStorage());
+      assertEquals(db.count(), gameEvents.count());
+      for (int gameId = 1; gameId <= db.count(); gameId++) {
+        Game game = db.getGame(gameId);
+        assertEquals(
+            new GameEvents(db.getGameModel(gameId).moves()), gameEvents.get(gameId));
+        assertEquals(game.getMovesOffset(), db.moveOffsetStorage().getOffset(gameId));
+      }
+    }
+
+    // No temporary files should be left behind
+    File[] files = folder.getRoot().listFiles();
+    assertNotNull(files);
+    for (File f : files) {
+      assertEquals(CBUtil.baseName(file), CBUtil.baseName(f));
+    }
+  }
+
+  @Test
+  public void rebuildSequentially() throws IOException {
+    rebuildAndVerify(1);
+  }
+
+  @Test
+  public void rebuildInParallel() throws IOException {
+    rebuildAndVerify(4);
+  }
+
+  @Test
+  public void rebuildMissingBoosters() throws IOException {
+    for (String extension : BoosterBuilder.BOOSTER_EXTENSIONS) {
+      assertTrue(CBUtil.fileWithExtension(file, extension).delete());
+    }
+    rebuildAndVerify(2);
+  }
+}
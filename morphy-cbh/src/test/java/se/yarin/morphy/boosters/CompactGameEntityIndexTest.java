@@ -0,0 +1,160 @@
+package se.yarin.morphy.boosters;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.morphy.entities.EntityType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class CompactGameEntityIndexTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private static final int NUM_ENTITIES = 20;
+
+  private GameEntityIndex index;
+
+  @Before
+  public void setupIndex() {
+    index = new GameEntityIndex(GameEntityIndex.PRIMARY_TYPES);
+    Random random = new Random(0);
+    for (EntityType type : GameEntityIndex.PRIMARY_TYPES) {
+      for (int entityId = 0; entityId < NUM_ENTITIES; entityId++) {
+        if (entityId % 7 == 3) {
+          // Some entities without games
+          continue;
+        }
+        // Some entities with few games, some with many, so that skip pointers are used
+        int numGames = entityId % 2 == 0 ? random.nextInt(10) + 1 : random.nextInt(1000) + 100;
+        TreeMap<Integer, Integer> gameCount = new TreeMap<>();
+        for (int i = 0; i < numGames; i++) {
+          int gameId = random.nextInt(5000) + 1;
+          // A few games with the same entity twice
+          gameCount.put(gameId, random.nextInt(50) == 0 ? 2 : 1);
+        }
+        index.updateEntity(entityId, type, gameCount);
+      }
+    }
+  }
+
+  private void assertSameGames(CompactGameEntityIndex compact) {
+    assertEquals(index.getNumEntities(), compact.getNumEntities());
+    assertEquals(GameEntityIndex.PRIMARY_TYPES, compact.entityTypes());
+    for (EntityType type : GameEntityIndex.PRIMARY_TYPES) {
+      for (int entityId = 0; entityId < NUM_ENTITIES; entityId++) {
+        assertEquals(
+            index.getGameIds(entityId, type, true), compact.getGameIds(entityId, type, true));
+        assertEquals(
+            index.getGameIds(entityId, type, false), compact.getGameIds(entityId, type, false));
+        assertEquals(
+            index.getGameIds(entityId, type, false),
+            compact.stream(entityId, type).collect(Collectors.toList()));
+        assertEquals(
+            index.getGameIds(entityId, type, true).size(), compact.count(entityId, type));
+      }
+    }
+  }
+
+  @Test
+  public void inMemoryIndexHasSameGames() {
+    assertSameGames(CompactGameEntityIndex.fromGameEntityIndex(index));
+  }
+
+  @Test
+  public void fileIndexHasSameGames() throws IOException {
+    File file = new File(folder.getRoot(), "test.cgi");
+    CompactGameEntityIndex compact = CompactGameEntityIndex.create(file, index);
+    compact.close();
+
+    compact = CompactGameEntityIndex.open(file);
+    assertSameGames(compact);
+    assertEquals(file.length(), compact.size());
+    compact.close();
+  }
+
+  @Test
+  public void compactIndexIsSmaller() {
+    CompactGameEntityIndex compact = CompactGameEntityIndex.fromGameEntityIndex(index);
+    long cibSize = (long) index.getNumBlocks() * (index.gamesPerBlock() * 4 + 12);
+    assertTrue(compact.size() * 2 < cibSize);
+  }
+
+  @Test
+  public void copyBackToGameEntityIndex() {
+    CompactGameEntityIndex compact = CompactGameEntityIndex.fromGameEntityIndex(index);
+    GameEntityIndex copy = new GameEntityIndex(GameEntityIndex.PRIMARY_TYPES);
+    compact.copyEntities(copy);
+
+    for (EntityType type : GameEntityIndex.PRIMARY_TYPES) {
+      for (int entityId = 0; entityId < NUM_ENTITIES; entityId++) {
+        assertEquals(
+            index.getGameIds(entityId, type, true), copy.getGameIds(entityId, type, true));
+      }
+      copy.getUsedBlockIds(type, NUM_ENTITIES);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void copyToIndexWithOtherEntityTypes() {
+    CompactGameEntityIndex compact = CompactGameEntityIndex.fromGameEntityIndex(index);
+    compact.copyEntities(new GameEntityIndex(GameEntityIndex.SECONDARY_TYPES));
+  }
+
+  @Test
+  public void advance() {
+    CompactGameEntityIndex compact = CompactGameEntityIndex.fromGameEntityIndex(index);
+    List<Integer> gameIds = index.getGameIds(1, EntityType.PLAYER, false);
+    assertTrue(gameIds.size() > CompactGameEntityIndex.SKIP_INTERVAL * 2);
+
+    CompactGameEntityIndex.PostingIterator iterator = compact.iterator(1, EntityType.PLAYER);
+    int expectedIndex = 0;
+    for (int target = 1; target <= 5000; target += 97) {
+      while (expectedIndex < gameIds.size() && gameIds.get(expectedIndex) < target) {
+        expectedIndex += 1;
+      }
+      int expected =
+          expectedIndex < gameIds.size()
+              ? gameIds.get(expectedIndex)
+              : CompactGameEntityIndex.PostingIterator.NO_MORE_GAMES;
+      assertEquals(expected, iterator.advance(target));
+    }
+  }
+
+  @Test
+  public void intersect() {
+    CompactGameEntityIndex compact = CompactGameEntityIndex.fromGameEntityIndex(index);
+
+    for (int other = 0; other < NUM_ENTITIES; other++) {
+      TreeSet<Integer> expected = new TreeSet<>(index.getGameIds(1, EntityType.PLAYER, false));
+      expected.retainAll(index.getGameIds(other, EntityType.TOURNAMENT, false));
+      expected.retainAll(index.getGameIds(5, EntityType.PLAYER, false));
+
+      int[] actual =
+          compact.intersect(
+              new int[] {1, other, 5},
+              new EntityType[] {EntityType.PLAYER, EntityType.TOURNAMENT, EntityType.PLAYER});
+      assertEquals(
+          new ArrayList<>(expected), Arrays.stream(actual).boxed().collect(Collectors.toList()));
+    }
+  }
+
+  @Test
+  public void varInts() {
+    ByteBuffer buf = ByteBuffer.allocate(100);
+    int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+    for (int value : values) {
+      CompactGameEntityIndex.putVarInt(buf, value);
+    }
+    buf.flip();
+    for (int value : values) {
+      assertEquals(value, CompactGameEntityIndex.readVarInt(buf));
+    }
+  }
+}
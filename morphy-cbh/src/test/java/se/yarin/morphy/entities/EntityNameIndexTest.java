@@ -0,0 +1,167 @@
+package se.yarin.morphy.entities;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseMode;
+import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.TestGames;
+import se.yarin.morphy.entities.filters.EntityFilter;
+import se.yarin.morphy.entities.filters.NameSearchFilter;
+import se.yarin.morphy.entities.filters.PlayerNameFilter;
+import se.yarin.morphy.exceptions.MorphyNotSupportedException;
+import se.yarin.morphy.queries.EntityQuery;
+import se.yarin.morphy.queries.QueryContext;
+import se.yarin.morphy.queries.QueryPlanner;
+import se.yarin.morphy.queries.operations.QueryData;
+import se.yarin.morphy.queries.operations.QueryOperator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EntityNameIndexTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private PlayerIndex playerIndex;
+  private int carlsen, muller, caruana, anand;
+
+  @Before
+  public void setupPlayers() {
+    playerIndex = new PlayerIndex();
+    carlsen = playerIndex.add(Player.of("Carlsen", "Magnus"));
+    muller = playerIndex.add(Player.of("Müller", "José"));
+    caruana = playerIndex.add(Player.of("Caruana", "Fabiano"));
+    anand = playerIndex.add(Player.of("Anand", "Viswanathan"));
+  }
+
+  private int[] search(EntityNameIndex.Search search) {
+    try (var txn = playerIndex.beginReadTransaction()) {
+      return playerIndex.nameIndex().search(search);
+    }
+  }
+
+  @Test
+  public void normalize() {
+    assertEquals("dvorak, stepan", EntityNameIndex.normalize("Dvořák,  Štěpán "));
+    assertEquals("carlsen", EntityNameIndex.normalize("CARLSEN"));
+  }
+
+  @Test
+  public void prefixSearch() {
+    playerIndex.enableNameIndex();
+    assertArrayEquals(new int[] {carlsen, caruana}, search(EntityNameIndex.Search.prefix("car")));
+    assertArrayEquals(new int[] {muller}, search(EntityNameIndex.Search.prefix("MULLER, jo")));
+    assertArrayEquals(new int[0], search(EntityNameIndex.Search.prefix("x")));
+  }
+
+  @Test
+  public void infixSearch() {
+    playerIndex.enableNameIndex();
+    assertArrayEquals(new int[] {caruana, anand}, search(EntityNameIndex.Search.infix("an")));
+    assertArrayEquals(new int[] {anand}, search(EntityNameIndex.Search.infix("wanat")));
+    assertArrayEquals(new int[] {muller}, search(EntityNameIndex.Search.infix("jose")));
+    // All trigrams exist but not in that order
+    assertArrayEquals(new int[0], search(EntityNameIndex.Search.infix("anaand")));
+  }
+
+  @Test
+  public void fuzzySearch() {
+    playerIndex.enableNameIndex();
+    assertArrayEquals(
+        new int[] {carlsen}, search(EntityNameIndex.Search.fuzzy("Karlsen, Magnus")));
+    assertArrayEquals(
+        new int[] {caruana}, search(EntityNameIndex.Search.fuzzy("caruna, fabiano")));
+  }
+
+  @Test
+  public void indexIsMaintainedOnCommit() {
+    playerIndex.enableNameIndex();
+
+    int giri = playerIndex.add(Player.of("Giri", "Anish"));
+    assertArrayEquals(new int[] {giri}, search(EntityNameIndex.Search.prefix("giri")));
+
+    playerIndex.put(carlsen, Player.of("Karlsen", "Magnus"));
+    assertArrayEquals(new int[] {caruana}, search(EntityNameIndex.Search.prefix("car")));
+    assertArrayEquals(new int[] {carlsen}, search(EntityNameIndex.Search.prefix("karl")));
+
+    playerIndex.delete(caruana);
+    assertArrayEquals(new int[0], search(EntityNameIndex.Search.prefix("car")));
+    assertEquals(playerIndex.count(), playerIndex.nameIndex().count());
+  }
+
+  @Test
+  public void indexIsNotUpdatedOnRollback() {
+    playerIndex.enableNameIndex();
+    try (var txn = playerIndex.beginWriteTransaction()) {
+      txn.addEntity(Player.of("Giri", "Anish"));
+      txn.rollback();
+    }
+    assertArrayEquals(new int[0], search(EntityNameIndex.Search.prefix("giri")));
+  }
+
+  @Test(expected = MorphyNotSupportedException.class)
+  public void nameIndexNotSupported() {
+    new AnnotatorIndex().enableNameIndex();
+  }
+
+  @Test
+  public void queryPlanUsesNameIndex() {
+    Database db = new Database();
+    db.addGame(TestGames.getSimpleGame("Müller, José", "Carlsen, Magnus"));
+    db.addGame(TestGames.getSimpleGame("Caruana, Fabiano", "Anand, Viswanathan"));
+    db.enableNameIndexes();
+
+    NameSearchFilter<Player> filter =
+        new NameSearchFilter<>(EntityType.PLAYER, "jose", EntityNameIndex.MatchType.INFIX);
+    EntityQuery<Player> query = new EntityQuery<>(db, EntityType.PLAYER, List.<EntityFilter<Player>>of(filter));
+
+    try (var txn = new DatabaseReadTransaction(db)) {
+      QueryContext qc = new QueryContext(txn, false);
+      QueryPlanner planner = db.queryPlanner();
+      QueryOperator<Player> plan =
+          planner.selectBestQueryPlan(planner.getEntityQueryPlans(qc, query, true));
+      assertTrue(plan.debugString(false).contains("PlayerNameIndexScan"));
+
+      List<String> names =
+          plan.stream()
+              .map(QueryData::data)
+              .map(Player::getFullName)
+              .collect(Collectors.toList());
+      assertEquals(List.of("Müller, José"), names);
+    }
+  }
+
+  @Test
+  public void caseInsensitivePrefixFilterUsesNameIndex() {
+    playerIndex.enableNameIndex();
+    PlayerNameFilter filter = new PlayerNameFilter("CAR", false, false);
+    assertArrayEquals(new int[] {carlsen, caruana}, search(filter.nameIndexSearch()));
+  }
+
+  @Test
+  public void failedCommitDoesNotUpdateNameIndex() throws IOException {
+    File file = folder.newFile("players.cbp");
+    file.delete();
+    PlayerIndex.create(file, null).close();
+
+    PlayerIndex readOnlyIndex = PlayerIndex.open(file, DatabaseMode.READ_ONLY);
+    readOnlyIndex.enableNameIndex();
+    try {
+      readOnlyIndex.add(Player.of("Carlsen", "Magnus"));
+      fail("Expected the commit to fail in a read-only index");
+    } catch (RuntimeException e) {
+      // Expected
+    }
+    try (var txn = readOnlyIndex.beginReadTransaction()) {
+      assertArrayEquals(
+          new int[0], readOnlyIndex.nameIndex().search(EntityNameIndex.Search.prefix("car")));
+    }
+    readOnlyIndex.close();
+  }
+}
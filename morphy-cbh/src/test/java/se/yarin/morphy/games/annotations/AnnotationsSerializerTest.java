@@ -22,6 +22,7 @@ import java.util.List;
 
 import static junit.framework.TestCase.assertFalse;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static se.yarin.chess.Chess.*;
 
@@ -184,6 +185,65 @@ public class AnnotationsSerializerTest {
     }
   }
 
+  @Test
+  public void deserializeCommentsInVariationsLazily() throws IOException, MorphyInvalidDataException {
+    ByteBuffer annoBuf =
+        ResourceLoader.loadResource(getClass(), "commentsinvariations.annotations.bin");
+    ByteBuffer movesBuf = ResourceLoader.loadResource(getClass(), "commentsinvariations.moves.bin");
+    GameMovesModel eagerModel = new MoveSerializer().deserializeMoves(movesBuf);
+    annotationsSerializer.deserializeAnnotations(annoBuf, eagerModel);
+
+    annoBuf.position(0);
+    GameMovesModel model = new GameMovesModel(eagerModel);
+    model.deleteAllAnnotations();
+    annotationsSerializer.deserializeAnnotationsLazily(annoBuf, model);
+    assertEquals(eagerModel.countAnnotations(), model.countAnnotations());
+
+    ByteBuffer after = annotationsSerializer.serializeAnnotations(9, model);
+    annoBuf.position(0);
+    after.position(0);
+    assertEquals(annoBuf, after);
+    assertTrue(annotationsEqual(eagerModel.root(), model.root()));
+  }
+
+  @Test
+  public void deserializeGeneratedAnnotationsLazily() throws MorphyInvalidDataException {
+    GameGenerator gameGenerator = new GameGenerator();
+    for (int noMoves = 10; noMoves < 80; noMoves += 3) {
+      GameMovesModel inputMoves = gameGenerator.getRandomGameMoves(noMoves);
+      gameGenerator.addRandomVariationMoves(inputMoves, noMoves * 2);
+      GameMovesModel filteredMoves = new GameMovesModel(inputMoves);
+      GameMovesModel compareMoves = new GameMovesModel(inputMoves);
+      gameGenerator.addRandomAnnotations(inputMoves, noMoves / 2);
+
+      ByteBuffer buf = annotationsSerializer.serializeAnnotations(1, inputMoves);
+      annotationsSerializer.deserializeAnnotationsLazily(buf.duplicate(), filteredMoves);
+      annotationsSerializer.deserializeAnnotationsLazily(buf.duplicate(), compareMoves);
+      assertEquals(inputMoves.countAnnotations(), compareMoves.countAnnotations());
+
+      // Type filtered access doesn't materialize the other annotations of a node
+      List<GameMovesModel.Node> inputNodes = inputMoves.getAllNodes();
+      List<GameMovesModel.Node> filteredNodes = filteredMoves.getAllNodes();
+      for (int i = 0; i < inputNodes.size(); i++) {
+        assertEquals(
+            inputNodes.get(i).getAnnotations().getAllByClass(TextAfterMoveAnnotation.class),
+            filteredNodes.get(i).getAnnotations(TextAfterMoveAnnotation.class));
+        assertEquals(
+            inputNodes.get(i).getAnnotation(SymbolAnnotation.class),
+            filteredNodes.get(i).getAnnotation(SymbolAnnotation.class));
+        // The decoded annotations are cached, also when decoded by type
+        SymbolAnnotation symbol = filteredNodes.get(i).getAnnotation(SymbolAnnotation.class);
+        assertSame(symbol, filteredNodes.get(i).getAnnotation(SymbolAnnotation.class));
+        if (symbol != null) {
+          assertSame(
+              symbol, filteredNodes.get(i).getAnnotations().getByClass(SymbolAnnotation.class));
+        }
+      }
+      assertTrue(annotationsEqual(inputMoves.root(), filteredMoves.root()));
+      assertTrue(annotationsEqual(inputMoves.root(), compareMoves.root()));
+    }
+  }
+
   private boolean annotationsEqual(GameMovesModel.Node node1, GameMovesModel.Node node2) {
     if (node1.getAnnotations().size() != node2.getAnnotations().size()) {
       return false;
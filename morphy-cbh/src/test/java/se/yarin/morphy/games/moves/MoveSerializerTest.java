@@ -13,6 +13,11 @@ import se.yarin.morphy.util.CBUtil;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 import static se.yarin.chess.Chess.*;
@@ -277,6 +282,76 @@ public class MoveSerializerTest {
     }
   }
 
+  @Test
+  public void serializeDeserializeConcurrently() throws Exception {
+    GameGenerator generator = new GameGenerator(7);
+    List<GameMovesModel> games = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      games.add(generator.getRandomGame(true, false).moves());
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int encodingMode = 0; encodingMode < 8; encodingMode++) {
+        int mode = encodingMode;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (GameMovesModel moves : games) {
+                    ByteBuffer buf = movesSerializer.serializeMoves(moves, mode);
+                    GameMovesModel outputMoves = movesSerializer.deserializeMoves(buf);
+                    assertEquals(moves.toString(), outputMoves.toString());
+                  }
+                  return null;
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void deserializeMovesTrusted() throws MorphyMoveDecodingException {
+    GameGenerator generator = new GameGenerator(11);
+    List<GameMovesModel> games = new ArrayList<>();
+    games.add(TestGames.getCrazyGame());
+    games.add(TestGames.getEndGame());
+    games.add(TestGames.getVariationGame());
+    for (int noMoves = 0; noMoves < 80; noMoves += 7) {
+      GameMovesModel moves = generator.getRandomGameMoves(noMoves);
+      generator.addRandomVariationMoves(moves, noMoves * 2);
+      games.add(moves);
+    }
+
+    // The simple encodings fall back to the regular decoder
+    for (int mode = 0; mode < 8; mode++) {
+      for (GameMovesModel moves : games) {
+        ByteBuffer buf = movesSerializer.serializeMoves(moves, mode);
+        CompactGameMoves compactMoves = movesSerializer.deserializeMovesTrusted(buf, 0);
+        assertEquals(moves.toString(), compactMoves.toGameMovesModel().toString());
+        assertEquals(moves.countPly(true), compactMoves.countPly(true));
+
+        List<GameMovesModel.Node> nodes = moves.getAllNodes();
+        for (int i = 0; i < nodes.size(); i += 5) {
+          assertEquals(nodes.get(i).position(), compactMoves.node(i).position());
+        }
+      }
+    }
+
+    // Chess960 also falls back to the regular decoder
+    GameMovesModel chess960 =
+        new GameMovesModel(Chess960.getStartPosition(Chess960.getStartPositionNo("BNRKRBNQ")), 1);
+    chess960.root().addMove(B2, B3).addMove(B7, B6).addMove(E2, E4);
+    ByteBuffer buf = movesSerializer.serializeMoves(chess960);
+    assertEquals(
+        chess960.toString(),
+        movesSerializer.deserializeMovesTrusted(buf, 0).toGameMovesModel().toString());
+  }
+
   @Test
   public void serializeSetupPosition() {
     Position position =
@@ -0,0 +1,131 @@
+package se.yarin.morphy.metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.Game;
+import se.yarin.morphy.GameGenerator;
+import se.yarin.morphy.Instrumentation;
+import se.yarin.morphy.qqueries.QGamesAll;
+import se.yarin.morphy.qqueries.QueryExecutor;
+import se.yarin.util.PagedBlobChannel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static java.nio.file.StandardOpenOption.*;
+import static org.junit.Assert.*;
+
+public class JfrEventsTest {
+  private List<RecordedEvent> record(Runnable action) throws IOException {
+    try (Recording recording = new Recording()) {
+      recording.enable(QueryEvent.class);
+      recording.enable(CommitPhaseEvent.class);
+      recording.enable(PageIOEvent.class);
+      recording.enable(LockWaitEvent.class).withThreshold(Duration.ZERO);
+      recording.start();
+      action.run();
+      recording.stop();
+
+      Path file = Files.createTempFile("morphy", ".jfr");
+      try {
+        recording.dump(file);
+        return RecordingFile.readAllEvents(file).stream()
+            .filter(event -> event.getEventType().getName().startsWith("se.yarin.morphy."))
+            .collect(Collectors.toList());
+      } finally {
+        Files.delete(file);
+      }
+    }
+  }
+
+  private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+    return events.stream()
+        .filter(event -> event.getEventType().getName().equals("se.yarin.morphy." + name))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void eventsAreDisabledByDefault() {
+    assertFalse(new QueryEvent().isEnabled());
+    assertFalse(new CommitPhaseEvent().isEnabled());
+    assertFalse(new PageIOEvent().isEnabled());
+    assertFalse(new LockWaitEvent().isEnabled());
+  }
+
+  @Test
+  public void recordCommitAndQueryEvents() throws IOException {
+    Database database = new Database();
+    GameGenerator generator = new GameGenerator(3);
+
+    List<RecordedEvent> events =
+        record(
+            () -> {
+              database.addGame(generator.getRandomGame(false, false));
+              try (var txn = new DatabaseReadTransaction(database)) {
+                new QueryExecutor<Game>(txn).execute(new QGamesAll());
+              }
+            });
+
+    List<String> phases =
+        ofType(events, "CommitPhase").stream()
+            .map(event -> event.getString("phase"))
+            .collect(Collectors.toList());
+    assertEquals(
+        List.of(
+            CommitPhaseEvent.SHIFT_BLOBS,
+            CommitPhaseEvent.WRITE_GAMES,
+            CommitPhaseEvent.UPDATE_ENTITIES,
+            CommitPhaseEvent.UPDATE_BOOSTERS),
+        phases);
+
+    List<RecordedEvent> queries = ofType(events, "Query");
+    assertEquals(1, queries.size());
+    assertEquals("QGamesAll", queries.get(0).getString("query"));
+    assertEquals(1, queries.get(0).getLong("actualRows"));
+
+    assertFalse(ofType(events, "LockWait").isEmpty());
+    assertTrue(ofType(events, "LockWait").stream().allMatch(e -> e.getBoolean("acquired")));
+  }
+
+  @Test
+  public void recordPageIOEvents() throws IOException {
+    Path file = Files.createTempFile("morphy", ".cbg");
+    try {
+      List<RecordedEvent> events =
+          record(
+              () -> {
+                try {
+                  PagedBlobChannel channel =
+                      PagedBlobChannel.open(file, new Instrumentation(), Set.of(READ, WRITE));
+                  channel.append(ByteBuffer.wrap(new byte[100]));
+                  channel.read(20, 10);
+                  channel.insert(10, 5);
+                  channel.close();
+                } catch (IOException e) {
+                  throw new RuntimeException(e);
+                }
+              });
+
+      List<RecordedEvent> pageEvents = ofType(events, "PageIO");
+      assertEquals(2, pageEvents.size());
+      assertEquals(PageIOEvent.READ, pageEvents.get(0).getString("operation"));
+      assertEquals("cbg", pageEvents.get(0).getString("file"));
+      assertEquals(100, pageEvents.get(0).getLong("bytes"));
+      assertEquals(PageIOEvent.INSERT, pageEvents.get(1).getString("operation"));
+      assertEquals(10, pageEvents.get(1).getLong("offset"));
+      assertEquals(5, pageEvents.get(1).getLong("bytes"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package se.yarin.morphy.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+  @Test
+  public void emptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.count());
+    assertEquals(0, histogram.valueAtPercentile(50));
+    assertEquals(0, histogram.max());
+    assertEquals(0.0, histogram.mean(), 1e-9);
+  }
+
+  @Test
+  public void bucketBounds() {
+    for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123456789, Long.MAX_VALUE / 3}) {
+      int index = LatencyHistogram.bucketIndex(value);
+      assertTrue(value < LatencyHistogram.bucketUpperBound(index));
+      assertTrue(index == 0 || value >= LatencyHistogram.bucketUpperBound(index - 1));
+    }
+  }
+
+  @Test
+  public void percentilesAreWithinBucketPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000L);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(1_000_000, histogram.max());
+    assertEquals(500_500, histogram.mean(), 1e-6);
+    assertEquals(500_000, histogram.valueAtPercentile(50), 500_000 * 0.07);
+    assertEquals(990_000, histogram.valueAtPercentile(99), 990_000 * 0.07);
+    assertEquals(1_000_000, histogram.valueAtPercentile(100));
+  }
+
+  @Test
+  public void mergeAndClear() {
+    LatencyHistogram first = new LatencyHistogram(), second = new LatencyHistogram();
+    first.record(10);
+    second.record(20);
+    second.record(5000);
+    first.merge(second);
+    assertEquals(3, first.count());
+    assertEquals(5030, first.sum());
+    assertEquals(5000, first.max());
+    assertEquals(20, first.valueAtPercentile(50));
+
+    first.clear();
+    assertEquals(0, first.count());
+    assertEquals(0, first.valueAtPercentile(99));
+  }
+
+  @Test
+  public void recordConcurrently() throws InterruptedException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                for (int j = 0; j < 10000; j++) {
+                  histogram.record(j);
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40000, histogram.count());
+    assertEquals(4L * 9999 * 10000 / 2, histogram.sum());
+    assertEquals(9999, histogram.max());
+  }
+}
@@ -0,0 +1,97 @@
+package se.yarin.morphy.metrics;
+
+import org.junit.Test;
+import se.yarin.morphy.Instrumentation;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class MetricsExporterTest {
+  private Instrumentation createInstrumentation() {
+    Instrumentation instrumentation = new Instrumentation();
+    MetricsRef<FileMetrics> fileMetrics = FileMetrics.register(instrumentation, "cbg");
+    MetricsRef<ItemMetrics> itemMetrics = ItemMetrics.register(instrumentation, "Moves");
+    fileMetrics.update(metrics -> metrics.addPhysicalRead(2_000_000));
+    fileMetrics.update(metrics -> metrics.addLogicalReads(5));
+    itemMetrics.update(metrics -> metrics.addTimedDeserialization(30_000));
+    itemMetrics.update(metrics -> metrics.addGet(3));
+    return instrumentation;
+  }
+
+  @Test
+  public void formatPrometheus() {
+    String text = new PrometheusExporter(createInstrumentation()).format();
+
+    assertTrue(text.contains("# TYPE morphy_files_physical_page_reads_total counter\n"));
+    assertTrue(text.contains("morphy_files_physical_page_reads_total{name=\"cbg\"} 1\n"));
+    assertTrue(text.contains("morphy_files_logical_page_reads_total{name=\"cbg\"} 5\n"));
+    assertTrue(text.contains("morphy_items_gets_total{name=\"Moves\"} 3\n"));
+    assertTrue(text.contains("# TYPE morphy_files_physical_read_seconds summary\n"));
+    assertTrue(text.contains("morphy_files_physical_read_seconds_count{name=\"cbg\"} 1\n"));
+    assertTrue(text.contains("morphy_files_physical_read_seconds_sum{name=\"cbg\"} 0.002\n"));
+    assertTrue(text.contains("morphy_items_deserialization_seconds{name=\"Moves\",quantile=\"0.99\"}"));
+    // Every family is only declared once
+    assertEquals(
+        text.indexOf("# TYPE morphy_items_gets_total"),
+        text.lastIndexOf("# TYPE morphy_items_gets_total"));
+  }
+
+  @Test
+  public void escapeLabels() {
+    assertEquals("a\\\"b\\\\c\\n", PrometheusExporter.escapeLabel("a\"b\\c\n"));
+    assertEquals("game_header", PrometheusExporter.sanitize("Game-Header"));
+  }
+
+  @Test
+  public void writePrometheusFile() throws IOException {
+    Path dir = Files.createTempDirectory("metrics");
+    Path file = dir.resolve("morphy.prom");
+    PrometheusExporter exporter = new PrometheusExporter(createInstrumentation());
+    exporter.writeTo(file);
+    exporter.writeTo(file);
+
+    assertEquals(exporter.format(), Files.readString(file));
+    try (var files = Files.list(dir)) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  public void servePrometheus() throws IOException {
+    try (PrometheusExporter exporter = new PrometheusExporter(createInstrumentation())) {
+      int port = exporter.serve(0);
+      try (InputStream is = URI.create("http://127.0.0.1:" + port + "/metrics").toURL().openStream()) {
+        String text = new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(exporter.format(), text);
+      }
+    }
+  }
+
+  @Test
+  public void exportJmx() throws Exception {
+    Instrumentation instrumentation = createInstrumentation();
+    MBeanServer server = MBeanServerFactory.newMBeanServer();
+    try (JmxExporter exporter = new JmxExporter(instrumentation, "test db", server)) {
+      assertEquals(2, exporter.register());
+      ObjectName name = exporter.objectName(new MetricsKey("files", "cbg"));
+      assertEquals(1L, server.getAttribute(name, "physical_page_reads"));
+      assertEquals(2000L, server.getAttribute(name, "physical_read_max_us"));
+
+      // The attributes are live
+      FileMetrics.register(instrumentation, "cbg2");
+      instrumentation.<FileMetrics>getMetrics("files", "cbg").addLogicalReads(2);
+      assertEquals(7L, server.getAttribute(name, "logical_page_reads"));
+      assertEquals(3, exporter.register());
+    }
+    assertEquals(0, server.queryNames(new ObjectName(JmxExporter.DOMAIN + ":*"), null).size());
+  }
+}
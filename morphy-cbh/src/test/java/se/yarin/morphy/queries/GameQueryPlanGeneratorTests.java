@@ -9,6 +9,7 @@ import se.yarin.morphy.entities.filters.PlayerNameFilter;
 import se.yarin.morphy.games.filters.*;
 import se.yarin.morphy.queries.operations.*;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -78,6 +79,22 @@ public class GameQueryPlanGeneratorTests {
     }
   }
 
+  @Test
+  public void gamesBySingleFixedPlayerWithCompactGameEntityIndex() throws IOException {
+    db.createCompactGameEntityIndex();
+    GameFilter playerFilter = new PlayerFilter(7, GameEntityJoinCondition.ANY);
+    GameQuery gameQuery = new GameQuery(db, List.of(playerFilter));
+
+    try (var txn = new DatabaseReadTransaction(db)) {
+      QueryContext qc = new QueryContext(txn, false);
+      List<QueryOperator<Game>> plans = db.queryPlanner().getGameQueryPlans(qc, gameQuery, false);
+
+      this.assertPlanExists(
+          plans,
+          new CompactGameIdsByEntities<>(qc, new Manual<>(qc, Set.of(7)), EntityType.PLAYER));
+    }
+  }
+
   @Test
   public void gamesByMultipleFixedPlayers() {
     GameFilter playerFilter = new PlayerFilter(new int[] {7, 19, 15}, null);
@@ -0,0 +1,108 @@
+package se.yarin.morphy.queries;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseConfig;
+import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.GameGenerator;
+import se.yarin.morphy.queries.operations.GameLookup;
+import se.yarin.morphy.queries.operations.GameTableScan;
+import se.yarin.morphy.queries.operations.Manual;
+import se.yarin.morphy.queries.operations.QueryCost;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PlannerCostConstantsTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void saveAndLoad() throws IOException {
+    Path file = folder.getRoot().toPath().resolve("costs/planner.properties");
+    PlannerCostConstants costs = new PlannerCostConstants(1.5, 0.25, 0.001);
+    costs.save(file);
+
+    assertEquals(costs, PlannerCostConstants.load(file));
+  }
+
+  @Test
+  public void loadUsesDefaultsForMissingCosts() throws IOException {
+    Path file = folder.newFile("planner.properties").toPath();
+    Files.writeString(file, "burstIOPageCost=0.5\n");
+
+    PlannerCostConstants costs = PlannerCostConstants.load(file);
+    PlannerCostConstants defaults = PlannerCostConstants.DEFAULT;
+    assertEquals(0.5, costs.burstIOPageCost(), 1e-9);
+    assertEquals(defaults.scatteredIOPageCost(), costs.scatteredIOPageCost(), 1e-9);
+    assertEquals(defaults.deserializationCost(), costs.deserializationCost(), 1e-9);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void loadInvalidCost() throws IOException {
+    Path file = folder.newFile("planner.properties").toPath();
+    Files.writeString(file, "burstIOPageCost=fast\n");
+    PlannerCostConstants.load(file);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeCost() {
+    new PlannerCostConstants(0.1, -0.1, 0.1);
+  }
+
+  @Test
+  public void resolveDatabaseCosts() throws IOException {
+    File cbhFile = new File(folder.getRoot(), "test.cbh");
+    Path databaseFile = PlannerCostConstants.databaseFile(cbhFile);
+    assertEquals("test.planner.properties", databaseFile.getFileName().toString());
+
+    PlannerCostConstants costs = new PlannerCostConstants(1, 2, 3);
+    costs.save(databaseFile);
+    assertEquals(costs, PlannerCostConstants.resolve(cbhFile));
+  }
+
+  @Test
+  public void queryCostUsesConfiguredConstants() {
+    DatabaseConfig config = new DatabaseConfig();
+    config.setPlannerCostConstants(new PlannerCostConstants(10, 1, 0));
+    Database db = new Database(config);
+    GameGenerator generator = new GameGenerator(5);
+    for (int i = 0; i < 10; i++) {
+      db.addGame(generator.getRandomGame(false, false));
+    }
+
+    try (var txn = new DatabaseReadTransaction(db)) {
+      QueryContext context = new QueryContext(txn, false);
+      QueryCost scanCost = new GameTableScan(context, null).getQueryCost();
+      QueryCost lookupCost =
+          new GameLookup(context, new Manual<>(context, Set.of(1, 2)), null).getQueryCost();
+
+      assertEquals(0.0, scanCost.estimatedCpuCost(), 1e-9);
+      assertEquals(scanCost.estimatedPageReads(), scanCost.estimatedIOCost(), 1e-9);
+      assertEquals(lookupCost.estimatedPageReads() * 10, lookupCost.estimatedIOCost(), 1e-9);
+    }
+  }
+
+  @Test
+  public void calibrate() throws IOException {
+    File file = new File(folder.getRoot(), "calibrate.cbh");
+    try (Database db = Database.create(file, false)) {
+      GameGenerator generator = new GameGenerator(1);
+      for (int i = 0; i < 100; i++) {
+        db.addGame(generator.getRandomGame(true, true));
+      }
+    }
+
+    PlannerCostConstants costs = new CostCalibrator(file, 50, new Random(0)).calibrate();
+    assertTrue(costs.scatteredIOPageCost() > 0);
+    assertTrue(costs.burstIOPageCost() <= costs.scatteredIOPageCost());
+    assertTrue(costs.deserializationCost() >= 0);
+  }
+}
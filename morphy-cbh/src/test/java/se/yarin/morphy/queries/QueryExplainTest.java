@@ -0,0 +1,76 @@
+package se.yarin.morphy.queries;
+
+import org.junit.Before;
+import org.junit.Test;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.Game;
+import se.yarin.morphy.GameGenerator;
+import se.yarin.morphy.games.filters.IsGameFilter;
+import se.yarin.morphy.queries.operations.*;
+
+import static org.junit.Assert.*;
+
+public class QueryExplainTest {
+  private Database db;
+
+  @Before
+  public void setupDatabase() {
+    db = new Database();
+    GameGenerator generator = new GameGenerator(7);
+    for (int i = 0; i < 20; i++) {
+      db.addGame(generator.getRandomGame(false, false));
+    }
+  }
+
+  @Test
+  public void explainWithoutExecution() {
+    try (var txn = new DatabaseReadTransaction(db)) {
+      QueryContext context = new QueryContext(txn, true);
+      QueryOperator<Game> queryPlan =
+          new Limit<>(context, new GameTableScan(context, new IsGameFilter()), 5);
+
+      QueryExplain explain = new QueryExplain(queryPlan);
+      String text = explain.format();
+      assertTrue(text.startsWith("Limit"));
+      assertTrue(text.contains("  +- GameTableScan(filter: "));
+      assertTrue(text.contains("estimate: rows="));
+      assertFalse(text.contains("actual:"));
+      assertFalse(explain.toJson().contains("\"actual\""));
+    }
+  }
+
+  @Test
+  public void explainAnalyze() {
+    try (var txn = new DatabaseReadTransaction(db)) {
+      QueryContext context = new QueryContext(txn, true);
+      GameTableScan scan = new GameTableScan(context, null);
+      QueryOperator<Game> queryPlan = new Limit<>(context, new Distinct<>(context, scan), 5);
+
+      assertEquals(5, queryPlan.executeProfiled().size());
+      assertTrue(queryPlan.isProfiled());
+      assertTrue(scan.isProfiled());
+
+      OperatorCost rootCost = queryPlan.getOperatorCost();
+      OperatorCost scanCost = scan.getOperatorCost();
+      assertEquals(5, rootCost.actualRows());
+      assertEquals(5, scanCost.actualRows());
+      assertTrue(scanCost.actualTotalNanos() > 0);
+      assertEquals(scanCost.actualTotalNanos(), scanCost.actualSelfNanos());
+      assertTrue(rootCost.actualTotalNanos() >= scanCost.actualTotalNanos());
+      assertTrue(rootCost.actualSelfNanos() <= rootCost.actualTotalNanos());
+      assertEquals(4.0, scanCost.rowEstimateError(), 1e-9); // 20 estimated rows vs 5 actual
+
+      String text = new QueryExplain(queryPlan).format();
+      assertTrue(text.contains("actual: rows=5 (in 5, error x1.0)"));
+      assertTrue(text.contains("actual: rows=5 (in 0, error x4.0)"));
+      assertTrue(text.contains("Execution time: "));
+
+      String json = new QueryExplain(queryPlan).toJson();
+      assertTrue(json.startsWith("{\"executionTimeMs\":"));
+      assertTrue(json.contains("\"plan\":{\"operator\":\"Limit(limit=5)\""));
+      assertTrue(json.contains("\"sources\":[{\"operator\":\"GameTableScan()\""));
+      assertTrue(json.contains("\"actual\":{\"rows\":5,\"rowsIn\":0,\"rowEstimateError\":4.000"));
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package se.yarin.morphy.queries;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import se.yarin.chess.GameModel;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseConfig;
+import se.yarin.morphy.DatabaseReadTransaction;
+import se.yarin.morphy.Game;
+import se.yarin.morphy.GameGenerator;
+import se.yarin.morphy.games.filters.RatingRangeFilter;
+import se.yarin.morphy.games.filters.ResultsFilter;
+import se.yarin.morphy.qqueries.QAnd;
+import se.yarin.morphy.qqueries.QGamesAll;
+import se.yarin.morphy.qqueries.QGamesWithFilter;
+import se.yarin.morphy.qqueries.QGamesWithResult;
+import se.yarin.morphy.qqueries.QueryExecutor;
+import se.yarin.morphy.queries.operations.GameTableScan;
+import se.yarin.morphy.queries.operations.Limit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class SlowQueryLogTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path logFile;
+  private DatabaseConfig config;
+
+  @Before
+  public void setupConfig() {
+    logFile = folder.getRoot().toPath().resolve("slow-queries.log");
+    config = new DatabaseConfig();
+    config.setSlowQueryLogFile(logFile);
+  }
+
+  private Database createDatabase() {
+    Database db = new Database(config);
+    GameGenerator generator = new GameGenerator(3);
+    for (int i = 0; i < 10; i++) {
+      db.addGame(generator.getRandomGame(false, false));
+    }
+    return db;
+  }
+
+  @Test
+  public void logSlowItemQuery() throws IOException {
+    config.setSlowQueryThresholdMillis(0);
+    Database db = createDatabase();
+    try (var txn = new DatabaseReadTransaction(db)) {
+      new QueryExecutor<Game>(txn)
+          .execute(new QAnd<>(List.of(new QGamesWithResult("1-0"), new QGamesAll())));
+    }
+
+    List<String> lines = Files.readAllLines(logFile);
+    assertEquals(1, lines.size());
+    String line = lines.get(0);
+    assertTrue(line.contains("\"slow\":true"));
+    assertTrue(line.contains("\"engine\":\"items\""));
+    assertTrue(line.contains("\"query\":\"QAnd(QGamesAll, QGamesWithResult)\""));
+    assertFalse(line.contains("\"logicalPageReads\":-1"));
+    assertFalse(line.contains("\"plan\""));
+  }
+
+  @Test
+  public void logFilterTypesOfItemQuery() throws IOException {
+    config.setSlowQueryThresholdMillis(0);
+    Database db = createDatabase();
+    try (var txn = new DatabaseReadTransaction(db)) {
+      new QueryExecutor<Game>(txn)
+          .execute(
+              new QAnd<>(
+                  List.of(
+                      new QGamesWithFilter(new ResultsFilter("1-0")),
+                      new QGamesWithFilter(
+                          new RatingRangeFilter(2000, 2800, RatingRangeFilter.RatingColor.ANY)))));
+    }
+
+    List<String> lines = Files.readAllLines(logFile);
+    assertEquals(1, lines.size());
+    String query = "QAnd(QGamesWithFilter(RatingRangeFilter), QGamesWithFilter(ResultsFilter))";
+    assertTrue(lines.get(0).contains("\"query\":\"" + query + "\""));
+  }
+
+  @Test
+  public void logSlowPlannerQuery() throws IOException {
+    config.setSlowQueryThresholdMillis(0);
+    Database db = createDatabase();
+    try (var txn = new DatabaseReadTransaction(db)) {
+      QueryContext context = new QueryContext(txn, true);
+      new Limit<>(context, new GameTableScan(context, null), 3).executeProfiled();
+    }
+
+    List<String> lines = Files.readAllLines(logFile);
+    assertEquals(1, lines.size());
+    String line = lines.get(0);
+    assertTrue(line.contains("\"engine\":\"planner\""));
+    assertTrue(line.contains("\"query\":\"Limit(GameTableScan)\""));
+    assertTrue(line.contains("\"actualRows\":3"));
+    assertTrue(line.contains("\"plan\":{\"executionTimeMs\":"));
+  }
+
+  @Test
+  public void logStreamedPlannerQueryWhenClosed() throws IOException {
+    config.setSlowQueryThresholdMillis(0);
+    Database db = createDatabase();
+    try (var txn = new DatabaseReadTransaction(db);
+        Stream<GameModel> models = txn.streamModels(new GameQuery(db, null), 1)) {
+      assertEquals(10, models.count());
+      assertFalse(Files.exists(logFile));
+    }
+
+    List<String> lines = Files.readAllLines(logFile);
+    assertEquals(1, lines.size());
+    String line = lines.get(0);
+    assertTrue(line.contains("\"engine\":\"planner\""));
+    assertTrue(line.contains("\"actualRows\":10"));
+    assertTrue(line.contains("\"logicalPageReads\":-1"));
+  }
+
+  @Test
+  public void fastQueriesAreOnlySampled() throws IOException {
+    config.setSlowQueryThresholdMillis(1_000_000);
+    Database db = createDatabase();
+    try (var txn = new DatabaseReadTransaction(db)) {
+      new QueryExecutor<Game>(txn).execute(new QGamesAll());
+    }
+    assertFalse(Files.exists(logFile));
+
+    config.setSlowQuerySampleRate(1.0);
+    db = createDatabase();
+    try (var txn = new DatabaseReadTransaction(db)) {
+      new QueryExecutor<Game>(txn).execute(new QGamesAll());
+    }
+    List<String> lines = Files.readAllLines(logFile);
+    assertEquals(1, lines.size());
+    assertTrue(lines.get(0).contains("\"slow\":false"));
+  }
+
+  @Test
+  public void rotateLogFiles() throws IOException {
+    SlowQueryLog log = new SlowQueryLog(logFile, 0, 0.0, 1000, 3);
+    for (int i = 0; i < 20; i++) {
+      log.log(new SlowQueryLog.Entry("items", "Q" + i, null, 1, 1, 1, Double.NaN, -1, -1, 0, 0, 0));
+    }
+
+    assertTrue(Files.size(logFile) <= 1000);
+    assertTrue(Files.exists(log.rotatedFile(1)));
+    assertTrue(Files.exists(log.rotatedFile(2)));
+    assertFalse(Files.exists(log.rotatedFile(3)));
+    assertTrue(Files.readString(logFile).contains("\"query\":\"Q19\""));
+    assertTrue(Files.readString(logFile).contains("\"estimatedCost\":null"));
+  }
+}
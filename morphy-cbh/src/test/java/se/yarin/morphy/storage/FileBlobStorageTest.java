@@ -10,10 +10,13 @@ import se.yarin.morphy.util.CBUtil;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
 import static java.nio.file.StandardOpenOption.*;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -79,6 +82,33 @@ public class FileBlobStorageTest {
     assertEquals(0, storage.getWastedBytes());
   }
 
+  @Test
+  public void appendMultipleBlobsAtOnce() throws IOException {
+    BlobStorage storage = createStorage();
+    storage.appendBlob(createBlob("hello"));
+    long[] offsets =
+        storage.appendBlobs(List.of(createBlob("world"), createBlob("foo"), createBlob("bar")));
+    assertArrayEquals(new long[] {35, 44, 51}, offsets);
+    assertEquals(58, storage.getSize());
+    assertEquals("foo", parseBlob(storage.getBlob(44)));
+    assertEquals(0, storage.getWastedBytes());
+  }
+
+  @Test
+  public void getBytesSpanningBlobs() throws IOException {
+    BlobStorage storage = createStorage();
+    storage.appendBlob(createBlob("hello"));
+    storage.appendBlob(createBlob("world"));
+
+    ByteBuffer bytes = storage.getBytes(26, 18);
+    assertEquals(18, bytes.limit());
+    assertEquals("hello", parseBlob(ByteBuffer.wrap(Arrays.copyOfRange(bytes.array(), 0, 9))));
+    assertEquals("world", parseBlob(ByteBuffer.wrap(Arrays.copyOfRange(bytes.array(), 9, 18))));
+
+    // Reading past the end of the storage
+    assertEquals(9, storage.getBytes(35, 100).limit());
+  }
+
   @Test
   public void replaceBlobWithShorter() throws IOException {
     BlobStorage storage = createStorage();
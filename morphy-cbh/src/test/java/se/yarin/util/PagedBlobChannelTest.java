@@ -0,0 +1,118 @@
+package se.yarin.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+import static se.yarin.util.PagedBlobChannel.PAGE_SIZE;
+
+public class PagedBlobChannelTest {
+  private static final int NUM_PAGES = 200;
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private PagedBlobChannel channel;
+
+  @Before
+  public void setupChannel() throws IOException {
+    Path path = folder.newFile("test.dat").toPath();
+    channel =
+        PagedBlobChannel.open(
+            path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    ByteBuffer buf = ByteBuffer.allocate(NUM_PAGES * PAGE_SIZE + 100);
+    for (int i = 0; i < buf.limit(); i += 4) {
+      buf.putInt(i, i);
+    }
+    channel.append(buf);
+  }
+
+  @After
+  public void closeChannel() throws IOException {
+    channel.close();
+  }
+
+  private void assertData(long offset, ByteBuffer buf) {
+    assertEquals(0, offset % 4);
+    for (int i = 0; i + 4 <= buf.limit() && offset + i + 4 <= channel.size(); i += 4) {
+      assertEquals(offset + i, buf.getInt(i));
+    }
+  }
+
+  @Test
+  public void sequentialReadIsReadAhead() throws IOException {
+    int recordSize = 1000;
+    boolean readAhead = false;
+    for (long offset = 0; offset < channel.size(); offset += recordSize) {
+      assertData(offset, channel.read(offset, recordSize));
+      readAhead |= channel.readAheadPageCount() > 0;
+    }
+    assertTrue(readAhead);
+  }
+
+  @Test
+  public void largeSequentialReads() throws IOException {
+    int recordSize = 3 * PAGE_SIZE + 4;
+    for (long offset = 0; offset < channel.size(); offset += recordSize) {
+      assertData(offset, channel.read(offset, recordSize));
+    }
+  }
+
+  @Test
+  public void randomReadIsNotReadAhead() throws IOException {
+    for (int i = 0; i < 50; i++) {
+      long offset = (long) ((i * 37) % NUM_PAGES) * PAGE_SIZE + 8;
+      assertData(offset, channel.read(offset, 100));
+      assertEquals(0, channel.readAheadPageCount());
+    }
+  }
+
+  @Test
+  public void writeDiscardsPagesReadAhead() throws IOException {
+    for (int page = 0; page < 10; page++) {
+      channel.read((long) page * PAGE_SIZE, 100);
+    }
+    assertTrue(channel.readAheadPageCount() > 0);
+
+    ByteBuffer buf = ByteBuffer.allocate(4);
+    buf.putInt(-1);
+    buf.flip();
+    channel.write(12L * PAGE_SIZE, buf);
+    assertEquals(0, channel.readAheadPageCount());
+
+    for (int page = 10; page < 20; page++) {
+      ByteBuffer data = channel.read((long) page * PAGE_SIZE, 4);
+      assertEquals(page == 12 ? -1 : page * PAGE_SIZE, data.getInt(0));
+    }
+  }
+
+  @Test
+  public void readAheadCanBeDisabled() throws IOException {
+    channel.setMaxReadAheadPages(0);
+    for (long offset = 0; offset < channel.size(); offset += 1000) {
+      assertData(offset, channel.read(offset, 1000));
+      assertEquals(0, channel.readAheadPageCount());
+    }
+  }
+
+  @Test
+  public void bulkScanReadsSameData() throws IOException {
+    channel.setBulkScanIndicator(() -> true);
+    for (long offset = 0; offset < channel.size(); offset += 1000) {
+      assertData(offset, channel.read(offset, 1000));
+    }
+    // Random reads still work after the scan, whether direct I/O is supported or not
+    channel.setBulkScanIndicator(() -> false);
+    for (int i = 0; i < 20; i++) {
+      long offset = (long) ((i * 53) % NUM_PAGES) * PAGE_SIZE + 4;
+      assertData(offset, channel.read(offset, 200));
+    }
+  }
+}
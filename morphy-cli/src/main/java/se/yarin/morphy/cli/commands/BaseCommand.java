@@ -5,6 +5,10 @@ import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.ConfigurationFactory;
 import org.apache.logging.log4j.core.config.ConfigurationSource;
 import picocli.CommandLine;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseConfig;
+import se.yarin.morphy.metrics.PrometheusExporter;
+import se.yarin.morphy.queries.PlannerCostConstants;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -36,6 +40,12 @@ public abstract class BaseCommand {
   @CommandLine.Option(names = "--iostats", description = "Show instrumentation statistics")
   private boolean iostats = false;
 
+  @CommandLine.Option(
+      names = "--metrics-file",
+      description =
+          "Write the instrumentation metrics to this file in the Prometheus text format after each database")
+  private Path metricsFile;
+
   protected void setupGlobalOptions() {
     if (verbose != null) {
       String level = verbose.length == 1 ? "info" : "debug";
@@ -58,6 +68,36 @@ public abstract class BaseCommand {
     return iostats;
   }
 
+  /**
+   * Shows and exports the instrumentation metrics of a database, if requested by the global options
+   */
+  protected void reportInstrumentation(Database db) {
+    if (iostats) {
+      db.context().instrumentation().show();
+    }
+    if (metricsFile != null) {
+      try {
+        new PrometheusExporter(db.context().instrumentation()).writeTo(metricsFile);
+      } catch (IOException e) {
+        System.err.println("Failed to write metrics to " + metricsFile + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Creates the configuration to open a database with, using the query planner costs calibrated
+   * for the database or host if there are any
+   */
+  protected DatabaseConfig databaseConfig(File file) {
+    DatabaseConfig config = new DatabaseConfig();
+    config.setPlannerCostConstants(PlannerCostConstants.resolve(file));
+    return config;
+  }
+
+  protected File databaseFile() {
+    return file;
+  }
+
   protected Stream<File> getDatabaseStream() throws IOException {
     if (file.isDirectory()) {
       return Files.walk(file.toPath(), recursive ? 30 : 1)
@@ -0,0 +1,80 @@
+package se.yarin.morphy.cli.commands;
+
+import me.tongfei.progressbar.ProgressBar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseMode;
+import se.yarin.morphy.boosters.BoosterBuilder;
+import se.yarin.morphy.exceptions.MorphyException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+    name = "boosters",
+    description = "Rebuilds the search boosters (.cit/.cib/.cit2/.cib2/.cbb/.cbgi) of a database",
+    mixinStandardHelpOptions = true)
+public class Boosters extends BaseCommand implements Callable<Integer> {
+
+  private static final Logger log = LogManager.getLogger();
+
+  @CommandLine.Option(
+      names = "--no-progress-bar",
+      negatable = true,
+      description = "Show progress bar")
+  private boolean showProgressBar = true;
+
+  @CommandLine.Option(
+      names = "--missing-only",
+      description = "Only rebuild the boosters of databases where some booster is missing")
+  private boolean missingOnly = false;
+
+  @CommandLine.Option(
+      names = "--threads",
+      description = "Number of threads to use when reading the games (1 by default)")
+  int threads = 1;
+
+  @Override
+  public Integer call() throws IOException {
+    setupGlobalOptions();
+
+    getDatabaseStream()
+        .forEach(
+            file -> {
+              int numGames;
+              try (Database db = Database.open(file, DatabaseMode.READ_ONLY)) {
+                if (missingOnly
+                    && db.gameEntityIndexPrimary() != null
+                    && db.gameEntityIndexSecondary() != null
+                    && db.moveOffsetStorage() != null
+                    && db.gameEventStorage() != null
+                    && db.gameEventStorage().count() == db.count()) {
+                  log.info("Boosters exist: " + file);
+                  return;
+                }
+                numGames = db.count();
+              } catch (MorphyException | IOException e) {
+                log.error("Error opening the database: " + e.getMessage());
+                return;
+              }
+
+              log.info("Rebuilding boosters of " + file);
+              try {
+                if (showProgressBar) {
+                  try (ProgressBar pb = new ProgressBar("Boosters", numGames)) {
+                    BoosterBuilder.rebuild(file, threads, pb::step);
+                  }
+                } else {
+                  BoosterBuilder.rebuild(file, threads, () -> {});
+                }
+                log.info("Boosters rebuilt: " + file);
+              } catch (MorphyException | IOException e) {
+                log.error("Error rebuilding the boosters of " + file + ": " + e.getMessage());
+              }
+            });
+
+    return 0;
+  }
+}
@@ -0,0 +1,76 @@
+package se.yarin.morphy.cli.commands;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import se.yarin.morphy.queries.CostCalibrator;
+import se.yarin.morphy.queries.PlannerCostConstants;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+    name = "calibrate",
+    description =
+        "Measures the cost of page reads and deserializations on the storage of a database and optionally saves them as query planner costs",
+    mixinStandardHelpOptions = true)
+public class Calibrate extends BaseCommand implements Callable<Integer> {
+  private static final Logger log = LogManager.getLogger();
+
+  @CommandLine.Option(
+      names = "--samples",
+      description = "Number of pages and games to sample in each measurement (2000 by default)")
+  private int samples = 2000;
+
+  @CommandLine.Option(
+      names = "--save-host",
+      description = "Save the costs as the default for all databases on this host")
+  private boolean saveHost;
+
+  @CommandLine.Option(
+      names = "--save-database",
+      description = "Save the costs next to the database, to be used only for that database")
+  private boolean saveDatabase;
+
+  @Override
+  public Integer call() throws IOException {
+    setupGlobalOptions();
+
+    File file = getDatabaseStream().findFirst().orElse(null);
+    if (file == null) {
+      System.err.println("No database found");
+      return 1;
+    }
+
+    log.info("Calibrating against " + file);
+    PlannerCostConstants current = PlannerCostConstants.resolve(file);
+    PlannerCostConstants measured = new CostCalibrator(file, samples).calibrate();
+
+    System.out.println("Cost (ms)                 current     measured");
+    System.out.println("----------------------------------------------");
+    System.out.printf(
+        "Scattered page read   %12.5f %12.5f%n",
+        current.scatteredIOPageCost(), measured.scatteredIOPageCost());
+    System.out.printf(
+        "Sequential page read  %12.5f %12.5f%n",
+        current.burstIOPageCost(), measured.burstIOPageCost());
+    System.out.printf(
+        "Deserialization       %12.5f %12.5f%n",
+        current.deserializationCost(), measured.deserializationCost());
+
+    if (saveHost) {
+      save(measured, PlannerCostConstants.hostFile());
+    }
+    if (saveDatabase) {
+      save(measured, PlannerCostConstants.databaseFile(file));
+    }
+    return 0;
+  }
+
+  private void save(PlannerCostConstants costs, Path file) throws IOException {
+    costs.save(file);
+    System.out.println("Saved the costs to " + file);
+  }
+}
@@ -102,6 +102,17 @@ public class Check extends BaseCommand implements Callable<Integer> {
       description = "Check all moves, annotations etc in game data (true by default)")
   boolean loadGames = true;
 
+  @CommandLine.Option(
+      names = "--threads",
+      description = "Number of threads to use when checking the games (1 by default)")
+  int threads = 1;
+
+  @CommandLine.Option(
+      names = "--bulk-scan",
+      description =
+          "Read the games with direct I/O where possible, so that checking a large database doesn't evict other data from the OS page cache")
+  boolean bulkScan;
+
   @Override
   public Integer call() throws IOException {
     setupGlobalOptions();
@@ -130,14 +141,13 @@ public class Check extends BaseCommand implements Callable<Integer> {
 
               try (Database db = Database.open(file, DatabaseMode.READ_ONLY)) {
                 try {
-                  Validator validator = new Validator();
+                  Validator validator = new Validator(threads);
+                  validator.setBulkScan(bulkScan);
                   db.moveRepository().moveSerializer().setLogDetailedErrors(true);
                   validator.validate(db, checks, true, false, showProgressBar);
                   log.info("Database OK: " + file);
 
-                  if (showInstrumentation()) {
-                    db.context().instrumentation().show();
-                  }
+                  reportInstrumentation(db);
                 } catch (MorphyException e) {
                   // At least one error that the ChessBase integrity checker would consider an error
                   // found
@@ -6,7 +6,15 @@ import picocli.CommandLine;
     name = "morphy",
     description = "Performs an operation on a ChessBase file",
     mixinStandardHelpOptions = true,
-    subcommands = {Games.class, Players.class, Tournaments.class, Check.class})
+    subcommands = {
+      Games.class,
+      Players.class,
+      Tournaments.class,
+      Check.class,
+      Boosters.class,
+      Import.class,
+      Calibrate.class
+    })
 class ChessBaseCommand implements Runnable {
 
   @Override
@@ -10,12 +10,22 @@ import se.yarin.morphy.DatabaseReadTransaction;
 import se.yarin.morphy.Game;
 import se.yarin.morphy.cli.games.*;
 import se.yarin.morphy.cli.columns.*;
+import se.yarin.morphy.entities.EntityType;
+import se.yarin.morphy.entities.GameTag;
 import se.yarin.morphy.entities.Nation;
 import se.yarin.morphy.entities.Player;
+import se.yarin.morphy.entities.Team;
 import se.yarin.morphy.entities.Tournament;
+import se.yarin.morphy.entities.filters.*;
 import se.yarin.morphy.games.filters.*;
 import se.yarin.morphy.qqueries.*;
+import se.yarin.morphy.queries.EntityQuery;
+import se.yarin.morphy.queries.GameEntityJoin;
 import se.yarin.morphy.queries.GameEntityJoinCondition;
+import se.yarin.morphy.queries.GameQuery;
+import se.yarin.morphy.queries.QueryContext;
+import se.yarin.morphy.queries.operations.QueryExplain;
+import se.yarin.morphy.queries.operations.QueryOperator;
 
 import java.io.File;
 import java.io.IOException;
@@ -113,9 +123,14 @@ public class Games extends BaseCommand implements Callable<Integer> {
 
   @CommandLine.Option(
       names = {"-o", "--output"},
-      description = "Output database (.cbh or .pgn)")
+      description = "Output database (.cbh, .pgn or .pgn.gz)")
   private String output;
 
+  @CommandLine.Option(
+      names = "--threads",
+      description = "Number of threads to use when writing PGN output (1 by default)")
+  private int threads = 1;
+
   @CommandLine.Option(
       names = "--pgn-headers",
       description =
@@ -137,6 +152,20 @@ public class Games extends BaseCommand implements Callable<Integer> {
   @CommandLine.Option(names = "--stats", description = "Show statistics about all matching games")
   private boolean stats;
 
+  @CommandLine.Option(
+      names = "--explain",
+      arity = "0..1",
+      fallbackValue = "text",
+      description =
+          "Run the search through the query planner and show the executed plan with the actual cost of each operator instead of the games ('text' by default, or 'json')")
+  private String explain;
+
+  @CommandLine.Option(
+      names = "--bulk-scan",
+      description =
+          "Read the games with direct I/O where possible, so that exporting a large database doesn't evict other data from the OS page cache")
+  private boolean bulkScan;
+
   @CommandLine.Option(
       names = "--overwrite",
       description = "If true, overwrite the output database if it already exists.")
@@ -179,6 +208,19 @@ public class Games extends BaseCommand implements Callable<Integer> {
 
     setupGlobalOptions();
 
+    // The header filters don't depend on the database, so invalid options are reported up front
+    List<GameFilter> gameFilters;
+    try {
+      gameFilters = createGameFilters();
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    }
+
+    if (explain != null) {
+      return explainGameQuery(gameFilters);
+    }
+
     GameConsumer gameConsumer = createGameConsumer();
     gameConsumer.init();
 
@@ -191,16 +233,10 @@ public class Games extends BaseCommand implements Callable<Integer> {
                 // in the CBH databases are valid
                 db.moveRepository().setValidateDecodedMoves(false);
 
-                ItemQuery<Game> gameQuery = null;
-                try {
-                  gameQuery = createGameQuery();
-                } catch (IllegalArgumentException e) {
-                  System.err.println(e.getMessage());
-                  System.exit(1);
-                }
-                assert gameQuery != null;
+                ItemQuery<Game> gameQuery = createGameQuery(gameFilters);
 
-                try (var txn = new DatabaseReadTransaction(db)) {
+                try (var txn = new DatabaseReadTransaction(db);
+                    var scan = bulkScan ? db.context().beginBulkScan() : null) {
                   QueryResult<Game> result;
 
                   if (!(gameConsumer instanceof StdoutGamesSummary)) {
@@ -217,9 +253,7 @@ public class Games extends BaseCommand implements Callable<Integer> {
                   gameConsumer.searchDone(result);
                 }
 
-                if (showInstrumentation()) {
-                  db.context().instrumentation().show();
-                }
+                reportInstrumentation(db);
               } catch (IOException e) {
                 System.err.println("IO error when processing " + file);
                 numDatabaseErrors.incrementAndGet();
@@ -243,7 +277,186 @@ public class Games extends BaseCommand implements Callable<Integer> {
     return 0;
   }
 
-  public ItemQuery<Game> createGameQuery() {
+  private int explainGameQuery(List<GameFilter> gameFilters) throws IOException {
+    if (!explain.equals("text") && !explain.equals("json")) {
+      System.err.println("--explain must be 'text' or 'json'");
+      return 1;
+    }
+    if (ids != null || setupPosition || startPosition) {
+      System.err.println("--explain doesn't support searching by game id or start position");
+      return 1;
+    }
+    if (players != null && Arrays.stream(players).anyMatch(player -> player.contains("|"))) {
+      System.err.println("--explain doesn't support alternative player names");
+      return 1;
+    }
+    var numDatabaseErrors = new AtomicInteger(0);
+
+    getDatabaseStream()
+        .forEach(
+            file -> {
+              log.info("Opening " + file);
+              try (Database db =
+                  Database.open(file, DatabaseMode.READ_ONLY, databaseConfig(file))) {
+                db.moveRepository().setValidateDecodedMoves(false);
+
+                GameQuery gameQuery = createPlannedGameQuery(db, gameFilters);
+
+                try (var txn = new DatabaseReadTransaction(db)) {
+                  QueryContext context = new QueryContext(txn, true, bulkScan);
+                  QueryOperator<Game> queryPlan =
+                      db.queryPlanner()
+                          .selectBestQueryPlan(
+                              db.queryPlanner().getGameQueryPlans(context, gameQuery, true));
+                  queryPlan.executeProfiled();
+
+                  QueryExplain queryExplain = new QueryExplain(queryPlan);
+                  if (explain.equals("json")) {
+                    System.out.println(queryExplain.toJson());
+                  } else {
+                    System.out.println(queryExplain.format());
+                  }
+                }
+
+                reportInstrumentation(db);
+              } catch (IOException e) {
+                System.err.println("IO error when processing " + file);
+                numDatabaseErrors.incrementAndGet();
+                if (verboseLevel() > 0) {
+                  e.printStackTrace();
+                }
+              } catch (RuntimeException e) {
+                System.err.println(
+                    "Unexpected error when processing " + file + ": " + e.getMessage());
+                numDatabaseErrors.incrementAndGet();
+                if (verboseLevel() > 0) {
+                  e.printStackTrace();
+                }
+              }
+            });
+
+    return numDatabaseErrors.get() > 0 ? 1 : 0;
+  }
+
+  /**
+   * Creates the filters on the game headers, which are the same whether or not the search goes
+   * through the query planner
+   *
+   * @throws IllegalArgumentException if any of the search options is invalid
+   */
+  public List<GameFilter> createGameFilters() {
+    ArrayList<GameFilter> gameFilters = new ArrayList<>();
+
+    if (game) {
+      gameFilters.add(new IsGameFilter());
+    }
+
+    if (guidingText) {
+      gameFilters.add(new TextStorageFilter());
+    }
+
+    if (result != null) {
+      if (result.equals("win") || result.equals("loss")) {
+        if (players == null) {
+          throw new IllegalArgumentException(
+              "A player search is needed when filtering on 'wins' or 'loss' results");
+        }
+        // Taken care of by the player search, see playerMatchCondition
+      } else {
+        gameFilters.add(new ResultsFilter(result));
+      }
+    }
+
+    if (dateRange != null) {
+      gameFilters.add(new DateRangeFilter(dateRange));
+    }
+
+    if (ratingRangeBoth != null) {
+      gameFilters.add(new RatingRangeFilter(ratingRangeBoth, RatingRangeFilter.RatingColor.BOTH));
+    }
+
+    if (ratingRangeAny != null) {
+      gameFilters.add(new RatingRangeFilter(ratingRangeAny, RatingRangeFilter.RatingColor.ANY));
+    }
+
+    if (rawCbhFilter != null) {
+      for (String filter : rawCbhFilter) {
+        gameFilters.add(new RawGameHeaderFilter(filter));
+      }
+    }
+
+    if (rawCbjFilter != null) {
+      for (String filter : rawCbjFilter) {
+        gameFilters.add(new RawExtendedHeaderFilter(filter));
+      }
+    }
+    return gameFilters;
+  }
+
+  private GameEntityJoinCondition playerMatchCondition() {
+    if ("win".equals(result)) {
+      return GameEntityJoinCondition.WINNER;
+    }
+    if ("loss".equals(result)) {
+      return GameEntityJoinCondition.LOSER;
+    }
+    return GameEntityJoinCondition.ANY;
+  }
+
+  /**
+   * Creates the same search as {@link #createGameQuery(List)}, but as a query that can be
+   * optimized by the query planner. Not all search options are supported by the query planner yet;
+   * they are checked in {@link #explainGameQuery(List)}.
+   */
+  public GameQuery createPlannedGameQuery(Database db, List<GameFilter> gameFilters) {
+    ArrayList<GameEntityJoin<?>> entityJoins = new ArrayList<>();
+
+    if (players != null) {
+      for (String player : players) {
+        List<EntityFilter<Player>> playerFilters =
+            List.of(new PlayerNameFilter(player, true, false));
+        entityJoins.add(
+            new GameEntityJoin<>(
+                new EntityQuery<>(db, EntityType.PLAYER, playerFilters), playerMatchCondition()));
+      }
+    }
+
+    if (team != null) {
+      List<EntityFilter<Team>> teamFilters = List.of(new TeamTitleFilter(team, true, false));
+      entityJoins.add(
+          new GameEntityJoin<>(new EntityQuery<>(db, EntityType.TEAM, teamFilters), null));
+    }
+
+    if (gameTag != null) {
+      List<EntityFilter<GameTag>> gameTagFilters =
+          List.of(new GameTagTitleFilter(gameTag, true, false));
+      entityJoins.add(
+          new GameEntityJoin<>(new EntityQuery<>(db, EntityType.GAME_TAG, gameTagFilters), null));
+    }
+
+    ArrayList<EntityFilter<Tournament>> tournamentFilters = new ArrayList<>();
+    if (tournament != null) {
+      tournamentFilters.add(new TournamentTitleFilter(tournament, true, false));
+    }
+    if (tournamentTimeControl != null) {
+      tournamentFilters.add(new TournamentTimeControlFilter(tournamentTimeControl));
+    }
+    if (tournamentType != null) {
+      tournamentFilters.add(new TournamentTypeFilter(tournamentType));
+    }
+    if (tournamentPlace != null) {
+      tournamentFilters.add(new TournamentPlaceFilter(tournamentPlace, true, false));
+    }
+    if (!tournamentFilters.isEmpty()) {
+      entityJoins.add(
+          new GameEntityJoin<>(
+              new EntityQuery<>(db, EntityType.TOURNAMENT, tournamentFilters), null));
+    }
+
+    return new GameQuery(db, gameFilters, entityJoins, null, limit);
+  }
+
+  public ItemQuery<Game> createGameQuery(List<GameFilter> gameFilters) {
     ArrayList<ItemQuery<Game>> gameQueries = new ArrayList<>();
     gameQueries.add(new QGamesAll()); // Ensure we have at least one query
 
@@ -259,15 +472,10 @@ public class Games extends BaseCommand implements Callable<Integer> {
       gameQueries.add(new QGamesIsStartPosition());
     }
 
-    if (game) {
-      gameQueries.add(new QGamesIsGame());
-    }
-
-    if (guidingText) {
-      gameQueries.add(new QGamesIsText());
+    for (GameFilter gameFilter : gameFilters) {
+      gameQueries.add(new QGamesWithFilter(gameFilter));
     }
 
-    ItemQuery<Player> primaryPlayerSearcher = null;
     if (players != null) {
       for (String player : players) {
         ItemQuery<Player> playerSearcher;
@@ -280,43 +488,10 @@ public class Games extends BaseCommand implements Callable<Integer> {
                       .map(name -> new QPlayersWithName(name, true, false))
                       .collect(Collectors.toList()));
         }
-        GameEntityJoinCondition matchCondition = GameEntityJoinCondition.ANY;
-        if ("win".equals(result)) {
-          matchCondition = GameEntityJoinCondition.WINNER;
-        } else if ("loss".equals(result)) {
-          matchCondition = GameEntityJoinCondition.LOSER;
-        }
-        gameQueries.add(new QGamesByPlayers(playerSearcher, matchCondition));
-        if (primaryPlayerSearcher == null) {
-          primaryPlayerSearcher = playerSearcher;
-        }
-      }
-    }
-
-    if (result != null) {
-      if (result.equals("win") || result.equals("loss")) {
-        if (players == null) {
-          throw new IllegalArgumentException(
-              "A player search is needed when filtering on 'wins' or 'loss' results");
-        }
-        // Already taken care of above
-      } else {
-        gameQueries.add(new QGamesWithResult(result));
+        gameQueries.add(new QGamesByPlayers(playerSearcher, playerMatchCondition()));
       }
     }
 
-    if (dateRange != null) {
-      gameQueries.add(new QGamesWithPlayedDate(dateRange));
-    }
-
-    if (ratingRangeBoth != null) {
-      gameQueries.add(new QGamesWithRating(ratingRangeBoth, RatingRangeFilter.RatingColor.BOTH));
-    }
-
-    if (ratingRangeAny != null) {
-      gameQueries.add(new QGamesWithRating(ratingRangeAny, RatingRangeFilter.RatingColor.ANY));
-    }
-
     if (team != null) {
       gameQueries.add(new QGamesByTeams(new QTeamsWithTitle(team, true, false)));
     }
@@ -346,18 +521,6 @@ public class Games extends BaseCommand implements Callable<Integer> {
     if (!tournamentQueries.isEmpty()) {
       gameQueries.add(new QGamesByTournaments(new QAnd<>(tournamentQueries)));
     }
-
-    if (rawCbhFilter != null) {
-      for (String filter : rawCbhFilter) {
-        gameQueries.add(new QGamesWithRaw(new RawGameHeaderFilter(filter), null));
-      }
-    }
-
-    if (rawCbjFilter != null) {
-      for (String filter : rawCbjFilter) {
-        gameQueries.add(new QGamesWithRaw(null, new RawExtendedHeaderFilter(filter)));
-      }
-    }
     return new QAnd<>(gameQueries);
   }
 
@@ -423,7 +586,7 @@ public class Games extends BaseCommand implements Callable<Integer> {
         Database.delete(file);
       }
       gameConsumer = new DatabaseBuilder(file);
-    } else if (output.endsWith(".pgn")) {
+    } else if (output.endsWith(".pgn") || output.endsWith(".pgn.gz")) {
       File file = new File(output);
       if (!overwrite && file.exists()) {
         throw new FileAlreadyExistsException(output);
@@ -472,7 +635,11 @@ public class Games extends BaseCommand implements Callable<Integer> {
 
       gameConsumer =
           new PgnDatabaseBuilder(
-              file, includeOptionalHeaders, standardAnnotationsOnly, commentLanguageFilter);
+              file,
+              includeOptionalHeaders,
+              standardAnnotationsOnly,
+              commentLanguageFilter,
+              threads);
     } else {
       throw new IllegalArgumentException("Unknown output format: " + output);
     }
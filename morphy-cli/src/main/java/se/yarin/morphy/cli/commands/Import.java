@@ -0,0 +1,74 @@
+package se.yarin.morphy.cli.commands;
+
+import me.tongfei.progressbar.ProgressBar;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+import se.yarin.morphy.Database;
+import se.yarin.morphy.PgnImporter;
+import se.yarin.morphy.exceptions.MorphyException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(
+    name = "import",
+    description = "Imports PGN files into a ChessBase database, creating it if it doesn't exist",
+    mixinStandardHelpOptions = true)
+public class Import extends BaseCommand implements Callable<Integer> {
+
+  private static final Logger log = LogManager.getLogger();
+
+  @CommandLine.Parameters(index = "1..*", arity = "1..*", description = "The PGN files to import")
+  private List<File> pgnFiles;
+
+  @CommandLine.Option(
+      names = "--no-progress-bar",
+      negatable = true,
+      description = "Show progress bar")
+  private boolean showProgressBar = true;
+
+  @CommandLine.Option(
+      names = "--threads",
+      description = "Number of threads to use when parsing the games (1 by default)")
+  int threads = 1;
+
+  @Override
+  public Integer call() throws IOException {
+    setupGlobalOptions();
+
+    File file = databaseFile();
+    if (!file.getName().toLowerCase().endsWith(".cbh")) {
+      log.error("The database must be a .cbh file: " + file);
+      return 1;
+    }
+
+    int numImported = 0, numFailed = 0;
+    try (Database db = file.exists() ? Database.open(file) : Database.create(file)) {
+      PgnImporter importer = new PgnImporter(db, threads);
+      for (File pgnFile : pgnFiles) {
+        log.info("Importing " + pgnFile);
+        PgnImporter.Result result;
+        if (showProgressBar) {
+          try (ProgressBar pb = new ProgressBar(pgnFile.getName(), -1)) {
+            result = importer.importFile(pgnFile, pb::step);
+          }
+        } else {
+          result = importer.importFile(pgnFile, () -> {});
+        }
+        numImported += result.numImported();
+        numFailed += result.numFailed();
+      }
+
+      reportInstrumentation(db);
+    } catch (MorphyException | IOException e) {
+      log.error("Error importing games: " + e.getMessage());
+      return 1;
+    }
+
+    log.info(String.format("Imported %d games into %s (%d failed)", numImported, file, numFailed));
+    return 0;
+  }
+}
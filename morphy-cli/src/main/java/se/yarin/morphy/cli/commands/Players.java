@@ -57,9 +57,7 @@ public class Players extends BaseCommand implements Callable<Integer> {
                   System.out.println("Total: " + db.playerIndex().count());
                 }
 
-                if (showInstrumentation()) {
-                  db.context().instrumentation().show();
-                }
+                reportInstrumentation(db);
               } catch (IOException e) {
                 System.err.println("IO error when processing " + file);
                 if (verboseLevel() > 0) {
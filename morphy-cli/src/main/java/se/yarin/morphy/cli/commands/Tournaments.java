@@ -116,9 +116,7 @@ public class Tournaments extends BaseCommand implements Callable<Integer> {
                   tournamentConsumer.searchDone(result);
                 }
 
-                if (showInstrumentation()) {
-                  db.context().instrumentation().show();
-                }
+                reportInstrumentation(db);
               } catch (IOException e) {
                 System.err.println("IO error when processing " + file);
                 if (verboseLevel() > 0) {
@@ -4,19 +4,23 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import se.yarin.chess.GameModel;
 import se.yarin.morphy.Database;
+import se.yarin.morphy.DatabaseMerger;
 import se.yarin.morphy.DatabaseWriteTransaction;
 import se.yarin.morphy.Game;
 import se.yarin.morphy.exceptions.MorphyException;
 import se.yarin.morphy.exceptions.MorphyInvalidDataException;
+import se.yarin.morphy.qqueries.QueryResult;
 import se.yarin.morphy.text.TextModel;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class DatabaseBuilder extends GameConsumerBase {
   private static final Logger log = LogManager.getLogger();
 
-  // If true, moves and annotations are added without parsing
+  // If true, moves and annotations are copied without parsing, once all games in a searched
+  // database have been found
   private static final boolean QUICK_ADD = true;
 
   private static final int BATCH_SIZE = 10000;
@@ -27,19 +31,51 @@ public class DatabaseBuilder extends GameConsumerBase {
   private final File file;
   private int gamesAdded = 0;
 
+  // The games found in the database currently being searched, if QUICK_ADD
+  private Database sourceDatabase;
+  private int[] sourceGameIds = new int[BATCH_SIZE];
+  private int numSourceGames = 0;
+
   public DatabaseBuilder(File file) throws IOException {
     this.file = file;
     this.database = Database.create(file, true);
-    transaction = new DatabaseWriteTransaction(this.database);
+    transaction = QUICK_ADD ? null : new DatabaseWriteTransaction(this.database);
+  }
+
+  @Override
+  public void searchDone(QueryResult<Game> result) {
+    super.searchDone(result);
+    if (QUICK_ADD && numSourceGames > 0) {
+      // Direct copy of the games between the databases
+      // Header metadata is refreshed (entities needs to receive new ID's etc)
+      // but moves and annotations are copied as opaque blobs
+      System.out.println("Copying " + numSourceGames + " games...");
+      int[] gameIds = Arrays.copyOf(sourceGameIds, numSourceGames);
+      try {
+        DatabaseMerger.Result copyResult =
+            new DatabaseMerger(sourceDatabase, database, BATCH_SIZE)
+                .copyGames(gameIds, this::gameAdded);
+        if (copyResult.numSkipped() > 0) {
+          System.out.println(copyResult.numSkipped() + " games with invalid data skipped");
+        }
+      } catch (MorphyException e) {
+        // gamesAdded only counts the games in the batches that were committed before the failure
+        log.warn("Failed to copy the remaining games from the searched database", e);
+      }
+      sourceDatabase = null;
+      numSourceGames = 0;
+    }
   }
 
   @Override
   public void finish() {
-    System.out.println("Committing...");
-    transaction.commit();
+    if (transaction != null) {
+      System.out.println("Committing...");
+      transaction.commit();
+      transaction.close();
+    }
     System.out.println(gamesAdded + " games added");
 
-    transaction.close();
     try {
       this.database.close();
     } catch (IOException e) {
@@ -52,54 +88,50 @@ public class DatabaseBuilder extends GameConsumerBase {
 
   @Override
   public void accept(Game game) {
-    Game addedGame;
-
     if (QUICK_ADD) {
-      // Direct copy of game between databases
-      // Header metadata is refreshed (entities needs to receive new ID's etc)
-      // but moves and annotations are copied as opaque blobs
+      if (numSourceGames == sourceGameIds.length) {
+        sourceGameIds = Arrays.copyOf(sourceGameIds, sourceGameIds.length * 2);
+      }
+      sourceDatabase = game.database();
+      sourceGameIds[numSourceGames++] = game.id();
+      return;
+    }
+
+    // Moves and annotations are deserialized into models and then
+    // serialized back again. This is slower, but will detect errors in the games.
+    Game addedGame;
+    if (game.guidingText()) {
+      TextModel model;
       try {
-        addedGame = transaction.addGame(game);
+        model = game.getTextModel();
       } catch (MorphyException e) {
-        log.warn("Failed to add game " + game.id() + " in the searched database");
+        log.warn("Failed to get text " + game.id() + " in the searched database");
+        return;
+      }
+      try {
+        addedGame = transaction.addText(model);
+      } catch (MorphyException e) {
+        log.warn("Failed to add text " + game.id() + " in the searched database");
         return;
       }
     } else {
-      // Moves and annotations are deserialized into models and then
-      // serialized back again. This is slower, but will detect errors in the games.
-      if (game.guidingText()) {
-        TextModel model;
-        try {
-          model = game.getTextModel();
-        } catch (MorphyException e) {
-          log.warn("Failed to get text " + game.id() + " in the searched database");
-          return;
-        }
-        try {
-          addedGame = transaction.addText(model);
-        } catch (MorphyException e) {
-          log.warn("Failed to add text " + game.id() + " in the searched database");
-          return;
-        }
-      } else {
-        GameModel model;
-        try {
-          model = game.getModel();
-        } catch (MorphyException e) {
-          log.warn("Failed to get game " + game.id() + " in the searched database");
-          return;
-        }
+      GameModel model;
+      try {
+        model = game.getModel();
+      } catch (MorphyException e) {
+        log.warn("Failed to get game " + game.id() + " in the searched database");
+        return;
+      }
 
-        try {
-          addedGame = transaction.addGame(model);
-        } catch (MorphyInvalidDataException e) {
-          log.warn(
-              "Failed to add game "
-                  + game.id()
-                  + " in the searched database in the output database",
-              e);
-          return;
-        }
+      try {
+        addedGame = transaction.addGame(model);
+      } catch (MorphyInvalidDataException e) {
+        log.warn(
+            "Failed to add game "
+                + game.id()
+                + " in the searched database in the output database",
+            e);
+        return;
       }
     }
 
@@ -117,14 +149,19 @@ public class DatabaseBuilder extends GameConsumerBase {
                 addedGame.id()));
       }
     }
-    gamesAdded++;
+    gameAdded();
 
-    if (gamesAdded % LOG_INFO_SIZE == 0) {
-      System.out.println(gamesAdded + " games added");
-    }
     if (gamesAdded % BATCH_SIZE == 0) {
       System.out.println("Committing...");
       transaction.commit();
     }
   }
+
+  private void gameAdded() {
+    gamesAdded++;
+
+    if (gamesAdded % LOG_INFO_SIZE == 0) {
+      System.out.println(gamesAdded + " games added");
+    }
+  }
 }
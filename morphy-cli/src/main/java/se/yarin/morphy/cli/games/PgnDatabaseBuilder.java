@@ -4,35 +4,41 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import se.yarin.chess.annotations.AnnotationTransformer;
 import se.yarin.chess.pgn.PgnExporter;
+import se.yarin.chess.pgn.PgnFileWriter;
 import se.yarin.chess.pgn.PgnFormatOptions;
+import se.yarin.morphy.DatabaseContext;
 import se.yarin.morphy.Game;
 import se.yarin.morphy.entities.Nation;
 import se.yarin.morphy.games.annotations.AnnotationConverter;
+import se.yarin.morphy.qqueries.QueryResult;
 
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.Set;
 
 public class PgnDatabaseBuilder extends GameConsumerBase {
   private static final Logger log = LogManager.getLogger();
 
-  private final FileWriter pgnFileWriter;
-  private final PgnExporter exporter;
+  private final PgnFileWriter pgnFileWriter;
   private final AnnotationConverter converter;
-  private boolean firstGame = true;
 
   public PgnDatabaseBuilder(File file) throws IOException {
-    this(file, true, false, null);
+    this(file, true, false, null, 1);
   }
 
+  /**
+   * Creates a consumer that writes the games to a PGN file. If the file name ends with .gz, the
+   * file is gzip compressed.
+   *
+   * @param threads the number of threads used to decode and render the games
+   */
   public PgnDatabaseBuilder(
       File file,
       boolean includeOptionalHeaders,
       boolean standardAnnotationsOnly,
-      Set<Nation> commentLanguageFilter)
+      Set<Nation> commentLanguageFilter,
+      int threads)
       throws IOException {
-    this.pgnFileWriter = new FileWriter(file);
 
     // Use simplified converter for human-readable PGN
     this.converter = AnnotationConverter.getSimplifiedPgnConverter();
@@ -60,7 +66,23 @@ public class PgnDatabaseBuilder extends GameConsumerBase {
           }
         };
 
-    this.exporter = new PgnExporter(options, transformer);
+    PgnFileWriter.Compression compression =
+        file.getName().endsWith(".gz")
+            ? PgnFileWriter.Compression.GZIP
+            : PgnFileWriter.Compression.NONE;
+    this.pgnFileWriter =
+        new PgnFileWriter(file, new PgnExporter(options, transformer), threads, compression);
+  }
+
+  @Override
+  public void searchDone(QueryResult<Game> result) {
+    super.searchDone(result);
+    // The pending games must be loaded before the database is closed
+    try {
+      this.pgnFileWriter.flush();
+    } catch (IOException e) {
+      log.warn("Failed to write to PGN database", e);
+    }
   }
 
   @Override
@@ -74,12 +96,16 @@ public class PgnDatabaseBuilder extends GameConsumerBase {
 
   @Override
   public void accept(Game game) {
+    // The games may be rendered on other threads, which then read on behalf of the bulk scan
+    DatabaseContext context = game.database().context();
+    boolean bulkScan = context.inBulkScan();
     try {
-      if (!firstGame) {
-        this.pgnFileWriter.write("\n");
-      }
-      firstGame = false;
-      exporter.exportGame(game.getModel(), this.pgnFileWriter);
+      this.pgnFileWriter.write(
+          () -> {
+            try (var scan = bulkScan ? context.beginBulkScan() : null) {
+              return game.getModel();
+            }
+          });
     } catch (IOException e) {
       log.warn("Failed to write to PGN database", e);
     }